@@ -14,12 +14,13 @@ package org.regenstrief.hl7;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.regenstrief.hl7.convert.Escaper;
 import org.regenstrief.hl7.datatype.HL7DataType;
@@ -29,6 +30,7 @@ import org.regenstrief.hl7.util.BaseData;
 import org.regenstrief.hl7.util.HL7ParseException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.regenstrief.util.CharSlice;
 import org.regenstrief.util.Util;
 import org.regenstrief.util.reflect.ReflectUtil;
 
@@ -49,12 +51,20 @@ import org.regenstrief.util.reflect.ReflectUtil;
  * @author Andrew Martin
  * @version 1.0
  */
-public abstract class HL7Data implements BaseData {
+public abstract class HL7Data implements BaseData, Cloneable {
     
     private static final Log log = LogFactory.getLog(HL7Data.class);
     
     private final static Escaper defaultEscaper = new Escaper();
     
+    // Tokens are unescaped into a per-thread buffer; a String is only created if something was unescaped
+    private final static ThreadLocal<StringBuilder> unescapeBuffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected final StringBuilder initialValue() {
+            return new StringBuilder();
+        }
+    };
+    
     protected final HL7Properties prop;
     
     protected final HL7Parser parser;
@@ -132,13 +142,12 @@ public abstract class HL7Data implements BaseData {
             return null;
         }
         
-        if ((this.parser != null) && !this.parser.allowComplex) {
-            assertNotContains(line, token, this.parser.getFieldSeparator());
-            assertNotContains(line, token, this.parser.getComponentSeparator());
-            assertNotContains(line, token, this.parser.getSubcomponentSeparator());
-            assertNotContains(line, token, this.parser.getRepetitionSeparator());
+        final boolean checkDelimiters = (this.parser != null) && !this.parser.allowComplex;
+        try {
+            return getEscaper().unescape(token, unescapeBuffers.get(), checkDelimiters);
+        } catch (final Escaper.DelimiterException e) {
+            throw unexpectedDelimiter(line, token, e.getDelimiter());
         }
-        return getEscaper().unescape(token);
     }
     
     private final Escaper getEscaper() {
@@ -149,19 +158,17 @@ public abstract class HL7Data implements BaseData {
         return this.parser;
     }
     
-    private final void assertNotContains(final String line, final String token, final char sep) {
-        if (Util.contains(token, sep)) {
-            final String loc;
-            if (this.parseIndex == 0) {
-                // In a primitive, use parent
-                final HL7Data parent = this.parser.stack.peek();
-                loc = parent.getTagName() + "." + parent.getParseIndex();
-            } else {
-                loc = getTagName() + "." + getParseIndex();
-            }
-            throw new HL7ParseException("Unexpected character " + token + " (" + sep + ") found in " + loc + " of:"
-                    + Util.getLineSeparator() + line);
+    private final HL7ParseException unexpectedDelimiter(final String line, final String token, final char sep) {
+        final String loc;
+        if (this.parseIndex == 0) {
+            // In a primitive, use parent
+            final HL7Data parent = this.parser.stack.peek();
+            loc = parent.getTagName() + "." + parent.getParseIndex();
+        } else {
+            loc = getTagName() + "." + getParseIndex();
         }
+        return new HL7ParseException("Unexpected character " + token + " (" + sep + ") found in " + loc + " of:"
+                + Util.getLineSeparator() + line);
     }
     
     private int parseIndex = 0;
@@ -187,6 +194,48 @@ public abstract class HL7Data implements BaseData {
         }
     }
     
+    /**
+     * Retrieves the depth of the parser's stack, so that it can be restored after parsing part of a line out of
+     * the usual order
+     * 
+     * @return the stack depth
+     **/
+    protected final int getStackDepth() {
+        return this.parser == null ? 0 : this.parser.stack.size();
+    }
+    
+    /**
+     * Restores the depth of the parser's stack
+     * 
+     * @param depth the depth from getStackDepth
+     **/
+    protected final void restoreStackDepth(final int depth) {
+        if (this.parser != null) {
+            this.parser.stack.setSize(depth);
+        }
+    }
+    
+    /**
+     * Modifies the index reported in parse errors
+     * 
+     * @param parseIndex the index of the field being parsed
+     **/
+    protected final void setParseIndex(final int parseIndex) {
+        this.parseIndex = parseIndex;
+    }
+    
+    /**
+     * Replaces the parser's delimiters
+     * 
+     * @param delimiters the new delimiters
+     * @return the old delimiters
+     **/
+    protected final static Escaper swapDelimiters(final HL7Parser parser, final Escaper delimiters) {
+        final Escaper old = parser.delimiters;
+        parser.delimiters = delimiters;
+        return old;
+    }
+    
     private final void push() {
         if ((this.parser != null) && (this.parser.stack.empty() || (this.parser.stack.peek() != this))) {
             this.parser.stack.push(this);
@@ -340,7 +389,13 @@ public abstract class HL7Data implements BaseData {
         this.transformSource = transformSource;
     }
     
-    private final static Map<Class<? extends HL7Data>, List<Field>> fields = new HashMap<Class<? extends HL7Data>, List<Field>>();
+    // One accessor table per class; ClassValue computes it once and publishes it safely to all threads
+    private final static ClassValue<FieldAccessors> accessors = new ClassValue<FieldAccessors>() {
+        @Override
+        protected FieldAccessors computeValue(final Class<?> c) {
+            return new FieldAccessors(c.asSubclass(HL7Data.class));
+        }
+    };
     
     protected Object get(final int i) {
         // Can't return HL7DataType, since some fields are String and some are List.
@@ -349,84 +404,246 @@ public abstract class HL7Data implements BaseData {
         TODO
         Decide if we should allow extra unrecognized fields to be stored.
         */
+        final MethodHandle getter = accessors.get(getClass()).getGetter(i);
         try {
-            return getField(i).get(this);
-        } catch (final IllegalAccessException e) {
+            return getter.invokeExact(this);
+        } catch (final Throwable e) {
             throw Util.toRuntimeException(e);
         }
     }
     
     protected void set(final int i, final Object o) {
+        final MethodHandle setter = accessors.get(getClass()).getSetter(i);
         try {
-            getField(i).set(this, o);
-        } catch (final IllegalAccessException e) {
+            setter.invokeExact(this, o);
+        } catch (final Throwable e) {
             throw Util.toRuntimeException(e);
         }
     }
     
-    private final Field getField(final int i) {
-        initFields();
-        final Field f = fields.get(getClass()).get(i - 1);
-        if (f == null) {
-            throw new IllegalStateException("Could not find field " + i);
+    /**
+     * The positional field accessors of an HL7Data class.
+     * Fields are matched to positions through the class's *_XML constants, like "PID.3" for patientIdentifier.
+     * Each accessor is a MethodHandle adapted to (HL7Data)Object or (HL7Data,Object)void,
+     * so calling it doesn't need the access checks and argument arrays of Field.get/set.
+     */
+    private final static class FieldAccessors {
+        
+        private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, HL7Data.class);
+        
+        private final static MethodType SETTER_TYPE = MethodType.methodType(void.class, HL7Data.class, Object.class);
+        
+        private final MethodHandle[] getters;
+        
+        private final MethodHandle[] setters;
+        
+        private FieldAccessors(final Class<? extends HL7Data> c) {
+            final List<Field> all = ReflectUtil.getFieldList(c);
+            final String pre = c.getSimpleName() + '.';
+            final int istart = pre.length();
+            final List<String> fnames = new ArrayList<String>();
+            for (final Field f : all) {
+                final int m = f.getModifiers();
+                if (!Modifier.isFinal(m) || !Modifier.isStatic(m) || !Modifier.isPublic(m)) {
+                    continue;
+                }
+                final String fname = f.getName();
+                if (!fname.endsWith("_XML") || !f.getType().equals(String.class)) {
+                    continue;
+                }
+                final String fval;
+                try {
+                    fval = (String) f.get(null);
+                } catch (final Exception e) {
+                    throw Util.toRuntimeException(e);
+                }
+                if (fval.startsWith(pre)) {
+                    final int fend = fval.length();
+                    if (Util.isAllDigits(fval, istart, fend)) {
+                        Util.set(fnames, Util.parseInt(fval, istart, fend) - 1, frm(fname.substring(0, fname.length() - 4)));
+                    }
+                }
+            }
+            final int numFields = fnames.size();
+            this.getters = new MethodHandle[numFields];
+            this.setters = new MethodHandle[numFields];
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (final Field f : all) {
+                final int m = f.getModifiers();
+                // Fields will be private if defined in this class or protected if defined in super class
+                if (Modifier.isFinal(m) || Modifier.isStatic(m) || Modifier.isPublic(m)) {
+                    continue;
+                }
+                final int i = fnames.indexOf(frm(f.getName()));
+                if (i < 0) {
+                    continue;
+                }
+                f.setAccessible(true);
+                try {
+                    this.getters[i] = lookup.unreflectGetter(f).asType(GETTER_TYPE);
+                    this.setters[i] = lookup.unreflectSetter(f).asType(SETTER_TYPE);
+                } catch (final IllegalAccessException e) {
+                    throw Util.toRuntimeException(e);
+                }
+            }
+            for (int i = 0; i < numFields; i++) {
+                if (this.getters[i] == null) {
+                    final String msg = "Error initializing field " + (i + 1) + " (" + fnames.get(i) + ")";
+                    //throw new IllegalStateException(msg);
+                    log.warn(msg);
+                }
+            }
+        }
+        
+        private MethodHandle getGetter(final int i) {
+            return check(this.getters, i);
+        }
+        
+        private MethodHandle getSetter(final int i) {
+            return check(this.setters, i);
+        }
+        
+        private final static MethodHandle check(final MethodHandle[] handles, final int i) {
+            final MethodHandle h = handles[i - 1];
+            if (h == null) {
+                throw new IllegalStateException("Could not find field " + i);
+            }
+            return h;
         }
-        return f;
     }
     
-    private final void initFields() {
-        final Class<? extends HL7Data> c = getClass();
-        if (fields.get(c) != null) {
-            return;
+    // One table of mutable fields per class, like the accessor tables
+    private final static ClassValue<FieldCopier> copiers = new ClassValue<FieldCopier>() {
+        @Override
+        protected FieldCopier computeValue(final Class<?> c) {
+            return new FieldCopier(c.asSubclass(HL7Data.class));
         }
-        final List<Field> all = ReflectUtil.getFieldList(c);
-        final String pre = c.getSimpleName() + '.';
-        final int istart = pre.length();
-        final List<String> fnames = new ArrayList<String>();
-        for (final Field f : all) {
-            final int m = f.getModifiers();
-            if (!Modifier.isFinal(m) || !Modifier.isStatic(m) || !Modifier.isPublic(m)) {
-                continue;
+    };
+    
+    /**
+     * Performs a structural deep copy without serializing and reparsing.
+     * The copy starts as a field-by-field clone; then each field declared below HL7Data that can refer to
+     * something mutable (components, repetition Lists, arrays) is replaced with its own copy.
+     * Strings, numbers, and parser state are immutable or shared, so they are not copied.
+     * A segment that was read lazily stays lazy, sharing the original line.
+     * The HL7Properties and transform source are shared with this HL7Data.
+     * 
+     * @return the copy
+     **/
+    protected HL7Data copyData() {
+        final HL7Data copy;
+        try {
+            copy = (HL7Data) clone();
+        } catch (final CloneNotSupportedException e) {
+            throw new IllegalStateException(e); // HL7Data is Cloneable
+        }
+        copiers.get(getClass()).copyFields(copy);
+        return copy;
+    }
+    
+    /**
+     * Sets each repetition List that clear() left empty to null, so a pooled segment that is reused doesn't write
+     * empty fields for repetitions that the next message doesn't have
+     **/
+    final void detachEmptyLists() {
+        copiers.get(getClass()).detachEmptyLists(this);
+    }
+    
+    private final static Object copyValue(final Object o) {
+        if (o instanceof HL7Data) {
+            // A component or the typed form of a segment; anything else below HL7Data is a field of a segment or type
+            return ((HL7Data) o).copyData();
+        } else if (o instanceof List) {
+            final List<?> list = (List<?>) o;
+            final List<Object> copy = new ArrayList<Object>(list.size());
+            for (final Object elem : list) {
+                copy.add(copyValue(elem));
             }
-            final String fname = f.getName();
-            if (!fname.endsWith("_XML") || !f.getType().equals(String.class)) {
-                continue;
+            return copy;
+        } else if (o instanceof boolean[]) {
+            return ((boolean[]) o).clone();
+        } else if (o instanceof int[]) {
+            return ((int[]) o).clone();
+        } else if (o instanceof char[]) {
+            return ((char[]) o).clone();
+        } else if (o instanceof Object[]) {
+            final Object[] copy = ((Object[]) o).clone();
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = copyValue(copy[i]);
             }
-            final String fval;
-            try {
-                fval = (String) f.get(null);
-            } catch (final Exception e) {
-                throw Util.toRuntimeException(e);
+            return copy;
+        }
+        return o;
+    }
+    
+    /**
+     * The fields of an HL7Data class that copyData must copy instead of sharing.
+     * Fields declared by HL7Data itself, final fields, and fields whose type is immutable or shared are skipped.
+     */
+    private final static class FieldCopier {
+        
+        private final MethodHandle[] getters;
+        
+        private final MethodHandle[] setters;
+        
+        private FieldCopier(final Class<? extends HL7Data> c) {
+            final List<Field> fields = new ArrayList<Field>();
+            for (Class<?> k = c; k != HL7Data.class; k = k.getSuperclass()) {
+                for (final Field f : k.getDeclaredFields()) {
+                    final int m = f.getModifiers();
+                    if (!Modifier.isStatic(m) && !Modifier.isFinal(m) && !isShared(f.getType())) {
+                        fields.add(f);
+                    }
+                }
             }
-            if (fval.startsWith(pre)) {
-                final int fend = fval.length();
-                if (Util.isAllDigits(fval, istart, fend)) {
-                    Util.set(fnames, Util.parseInt(fval, istart, fend) - 1, frm(fname.substring(0, fname.length() - 4)));
+            final int size = fields.size();
+            this.getters = new MethodHandle[size];
+            this.setters = new MethodHandle[size];
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (int i = 0; i < size; i++) {
+                final Field f = fields.get(i);
+                f.setAccessible(true);
+                try {
+                    this.getters[i] = lookup.unreflectGetter(f).asType(FieldAccessors.GETTER_TYPE);
+                    this.setters[i] = lookup.unreflectSetter(f).asType(FieldAccessors.SETTER_TYPE);
+                } catch (final IllegalAccessException e) {
+                    throw Util.toRuntimeException(e);
                 }
             }
         }
-        final int numFields = fnames.size();
-        final List<Field> fields = new ArrayList<Field>(numFields);
-        for (final Field f : all) {
-            final int m = f.getModifiers();
-            // Fields will be private if defined in this class or protected if defined in super class
-            if (Modifier.isFinal(m) || Modifier.isStatic(m) || Modifier.isPublic(m)) {
-                continue;
-            }
-            final int i = fnames.indexOf(frm(f.getName()));
-            if (i < 0) {
-                continue;
+        
+        private final static boolean isShared(final Class<?> type) {
+            return type.isPrimitive() || (type == String.class) || (type == Integer.class) || (type == Double.class)
+                    || (type == Boolean.class) || (type == Character.class) || (type == CharSlice.class)
+                    // Parsers and delimiter snapshots are only read while decoding
+                    || HL7Properties.class.isAssignableFrom(type) || (type == Escaper.class);
+        }
+        
+        private void copyFields(final HL7Data copy) {
+            try {
+                for (int i = 0; i < this.getters.length; i++) {
+                    final Object o = this.getters[i].invokeExact(copy);
+                    if (o != null) {
+                        this.setters[i].invokeExact(copy, copyValue(o));
+                    }
+                }
+            } catch (final Throwable e) {
+                throw Util.toRuntimeException(e);
             }
-            f.setAccessible(true);
-            Util.set(fields, i, f);
         }
-        for (int i = 0; i < numFields; i++) {
-            if (fields.get(i) == null) {
-                final String msg = "Error initializing field " + (i + 1) + " (" + fnames.get(i) + ")";
-                //throw new IllegalStateException(msg);
-                log.warn(msg);
+        
+        private void detachEmptyLists(final HL7Data data) {
+            try {
+                for (int i = 0; i < this.getters.length; i++) {
+                    final Object o = this.getters[i].invokeExact(data);
+                    if ((o instanceof List) && ((List<?>) o).isEmpty()) {
+                        this.setters[i].invokeExact(data, (Object) null);
+                    }
+                }
+            } catch (final Throwable e) {
+                throw Util.toRuntimeException(e);
             }
         }
-        HL7Data.fields.put(c, fields);
     }
     
     private final static String frm(final String s) {
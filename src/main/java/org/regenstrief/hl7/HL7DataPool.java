@@ -0,0 +1,134 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.regenstrief.hl7.segment.HL7Segment;
+import org.regenstrief.hl7.util.UtilHL7;
+
+/**
+ * HL7DataPool
+ *
+ * Free lists of segments and HL7DataTree nodes that one HL7Parser can reuse for its next message.
+ * A segment is only pooled if its class declares clear(), since inherited clear() methods don't reset all fields.
+ * Not thread-safe; HL7ParserPool gives each pooled HL7Parser to one thread at a time.
+ */
+public final class HL7DataPool {
+    
+    private final static int MAX_SEGMENTS_PER_CLASS = 64;
+    
+    private final static int MAX_NODES = 512;
+    
+    private final static ClassValue<Boolean> recyclable = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> c) {
+            if (!HL7Segment.class.isAssignableFrom(c)) {
+                return Boolean.FALSE;
+            }
+            try {
+                final Method m = c.getMethod("clear");
+                return Boolean.valueOf(m.getDeclaringClass() == c);
+            } catch (final NoSuchMethodException e) {
+                return Boolean.FALSE;
+            }
+        }
+    };
+    
+    private final HL7Parser owner;
+    
+    private final Map<Class<?>, List<HL7Data>> segments = new HashMap<Class<?>, List<HL7Data>>();
+    
+    private final List<HL7DataTree> nodes = new ArrayList<HL7DataTree>();
+    
+    /**
+     * Constructs a new HL7DataPool
+     * 
+     * @param owner the HL7Parser that created the pooled segments
+     **/
+    public HL7DataPool(final HL7Parser owner) {
+        this.owner = owner;
+    }
+    
+    /**
+     * Retrieves a cleared segment of the desired type
+     * 
+     * @param valueType the desired type
+     * @return the segment (or null if none is available)
+     **/
+    public HL7Data getInstance(final String valueType) {
+        final List<HL7Data> free = this.segments.get(UtilHL7.getClass(valueType));
+        final int size = free == null ? 0 : free.size();
+        if (size == 0) {
+            return null;
+        }
+        final HL7Data data = free.get(size - 1);
+        if (!data.getTagName().equals(valueType)) {
+            return null;
+        }
+        free.remove(size - 1);
+        return data;
+    }
+    
+    /**
+     * Retrieves an HL7DataTree node for the given value
+     * 
+     * @param data the value
+     * @return the node
+     **/
+    public HL7DataTree newNode(final HL7Data data) {
+        final int size = this.nodes.size();
+        return size == 0 ? new HL7DataTree(data) : this.nodes.remove(size - 1).reuse(data);
+    }
+    
+    /**
+     * Returns a tree's nodes and segments to the pool; none of them may be used afterward
+     * 
+     * @param tree the HL7DataTree
+     **/
+    public void release(final HL7DataTree tree) {
+        tree.detach();
+        tree.release(this);
+    }
+    
+    final void recycle(final HL7Data data) {
+        if ((data == null) || (data.getProp() != this.owner)) {
+            return;
+        }
+        final Class<?> c = data.getClass();
+        // Only pool classes that the parser would create by name (not RawSegment, USEG, etc.)
+        if (!recyclable.get(c).booleanValue() || (UtilHL7.getClass(data.getTagName()) != c)) {
+            return;
+        }
+        List<HL7Data> free = this.segments.get(c);
+        if (free == null) {
+            free = new ArrayList<HL7Data>();
+            this.segments.put(c, free);
+        }
+        if (free.size() < MAX_SEGMENTS_PER_CLASS) {
+            data.clear();
+            data.detachEmptyLists(); // clear() keeps the Lists, which would be written as empty fields
+            free.add(data);
+        }
+    }
+    
+    final void recycle(final HL7DataTree node) {
+        if (this.nodes.size() < MAX_NODES) {
+            this.nodes.add(node);
+        }
+    }
+}
@@ -16,6 +16,11 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.regenstrief.hl7.group.HL7Group;
 import org.regenstrief.hl7.segment.HL7Segment;
@@ -95,10 +100,22 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
     }
     
     public Iterable<HL7DataTree> getDescendantNodes(final String tagName) {
+        final List<HL7DataTree> indexed = getIndexedNodes(tagName);
+        if (indexed != null) {
+            return new ArrayList<HL7DataTree>(indexed); // Copy, so the caller can modify the tree while iterating
+        }
         return CriterionIterable.create(getDescendantNodes(), new SameTagNameCriterion(tagName));
     }
     
     public Iterable<HL7Data> getDescendantValues(final String tagName) {
+        final List<HL7DataTree> indexed = getIndexedNodes(tagName);
+        if (indexed != null) {
+            final List<HL7Data> values = new ArrayList<HL7Data>(indexed.size());
+            for (final HL7DataTree node : indexed) {
+                values.add(node.value);
+            }
+            return values;
+        }
         return CriterionIterable.create(getDescendantValues(), new SameTagNameCriterion(tagName));
     }
     
@@ -108,13 +125,160 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
     }
     
     public HL7DataTree getDescendantNode(final String tagName) {
+        final List<HL7DataTree> indexed = getIndexedNodes(tagName);
+        if (indexed != null) {
+            return indexed.isEmpty() ? null : indexed.get(0);
+        }
         return Util.getFirst(getDescendantNodes(tagName));
     }
     
+    /**
+     * Counts the nodes in the tree starting at this node with the given tag name
+     * 
+     * @param tagName the tag name
+     * @return the count
+     **/
+    public int getCount(final String tagName) {
+        final List<HL7DataTree> indexed = getIndexedNodes(tagName);
+        if (indexed != null) {
+            return indexed.size();
+        }
+        return Util.size(getDescendantNodes(tagName));
+    }
+    
+    /**
+     * An index from tag names to the nodes of a tree, in document order.
+     * Every node in the tree refers to the index, so adding or removing a subtree anywhere updates it.
+     * Appending to the last node on the tree's right edge, which is what a parser does, keeps the lists in order;
+     * any other insertion just marks the index as unordered, and it is rebuilt by the next lookup.
+     **/
+    private final static class TagIndex {
+        
+        private final HL7DataTree root;
+        
+        private final Map<String, List<HL7DataTree>> nodes = new HashMap<String, List<HL7DataTree>>();
+        
+        private boolean ordered = true;
+        
+        private TagIndex(final HL7DataTree root) {
+            this.root = root;
+        }
+        
+        private void add(final HL7DataTree node) {
+            final String tagName = node.value.getTagName();
+            List<HL7DataTree> list = this.nodes.get(tagName);
+            if (list == null) {
+                list = new ArrayList<HL7DataTree>();
+                this.nodes.put(tagName, list);
+            }
+            list.add(node);
+        }
+        
+        private void remove(final HL7DataTree node) {
+            final List<HL7DataTree> list = this.nodes.get(node.value.getTagName());
+            if (list == null) {
+                return;
+            }
+            // Nodes are usually removed from the end, so search backward
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i) == node) {
+                    list.remove(i);
+                    return;
+                }
+            }
+        }
+        
+        private List<HL7DataTree> get(final String tagName) {
+            if (!this.ordered) {
+                this.nodes.clear();
+                for (final HL7DataTree node : this.root.getDescendantNodes()) {
+                    add(node);
+                }
+                this.ordered = true;
+            }
+            final List<HL7DataTree> list = this.nodes.get(tagName);
+            return list == null ? Collections.<HL7DataTree> emptyList() : list;
+        }
+    }
+    
+    private transient TagIndex index = null;
+    
+    /**
+     * Modifies whether this tree keeps an index from tag names to nodes,
+     * so that descendant lookups and counts by tag name from this node don't need to search the tree.
+     * The index is kept up to date as nodes are added, removed or given new values anywhere in the tree.
+     * Lookups from other nodes of the tree still search their subtrees.
+     * 
+     * @param indexed whether this tree should be indexed
+     **/
+    public void setIndexed(final boolean indexed) {
+        if (indexed == isIndexed()) {
+            return;
+        } else if (indexed && (this.index != null)) {
+            throw new IllegalStateException("Cannot index part of a tree that is already indexed from " + this.index.root.value.getTagName());
+        }
+        final TagIndex index = indexed ? new TagIndex(this) : null;
+        for (final HL7DataTree node : getDescendantNodes()) {
+            node.index = index;
+            if (index != null) {
+                index.add(node);
+            }
+        }
+    }
+    
+    /**
+     * Retrieves whether this node is the root of an index from tag names to nodes
+     * 
+     * @return whether this tree is indexed
+     **/
+    public boolean isIndexed() {
+        return (this.index != null) && (this.index.root == this);
+    }
+    
+    private List<HL7DataTree> getIndexedNodes(final String tagName) {
+        return isIndexed() ? this.index.get(tagName) : null;
+    }
+    
+    private void indexChild(final HL7DataTree child) {
+        final TagIndex index = this.index;
+        if (index == null) {
+            return;
+        }
+        // Still in document order if the child is the last child of a node on the tree's right edge
+        boolean ordered = index.ordered && (this.children.get(this.children.size() - 1) == child);
+        for (HL7DataTree node = this; ordered && (node != index.root); node = node.parent) {
+            final List<HL7DataTree> siblings = node.parent.children;
+            ordered = siblings.get(siblings.size() - 1) == node;
+        }
+        index.ordered = ordered;
+        for (final HL7DataTree node : child.getDescendantNodes()) {
+            node.index = index;
+            if (ordered) {
+                index.add(node);
+            }
+        }
+    }
+    
+    private void unindexChild(final HL7DataTree child) {
+        final TagIndex index = this.index;
+        if ((index == null) || (child.index != index)) {
+            return;
+        }
+        for (final HL7DataTree node : child.getDescendantNodes()) {
+            node.index = null;
+            if (index.ordered) {
+                index.remove(node);
+            }
+        }
+    }
+    
     private final static String br = toBr(Util.getProperty(PROP_BR, Util.getLineSeparator()));
     
     private String segmentDelimiter = null;
     
+    // Whether another tree made by copyOnWrite might refer to this node's value
+    private transient boolean shared = false;
+    
     /**
      * Creates a tree node with the given data
      * 
@@ -133,6 +297,11 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
         return new HL7DataTree(data);
     }
     
+    /**
+     * Copies the structure of this tree; the copy's nodes refer to the same values as this tree's nodes
+     * 
+     * @return the copy
+     **/
     public HL7DataTree copy() {
         final HL7DataTree copy = new HL7DataTree(this.value);
         
@@ -143,6 +312,64 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
         return copy;
     }
     
+    /**
+     * Copies this tree and each of its values, so nothing is shared with this tree
+     * 
+     * @return the copy
+     **/
+    public HL7DataTree deepCopy() {
+        final HL7DataTree copy = new HL7DataTree(this.value.copyData());
+        
+        for (final HL7DataTree child : Util.unNull(getChildNodes())) {
+            copy.addChild(child.deepCopy());
+        }
+        
+        return copy;
+    }
+    
+    /**
+     * Copies this tree for copy-on-write editing, like when one message is sent to several destinations with small
+     * changes for each. The copy has its own nodes, so nodes can be added, removed or reordered in either tree,
+     * but its values are shared with this tree. Before modifying a value in either tree, call getWritableValue on
+     * its node, which copies the value the first time if it might be shared; unmodified segments are never copied.
+     * In pooled mode, either tree can be released; values that might still be shared aren't recycled.
+     * 
+     * @return the copy
+     **/
+    public HL7DataTree copyOnWrite() {
+        final HL7DataTree copy = new HL7DataTree(this.value);
+        this.shared = true;
+        copy.shared = true;
+        
+        for (final HL7DataTree child : Util.unNull(getChildNodes())) {
+            copy.addChild(child.copyOnWrite());
+        }
+        
+        return copy;
+    }
+    
+    /**
+     * Retrieves this node's value so that it can be modified, first replacing it with a copy if it might be shared
+     * with another tree made by copyOnWrite
+     * 
+     * @return the value
+     **/
+    public HL7Data getWritableValue() {
+        if (this.shared) {
+            setValue(this.value.copyData());
+        }
+        return this.value;
+    }
+    
+    /**
+     * Retrieves whether this node's value might be shared with another tree made by copyOnWrite
+     * 
+     * @return whether the value might be shared
+     **/
+    public boolean isShared() {
+        return this.shared;
+    }
+    
     // Shouldn't override, but currently we count on the parent reference remaining after we've removed the node
     // We were getting NullPointerExceptions during parsing.
     // Those might be fixed by having HL7Parser store the parent before detaching.
@@ -196,7 +423,9 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
     @Override
     public HL7DataTree detach() {
         if (this.parent != null) {
-            this.parent.children.remove(this);
+            if (this.parent.children.remove(this)) {
+                this.parent.unindexChild(this);
+            }
         }
         
         return this;
@@ -212,9 +441,73 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
             this.children = new ArrayList<HL7DataTree>();
         }
         this.children.add(i, child);
+        indexChild(child);
         return child;
     }
     
+    @Override
+    public List<HL7DataTree> detachChildren() {
+        for (final HL7DataTree child : Util.unNull(this.children)) {
+            unindexChild(child);
+        }
+        return super.detachChildren();
+    }
+    
+    @Override
+    public void detachChildren(final Class<? extends HL7Data> c) {
+        for (final HL7DataTree child : Util.unNull(this.children)) {
+            if (c.isAssignableFrom(child.getValue().getClass())) {
+                unindexChild(child);
+            }
+        }
+        super.detachChildren(c);
+    }
+    
+    @Override
+    public void sortChildValues(final Comparator<HL7Data> cmp) {
+        super.sortChildValues(cmp);
+        if (this.index != null) {
+            this.index.ordered = false;
+        }
+    }
+    
+    /**
+     * Returns this node, its descendants and their values to the given pool; none of them may be used afterward
+     * 
+     * @param pool the HL7DataPool
+     **/
+    final void release(final HL7DataPool pool) {
+        if (this.children != null) {
+            for (final HL7DataTree child : this.children) {
+                child.release(pool);
+            }
+            this.children.clear(); // Keep the List for the node's next use
+        }
+        if (!this.shared) {
+            pool.recycle(this.value); // A shared value might still be in use by another tree, so leave it to the GC
+        }
+        this.value = null;
+        this.shared = false;
+        this.parent = null;
+        this.index = null;
+        this.segmentDelimiter = null;
+        pool.recycle(this);
+    }
+    
+    /**
+     * Prepares a released node to be used again
+     * 
+     * @param data the new value
+     * @return this node
+     **/
+    final HL7DataTree reuse(final HL7Data data) {
+        if (data == null) {
+            throw new NullPointerException();
+        }
+        this.value = data;
+        return this;
+    }
+    
     /**
      * Retrieve's this node's children
      * 
@@ -243,7 +536,9 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
      * @return the removed child
      **/
     public HL7DataTree remove(final int i) {
-        return this.children.remove(i);
+        final HL7DataTree child = this.children.remove(i);
+        unindexChild(child);
+        return child;
     }
     
     /**
@@ -252,7 +547,7 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
      * @return the last child
      **/
     public HL7DataTree removeLastChild() {
-        return this.children.remove(this.children.size() - 1);
+        return remove(this.children.size() - 1);
     }
     
     /**
@@ -261,6 +556,9 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
     public void removeAllButLastChild() {
         final HL7DataTree last = getLastChild();
         
+        for (int i = this.children.size() - 2; i >= 0; i--) {
+            unindexChild(this.children.get(i));
+        }
         this.children.clear();
         this.children.add(last);
     }
@@ -271,6 +569,9 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
     public void removeAllButFirstChild() {
         final HL7DataTree first = getFirstChild();
         
+        for (int i = this.children.size() - 1; i > 0; i--) {
+            unindexChild(this.children.get(i));
+        }
         this.children.clear();
         this.children.add(first);
     }
@@ -637,6 +938,12 @@ public class HL7DataTree extends AbstractTreeNode<HL7Data, HL7DataTree> {
         If we decide that the value really should be immutable,
         then we should add something like a replace(HL7DataTree replacement) method.
         */
+        final TagIndex index = this.index;
+        if ((index != null) && index.ordered && !this.value.getTagName().equals(value.getTagName())) {
+            index.remove(this);
+            index.ordered = false; // This node's position in the new tag's list is unknown
+        }
         this.value = value;
+        this.shared = false;
     }
 }
@@ -0,0 +1,246 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.regenstrief.io.IoUtil;
+
+/**
+ * HL7FileSpliterator
+ *
+ * A Spliterator of the messages in a piped HL7 batch file.
+ * The file is memory-mapped, and a split divides the remaining byte range at the start of an MSH line,
+ * so each part can be read independently by a fork/join worker.
+ * Each part is read by its own HL7MessageStream with its own HL7Parser, configured like the template parser,
+ * since a parser's delimiters change with every MSH that it reads.
+ * Splits search for MSH as single bytes, so the charset must be ASCII-compatible, like UTF-8 or ISO-8859-1.
+ * Trees escape to arbitrary stream operations, so the worker parsers never use pooled mode.
+ */
+public class HL7FileSpliterator implements Spliterator<HL7DataTree> {
+    
+    // Parts smaller than this aren't worth the cost of another parser
+    private final static long MIN_SPLIT = 1024 * 1024;
+    
+    private final static int SCAN_WINDOW = 64 * 1024;
+    
+    private final static int MAP_WINDOW = 64 * 1024 * 1024;
+    
+    private final FileChannel channel;
+    
+    private final HL7Parser template;
+    
+    private final Charset charset;
+    
+    private long pos;
+    
+    private final long end;
+    
+    private HL7MessageStream stream = null;
+    
+    /**
+     * Constructs a new HL7FileSpliterator for the given range of a file
+     * 
+     * @param channel the FileChannel
+     * @param template the HL7Parser whose configuration will be copied by each worker parser
+     * @param charset the Charset
+     * @param pos the position at which to start reading
+     * @param end the position at which to stop reading
+     **/
+    public HL7FileSpliterator(final FileChannel channel, final HL7Parser template, final Charset charset, final long pos, final long end) {
+        this.channel = channel;
+        this.template = template;
+        this.charset = charset;
+        this.pos = pos;
+        this.end = end;
+    }
+    
+    /**
+     * Retrieves a Stream of the messages in the given file; closing the Stream closes the file
+     * 
+     * @param file the File
+     * @param template the HL7Parser whose configuration will be copied by each worker parser
+     * @param charset the Charset
+     * @param parallel whether the Stream should be parallel
+     * @return the Stream
+     * @throws IOException if an I/O problem occurs
+     **/
+    public final static Stream<HL7DataTree> stream(final File file, final HL7Parser template, final Charset charset, final boolean parallel)
+            throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        final FileChannel channel = raf.getChannel();
+        final HL7FileSpliterator spliterator = new HL7FileSpliterator(channel, template, charset, 0, channel.size());
+        return StreamSupport.stream(spliterator, parallel).onClose(new Runnable() {
+            @Override
+            public void run() {
+                IoUtil.close(raf);
+            }
+        });
+    }
+    
+    /**
+     * Retrieves a parallel Stream of the messages in the given file, using the platform charset like
+     * Util.getBufferedReader
+     * 
+     * @param location the file name
+     * @param template the HL7Parser whose configuration will be copied by each worker parser
+     * @return the Stream
+     * @throws IOException if an I/O problem occurs
+     **/
+    public final static Stream<HL7DataTree> parallelStream(final String location, final HL7Parser template) throws IOException {
+        return stream(new File(location), template, Charset.defaultCharset(), true);
+    }
+    
+    @Override
+    public boolean tryAdvance(final Consumer<? super HL7DataTree> action) {
+        if (this.stream == null) {
+            if (this.pos >= this.end) {
+                return false;
+            }
+            final HL7Parser parser = new HL7Parser();
+            parser.setConfiguration(this.template);
+            parser.setPooled(false);
+            this.stream = new HL7MessageStream(parser, new InputStreamReader(new MappedInputStream(this.channel, this.pos, this.end), this.charset));
+        }
+        if (!this.stream.hasNext()) {
+            this.pos = this.end;
+            return false;
+        }
+        action.accept(this.stream.next());
+        return true;
+    }
+    
+    @Override
+    public Spliterator<HL7DataTree> trySplit() {
+        if ((this.stream != null) || (this.end - this.pos < MIN_SPLIT)) {
+            return null; // Can't split once reading has started
+        }
+        final long mid;
+        try {
+            mid = findMessageStart(this.channel, this.pos + (this.end - this.pos) / 2, this.end);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        if ((mid <= this.pos) || (mid >= this.end)) {
+            return null;
+        }
+        final HL7FileSpliterator prefix = new HL7FileSpliterator(this.channel, this.template, this.charset, this.pos, mid);
+        this.pos = mid;
+        return prefix;
+    }
+    
+    @Override
+    public long estimateSize() {
+        return this.end - this.pos; // Bytes, not messages, but proportional enough to balance the splits
+    }
+    
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+    
+    /**
+     * Finds the first MSH line that starts at or after the given position
+     * 
+     * @param channel the FileChannel
+     * @param from the position at which to start searching
+     * @param end the position at which to stop searching
+     * @return the position of the M in MSH (or -1 if there is none)
+     * @throws IOException if an I/O problem occurs
+     **/
+    public final static long findMessageStart(final FileChannel channel, final long from, final long end) throws IOException {
+        // Each window after the first repeats the last 3 bytes of the previous one, so a line break followed by MSH
+        // is found even if it spans two windows
+        long start = Math.max(0, from - 1);
+        while (start + 3 < end) {
+            final int size = (int) Math.min(SCAN_WINDOW, end - start);
+            final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            for (int i = 0; i + 3 < size; i++) {
+                final byte b = buf.get(i);
+                if (((b == '\r') || (b == '\n')) && (buf.get(i + 1) == 'M') && (buf.get(i + 2) == 'S') && (buf.get(i + 3) == 'H')) {
+                    return start + i + 1;
+                }
+            }
+            if (start + size >= end) {
+                break;
+            }
+            start += size - 3;
+        }
+        return -1;
+    }
+    
+    /**
+     * An InputStream of a range of a file, mapped a window at a time so that ranges over 2 GB can be read
+     **/
+    private final static class MappedInputStream extends InputStream {
+        
+        private final FileChannel channel;
+        
+        private long pos;
+        
+        private final long end;
+        
+        private MappedByteBuffer buf = null;
+        
+        private MappedInputStream(final FileChannel channel, final long pos, final long end) {
+            this.channel = channel;
+            this.pos = pos;
+            this.end = end;
+        }
+        
+        private boolean map() throws IOException {
+            if ((this.buf != null) && this.buf.hasRemaining()) {
+                return true;
+            } else if (this.pos >= this.end) {
+                return false;
+            }
+            final int size = (int) Math.min(MAP_WINDOW, this.end - this.pos);
+            this.buf = this.channel.map(FileChannel.MapMode.READ_ONLY, this.pos, size);
+            this.pos += size;
+            return true;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            return map() ? (this.buf.get() & 0xFF) : -1;
+        }
+        
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (!map()) {
+                return -1;
+            }
+            final int n = Math.min(len, this.buf.remaining());
+            this.buf.get(b, off, n);
+            return n;
+        }
+        
+        @Override
+        public int available() {
+            return this.buf == null ? 0 : this.buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.regenstrief.hl7.segment.HL7Segment;
+import org.regenstrief.hl7.segment.MSH;
+import org.regenstrief.hl7.util.HL7Exception;
+import org.regenstrief.hl7.util.PipeReader;
+import org.regenstrief.io.IoUtil;
+import org.regenstrief.util.Util;
+import org.regenstrief.util.collection.LookAheadIterator;
+
+/**
+ * HL7MessageStream
+ *
+ * Splits a stream of piped HL7 into messages, one message at a time, so memory use doesn't depend on the size of the input.
+ * Each MSH starts a new message.
+ * FHS/BHS/BTS/FTS batch envelope segments are not part of any message; the current file and batch headers are available
+ * from getFileHeader and getBatchHeader.
+ * ADD continuation segments are merged by the SegmentReader, and the stream can repair broken lines with a PipeReader.
+ * Segments are read with the parser's settings, so lazy, zero-copy, and pooled modes all apply;
+ * in pooled mode, each tree should be passed to HL7Parser.release once the caller is done with it.
+ */
+public class HL7MessageStream extends LookAheadIterator<HL7DataTree> implements Iterable<HL7DataTree>, Closeable {
+    
+    public final static String FHS_XML = "FHS";
+    
+    public final static String FTS_XML = "FTS";
+    
+    public final static String BHS_XML = "BHS";
+    
+    public final static String BTS_XML = "BTS";
+    
+    private final HL7Parser parser;
+    
+    private final BufferedReader b;
+    
+    private final SegmentReader in;
+    
+    private final List<HL7Segment> msg = new ArrayList<HL7Segment>();
+    
+    private HL7Segment pending = null;
+    
+    private HL7Segment fileHeader = null;
+    
+    private HL7Segment batchHeader = null;
+    
+    private long numMessages = 0;
+    
+    /**
+     * Constructs a new HL7MessageStream
+     * 
+     * @param parser the HL7Parser
+     * @param in the Reader
+     **/
+    public HL7MessageStream(final HL7Parser parser, final Reader in) {
+        this(parser, in, false);
+    }
+    
+    /**
+     * Constructs a new HL7MessageStream
+     * 
+     * @param parser the HL7Parser
+     * @param in the Reader
+     * @param repair whether to repair incorrect line breaks within segments
+     **/
+    public HL7MessageStream(final HL7Parser parser, final Reader in, final boolean repair) {
+        this.parser = parser;
+        this.b = repair ? (in instanceof PipeReader ? (PipeReader) in : new PipeReader(in)) : Util.getBufferedReader(in);
+        this.in = parser.getSegmentReader(this.b);
+    }
+    
+    /**
+     * Reads the segments of the next message, not including any batch envelope segments
+     * 
+     * @param msg the List to fill with the segments; it is cleared first
+     * @return whether a message was read
+     * @throws IOException if an I/O problem occurs
+     **/
+    public boolean readSegments(final List<HL7Segment> msg) throws IOException {
+        msg.clear();
+        HL7Segment seg = this.pending;
+        this.pending = null;
+        if (seg == null) {
+            seg = this.in.readSegment();
+        }
+        for (; seg != null; seg = this.in.readSegment()) {
+            final String name = seg.getTagName();
+            if (isEnvelope(name) || MSH.MSH_XML.equals(name)) {
+                if (!msg.isEmpty()) {
+                    // Keep it until the next call, so the envelope headers still match the returned message
+                    this.pending = seg;
+                    break;
+                } else if (!MSH.MSH_XML.equals(name)) {
+                    readEnvelope(name, seg);
+                    continue;
+                }
+            }
+            msg.add(seg);
+        }
+        if (msg.isEmpty()) {
+            return false;
+        }
+        this.numMessages++;
+        return true;
+    }
+    
+    /**
+     * Reads the next message
+     * 
+     * @return the HL7DataTree (or null at the end of the input)
+     * @throws IOException if an I/O problem occurs
+     * @throws HL7Exception if an HL7 problem occurs
+     **/
+    public HL7DataTree readMessage() throws IOException, HL7Exception {
+        if (!readSegments(this.msg)) {
+            return null;
+        }
+        final HL7Parser parser = this.parser;
+        parser.startMessage();
+        for (final HL7Segment seg : this.msg) {
+            parser.addSegment(seg);
+        }
+        this.msg.clear();
+        return parser.endMessage();
+    }
+    
+    @Override
+    protected void prepare() {
+        try {
+            this.next = readMessage();
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        this.hasNext = this.next != null;
+    }
+    
+    private void readEnvelope(final String name, final HL7Segment seg) {
+        if (FHS_XML.equals(name)) {
+            this.fileHeader = seg;
+            this.batchHeader = null;
+        } else if (BHS_XML.equals(name)) {
+            this.batchHeader = seg;
+        }
+    }
+    
+    /**
+     * Retrieves whether the given segment name is part of a batch envelope
+     * 
+     * @param name the segment name
+     * @return whether the segment name is FHS, FTS, BHS, or BTS
+     **/
+    public final static boolean isEnvelope(final String name) {
+        return FHS_XML.equals(name) || FTS_XML.equals(name) || BHS_XML.equals(name) || BTS_XML.equals(name);
+    }
+    
+    /**
+     * Retrieves the FHS segment of the current file; when iterating, hasNext reads ahead,
+     * so this matches the last message returned by next only until hasNext is called again
+     * 
+     * @return the FHS segment (or null if there was none)
+     **/
+    public HL7Segment getFileHeader() {
+        return this.fileHeader;
+    }
+    
+    /**
+     * Retrieves the BHS segment of the current batch; see getFileHeader about reading ahead
+     * 
+     * @return the BHS segment (or null if there was none)
+     **/
+    public HL7Segment getBatchHeader() {
+        return this.batchHeader;
+    }
+    
+    /**
+     * Retrieves the number of messages read so far
+     * 
+     * @return the number of messages
+     **/
+    public long getNumMessages() {
+        return this.numMessages;
+    }
+    
+    @Override
+    public HL7MessageStream iterator() {
+        return this;
+    }
+    
+    /**
+     * Retrieves a sequential Stream of the remaining messages
+     * 
+     * @return the Stream
+     **/
+    public Stream<HL7DataTree> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+    
+    @Override
+    public void close() {
+        IoUtil.close(this.b);
+    }
+}
@@ -28,6 +28,7 @@ import org.regenstrief.hl7.group.HL7Message;
 import org.regenstrief.hl7.group.UMSG_Z01;
 import org.regenstrief.hl7.segment.HL7Segment;
 import org.regenstrief.hl7.segment.USEG;
+import org.regenstrief.hl7.transform.LineFilter;
 import org.regenstrief.hl7.transform.SegmentFilter;
 import org.regenstrief.hl7.util.BaseData;
 import org.regenstrief.hl7.util.HL7Exception;
@@ -54,6 +55,12 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
     
     public final static String PROP_IGNORE_EXTRA = "org.regenstrief.hl7.ignoreExtra";
     
+    public final static String PROP_ZERO_COPY = "org.regenstrief.hl7.ZeroCopy";
+    
+    public final static String PROP_LAZY = "org.regenstrief.hl7.Lazy";
+    
+    public final static String PROP_POOLED = "org.regenstrief.hl7.Pooled";
+    
     public final static boolean DEFAULT_LAX_UNDERSTANDING = false;
     
     protected final static int MARK_LIMIT = 128;
@@ -74,8 +81,16 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
     
     protected boolean laxUnderstanding = DEFAULT_LAX_UNDERSTANDING;
     
+    protected boolean zeroCopy = false;
+    
+    protected boolean lazy = false;
+    
+    protected HL7DataPool pool = null;
+    
     protected Escaper delimiters = new Escaper();
     
+    private Escaper delimiterSnapshot = null;
+    
     public HL7DataTree currNode = null;
     
     /**
@@ -84,6 +99,9 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
     public HL7Parser() {
         this.allowComplex = Util.isProperty(PROP_ALLOW_COMPLEX, this.allowComplex);
         this.ignoreExtra = Util.isProperty(PROP_IGNORE_EXTRA, this.ignoreExtra);
+        this.zeroCopy = Util.isProperty(PROP_ZERO_COPY, this.zeroCopy);
+        this.lazy = Util.isProperty(PROP_LAZY, this.lazy);
+        setPooled(Util.isProperty(PROP_POOLED, false));
     }
     
     public final static HL7Parser createLaxParser() {
@@ -122,6 +140,9 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
         setAllowComplex(src.getAllowComplex());
         setIgnoreExtra(src.getIgnoreExtra());
         setLaxUnderstanding(src.getLaxUnderstanding());
+        setZeroCopy(src.getZeroCopy());
+        setLazy(src.getLazy());
+        setPooled(src.getPooled());
         setDefaultMessageType(src.getDefaultMessageType());
         getParseProperties().load(src.getParseProperties());
     }
@@ -188,32 +209,111 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
     protected final Stack<HL7Data> stack = new Stack<HL7Data>();
     
     private final void runPiped(final Reader in) throws Exception {
-        this.currNode = this.tree = new HL7DataTree(newDefaultMessage());
-        final String messageName = getDefaultMessageType();
-        processStartElement(messageName);
+        startMessage();
         final SegmentReader b = getSegmentReader(in);
         HL7Segment data;
-        this.stack.clear();
         while ((data = b.readSegment()) != null) {
-            this.currNode = this.tree.addChild(data);
-            final String name = data.getTagName();
-            processStartElement(name);
-            processEndElement(name);
-            this.stack.clear();
+            addSegment(data);
         }
+        endMessage();
+    }
+    
+    /**
+     * Starts a new message tree; used along with addSegment and endMessage by readers that split a
+     * stream into messages themselves
+     * 
+     * @return the new HL7DataTree
+     * @throws HL7Exception if a problem occurs
+     **/
+    final HL7DataTree startMessage() throws HL7Exception {
+        this.currNode = this.tree = newNode(newDefaultMessage());
+        processStartElement(getDefaultMessageType());
+        this.stack.clear();
+        return this.tree;
+    }
+    
+    /**
+     * Adds a segment to the message tree started by startMessage
+     * 
+     * @param data the HL7Segment
+     * @throws HL7Exception if a problem occurs
+     **/
+    final void addSegment(final HL7Segment data) throws HL7Exception {
+        this.currNode = this.tree.addChild(newNode(data));
+        final String name = data.getTagName();
+        processStartElement(name);
+        processEndElement(name);
+        this.stack.clear();
+    }
+    
+    /**
+     * Ends the message tree started by startMessage
+     * 
+     * @return the HL7DataTree
+     * @throws HL7Exception if a problem occurs
+     **/
+    final HL7DataTree endMessage() throws HL7Exception {
         this.currNode = this.tree;
-        processEndElement(messageName);
+        processEndElement(getDefaultMessageType());
+        return this.tree;
+    }
+    
+    private final HL7DataTree newNode(final HL7Data data) {
+        return this.pool == null ? new HL7DataTree(data) : this.pool.newNode(data);
+    }
+    
+    /**
+     * Releases a message tree that is no longer needed.
+     * In pooled mode, its nodes and segments are cleared and reused for later messages,
+     * so neither the tree nor anything retrieved from it may be used afterward.
+     * 
+     * @param tree the HL7DataTree
+     **/
+    public void release(final HL7DataTree tree) {
+        if (tree == null) {
+            return;
+        } else if (tree == this.tree) {
+            reset();
+        }
+        if (this.pool != null) {
+            this.pool.release(tree);
+        }
     }
     
     public SegmentReader getSegmentReader(final Reader in) {
-        SegmentReader b = new SegmentReader(this, in);
+        final SegmentReader base = new SegmentReader(this, in);
+        base.setZeroCopy(this.zeroCopy);
+        base.setLazy(this.lazy);
+        for (final LineFilter lineFilter : Util.unNull(this.lineFilters)) {
+            base.addLineFilter(lineFilter);
+        }
+        SegmentReader b = base;
         for (final SegmentFilter f : getFilters()) {
+            final LineFilter lineFilter = f.getLineFilter();
+            if (lineFilter != null) {
+                base.addLineFilter(lineFilter);
+            }
             f.setParent(b);
             b = f;
         }
         return b;
     }
     
+    protected List<? extends LineFilter> lineFilters = null;
+    
+    /**
+     * Modifies the LineFilters that SegmentReaders evaluate on raw lines before creating segments
+     * 
+     * @param lineFilters the LineFilters
+     **/
+    public void setLineFilters(final List<? extends LineFilter> lineFilters) {
+        this.lineFilters = lineFilters;
+    }
+    
+    public List<? extends LineFilter> getLineFilters() {
+        return this.lineFilters;
+    }
+    
     protected List<? extends SegmentFilter> filters = null;
     
     public void setFilters(final List<? extends SegmentFilter> filters) {
@@ -356,7 +456,11 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
      * @return the instance Object
      **/
     public HL7Data getInstance(final String valueType) {
-        HL7Data data = UtilHL7.getInstance(this, valueType);
+        HL7Data data = this.pool == null ? null : this.pool.getInstance(valueType);
+        if (data != null) {
+            return data;
+        }
+        data = UtilHL7.getInstance(this, valueType);
         
         if ((data == null) && !isStrict()) {
             // Should we check currNode to make sure we're ready for a new segment, not in the middle of another segment?
@@ -530,6 +634,19 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
         this.delimiters.setEscapeCharacter(escapeCharacter);
     }
     
+    /**
+     * Retrieves a copy of the current delimiters, which won't change when the next message's MSH is read.
+     * The same copy is returned until the delimiters change, so it should not be modified.
+     * 
+     * @return the delimiter snapshot
+     **/
+    public final Escaper getDelimiterSnapshot() {
+        if ((this.delimiterSnapshot == null) || !Escaper.isSame(this.delimiters, this.delimiterSnapshot)) {
+            this.delimiterSnapshot = Escaper.copy(this.delimiters);
+        }
+        return this.delimiterSnapshot;
+    }
+    
     //TODO Harmonize these methods with ParseProperties
     public final void setAllowComplex(final boolean allowComplex) {
         this.allowComplex = allowComplex;
@@ -559,6 +676,51 @@ public class HL7Parser implements HL7Properties, HL7Delimiters {
         return this.ignoreExtra;
     }
     
+    public final void setZeroCopy(final boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
+    }
+    
+    /**
+     * Retrieves whether SegmentReaders read RawSegments that are slices of a shared message buffer instead
+     * of parsing each line into a specific segment class; header segments like MSH are still typed
+     * 
+     * @return whether SegmentReaders use zero-copy mode
+     **/
+    public final boolean getZeroCopy() {
+        return this.zeroCopy;
+    }
+    
+    public final void setLazy(final boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    /**
+     * Retrieves whether segments that support it only find their field boundaries when read and decode each
+     * field the first time that it is accessed
+     * 
+     * @return whether segments are decoded lazily
+     **/
+    public final boolean getLazy() {
+        return this.lazy;
+    }
+    
+    public final void setPooled(final boolean pooled) {
+        if (!pooled) {
+            this.pool = null;
+        } else if (this.pool == null) {
+            this.pool = new HL7DataPool(this);
+        }
+    }
+    
+    /**
+     * Retrieves whether released message trees are reused for later messages
+     * 
+     * @return whether the parser is pooled
+     **/
+    public final boolean getPooled() {
+        return this.pool != null;
+    }
+    
     public final void setLaxUnderstanding(final boolean laxUnderstanding) {
         this.laxUnderstanding = laxUnderstanding;
     }
@@ -0,0 +1,68 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * HL7ParserPool
+ *
+ * A thread-safe pool of pooled HL7Parsers with the same configuration.
+ * A thread acquires a parser, parses one or more messages, releases each message tree when it is done with it,
+ * and then releases the parser. The parser's segments and tree nodes are reused for later messages,
+ * so the parser must not be shared by threads while it is acquired.
+ */
+public class HL7ParserPool {
+    
+    private final HL7Parser template;
+    
+    private final BlockingQueue<HL7Parser> idle;
+    
+    /**
+     * Constructs a new HL7ParserPool
+     * 
+     * @param template the HL7Parser whose configuration should be copied
+     * @param maxIdle the maximum number of idle parsers to keep
+     **/
+    public HL7ParserPool(final HL7Parser template, final int maxIdle) {
+        this.template = template;
+        this.idle = new ArrayBlockingQueue<HL7Parser>(maxIdle);
+    }
+    
+    /**
+     * Retrieves an idle HL7Parser or creates a new one
+     * 
+     * @return the HL7Parser
+     **/
+    public HL7Parser acquire() {
+        final HL7Parser parser = this.idle.poll();
+        if (parser != null) {
+            return parser;
+        }
+        final HL7Parser created = new HL7Parser();
+        created.setConfiguration(this.template);
+        created.setPooled(true);
+        return created;
+    }
+    
+    /**
+     * Returns an HL7Parser to the pool; it must not be used afterward
+     * 
+     * @param parser the HL7Parser
+     **/
+    public void release(final HL7Parser parser) {
+        parser.reset();
+        this.idle.offer(parser); // Discarded if the pool is full
+    }
+}
@@ -15,13 +15,21 @@ package org.regenstrief.hl7;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import org.regenstrief.hl7.convert.Escaper;
 import org.regenstrief.hl7.segment.HL7Segment;
+import org.regenstrief.hl7.segment.MSH;
+import org.regenstrief.hl7.segment.RawSegment;
 import org.regenstrief.hl7.segment.USEG;
+import org.regenstrief.hl7.transform.LineFilter;
 import org.regenstrief.hl7.util.HL7ParseException;
+import org.regenstrief.hl7.util.PipeReader;
+import org.regenstrief.hl7.util.SegmentAssembler;
 import org.regenstrief.hl7.util.UtilHL7;
+import org.regenstrief.util.CharSlice;
 import org.regenstrief.util.Util;
 
 /**
@@ -33,21 +41,75 @@ public class SegmentReader {
     
     private final BufferedReader b;
     
+    // PipeReader only supports readLine, since it must see whole lines to repair them
+    private final boolean lineMode;
+    
     private String prevLine = null;
     
+    // Joins a segment with its ADD continuations
+    private final SegmentAssembler assembler = new SegmentAssembler();
+    
     private Set<String> limitTo = null;
     
+    // Evaluated on the raw line before a segment is created
+    private List<LineFilter> lineFilters = null;
+    
+    // Set when a message-scope LineFilter rejects an MSH, until the next message starts
+    private boolean skipMessage = false;
+    
+    private final static int INITIAL_BUFFER_SIZE = 8192;
+    
+    private final static int MAX_NAMES = 64;
+    
+    private boolean zeroCopy = false;
+    
+    private boolean lazy = false;
+    
+    // Zero-copy mode reads into a char[] instead of creating a String for each line
+    private char[] in = null;
+    
+    private int inPos = 0;
+    
+    private int inEnd = 0;
+    
+    private boolean skipLf = false;
+    
+    // All RawSegments of a message share this buffer; lines are only appended, so earlier slices stay valid
+    private char[] msg = null;
+    
+    private int msgStart = 0;
+    
+    private int msgEnd = 0;
+    
+    private int lineEnd = 0;
+    
+    private int pendingStart = -1;
+    
+    private int pendingEnd = 0;
+    
+    private String[] names = null;
+    
+    private int numNames = 0;
+    
     protected SegmentReader() {
         this.parser = null;
         this.b = null;
+        this.lineMode = false;
     }
     
     public SegmentReader(final HL7Parser parser, final Reader in) {
         this.parser = parser;
         this.b = Util.getBufferedReader(in);
+        this.lineMode = this.b instanceof PipeReader;
     }
     
     public HL7Segment readSegment() throws IOException {
+        if (this.zeroCopy) {
+            final RawSegment raw = readRawSegment();
+            // Header segments stay typed, since callers cast them to read the message type, control ID, and so on
+            return ((raw != null) && isHeader(raw.getTagName())) ? raw.toSegment() : raw;
+        }
+        final SegmentAssembler assembler = this.assembler;
         String line = null, name = null;
         this.parser.stack.clear();
         while (true) {
@@ -61,22 +123,23 @@ public class SegmentReader {
                 final int size = this.prevLine.length();
                 if ((size == 0) || Util.isAllWhitespace(this.prevLine)) {
                     // Do nothing, just keep processing the loop
-                } else if (line == null) {
-                    line = this.prevLine;
-                    Escaper.extractDelimiters(this.parser, line);
+                } else if (!assembler.isStarted()) {
+                    assembler.start(this.prevLine);
+                    Escaper.extractDelimiters(this.parser, this.prevLine);
                 } else if (this.prevLine.startsWith(UtilHL7.ADD_XML) && (size > 3)
                         && (this.parser.getFieldSeparator() == this.prevLine.charAt(3))) {
-                    line = line + this.prevLine.substring(4); // Inefficient if there are many ADD segments
+                    assembler.append(this.prevLine, 4, size);
                 } else {
                     break; // Keep prevLine for next time a segment is needed
                 }
                 this.prevLine = null;
             }
+            line = assembler.finish();
             if (line == null) {
                 return null;
             }
             name = getName(this.parser, line);
-            if ((this.limitTo != null) && !this.limitTo.contains(name)) {
+            if (!accept(line, name, this.parser.getFieldSeparator())) {
                 line = null;
                 continue;
             }
@@ -85,7 +148,11 @@ public class SegmentReader {
         HL7Data data = this.parser.getInstance(name);
         if (data instanceof HL7Segment) {
             try {
-                ((HL7Segment) data).readPiped(this.parser, line);
+                if (this.lazy) {
+                    ((HL7Segment) data).readPipedLazy(this.parser, line);
+                } else {
+                    ((HL7Segment) data).readPiped(this.parser, line);
+                }
             } catch (final Exception e) {
                 //final USEG useg = new USEG(this, name);
                 //useg.readPiped(this, line);
@@ -101,10 +168,278 @@ public class SegmentReader {
         return (HL7Segment) data;
     }
     
+    /**
+     * Reads the next segment as a RawSegment that is a slice of the current message buffer
+     * 
+     * @return the RawSegment (or null at the end of the input)
+     * @throws IOException if an I/O problem occurs
+     **/
+    public RawSegment readRawSegment() throws IOException {
+        this.parser.stack.clear();
+        while (true) {
+            int start, end;
+            if (this.pendingStart >= 0) {
+                start = this.pendingStart;
+                end = this.pendingEnd;
+                this.pendingStart = -1;
+            } else {
+                start = readLine();
+                if (start < 0) {
+                    return null;
+                }
+                end = this.lineEnd;
+            }
+            if (isAllWhitespace(this.msg, start, end)) {
+                continue;
+            }
+            if (isMsh(this.msg, start, end)) {
+                // Keep appending after the previous message, whose slices must never be overwritten,
+                // and only start a new buffer when this message probably won't fit in the rest of this one
+                if ((start > 0) && (this.msg.length - start < start - this.msgStart)) {
+                    final char[] buf = new char[this.msg.length];
+                    System.arraycopy(this.msg, start, buf, 0, end - start);
+                    this.msg = buf;
+                    end -= start;
+                    start = 0;
+                    this.msgEnd = end;
+                }
+                this.msgStart = start;
+                Escaper.extractDelimiters(this.parser, new CharSlice(this.msg, start, end - start));
+            }
+            final char f = this.parser.getFieldSeparator();
+            while (true) {
+                final int next = readLine();
+                if (next < 0) {
+                    break;
+                }
+                final int nextEnd = this.lineEnd;
+                if (isAllWhitespace(this.msg, next, nextEnd)) {
+                    this.msgEnd = next;
+                } else if (isAdd(this.msg, next, nextEnd, f)) {
+                    // Append the ADD content directly after the current line, skipping "ADD|"
+                    final int size = nextEnd - next - 4;
+                    System.arraycopy(this.msg, next + 4, this.msg, end, size);
+                    end += size;
+                    this.msgEnd = end;
+                } else {
+                    this.pendingStart = next;
+                    this.pendingEnd = nextEnd;
+                    break;
+                }
+            }
+            final String name = getName(this.msg, start, end, f);
+            final CharSlice line = new CharSlice(this.msg, start, end - start);
+            if (!accept(line, name, f)) {
+                continue;
+            }
+            return new RawSegment(this.parser, name, line);
+        }
+    }
+    
+    /**
+     * Retrieves whether a raw line should be read as a segment, applying limitTo and the LineFilters
+     * 
+     * @param line the raw line, with any ADD continuations merged
+     * @param name the segment name
+     * @param f the field separator
+     * @return whether the line should be kept
+     **/
+    private boolean accept(final CharSequence line, final String name, final char f) {
+        // Message-scope filters come first, so limitTo or a segment filter can't hide an MSH from them
+        if (LineFilter.isBoundary(name)) {
+            this.skipMessage = false;
+            if (this.lineFilters != null) {
+                for (final LineFilter filter : this.lineFilters) {
+                    if (filter.isMessageScope() && !filter.accept(line, name, f)) {
+                        this.skipMessage = true;
+                        return false;
+                    }
+                }
+            }
+        } else if (this.skipMessage) {
+            return false;
+        }
+        if ((this.limitTo != null) && !this.limitTo.contains(name)) {
+            return false;
+        }
+        if (this.lineFilters != null) {
+            for (final LineFilter filter : this.lineFilters) {
+                if (!filter.isMessageScope() && !filter.accept(line, name, f)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    private int readLine() throws IOException {
+        if (this.in == null) {
+            this.in = new char[INITIAL_BUFFER_SIZE];
+            this.msg = new char[INITIAL_BUFFER_SIZE];
+        }
+        final int start = this.msgEnd;
+        if (this.lineMode) {
+            final String line = this.b.readLine();
+            if (line == null) {
+                this.lineEnd = this.msgEnd;
+                return -1;
+            }
+            final int size = line.length();
+            ensureCapacity(this.msgEnd + size);
+            line.getChars(0, size, this.msg, this.msgEnd);
+            this.msgEnd += size;
+            this.lineEnd = this.msgEnd;
+            return start;
+        }
+        while (true) {
+            if (this.inPos >= this.inEnd) {
+                final int n = this.b.read(this.in, 0, this.in.length);
+                this.inPos = 0;
+                if (n <= 0) {
+                    this.inEnd = 0;
+                    this.lineEnd = this.msgEnd;
+                    return this.msgEnd > start ? start : -1;
+                }
+                this.inEnd = n;
+            }
+            if (this.skipLf) {
+                this.skipLf = false;
+                if (this.in[this.inPos] == '\n') {
+                    this.inPos++;
+                    continue;
+                }
+            }
+            int i = this.inPos;
+            while ((i < this.inEnd) && (this.in[i] != '\r') && (this.in[i] != '\n')) {
+                i++;
+            }
+            append(this.in, this.inPos, i - this.inPos);
+            if (i < this.inEnd) {
+                this.skipLf = this.in[i] == '\r';
+                this.inPos = i + 1;
+                this.lineEnd = this.msgEnd;
+                return start;
+            }
+            this.inPos = i;
+        }
+    }
+    
+    private void append(final char[] src, final int off, final int len) {
+        final int needed = this.msgEnd + len;
+        ensureCapacity(needed);
+        System.arraycopy(src, off, this.msg, this.msgEnd, len);
+        this.msgEnd = needed;
+    }
+    
+    private void ensureCapacity(final int needed) {
+        if (needed > this.msg.length) {
+            // The old buffer is left intact for any slices that still refer to it; only the current message is copied,
+            // at the same offsets
+            final char[] buf = new char[Math.max(needed, this.msg.length * 2)];
+            System.arraycopy(this.msg, this.msgStart, buf, this.msgStart, this.msgEnd - this.msgStart);
+            this.msg = buf;
+        }
+    }
+    
+    private final static boolean isAllWhitespace(final char[] buf, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(buf[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private final static boolean isMsh(final char[] buf, final int start, final int end) {
+        return (end - start > 3) && (buf[start] == 'M') && (buf[start + 1] == 'S') && (buf[start + 2] == 'H');
+    }
+    
+    private final static boolean isHeader(final String name) {
+        return MSH.MSH_XML.equals(name) || HL7MessageStream.FHS_XML.equals(name) || HL7MessageStream.BHS_XML.equals(name);
+    }
+    
+    private final static boolean isAdd(final char[] buf, final int start, final int end, final char f) {
+        return (end - start > 3) && (buf[start] == 'A') && (buf[start + 1] == 'D') && (buf[start + 2] == 'D')
+                && (buf[start + 3] == f);
+    }
+    
+    private String getName(final char[] buf, final int start, final int end, final char f) {
+        int stop = start;
+        while ((stop < end) && (buf[stop] != f)) {
+            stop++;
+        }
+        final int size = stop - start;
+        // Reuse the name Strings; a stream only has a few distinct segment names
+        for (int i = 0; i < this.numNames; i++) {
+            final String name = this.names[i];
+            if (name.length() == size) {
+                boolean match = true;
+                for (int j = 0; j < size; j++) {
+                    if (name.charAt(j) != buf[start + j]) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) {
+                    return name;
+                }
+            }
+        }
+        final String name = new String(buf, start, size);
+        if (this.names == null) {
+            this.names = new String[MAX_NAMES];
+        }
+        if (this.numNames < MAX_NAMES) {
+            this.names[this.numNames++] = name;
+        }
+        return name;
+    }
+    
+    /**
+     * Modifies whether this reader returns RawSegments that are slices of a shared message buffer instead
+     * of parsing each line into a specific segment class; header segments like MSH are still typed,
+     * but other segments must be passed to RawSegment.getTyped before being cast to a specific class
+     * 
+     * @param zeroCopy whether to use zero-copy mode
+     **/
+    public void setZeroCopy(final boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
+    }
+    
+    public boolean isZeroCopy() {
+        return this.zeroCopy;
+    }
+    
+    /**
+     * Modifies whether segments only find their field boundaries when read and decode each field the first time
+     * that it is accessed
+     * 
+     * @param lazy whether to decode segments lazily
+     **/
+    public void setLazy(final boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    public boolean isLazy() {
+        return this.lazy;
+    }
+    
     public void setLimitTo(final Set<String> limitTo) {
         this.limitTo = limitTo;
     }
     
+    /**
+     * Adds a LineFilter, which is evaluated on each raw line before a segment is created for it
+     * 
+     * @param filter the LineFilter
+     **/
+    public void addLineFilter(final LineFilter filter) {
+        if (this.lineFilters == null) {
+            this.lineFilters = new ArrayList<LineFilter>();
+        }
+        this.lineFilters.add(filter);
+    }
+    
     public final static String getName(final HL7Parser parser, final String line) {
         final int i = line.indexOf(parser.getFieldSeparator());
         return i < 0 ? line : line.substring(0, i);
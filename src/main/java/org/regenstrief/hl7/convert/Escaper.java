@@ -13,13 +13,13 @@
 package org.regenstrief.hl7.convert;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.regenstrief.hl7.HL7Delimiters;
 import org.regenstrief.hl7.segment.MSH;
+import org.regenstrief.util.CharSequences;
 import org.regenstrief.util.Util;
 
 /**
@@ -126,6 +126,107 @@ public final class Escaper implements HL7Delimiters {
     
     protected int mode = MODE_TEXT;
     
+    // Codes are looked up in a table for characters below this; others are compared with each delimiter
+    private final static int TABLE_SIZE = 128;
+    
+    private final static char CODE_HEX = ESCAPE_HEX_CHARACTER;
+    
+    // Reused when the delimiters match this Escaper's; rebuilt after they change
+    private volatile char[] codes = null;
+    
+    /**
+     * Signals that an HL7 delimiter was found where only escaped text was expected
+     **/
+    public final static class DelimiterException extends IllegalArgumentException {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final char delimiter;
+        
+        private final int index;
+        
+        private DelimiterException(final char delimiter, final int index) {
+            super("Unexpected delimiter " + delimiter + " at " + index);
+            this.delimiter = delimiter;
+            this.index = index;
+        }
+        
+        public char getDelimiter() {
+            return this.delimiter;
+        }
+        
+        public int getIndex() {
+            return this.index;
+        }
+    }
+    
+    /**
+     * Builds a table mapping each special character to the letter of its escape sequence;
+     * delimiters map to F, S, T, R or E, carriage returns and line feeds map to X, and other characters map to 0.
+     * If two delimiters are the same, the earlier one in escape's order wins.
+     * 
+     * @param fieldSeparator the field separator
+     * @param componentSeparator the component separator
+     * @param repetitionSeparator the repetition separator
+     * @param escapeCharacter the escape character
+     * @param subcomponentSeparator the subcomponent separator
+     * @return the table
+     **/
+    private final static char[] buildCodes(final char fieldSeparator, final char componentSeparator,
+                                           final char repetitionSeparator, final char escapeCharacter,
+                                           final char subcomponentSeparator) {
+        final char[] codes = new char[TABLE_SIZE];
+        setCode(codes, '\n', CODE_HEX);
+        setCode(codes, '\r', CODE_HEX);
+        setCode(codes, repetitionSeparator, ESCAPE_REPETITION_SEPARATOR);
+        setCode(codes, subcomponentSeparator, ESCAPE_SUBCOMPONENT_SEPARATOR);
+        setCode(codes, componentSeparator, ESCAPE_COMPONENT_SEPARATOR);
+        setCode(codes, fieldSeparator, ESCAPE_FIELD_SEPARATOR);
+        setCode(codes, escapeCharacter, ESCAPE_ESCAPE_CHARACTER);
+        return codes;
+    }
+    
+    private final static void setCode(final char[] codes, final char c, final char code) {
+        if (c < TABLE_SIZE) {
+            codes[c] = code;
+        }
+    }
+    
+    private final char[] getCodes(final char fieldSeparator, final char componentSeparator, final char repetitionSeparator,
+                                  final char escapeCharacter, final char subcomponentSeparator) {
+        if ((fieldSeparator != this.fieldSeparator) || (componentSeparator != this.componentSeparator)
+                || (repetitionSeparator != this.repetitionSeparator) || (escapeCharacter != this.escapeCharacter)
+                || (subcomponentSeparator != this.subcomponentSeparator)) {
+            return buildCodes(fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter, subcomponentSeparator);
+        }
+        char[] codes = this.codes;
+        if (codes == null) {
+            codes = buildCodes(fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter, subcomponentSeparator);
+            this.codes = codes;
+        }
+        return codes;
+    }
+    
+    /**
+     * Retrieves the escape letter of a character that isn't in the table
+     **/
+    private final static char getCode(final char c, final char fieldSeparator, final char componentSeparator,
+                                      final char repetitionSeparator, final char escapeCharacter,
+                                      final char subcomponentSeparator) {
+        if (c == escapeCharacter) {
+            return ESCAPE_ESCAPE_CHARACTER;
+        } else if (c == fieldSeparator) {
+            return ESCAPE_FIELD_SEPARATOR;
+        } else if (c == componentSeparator) {
+            return ESCAPE_COMPONENT_SEPARATOR;
+        } else if (c == subcomponentSeparator) {
+            return ESCAPE_SUBCOMPONENT_SEPARATOR;
+        } else if (c == repetitionSeparator) {
+            return ESCAPE_REPETITION_SEPARATOR;
+        }
+        return 0;
+    }
+    
     /**
      * Unescapes HL7 escape sequences
      * 
@@ -139,71 +240,166 @@ public final class Escaper implements HL7Delimiters {
      **/
     public String unescape(final String s, final char fieldSeparator, final char componentSeparator,
                            final char repetitionSeparator, final char escapeCharacter, final char subcomponentSeparator) {
+        return unescape(s, null, false, fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter,
+            subcomponentSeparator);
+    }
+    
+    /**
+     * Unescapes HL7 escape sequences in a single pass, optionally checking that the String contains no unescaped delimiters
+     * 
+     * @param s the HL7 String
+     * @param buf a buffer to reuse if anything must be unescaped (or null to create one when needed)
+     * @param checkDelimiters whether unescaped delimiters should cause a DelimiterException
+     * @return s itself if it contains no escape sequences, otherwise the unescaped String
+     * @throws DelimiterException if checkDelimiters is true and s contains a delimiter other than the escape character
+     **/
+    public String unescape(final String s, final StringBuilder buf, final boolean checkDelimiters) {
+        return unescape(s, buf, checkDelimiters, this.fieldSeparator, this.componentSeparator, this.repetitionSeparator,
+            this.escapeCharacter, this.subcomponentSeparator);
+    }
+    
+    private String unescape(final String s, final StringBuilder buf, final boolean checkDelimiters, final char fieldSeparator,
+                            final char componentSeparator, final char repetitionSeparator, final char escapeCharacter,
+                            final char subcomponentSeparator) {
         if (s == null) {
             return null;
         }
-        int start = 0;
-        char ca[] = null;
-        StringBuilder sb = null;
-        for (int i = s.indexOf(escapeCharacter); i != -1; i = s.indexOf(escapeCharacter, start)) {
-            final int j = s.indexOf(escapeCharacter, i + 1);
-            if (j > 0) {
-                ca = ca == null ? s.toCharArray() : ca;
-                if (sb == null) {
-                    sb = new StringBuilder();
+        if (buf != null) {
+            buf.setLength(0);
+        }
+        final Appendable out;
+        try {
+            out = unescapeInt(null, buf, s, 0, s.length(), checkDelimiters, fieldSeparator, componentSeparator,
+                repetitionSeparator, escapeCharacter, subcomponentSeparator);
+        } catch (final IOException e) {
+            throw new RuntimeException(e); // StringBuilders don't throw IOExceptions
+        }
+        return out == null ? s : out.toString();
+    }
+    
+    /**
+     * Unescapes HL7 escape sequences, appending the result without creating intermediate Strings
+     * 
+     * @param out the Appendable
+     * @param s the HL7 text
+     * @param off the offset of the first character to unescape
+     * @param end the offset after the last character to unescape
+     * @throws IOException if out can't be appended
+     **/
+    public void unescape(final Appendable out, final CharSequence s, final int off, final int end) throws IOException {
+        unescapeInt(out, null, s, off, end, false, this.fieldSeparator, this.componentSeparator, this.repetitionSeparator,
+            this.escapeCharacter, this.subcomponentSeparator);
+    }
+    
+    /**
+     * Unescapes HL7 escape sequences in one scan
+     * 
+     * @param out the Appendable, or null to start appending to buf only when the first escape sequence is found
+     * @param buf the buffer to use if out is null (or null to create one)
+     * @return the Appendable that was used, or null if out was null and nothing needed to be unescaped
+     **/
+    private Appendable unescapeInt(Appendable out, final StringBuilder buf, final CharSequence s, final int off, final int end,
+                                   final boolean checkDelimiters, final char fieldSeparator, final char componentSeparator,
+                                   final char repetitionSeparator, final char escapeCharacter,
+                                   final char subcomponentSeparator) throws IOException {
+        final char[] codes = getCodes(fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter,
+            subcomponentSeparator);
+        int start = off;
+        for (int i = off; i < end; i++) {
+            final char c = s.charAt(i);
+            final char code = c < TABLE_SIZE ? codes[c] : getCode(c, fieldSeparator, componentSeparator, repetitionSeparator,
+                escapeCharacter, subcomponentSeparator);
+            if ((code == 0) || (code == CODE_HEX)) {
+                continue;
+            } else if (code != ESCAPE_ESCAPE_CHARACTER) {
+                if (checkDelimiters) {
+                    throw new DelimiterException(c, i - off);
                 }
-                sb.append(ca, start, i - start);
-                boolean processed = false;
-                final char x = s.charAt(i + 1);
-                final int diff = j - i;
-                if (diff == 2) {
-                    final char c;
-                    switch (x) {
-                        case ESCAPE_FIELD_SEPARATOR:
-                            c = fieldSeparator;
-                            break;
-                        case ESCAPE_COMPONENT_SEPARATOR:
-                            c = componentSeparator;
-                            break;
-                        case ESCAPE_SUBCOMPONENT_SEPARATOR:
-                            c = subcomponentSeparator;
-                            break;
-                        case ESCAPE_REPETITION_SEPARATOR:
-                            c = repetitionSeparator;
-                            break;
-                        case ESCAPE_ESCAPE_CHARACTER:
-                            c = escapeCharacter;
-                            break;
-                        default :
-                            c = ' ';
-                            break;
-                    }
-                    if (c != ' ') {
-                        sb.append(c);
-                        processed = true;
-                    }
-                } else if ((x == '.') && (diff == 4)) {
-                    if ((s.charAt(i + 2) == 'b') && (s.charAt(i + 3) == 'r')) {
-                        sb.append(BREAK);
-                        processed = true;
+                continue;
+            }
+            int j = i + 1;
+            for (; j < end; j++) {
+                final char d = s.charAt(j);
+                if (d == escapeCharacter) {
+                    break;
+                } else if (checkDelimiters) {
+                    final char dcode = d < TABLE_SIZE ? codes[d] : getCode(d, fieldSeparator, componentSeparator,
+                        repetitionSeparator, escapeCharacter, subcomponentSeparator);
+                    if ((dcode != 0) && (dcode != CODE_HEX)) {
+                        throw new DelimiterException(d, j - off);
                     }
-                } else if ((x == ESCAPE_HEX_CHARACTER) && (diff == 4)) {
-                    sb.append((char) Util.fromHex(s, i + 2, i + 4));
-                }
-                if (!processed && (this.mode == MODE_XML)) {
-                    sb.append("<escape xmlns=\"\" V=\"");
-                    sb.append(ca, i + 1, j - start - 1);
-                    sb.append("\"/>");
                 }
             }
-            start = j < 0 ? start + 1 : j + 1;
+            if (j >= end) {
+                break; // An escape character without a closing one is kept as is
+            }
+            if (out == null) {
+                out = buf == null ? new StringBuilder(end - off) : buf;
+            }
+            out.append(s, start, i);
+            appendEscapeSequence(out, s, i + 1, j, fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter,
+                subcomponentSeparator);
+            start = j + 1;
+            i = j;
         }
-        if (sb == null) {
-            return s;
-        } else {
-            sb.append(ca, start, s.length() - start);
-            return sb.toString();
+        if ((out != null) && (start < end)) {
+            out.append(s, start, end);
         }
+        return out;
+    }
+    
+    private void appendEscapeSequence(final Appendable out, final CharSequence s, final int off, final int end,
+                                      final char fieldSeparator, final char componentSeparator,
+                                      final char repetitionSeparator, final char escapeCharacter,
+                                      final char subcomponentSeparator) throws IOException {
+        final int size = end - off;
+        final char x = size > 0 ? s.charAt(off) : 0;
+        if (size == 1) {
+            switch (x) {
+                case ESCAPE_FIELD_SEPARATOR:
+                    out.append(fieldSeparator);
+                    return;
+                case ESCAPE_COMPONENT_SEPARATOR:
+                    out.append(componentSeparator);
+                    return;
+                case ESCAPE_SUBCOMPONENT_SEPARATOR:
+                    out.append(subcomponentSeparator);
+                    return;
+                case ESCAPE_REPETITION_SEPARATOR:
+                    out.append(repetitionSeparator);
+                    return;
+                case ESCAPE_ESCAPE_CHARACTER:
+                    out.append(escapeCharacter);
+                    return;
+                default :
+                    break;
+            }
+        } else if ((x == '.') && (size == 3)) {
+            if ((s.charAt(off + 1) == 'b') && (s.charAt(off + 2) == 'r')) {
+                out.append(BREAK);
+                return;
+            }
+        } else if ((x == ESCAPE_HEX_CHARACTER) && (size > 1) && ((size % 2) == 1) && isHex(s, off + 1, end)) {
+            // Each pair of hex digits is one character, like escape creates for carriage returns
+            for (int i = off + 1; i < end; i += 2) {
+                out.append((char) Util.fromHex(s.charAt(i), s.charAt(i + 1)));
+            }
+            return;
+        }
+        if (this.mode == MODE_XML) {
+            out.append("<escape xmlns=\"\" V=\"");
+            out.append(s, off, end);
+            out.append("\"/>");
+        }
+    }
+    
+    private final static boolean isHex(final CharSequence s, final int off, final int end) {
+        for (int i = off; i < end; i++) {
+            if (!Util.isHex(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
     }
     
     /**
@@ -253,82 +449,125 @@ public final class Escaper implements HL7Delimiters {
      **/
     public String escape(final String s, final char fieldSeparator, final char componentSeparator, final char repetitionSeparator,
                          final char escapeCharacter, final char subcomponentSeparator) {
+        return escape(s, null, fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter,
+            subcomponentSeparator);
+    }
+    
+    /**
+     * Escapes special HL7 characters
+     * 
+     * @param s the HL7 String
+     * @param buf a buffer to reuse if anything must be escaped (or null to create one when needed)
+     * @return s itself if it contains no special characters, otherwise the escaped String
+     **/
+    public String escape(final String s, final StringBuilder buf) {
+        return escape(s, buf, this.fieldSeparator, this.componentSeparator, this.repetitionSeparator, this.escapeCharacter,
+            this.subcomponentSeparator);
+    }
+    
+    private String escape(final String s, final StringBuilder buf, final char fieldSeparator, final char componentSeparator,
+                          final char repetitionSeparator, final char escapeCharacter, final char subcomponentSeparator) {
+        if (s == null) {
+            return null;
+        }
+        if (buf != null) {
+            buf.setLength(0);
+        }
+        final Appendable out;
         try {
-            return escapeInt(null, s, fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter,
-                subcomponentSeparator);
+            out = escapeInt(null, buf, s, 0, s.length(), fieldSeparator, componentSeparator, repetitionSeparator,
+                escapeCharacter, subcomponentSeparator);
         } catch (final IOException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException(e); // StringBuilders don't throw IOExceptions
         }
+        return out == null ? s : out.toString();
     }
     
     public void escape(final Writer w, final String s, final char fieldSeparator, final char componentSeparator,
                        final char repetitionSeparator, final char escapeCharacter, final char subcomponentSeparator)
                                                                                                                     throws IOException {
-        escapeInt(w, s, fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter, subcomponentSeparator);
+        if (s != null) {
+            escapeInt(w, null, s, 0, s.length(), fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter,
+                subcomponentSeparator);
+        }
     }
     
-    private String escapeInt(Writer w, final String s, final char fieldSeparator, final char componentSeparator,
-                             final char repetitionSeparator, final char escapeCharacter, final char subcomponentSeparator)
-                                                                                                                       throws IOException {
-        if (s == null) {
-            return null;
-        }
-        int start = 0;
-        final int size = s.length();
-        final boolean needStr = w == null;
-        for (int i = 0; i < size; i++) {
+    /**
+     * Escapes special HL7 characters, appending the result without creating intermediate Strings
+     * 
+     * @param out the Appendable
+     * @param s the text
+     * @param off the offset of the first character to escape
+     * @param end the offset after the last character to escape
+     * @throws IOException if out can't be appended
+     **/
+    public void escape(final Appendable out, final CharSequence s, final int off, final int end) throws IOException {
+        escapeInt(out, null, s, off, end, this.fieldSeparator, this.componentSeparator, this.repetitionSeparator,
+            this.escapeCharacter, this.subcomponentSeparator);
+    }
+    
+    /**
+     * Escapes special HL7 characters in one scan
+     * 
+     * @param out the Appendable, or null to start appending to buf only when the first special character is found
+     * @param buf the buffer to use if out is null (or null to create one)
+     * @return the Appendable that was used, or null if out was null and nothing needed to be escaped
+     **/
+    private Appendable escapeInt(Appendable out, final StringBuilder buf, final CharSequence s, final int off, final int end,
+                                 final char fieldSeparator, final char componentSeparator, final char repetitionSeparator,
+                                 final char escapeCharacter, final char subcomponentSeparator) throws IOException {
+        final char[] codes = getCodes(fieldSeparator, componentSeparator, repetitionSeparator, escapeCharacter,
+            subcomponentSeparator);
+        final boolean xml = this.mode == MODE_XML;
+        int start = off;
+        for (int i = off; i < end; i++) {
             final char c = s.charAt(i);
-            final String str;
-            if (c == escapeCharacter) {
-                str = ESCAPE_STR_ESCAPE_CHARACTER;
-            } else if (c == fieldSeparator) {
-                str = ESCAPE_STR_FIELD_SEPARATOR;
-            } else if (c == componentSeparator) {
-                str = ESCAPE_STR_COMPONENT_SEPARATOR;
-            } else if (c == subcomponentSeparator) {
-                str = ESCAPE_STR_SUBCOMPONENT_SEPARATOR;
-            } else if (c == repetitionSeparator) {
-                str = ESCAPE_STR_REPETITION_SEPARATOR;
-            } else if ((c == '\r') || (c == '\n')) {
-                // Don't need separate escape sequences for consecutive hex sequences,
-                // but this will create them.
-                str = ESCAPE_HEX_CHARACTER + Util.toUppercaseHexString(c);
-            } else {
-                str = null;
-            }
-            if (str != null) {
-                if (w == null) {
-                    w = new StringWriter(size + 2);
+            final char code = c < TABLE_SIZE ? codes[c] : getCode(c, fieldSeparator, componentSeparator, repetitionSeparator,
+                escapeCharacter, subcomponentSeparator);
+            if (code != 0) {
+                if (out == null) {
+                    out = buf == null ? new StringBuilder(end - off + 8) : buf;
+                }
+                out.append(s, start, i);
+                out.append(escapeCharacter);
+                out.append(code);
+                if (code == CODE_HEX) {
+                    // Don't need separate escape sequences for consecutive hex sequences, but this will create them
+                    out.append(Util.toUppercaseHex(c / 16)).append(Util.toUppercaseHex(c % 16));
                 }
-                w.write(s, start, i - start);
-                w.write(escapeCharacter);
-                w.write(str);
-                w.write(escapeCharacter);
+                out.append(escapeCharacter);
                 start = i + 1;
-            } else if ((this.mode == MODE_XML) && (c == '<')) {
-                final int j = s.indexOf('>', i + 1);
-                String sub = s.substring(i, j);
+            } else if (xml && (c == '<')) {
+                final int j = indexOf(s, '>', i + 1, end);
+                String sub = s.subSequence(i, j).toString();
                 final Matcher m = PAT_V_ATTR.matcher(sub);
                 if (m.find()) {
                     sub = m.group(1);
                 }
-                if (w == null) {
-                    w = new StringWriter(size + 2);
+                if (out == null) {
+                    out = buf == null ? new StringBuilder(end - off + 8) : buf;
                 }
-                w.write(s, start, i - start);
-                w.write(escapeCharacter);
-                w.write(sub);
-                w.write(escapeCharacter);
+                out.append(s, start, i);
+                out.append(escapeCharacter);
+                out.append(sub);
+                out.append(escapeCharacter);
                 start = j + 1;
                 i = j;
             }
         }
-        if (w == null) { // Want a String and no escaping was required
-            return s;
-        } else if (start < size) {
-            w.write(s, start, size - start);
+        if ((out != null) && (start < end)) {
+            out.append(s, start, end);
         }
-        return needStr ? w.toString() : null; // Don't call toString if streaming
+        return out;
+    }
+    
+    private final static int indexOf(final CharSequence s, final char c, final int off, final int end) {
+        for (int i = off; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
     }
     
     /**
@@ -436,6 +675,7 @@ public final class Escaper implements HL7Delimiters {
     @Override
     public final void setFieldSeparator(final char fieldSeparator) {
         this.fieldSeparator = fieldSeparator;
+        this.codes = null;
     }
     
     /**
@@ -446,6 +686,7 @@ public final class Escaper implements HL7Delimiters {
     @Override
     public final void setComponentSeparator(final char componentSeparator) {
         this.componentSeparator = componentSeparator;
+        this.codes = null;
     }
     
     /**
@@ -456,6 +697,7 @@ public final class Escaper implements HL7Delimiters {
     @Override
     public final void setSubcomponentSeparator(final char subcomponentSeparator) {
         this.subcomponentSeparator = subcomponentSeparator;
+        this.codes = null;
     }
     
     /**
@@ -466,6 +708,7 @@ public final class Escaper implements HL7Delimiters {
     @Override
     public final void setRepetitionSeparator(final char repetitionSeparator) {
         this.repetitionSeparator = repetitionSeparator;
+        this.codes = null;
     }
     
     /**
@@ -476,6 +719,7 @@ public final class Escaper implements HL7Delimiters {
     @Override
     public final void setEscapeCharacter(final char escapeCharacter) {
         this.escapeCharacter = escapeCharacter;
+        this.codes = null;
     }
     
     /**
@@ -491,7 +735,7 @@ public final class Escaper implements HL7Delimiters {
         setEncodingCharacters(delims, encodingCharacters, 0, Util.length(encodingCharacters));
     }
     
-    public final static void setEncodingCharacters(final HL7Delimiters d, final String s, final int off, final int len) {
+    public final static void setEncodingCharacters(final HL7Delimiters d, final CharSequence s, final int off, final int len) {
         final int size = len - off;
         if (size > 0) {
             d.setComponentSeparator(s.charAt(off));
@@ -516,14 +760,47 @@ public final class Escaper implements HL7Delimiters {
         this.mode = mode;
     }
     
-    public final static boolean extractDelimiters(final HL7Delimiters delims, final String seg) {
+    /**
+     * Copies the given delimiters
+     * 
+     * @param d the HL7Delimiters
+     * @return the copy
+     **/
+    public final static Escaper copy(final HL7Delimiters d) {
+        final Escaper e = new Escaper();
+        e.fieldSeparator = getFieldSeparator(d);
+        e.componentSeparator = getComponentSeparator(d);
+        e.repetitionSeparator = getRepetitionSeparator(d);
+        e.escapeCharacter = getEscapeCharacter(d);
+        e.subcomponentSeparator = getSubcomponentSeparator(d);
+        if (d instanceof Escaper) {
+            e.mode = ((Escaper) d).mode;
+        }
+        return e;
+    }
+    
+    /**
+     * Retrieves whether the given HL7Delimiters use the same delimiters
+     * 
+     * @param d1 the first HL7Delimiters
+     * @param d2 the second HL7Delimiters
+     * @return whether the delimiters are the same
+     **/
+    public final static boolean isSame(final HL7Delimiters d1, final HL7Delimiters d2) {
+        return (getFieldSeparator(d1) == getFieldSeparator(d2)) && (getComponentSeparator(d1) == getComponentSeparator(d2))
+                && (getRepetitionSeparator(d1) == getRepetitionSeparator(d2))
+                && (getEscapeCharacter(d1) == getEscapeCharacter(d2))
+                && (getSubcomponentSeparator(d1) == getSubcomponentSeparator(d2));
+    }
+    
+    public final static boolean extractDelimiters(final HL7Delimiters delims, final CharSequence seg) {
         final int size = Util.length(seg);
-        if ((size < 4) || !seg.startsWith(MSH.MSH_XML)) {
+        if ((size < 4) || !MSH.MSH_XML.contentEquals(seg.subSequence(0, 3))) {
             return false;
         }
         final char field = seg.charAt(3);
         delims.setFieldSeparator(field);
-        final int sep = seg.indexOf(field, 4);
+        final int sep = CharSequences.indexOf(seg, field, 4);
         setEncodingCharacters(delims, seg, 4, sep < 0 ? size : sep);
         return true;
     }
@@ -83,6 +83,15 @@ public abstract class HL7DataType extends HL7Data {
     
     public abstract void toPiped(final Writer w, final int level) throws IOException;
     
+    /**
+     * Performs a deep copy of this HL7DataType; see copyData
+     * 
+     * @return the copy
+     **/
+    public HL7DataType copy() {
+        return (HL7DataType) copyData();
+    }
+    
     protected final int addComponent(final Writer w, final Object field, final int last, final int curr, final int level)
                                                                                                                          throws IOException {
         if ((field == null) || ((level > 2) && (curr > 1))) { // Might want warning if skipped because it's too deep
@@ -104,10 +104,7 @@ public class TS extends AbstractDateData {
      **/
     public TS(final HL7Properties prop, final Date date) {
         this(prop);
-        
-        final Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        setTime(cal);
+        this.value = StopWatch.toHL7String(date);
     }
     
     /**
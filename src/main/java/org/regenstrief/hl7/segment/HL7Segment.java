@@ -65,6 +65,26 @@ public abstract class HL7Segment extends HL7Data {
     
     public abstract void readPiped(final HL7Parser parser, final String line);
     
+    /**
+     * Reads the segment, decoding each field only when it is accessed if the segment supports lazy decoding;
+     * segments that support it extend LazySegment. Other segments are read normally.
+     * 
+     * @param parser the HL7Parser
+     * @param line the segment line
+     **/
+    public void readPipedLazy(final HL7Parser parser, final String line) {
+        readPiped(parser, line);
+    }
+    
+    /**
+     * Retrieves the number of fields that can be decoded individually; 0 if lazy decoding is not supported
+     * 
+     * @return the number of fields
+     **/
+    protected int getNumLazyFields() {
+        return 0;
+    }
+    
     /**
      * Retrieves the piped representation of the object
      * 
@@ -89,7 +109,7 @@ public abstract class HL7Segment extends HL7Data {
         return 0;
     }
     
-    protected final int addField(final Writer w, final Object field, final int last, final int curr) throws IOException {
+    protected int addField(final Writer w, final Object field, final int last, final int curr) throws IOException {
         if (field == null) {
             return last;
         }
@@ -117,14 +137,12 @@ public abstract class HL7Segment extends HL7Data {
     }
     
     /**
-     * Performs a deep copy of this HL7Segment
+     * Performs a deep copy of this HL7Segment; see copyData
      * 
      * @return the copy
      */
     public HL7Segment copy() {
-        final HL7Properties prop = getProp();
-        final HL7Parser parser = prop instanceof HL7Parser ? (HL7Parser) prop : new HL7Parser();
-        return parsePiped(parser, toPiped());
+        return (HL7Segment) copyData();
     }
     
     protected final void endSegment(final Writer w) throws IOException {
@@ -0,0 +1,269 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.segment;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.regenstrief.hl7.HL7Parser;
+import org.regenstrief.hl7.HL7Properties;
+import org.regenstrief.hl7.convert.Escaper;
+
+/**
+ * LazySegment
+ *
+ * An HL7Segment that can decode each of its fields individually, so readPipedLazy only needs to find where each
+ * field is, and the typed value is decoded the first time that a getter, adder, or get(int) touches it.
+ * Setters discard the original text without decoding it, and toPiped writes fields that were never accessed
+ * straight from the original line.
+ */
+public abstract class LazySegment extends HL7Segment {
+    
+    // See readPipedLazy
+    private String lazyLine = null;
+    
+    private HL7Parser lazyParser = null;
+    
+    private Escaper lazyDelimiters = null;
+    
+    private int[] lazyBounds = null; // Start and stop of each field in lazyLine
+    
+    private boolean[] pending = null; // Whether each field still needs to be decoded from lazyLine
+    
+    private int numPending = 0;
+    
+    /**
+     * Constructs a new LazySegment with the given HL7Properties
+     * 
+     * @param prop the HL7Properties
+     **/
+    public LazySegment(final HL7Properties prop) {
+        super(prop);
+    }
+    
+    /**
+     * Reads the segment, but only finds the boundaries of its fields.
+     * Each field is decoded the first time that it is accessed,
+     * and toPiped writes fields that were never accessed directly from the original line.
+     * Since fields are decoded later, parse errors are thrown when the field is accessed instead of by this method.
+     * If getNumLazyFields is 0, the segment is read normally.
+     * 
+     * @param parser the HL7Parser
+     * @param line the segment line
+     **/
+    @Override
+    public void readPipedLazy(final HL7Parser parser, final String line) {
+        final int numFields = getNumLazyFields();
+        if (numFields <= 0) {
+            readPiped(parser, line);
+        } else {
+            readFields(parser, line, numFields, true);
+        }
+    }
+    
+    /**
+     * Retrieves the number of fields that can be decoded individually by readField; 0 if readPipedLazy should
+     * read the segment normally
+     * 
+     * @return the number of fields
+     **/
+    @Override
+    protected abstract int getNumLazyFields();
+    
+    /**
+     * Decodes a single field
+     * 
+     * @param parser the HL7Parser
+     * @param line the segment line
+     * @param i the field index
+     * @param start the start of the field within the line
+     * @param stop the end of the field within the line
+     **/
+    protected abstract void readField(final HL7Parser parser, final String line, final int i, final int start, final int stop);
+    
+    /**
+     * Reads the fields of a segment (other than MSH) by calling readField for each one, or by recording where they
+     * are so that they can be decoded later
+     * 
+     * @param parser the HL7Parser
+     * @param line the segment line
+     * @param numFields the number of fields
+     * @param lazy whether decoding should be deferred until each field is accessed
+     **/
+    protected final void readFields(final HL7Parser parser, final String line, final int numFields, final boolean lazy) {
+        final char f = parser.getFieldSeparator();
+        int start = line.indexOf(f) + 1;
+        if (start <= 0) {
+            return;
+        }
+        if (lazy) {
+            this.lazyLine = line;
+            this.lazyParser = parser;
+            this.lazyDelimiters = parser.getDelimiterSnapshot();
+            this.lazyBounds = new int[(numFields + 1) * 2];
+            this.pending = new boolean[numFields + 1];
+            this.numPending = 0;
+        }
+        int stop = start - 1;
+        for (int i = 1; i <= numFields; i++) {
+            start = stop + 1;
+            stop = getNext(line, start, f);
+            if (stop < start) {
+                break;
+            }
+            if (!lazy) {
+                readField(parser, line, i, start, stop);
+            } else if (start < stop) {
+                this.lazyBounds[i * 2] = start;
+                this.lazyBounds[(i * 2) + 1] = stop;
+                this.pending[i] = true;
+                this.numPending++;
+            }
+            if (i == numFields) {
+                assertLast(line, stop + 1, f, line.length());
+            }
+        }
+        if (lazy && (this.numPending == 0)) {
+            releaseLazy();
+        }
+    }
+    
+    /**
+     * Retrieves whether the given field has been read lazily and not yet decoded
+     * 
+     * @param i the field index
+     * @return whether the field is pending
+     **/
+    protected final boolean isPending(final int i) {
+        return (this.pending != null) && (i < this.pending.length) && this.pending[i];
+    }
+    
+    /**
+     * Decodes the given field if it was read lazily and has not been decoded yet; getters and adders call this
+     * before using the field
+     * 
+     * @param i the field index
+     **/
+    protected final void decode(final int i) {
+        if (!isPending(i)) {
+            return;
+        }
+        this.pending[i] = false;
+        final HL7Parser parser = this.lazyParser;
+        final String line = this.lazyLine;
+        final int start = this.lazyBounds[i * 2], stop = this.lazyBounds[(i * 2) + 1];
+        // The parser might have read another message with different delimiters since this line was read
+        final Escaper old = Escaper.isSame(parser, this.lazyDelimiters) ? null : swapDelimiters(parser, this.lazyDelimiters);
+        final int depth = getStackDepth();
+        try {
+            setParseIndex(i);
+            readField(parser, line, i, start, stop);
+        } finally {
+            restoreStackDepth(depth);
+            if (old != null) {
+                swapDelimiters(parser, old);
+            }
+            fieldDecoded();
+        }
+    }
+    
+    /**
+     * Decodes all fields that were read lazily
+     **/
+    public final void decodeAll() {
+        for (int i = 1; this.numPending > 0; i++) {
+            decode(i);
+        }
+    }
+    
+    /**
+     * Discards the original text of the given field without decoding it; setters call this since they replace the
+     * whole field
+     * 
+     * @param i the field index
+     **/
+    protected final void discardRaw(final int i) {
+        if (isPending(i)) {
+            this.pending[i] = false;
+            fieldDecoded();
+        }
+    }
+    
+    private void fieldDecoded() {
+        this.numPending--;
+        if (this.numPending == 0) {
+            releaseLazy();
+        }
+    }
+    
+    private void releaseLazy() {
+        this.lazyLine = null;
+        this.lazyParser = null;
+        this.lazyDelimiters = null;
+        this.lazyBounds = null;
+        this.pending = null;
+        this.numPending = 0;
+    }
+    
+    @Override
+    protected final int addField(final Writer w, final Object field, final int last, final int curr) throws IOException {
+        if (isPending(curr)) {
+            if (!Escaper.isSame(getDelimiters(), this.lazyDelimiters)) {
+                decode(curr);
+                return addField(w, get(curr), last, curr);
+            }
+            // Never accessed, so the original text is still correct
+            final char f = this.lazyDelimiters.getFieldSeparator();
+            for (int i = last; i < curr; i++) {
+                w.write(f);
+            }
+            final int start = this.lazyBounds[curr * 2];
+            w.write(this.lazyLine, start, this.lazyBounds[(curr * 2) + 1] - start);
+            return curr;
+        }
+        return super.addField(w, field, last, curr);
+    }
+    
+    /**
+     * Retrieves the field at the given index, decoding it if needed
+     * 
+     * @param i the index
+     * @return the field
+     **/
+    @Override
+    public Object get(final int i) {
+        decode(i);
+        return super.get(i);
+    }
+    
+    /**
+     * Modifies the field at the given index, discarding its original text
+     * 
+     * @param o the field
+     * @param i the index
+     **/
+    @Override
+    public void set(final int i, final Object o) {
+        discardRaw(i);
+        super.set(i, o);
+    }
+    
+    /**
+     * Clears the LazySegment
+     **/
+    @Override
+    public void clear() {
+        super.clear();
+        releaseLazy();
+    }
+}
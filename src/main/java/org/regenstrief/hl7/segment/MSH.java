@@ -30,6 +30,7 @@ import org.regenstrief.hl7.datatype.TS;
 import org.regenstrief.hl7.datatype.VID;
 import org.regenstrief.hl7.datatype.XON;
 import org.regenstrief.hl7.util.UtilHL7;
+import org.regenstrief.util.StopWatch;
 import org.regenstrief.util.Util;
 
 /**
@@ -250,7 +251,7 @@ public class MSH extends HL7Segment {
      **/
     private final void buildOutgoing(final MSG msg) {
         this.messageType = msg;
-        setDateTimeOfMessage(new TS(this.prop, new java.util.Date())); // Set current date
+        setDateTimeOfMessage(new TS(this.prop, StopWatch.currentTimeHL7String())); // Set current date
         setVersionID(new VID(this.prop, UtilHL7.getVersion(this.prop)));
         setMessageControlID(newControlID());
         setProcessingID(new PT(this.prop, "P"));
@@ -48,7 +48,7 @@ import org.regenstrief.util.Util;
  * @author Andrew Martin
  * @version 1.0
  */
-public class PID extends HL7Segment {
+public class PID extends LazySegment {
     
     public final static String PID_XML = "PID";
     
@@ -132,6 +132,8 @@ public class PID extends HL7Segment {
     
     public final static String PATIENT_TELECOMMUNICATION_INFORMATION_XML = "PID.40";
     
+    private final static int NUM_FIELDS = 40;
+    
     private SI setIDPID = null;
     
     private CX patientID = null;
@@ -241,6 +243,8 @@ public class PID extends HL7Segment {
      **/
     @Override
     public PID addRequired() {
+        decode(3);
+        decode(5);
         if (Util.isEmpty(this.patientIdentifier)) {
             addPatientIdentifier(new CX(this.prop));
         }
@@ -257,6 +261,8 @@ public class PID extends HL7Segment {
      * @return the PID
      **/
     public PID removeSSN() {
+        discardRaw(19);
+        decode(3);
         this.ssnNumberPatient = null;
         for (int i = 0; i < Util.size(this.patientIdentifier); i++) { // size changes and cannot be precomputed
             final CX cx = this.patientIdentifier.get(i);
@@ -281,357 +287,205 @@ public class PID extends HL7Segment {
     
     @Override
     public void readPiped(final HL7Parser parser, final String line) {
-        final char f = parser.getFieldSeparator();
-        int start = line.indexOf(f) + 1;
-        if (start <= 0) {
-            return;
-        }
-        int stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
+        readFields(parser, line, NUM_FIELDS, false);
+    }
+    
+    @Override
+    protected int getNumLazyFields() {
+        return NUM_FIELDS;
+    }
+    
+    @Override
+    protected void readField(final HL7Parser parser, final String line, final int i, final int fieldStart, final int stop) {
         final char c = parser.getComponentSeparator();
-        this.setIDPID = SI.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.patientID = CX.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
         final char r = parser.getRepetitionSeparator();
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addPatientIdentifier(CX.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addAlternatePatientIDPID(CX.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addPatientName(XPN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addMothersMaidenName(XPN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.dateTimeOfBirth = TS.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.sex = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addPatientAlias(XPN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addRace(CE.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addPatientAddress(XAD.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.countyCode = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addPhoneNumberHome(XTN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addPhoneNumberBusiness(XTN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.primaryLanguage = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.maritalStatus = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.religion = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.patientAccountNumber = CX.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.ssnNumberPatient = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
+        int start = fieldStart;
+        switch (i) {
+            case 1:
+                this.setIDPID = SI.parsePiped(parser, line, start, c, stop);
+                break;
+            case 2:
+                this.patientID = CX.parsePiped(parser, line, start, c, stop);
+                break;
+            case 3:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addPatientIdentifier(CX.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 4:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addAlternatePatientIDPID(CX.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 5:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addPatientName(XPN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 6:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addMothersMaidenName(XPN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 7:
+                this.dateTimeOfBirth = TS.parsePiped(parser, line, start, c, stop);
+                break;
+            case 8:
+                this.sex = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 9:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addPatientAlias(XPN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 10:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addRace(CE.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 11:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addPatientAddress(XAD.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 12:
+                this.countyCode = getToken(line, start, stop);
+                break;
+            case 13:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addPhoneNumberHome(XTN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 14:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addPhoneNumberBusiness(XTN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 15:
+                this.primaryLanguage = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 16:
+                this.maritalStatus = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 17:
+                this.religion = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 18:
+                this.patientAccountNumber = CX.parsePiped(parser, line, start, c, stop);
+                break;
+            case 19:
+                this.ssnNumberPatient = getToken(line, start, stop);
+                break;
+            case 20:
+                this.driversLicenseNumber = DLN.parsePiped(parser, line, start, c, stop);
+                break;
+            case 21:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addMothersIdentifier(CX.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 22:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addEthnicGroup(CE.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 23:
+                this.birthplace = getToken(line, start, stop);
+                break;
+            case 24:
+                this.multipleBirthIndicator = getToken(line, start, stop);
+                break;
+            case 25:
+                this.birthOrder = NM.parsePiped(parser, line, start, c, stop);
+                break;
+            case 26:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addCitizenship(CE.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 27:
+                this.veteranMilitaryStatus = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 28:
+                this.nationality = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 29:
+                this.patientDeathDateAndTime = TS.parsePiped(parser, line, start, c, stop);
+                break;
+            case 30:
+                this.patientDeathIndicator = getToken(line, start, stop);
+                break;
+            case 31:
+                this.identityUnknownIndicator = getToken(line, start, stop);
+                break;
+            case 32:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addIdentityReliabilityCode(getToken(line, start, next));
+                    start = next + 1;
+                }
+                break;
+            case 33:
+                this.lastUpdateDateTime = TS.parsePiped(parser, line, start, c, stop);
+                break;
+            case 34:
+                this.lastUpdateFacility = HD.parsePiped(parser, line, start, c, stop);
+                break;
+            case 35:
+                this.speciesCode = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 36:
+                this.breedCode = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 37:
+                this.strain = getToken(line, start, stop);
+                break;
+            case 38:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addProductionClassCode(CE.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 39:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addTribalCitizenship(CWE.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 40:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addPatientTelecommunicationInformation(XTN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
         }
-        this.driversLicenseNumber = DLN.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addMothersIdentifier(CX.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addEthnicGroup(CE.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.birthplace = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.multipleBirthIndicator = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.birthOrder = NM.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addCitizenship(CE.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.veteranMilitaryStatus = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.nationality = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.patientDeathDateAndTime = TS.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.patientDeathIndicator = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.identityUnknownIndicator = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addIdentityReliabilityCode(getToken(line, start, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.lastUpdateDateTime = TS.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.lastUpdateFacility = HD.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.speciesCode = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.breedCode = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.strain = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addProductionClassCode(CE.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addTribalCitizenship(CWE.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addPatientTelecommunicationInformation(XTN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        assertLast(line, stop + 1, f, line.length());
     }
     
     @Override
@@ -688,6 +542,7 @@ public class PID extends HL7Segment {
      * @return the alternate patient ID PID
      **/
     public List<CX> getAlternatePatientIDPID() {
+        decode(4);
         return this.alternatePatientIDPID;
     }
     
@@ -697,6 +552,7 @@ public class PID extends HL7Segment {
      * @return the veteran military status
      **/
     public CE getVeteranMilitaryStatus() {
+        decode(27);
         return this.veteranMilitaryStatus;
     }
     
@@ -706,6 +562,7 @@ public class PID extends HL7Segment {
      * @return the social security number
      **/
     public String getSsnNumberPatient() {
+        decode(19);
         return this.ssnNumberPatient;
     }
     
@@ -715,6 +572,7 @@ public class PID extends HL7Segment {
      * @return the sex
      **/
     public CWE getSex() {
+        decode(8);
         return this.sex;
     }
     
@@ -724,6 +582,7 @@ public class PID extends HL7Segment {
      * @return the set ID PID
      **/
     public SI getSetIDPID() {
+        decode(1);
         return this.setIDPID;
     }
     
@@ -733,6 +592,7 @@ public class PID extends HL7Segment {
      * @return the religion
      **/
     public CE getReligion() {
+        decode(17);
         return this.religion;
     }
     
@@ -742,6 +602,7 @@ public class PID extends HL7Segment {
      * @return the race
      **/
     public List<CE> getRace() {
+        decode(10);
         return this.race;
     }
     
@@ -751,6 +612,7 @@ public class PID extends HL7Segment {
      * @return the primary language
      **/
     public CE getPrimaryLanguage() {
+        decode(15);
         return this.primaryLanguage;
     }
     
@@ -760,6 +622,7 @@ public class PID extends HL7Segment {
      * @return the phone number home
      **/
     public List<XTN> getPhoneNumberHome() {
+        decode(13);
         return this.phoneNumberHome;
     }
     
@@ -769,6 +632,7 @@ public class PID extends HL7Segment {
      * @return the phone number business
      **/
     public List<XTN> getPhoneNumberBusiness() {
+        decode(14);
         return this.phoneNumberBusiness;
     }
     
@@ -778,6 +642,7 @@ public class PID extends HL7Segment {
      * @return the patient name
      **/
     public List<XPN> getPatientName() {
+        decode(5);
         return this.patientName;
     }
     
@@ -787,6 +652,7 @@ public class PID extends HL7Segment {
      * @return the patient identifier
      **/
     public List<CX> getPatientIdentifier() {
+        decode(3);
         return this.patientIdentifier;
     }
     
@@ -796,6 +662,7 @@ public class PID extends HL7Segment {
      * @return the patient ID
      **/
     public CX getPatientID() {
+        decode(2);
         return this.patientID;
     }
     
@@ -805,6 +672,7 @@ public class PID extends HL7Segment {
      * @return the patient death indicator
      **/
     public String getPatientDeathIndicator() {
+        decode(30);
         return this.patientDeathIndicator;
     }
     
@@ -814,6 +682,7 @@ public class PID extends HL7Segment {
      * @return the patient death date and time
      **/
     public TS getPatientDeathDateAndTime() {
+        decode(29);
         return this.patientDeathDateAndTime;
     }
     
@@ -823,6 +692,7 @@ public class PID extends HL7Segment {
      * @return the patient alias
      **/
     public List<XPN> getPatientAlias() {
+        decode(9);
         return this.patientAlias;
     }
     
@@ -832,6 +702,7 @@ public class PID extends HL7Segment {
      * @return the patient address
      **/
     public List<XAD> getPatientAddress() {
+        decode(11);
         return this.patientAddress;
     }
     
@@ -841,6 +712,7 @@ public class PID extends HL7Segment {
      * @return the patient account number
      **/
     public CX getPatientAccountNumber() {
+        decode(18);
         return this.patientAccountNumber;
     }
     
@@ -850,6 +722,7 @@ public class PID extends HL7Segment {
      * @return the nationality
      **/
     public CE getNationality() {
+        decode(28);
         return this.nationality;
     }
     
@@ -859,6 +732,7 @@ public class PID extends HL7Segment {
      * @return the multiple birth indicator
      **/
     public String getMultipleBirthIndicator() {
+        decode(24);
         return this.multipleBirthIndicator;
     }
     
@@ -868,6 +742,7 @@ public class PID extends HL7Segment {
      * @return the mother's maiden name
      **/
     public List<XPN> getMothersMaidenName() {
+        decode(6);
         return this.mothersMaidenName;
     }
     
@@ -877,6 +752,7 @@ public class PID extends HL7Segment {
      * @return the mother's identifier
      **/
     public List<CX> getMothersIdentifier() {
+        decode(21);
         return this.mothersIdentifier;
     }
     
@@ -886,6 +762,7 @@ public class PID extends HL7Segment {
      * @return the marital status
      **/
     public CE getMaritalStatus() {
+        decode(16);
         return this.maritalStatus;
     }
     
@@ -895,6 +772,7 @@ public class PID extends HL7Segment {
      * @return the ethnic group
      **/
     public List<CE> getEthnicGroup() {
+        decode(22);
         return this.ethnicGroup;
     }
     
@@ -904,6 +782,7 @@ public class PID extends HL7Segment {
      * @return the driver's license number
      **/
     public DLN getDriversLicenseNumber() {
+        decode(20);
         return this.driversLicenseNumber;
     }
     
@@ -913,6 +792,7 @@ public class PID extends HL7Segment {
      * @return the date/time of birth
      **/
     public TS getDateTimeOfBirth() {
+        decode(7);
         return this.dateTimeOfBirth;
     }
     
@@ -922,6 +802,7 @@ public class PID extends HL7Segment {
      * @return the country code
      **/
     public String getCountyCode() {
+        decode(12);
         return this.countyCode;
     }
     
@@ -931,6 +812,7 @@ public class PID extends HL7Segment {
      * @return the citizenship
      **/
     public List<CE> getCitizenship() {
+        decode(26);
         return this.citizenship;
     }
     
@@ -940,6 +822,7 @@ public class PID extends HL7Segment {
      * @return the birthplace
      **/
     public String getBirthplace() {
+        decode(23);
         return this.birthplace;
     }
     
@@ -949,6 +832,7 @@ public class PID extends HL7Segment {
      * @return the birth order
      **/
     public NM getBirthOrder() {
+        decode(25);
         return this.birthOrder;
     }
     
@@ -958,6 +842,7 @@ public class PID extends HL7Segment {
      * @return the identity unknown indicator
      **/
     public String getIdentityUnknownIndicator() {
+        decode(31);
         return this.identityUnknownIndicator;
     }
     
@@ -967,6 +852,7 @@ public class PID extends HL7Segment {
      * @return the identity reliability code list
      **/
     public List<String> getIdentityReliabilityCode() {
+        decode(32);
         return this.identityReliabilityCode;
     }
     
@@ -976,6 +862,7 @@ public class PID extends HL7Segment {
      * @return the last update date/time
      **/
     public TS getLastUpdateDateTime() {
+        decode(33);
         return this.lastUpdateDateTime;
     }
     
@@ -985,6 +872,7 @@ public class PID extends HL7Segment {
      * @return the last update facility
      **/
     public HD getLastUpdateFacility() {
+        decode(34);
         return this.lastUpdateFacility;
     }
     
@@ -994,6 +882,7 @@ public class PID extends HL7Segment {
      * @return the species code
      **/
     public CE getSpeciesCode() {
+        decode(35);
         return this.speciesCode;
     }
     
@@ -1003,6 +892,7 @@ public class PID extends HL7Segment {
      * @return the breed code
      **/
     public CE getBreedCode() {
+        decode(36);
         return this.breedCode;
     }
     
@@ -1012,6 +902,7 @@ public class PID extends HL7Segment {
      * @return the strain
      **/
     public String getStrain() {
+        decode(37);
         return this.strain;
     }
     
@@ -1021,6 +912,7 @@ public class PID extends HL7Segment {
      * @return the production class code list
      **/
     public List<CE> getProductionClassCode() {
+        decode(38);
         return this.productionClassCode;
     }
     
@@ -1030,6 +922,7 @@ public class PID extends HL7Segment {
      * @return the tribal citizenship list
      **/
     public List<CWE> getTribalCitizenship() {
+        decode(39);
         return this.tribalCitizenship;
     }
     
@@ -1039,6 +932,7 @@ public class PID extends HL7Segment {
      * @return the patient telecommunication information list
      **/
     public List<XTN> getPatientTelecommunicationInformation() {
+        decode(40);
         return this.patientTelecommunicationInformation;
     }
     
@@ -1048,6 +942,7 @@ public class PID extends HL7Segment {
      * @param alternatePatientIDPID the new alternate patient ID PID list
      **/
     public void setAlternatePatientIDPID(final List<CX> alternatePatientIDPID) {
+        discardRaw(4);
         this.alternatePatientIDPID = alternatePatientIDPID;
     }
     
@@ -1057,6 +952,7 @@ public class PID extends HL7Segment {
      * @param alternatePatientIDPID the new alternate patient ID PID
      **/
     public void addAlternatePatientIDPID(final CX alternatePatientIDPID) {
+        decode(4);
         this.alternatePatientIDPID = Util.add(this.alternatePatientIDPID, alternatePatientIDPID);
     }
     
@@ -1066,6 +962,7 @@ public class PID extends HL7Segment {
      * @param veteranMilitaryStatus the new veteran military status
      **/
     public void setVeteranMilitaryStatus(final CE veteranMilitaryStatus) {
+        discardRaw(27);
         this.veteranMilitaryStatus = veteranMilitaryStatus;
     }
     
@@ -1075,6 +972,7 @@ public class PID extends HL7Segment {
      * @param ssnNumberPatient the new social security number
      **/
     public void setSsnNumberPatient(final String ssnNumberPatient) {
+        discardRaw(19);
         this.ssnNumberPatient = ssnNumberPatient;
     }
     
@@ -1084,6 +982,7 @@ public class PID extends HL7Segment {
      * @param sex the new sex
      **/
     public void setSex(final CWE sex) {
+        discardRaw(8);
         this.sex = sex;
     }
     
@@ -1093,6 +992,7 @@ public class PID extends HL7Segment {
      * @param setIDPID the new set ID PID
      **/
     public void setSetIDPID(final SI setIDPID) {
+        discardRaw(1);
         this.setIDPID = setIDPID;
     }
     
@@ -1102,6 +1002,7 @@ public class PID extends HL7Segment {
      * @param religion the new religion
      **/
     public void setReligion(final CE religion) {
+        discardRaw(17);
         this.religion = religion;
     }
     
@@ -1111,6 +1012,7 @@ public class PID extends HL7Segment {
      * @param race the new race
      **/
     public void setRace(final List<CE> race) {
+        discardRaw(10);
         this.race = race;
     }
     
@@ -1120,6 +1022,7 @@ public class PID extends HL7Segment {
      * @param race the new race
      **/
     public void addRace(final CE race) {
+        decode(10);
         this.race = Util.add(this.race, race);
     }
     
@@ -1129,6 +1032,7 @@ public class PID extends HL7Segment {
      * @param primaryLanguage the new primary language
      **/
     public void setPrimaryLanguage(final CE primaryLanguage) {
+        discardRaw(15);
         this.primaryLanguage = primaryLanguage;
     }
     
@@ -1138,6 +1042,7 @@ public class PID extends HL7Segment {
      * @param phoneNumberHome the new phone number home list
      **/
     public void setPhoneNumberHome(final List<XTN> phoneNumberHome) {
+        discardRaw(13);
         this.phoneNumberHome = phoneNumberHome;
     }
     
@@ -1147,6 +1052,7 @@ public class PID extends HL7Segment {
      * @param phoneNumberHome the new phone number home
      **/
     public void addPhoneNumberHome(final XTN phoneNumberHome) {
+        decode(13);
         this.phoneNumberHome = Util.add(this.phoneNumberHome, phoneNumberHome);
     }
     
@@ -1156,6 +1062,7 @@ public class PID extends HL7Segment {
      * @param phoneNumberBusiness the new phone number business list
      **/
     public void setPhoneNumberBusiness(final List<XTN> phoneNumberBusiness) {
+        discardRaw(14);
         this.phoneNumberBusiness = phoneNumberBusiness;
     }
     
@@ -1165,6 +1072,7 @@ public class PID extends HL7Segment {
      * @param phoneNumberBusiness the new phone number business
      **/
     public void addPhoneNumberBusiness(final XTN phoneNumberBusiness) {
+        decode(14);
         this.phoneNumberBusiness = Util.add(this.phoneNumberBusiness, phoneNumberBusiness);
     }
     
@@ -1174,6 +1082,7 @@ public class PID extends HL7Segment {
      * @param patientName the new patient name list
      **/
     public void setPatientName(final List<XPN> patientName) {
+        discardRaw(5);
         this.patientName = patientName;
     }
     
@@ -1183,6 +1092,7 @@ public class PID extends HL7Segment {
      * @param patientName the new patient name
      **/
     public void addPatientName(final XPN patientName) {
+        decode(5);
         this.patientName = Util.add(this.patientName, patientName);
     }
     
@@ -1192,6 +1102,7 @@ public class PID extends HL7Segment {
      * @param patientIdentifier the new patient identifier list
      **/
     public void setPatientIdentifier(final List<CX> patientIdentifier) {
+        discardRaw(3);
         this.patientIdentifier = patientIdentifier;
     }
     
@@ -1201,6 +1112,7 @@ public class PID extends HL7Segment {
      * @param patientIdentifier the new patient identifier
      **/
     public void addPatientIdentifier(final CX patientIdentifier) {
+        decode(3);
         this.patientIdentifier = Util.add(this.patientIdentifier, patientIdentifier);
     }
     
@@ -1210,6 +1122,7 @@ public class PID extends HL7Segment {
      * @param patientID the new patient ID
      **/
     public void setPatientID(final CX patientID) {
+        discardRaw(2);
         this.patientID = patientID;
     }
     
@@ -1219,6 +1132,7 @@ public class PID extends HL7Segment {
      * @param patientDeathIndicator the new patient death indicator
      **/
     public void setPatientDeathIndicator(final String patientDeathIndicator) {
+        discardRaw(30);
         this.patientDeathIndicator = patientDeathIndicator;
     }
     
@@ -1228,6 +1142,7 @@ public class PID extends HL7Segment {
      * @param patientDeathDateAndTime the new patient death date and time
      **/
     public void setPatientDeathDateAndTime(final TS patientDeathDateAndTime) {
+        discardRaw(29);
         this.patientDeathDateAndTime = patientDeathDateAndTime;
     }
     
@@ -1237,6 +1152,7 @@ public class PID extends HL7Segment {
      * @param patientAlias the new patient alias list
      **/
     public void setPatientAlias(final List<XPN> patientAlias) {
+        discardRaw(9);
         this.patientAlias = patientAlias;
     }
     
@@ -1246,6 +1162,7 @@ public class PID extends HL7Segment {
      * @param patientAlias the new patient alias
      **/
     public void addPatientAlias(final XPN patientAlias) {
+        decode(9);
         this.patientAlias = Util.add(this.patientAlias, patientAlias);
     }
     
@@ -1255,6 +1172,7 @@ public class PID extends HL7Segment {
      * @param patientAddress the new patient address list
      **/
     public void setPatientAddress(final List<XAD> patientAddress) {
+        discardRaw(11);
         this.patientAddress = patientAddress;
     }
     
@@ -1264,6 +1182,7 @@ public class PID extends HL7Segment {
      * @param patientAddress the new patient address
      **/
     public void addPatientAddress(final XAD patientAddress) {
+        decode(11);
         this.patientAddress = Util.add(this.patientAddress, patientAddress);
     }
     
@@ -1273,6 +1192,7 @@ public class PID extends HL7Segment {
      * @param patientAccountNumber the new patient account number
      **/
     public void setPatientAccountNumber(final CX patientAccountNumber) {
+        discardRaw(18);
         this.patientAccountNumber = patientAccountNumber;
     }
     
@@ -1282,6 +1202,7 @@ public class PID extends HL7Segment {
      * @param nationality the new nationality
      **/
     public void setNationality(final CE nationality) {
+        discardRaw(28);
         this.nationality = nationality;
     }
     
@@ -1291,6 +1212,7 @@ public class PID extends HL7Segment {
      * @param multipleBirthIndicator the new multiple birth indicator
      **/
     public void setMultipleBirthIndicator(final String multipleBirthIndicator) {
+        discardRaw(24);
         this.multipleBirthIndicator = multipleBirthIndicator;
     }
     
@@ -1300,6 +1222,7 @@ public class PID extends HL7Segment {
      * @param mothersMaidenName the new mother's maiden name list
      **/
     public void setMothersMaidenName(final List<XPN> mothersMaidenName) {
+        discardRaw(6);
         this.mothersMaidenName = mothersMaidenName;
     }
     
@@ -1309,6 +1232,7 @@ public class PID extends HL7Segment {
      * @param mothersMaidenName the new mother's maiden name
      **/
     public void addMothersMaidenName(final XPN mothersMaidenName) {
+        decode(6);
         this.mothersMaidenName = Util.add(this.mothersMaidenName, mothersMaidenName);
     }
     
@@ -1318,6 +1242,7 @@ public class PID extends HL7Segment {
      * @param mothersIdentifier the new mother's identifier list
      **/
     public void setMothersIdentifier(final List<CX> mothersIdentifier) {
+        discardRaw(21);
         this.mothersIdentifier = mothersIdentifier;
     }
     
@@ -1327,6 +1252,7 @@ public class PID extends HL7Segment {
      * @param mothersIdentifier the new mother's identifier
      **/
     public void addMothersIdentifier(final CX mothersIdentifier) {
+        decode(21);
         this.mothersIdentifier = Util.add(this.mothersIdentifier, mothersIdentifier);
     }
     
@@ -1336,6 +1262,7 @@ public class PID extends HL7Segment {
      * @param maritalStatus the new marital status
      **/
     public void setMaritalStatus(final CE maritalStatus) {
+        discardRaw(16);
         this.maritalStatus = maritalStatus;
     }
     
@@ -1345,6 +1272,7 @@ public class PID extends HL7Segment {
      * @param ethnicGroup the new ethnic group list
      **/
     public void setEthnicGroup(final List<CE> ethnicGroup) {
+        discardRaw(22);
         this.ethnicGroup = ethnicGroup;
     }
     
@@ -1354,6 +1282,7 @@ public class PID extends HL7Segment {
      * @param ethnicGroup the new ethnic group
      **/
     public void addEthnicGroup(final CE ethnicGroup) {
+        decode(22);
         this.ethnicGroup = Util.add(this.ethnicGroup, ethnicGroup);
     }
     
@@ -1363,6 +1292,7 @@ public class PID extends HL7Segment {
      * @param driversLicenseNumber the new driver's license number
      **/
     public void setDriversLicenseNumber(final DLN driversLicenseNumber) {
+        discardRaw(20);
         this.driversLicenseNumber = driversLicenseNumber;
     }
     
@@ -1372,6 +1302,7 @@ public class PID extends HL7Segment {
      * @param dateTimeOfBirth the new date/time of birth
      **/
     public void setDateTimeOfBirth(final TS dateTimeOfBirth) {
+        discardRaw(7);
         this.dateTimeOfBirth = dateTimeOfBirth;
     }
     
@@ -1381,6 +1312,7 @@ public class PID extends HL7Segment {
      * @param countyCode the new county code
      **/
     public void setCountyCode(final String countyCode) {
+        discardRaw(12);
         this.countyCode = countyCode;
     }
     
@@ -1390,6 +1322,7 @@ public class PID extends HL7Segment {
      * @param citizenship the new citizenship list
      **/
     public void setCitizenship(final List<CE> citizenship) {
+        discardRaw(26);
         this.citizenship = citizenship;
     }
     
@@ -1399,6 +1332,7 @@ public class PID extends HL7Segment {
      * @param citizenship the new citizenship
      **/
     public void addCitizenship(final CE citizenship) {
+        decode(26);
         this.citizenship = Util.add(this.citizenship, citizenship);
     }
     
@@ -1408,6 +1342,7 @@ public class PID extends HL7Segment {
      * @param birthplace the new birthplace
      **/
     public void setBirthplace(final String birthplace) {
+        discardRaw(23);
         this.birthplace = birthplace;
     }
     
@@ -1417,6 +1352,7 @@ public class PID extends HL7Segment {
      * @param birthOrder the new birth order
      **/
     public void setBirthOrder(final NM birthOrder) {
+        discardRaw(25);
         this.birthOrder = birthOrder;
     }
     
@@ -1426,6 +1362,7 @@ public class PID extends HL7Segment {
      * @param identityUnknownIndicator the new identity unknown indicator
      **/
     public void setIdentityUnknownIndicator(final String identityUnknownIndicator) {
+        discardRaw(31);
         this.identityUnknownIndicator = identityUnknownIndicator;
     }
     
@@ -1435,6 +1372,7 @@ public class PID extends HL7Segment {
      * @param identityReliabilityCode the new identity reliability code
      **/
     public void setIdentityReliabilityCode(final List<String> identityReliabilityCode) {
+        discardRaw(32);
         this.identityReliabilityCode = identityReliabilityCode;
     }
     
@@ -1444,6 +1382,7 @@ public class PID extends HL7Segment {
      * @param identityReliabilityCode the new identity reliability code
      **/
     public void addIdentityReliabilityCode(final String identityReliabilityCode) {
+        decode(32);
         this.identityReliabilityCode = Util.add(this.identityReliabilityCode, identityReliabilityCode);
     }
     
@@ -1453,6 +1392,7 @@ public class PID extends HL7Segment {
      * @param lastUpdateDateTime the new last update date/time
      **/
     public void setLastUpdateDateTime(final TS lastUpdateDateTime) {
+        discardRaw(33);
         this.lastUpdateDateTime = lastUpdateDateTime;
     }
     
@@ -1462,6 +1402,7 @@ public class PID extends HL7Segment {
      * @param lastUpdateFacility the new last update facility
      **/
     public void setLastUpdateFacility(final HD lastUpdateFacility) {
+        discardRaw(34);
         this.lastUpdateFacility = lastUpdateFacility;
     }
     
@@ -1471,6 +1412,7 @@ public class PID extends HL7Segment {
      * @param speciesCode the new species code
      **/
     public void setSpeciesCode(final CE speciesCode) {
+        discardRaw(35);
         this.speciesCode = speciesCode;
     }
     
@@ -1480,6 +1422,7 @@ public class PID extends HL7Segment {
      * @param breedCode the new breed code
      **/
     public void setBreedCode(final CE breedCode) {
+        discardRaw(36);
         this.breedCode = breedCode;
     }
     
@@ -1489,6 +1432,7 @@ public class PID extends HL7Segment {
      * @param strain the new strain
      **/
     public void setStrain(final String strain) {
+        discardRaw(37);
         this.strain = strain;
     }
     
@@ -1498,6 +1442,7 @@ public class PID extends HL7Segment {
      * @param productionClassCode the new production class code
      **/
     public void setProductionClassCode(final List<CE> productionClassCode) {
+        discardRaw(38);
         this.productionClassCode = productionClassCode;
     }
     
@@ -1507,6 +1452,7 @@ public class PID extends HL7Segment {
      * @param productionClassCode the new production class code
      **/
     public void addProductionClassCode(final CE productionClassCode) {
+        decode(38);
         this.productionClassCode = Util.add(this.productionClassCode, productionClassCode);
     }
     
@@ -1516,6 +1462,7 @@ public class PID extends HL7Segment {
      * @param tribalCitizenship the new tribal citizenship
      **/
     public void setTribalCitizenship(final List<CWE> tribalCitizenship) {
+        discardRaw(39);
         this.tribalCitizenship = tribalCitizenship;
     }
     
@@ -1525,6 +1472,7 @@ public class PID extends HL7Segment {
      * @param tribalCitizenship the new tribal citizenship
      **/
     public void addTribalCitizenship(final CWE tribalCitizenship) {
+        decode(39);
         this.tribalCitizenship = Util.add(this.tribalCitizenship, tribalCitizenship);
     }
     
@@ -1534,6 +1482,7 @@ public class PID extends HL7Segment {
      * @param patientTelecommunicationInformation the new patient telecommunication information
      **/
     public void setPatientTelecommunicationInformation(final List<XTN> patientTelecommunicationInformation) {
+        discardRaw(40);
         this.patientTelecommunicationInformation = patientTelecommunicationInformation;
     }
     
@@ -1543,6 +1492,55 @@ public class PID extends HL7Segment {
      * @param patientTelecommunicationInformation the new patient telecommunication information
      **/
     public void addPatientTelecommunicationInformation(final XTN patientTelecommunicationInformation) {
+        decode(40);
         this.patientTelecommunicationInformation = Util.add(this.patientTelecommunicationInformation, patientTelecommunicationInformation);
     }
+    
+    /**
+     * Clears the PID
+     **/
+    @Override
+    public void clear() {
+        super.clear();
+        this.setIDPID = null;
+        this.patientID = null;
+        Util.clear(this.patientIdentifier);
+        Util.clear(this.alternatePatientIDPID);
+        Util.clear(this.patientName);
+        Util.clear(this.mothersMaidenName);
+        this.dateTimeOfBirth = null;
+        this.sex = null;
+        Util.clear(this.patientAlias);
+        Util.clear(this.race);
+        Util.clear(this.patientAddress);
+        this.countyCode = null;
+        Util.clear(this.phoneNumberHome);
+        Util.clear(this.phoneNumberBusiness);
+        this.primaryLanguage = null;
+        this.maritalStatus = null;
+        this.religion = null;
+        this.patientAccountNumber = null;
+        this.ssnNumberPatient = null;
+        this.driversLicenseNumber = null;
+        Util.clear(this.mothersIdentifier);
+        Util.clear(this.ethnicGroup);
+        this.birthplace = null;
+        this.multipleBirthIndicator = null;
+        this.birthOrder = null;
+        Util.clear(this.citizenship);
+        this.veteranMilitaryStatus = null;
+        this.nationality = null;
+        this.patientDeathDateAndTime = null;
+        this.patientDeathIndicator = null;
+        this.identityUnknownIndicator = null;
+        Util.clear(this.identityReliabilityCode);
+        this.lastUpdateDateTime = null;
+        this.lastUpdateFacility = null;
+        this.speciesCode = null;
+        this.breedCode = null;
+        this.strain = null;
+        Util.clear(this.productionClassCode);
+        Util.clear(this.tribalCitizenship);
+        Util.clear(this.patientTelecommunicationInformation);
+    }
 }
@@ -48,7 +48,7 @@ import org.regenstrief.util.Util;
  * @author Andrew Martin
  * @version 1.0
  */
-public class PV1 extends HL7Segment {
+public class PV1 extends LazySegment {
     
     public final static String PV1_XML = "PV1";
     
@@ -160,6 +160,8 @@ public class PV1 extends HL7Segment {
     
     public final static String SERVICE_EPISODE_IDENTIFIER_XML = "PV1.54";
     
+    private final static int NUM_FIELDS = 54;
+    
     private SI setIDPV1 = null;
     
     private CWE patientClass = null;
@@ -284,6 +286,7 @@ public class PV1 extends HL7Segment {
      **/
     @Override
     public PV1 addRequired() {
+        decode(2);
         if (this.patientClass == null) {
             this.patientClass = new CWE(this.prop);
         }
@@ -299,439 +302,231 @@ public class PV1 extends HL7Segment {
     
     @Override
     public void readPiped(final HL7Parser parser, final String line) {
-        final char f = parser.getFieldSeparator();
-        int start = line.indexOf(f) + 1;
-        if (start <= 0) {
-            return;
-        }
-        int stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
+        readFields(parser, line, NUM_FIELDS, false);
+    }
+    
+    @Override
+    protected int getNumLazyFields() {
+        return NUM_FIELDS;
+    }
+    
+    @Override
+    protected void readField(final HL7Parser parser, final String line, final int i, final int fieldStart, final int stop) {
         final char c = parser.getComponentSeparator();
-        this.setIDPV1 = SI.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.patientClass = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.assignedPatientLocation = PL.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.admissionType = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.preadmitNumber = CX.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.priorPatientLocation = PL.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
         final char r = parser.getRepetitionSeparator();
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addAttendingDoctor(XCN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addReferringDoctor(XCN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addConsultingDoctor(XCN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.hospitalService = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.temporaryLocation = PL.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.preadmitTestIndicator = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.reAdmissionIndicator = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.admitSource = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addAmbulatoryStatus(CWE.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.vipIndicator = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addAdmittingDoctor(XCN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.patientType = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.visitNumber = CX.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addFinancialClass(FC.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.chargePriceIndicator = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.courtesyCode = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.creditRating = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addContractCode(CWE.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addContractEffectiveDate(DT.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addContractAmount(NM.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addContractPeriod(NM.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.interestCode = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.transferToBadDebtCode = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.transferToBadDebtDate = DT.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.badDebtAgencyCode = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.badDebtTransferAmount = NM.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.badDebtRecoveryAmount = NM.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.deleteAccountIndicator = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.deleteAccountDate = DT.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.dischargeDisposition = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.dischargedToLocation = DLD.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.dietType = CE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.servicingFacility = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.bedStatus = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.accountStatus = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.pendingLocation = PL.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.priorTemporaryLocation = PL.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.admitDateTime = TS.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addDischargeDateTime(TS.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.currentPatientBalance = NM.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.totalCharges = NM.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.totalAdjustments = NM.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.totalPayments = NM.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.alternateVisitID = CX.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.visitIndicator = CWE.parsePiped(parser, line, start, c, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        while (start < stop) {
-            final int next = getNext(line, start, r, stop);
-            addOtherHealthcareProvider(XCN.parsePiped(parser, line, start, c, next));
-            start = next + 1;
-        }
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
-        }
-        this.serviceEpisodeDescription = getToken(line, start, stop);
-        
-        start = stop + 1;
-        stop = getNext(line, start, f);
-        if (stop < start) {
-            return;
+        int start = fieldStart;
+        switch (i) {
+            case 1:
+                this.setIDPV1 = SI.parsePiped(parser, line, start, c, stop);
+                break;
+            case 2:
+                this.patientClass = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 3:
+                this.assignedPatientLocation = PL.parsePiped(parser, line, start, c, stop);
+                break;
+            case 4:
+                this.admissionType = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 5:
+                this.preadmitNumber = CX.parsePiped(parser, line, start, c, stop);
+                break;
+            case 6:
+                this.priorPatientLocation = PL.parsePiped(parser, line, start, c, stop);
+                break;
+            case 7:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addAttendingDoctor(XCN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 8:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addReferringDoctor(XCN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 9:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addConsultingDoctor(XCN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 10:
+                this.hospitalService = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 11:
+                this.temporaryLocation = PL.parsePiped(parser, line, start, c, stop);
+                break;
+            case 12:
+                this.preadmitTestIndicator = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 13:
+                this.reAdmissionIndicator = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 14:
+                this.admitSource = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 15:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addAmbulatoryStatus(CWE.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 16:
+                this.vipIndicator = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 17:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addAdmittingDoctor(XCN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 18:
+                this.patientType = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 19:
+                this.visitNumber = CX.parsePiped(parser, line, start, c, stop);
+                break;
+            case 20:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addFinancialClass(FC.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 21:
+                this.chargePriceIndicator = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 22:
+                this.courtesyCode = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 23:
+                this.creditRating = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 24:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addContractCode(CWE.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 25:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addContractEffectiveDate(DT.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 26:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addContractAmount(NM.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 27:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addContractPeriod(NM.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 28:
+                this.interestCode = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 29:
+                this.transferToBadDebtCode = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 30:
+                this.transferToBadDebtDate = DT.parsePiped(parser, line, start, c, stop);
+                break;
+            case 31:
+                this.badDebtAgencyCode = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 32:
+                this.badDebtTransferAmount = NM.parsePiped(parser, line, start, c, stop);
+                break;
+            case 33:
+                this.badDebtRecoveryAmount = NM.parsePiped(parser, line, start, c, stop);
+                break;
+            case 34:
+                this.deleteAccountIndicator = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 35:
+                this.deleteAccountDate = DT.parsePiped(parser, line, start, c, stop);
+                break;
+            case 36:
+                this.dischargeDisposition = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 37:
+                this.dischargedToLocation = DLD.parsePiped(parser, line, start, c, stop);
+                break;
+            case 38:
+                this.dietType = CE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 39:
+                this.servicingFacility = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 40:
+                this.bedStatus = getToken(line, start, stop);
+                break;
+            case 41:
+                this.accountStatus = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 42:
+                this.pendingLocation = PL.parsePiped(parser, line, start, c, stop);
+                break;
+            case 43:
+                this.priorTemporaryLocation = PL.parsePiped(parser, line, start, c, stop);
+                break;
+            case 44:
+                this.admitDateTime = TS.parsePiped(parser, line, start, c, stop);
+                break;
+            case 45:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addDischargeDateTime(TS.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 46:
+                this.currentPatientBalance = NM.parsePiped(parser, line, start, c, stop);
+                break;
+            case 47:
+                this.totalCharges = NM.parsePiped(parser, line, start, c, stop);
+                break;
+            case 48:
+                this.totalAdjustments = NM.parsePiped(parser, line, start, c, stop);
+                break;
+            case 49:
+                this.totalPayments = NM.parsePiped(parser, line, start, c, stop);
+                break;
+            case 50:
+                this.alternateVisitID = CX.parsePiped(parser, line, start, c, stop);
+                break;
+            case 51:
+                this.visitIndicator = CWE.parsePiped(parser, line, start, c, stop);
+                break;
+            case 52:
+                while (start < stop) {
+                    final int next = getNext(line, start, r, stop);
+                    addOtherHealthcareProvider(XCN.parsePiped(parser, line, start, c, next));
+                    start = next + 1;
+                }
+                break;
+            case 53:
+                this.serviceEpisodeDescription = getToken(line, start, stop);
+                break;
+            case 54:
+                this.serviceEpisodeIdentifier = CX.parsePiped(parser, line, start, c, stop);
+                break;
         }
-        this.serviceEpisodeIdentifier = CX.parsePiped(parser, line, start, c, stop);
-        
-        assertLast(line, stop + 1, f, line.length());
     }
     
     @Override
@@ -804,6 +599,7 @@ public class PV1 extends HL7Segment {
      **/
     @Override
     public Object get(final int i) {
+        decode(i);
         switch (i) {
             case 1:
                 return this.setIDPV1;
@@ -923,6 +719,7 @@ public class PV1 extends HL7Segment {
      * @return the account status
      **/
     public CWE getAccountStatus() {
+        decode(41);
         return this.accountStatus;
     }
     
@@ -932,6 +729,7 @@ public class PV1 extends HL7Segment {
      * @return the visit number
      **/
     public CX getVisitNumber() {
+        decode(19);
         return this.visitNumber;
     }
     
@@ -941,6 +739,7 @@ public class PV1 extends HL7Segment {
      * @return the visit indicator
      **/
     public CWE getVisitIndicator() {
+        decode(51);
         return this.visitIndicator;
     }
     
@@ -950,6 +749,7 @@ public class PV1 extends HL7Segment {
      * @return the VIP indicator
      **/
     public CWE getVipIndicator() {
+        decode(16);
         return this.vipIndicator;
     }
     
@@ -959,6 +759,7 @@ public class PV1 extends HL7Segment {
      * @return the transfer to bad debt date
      **/
     public DT getTransferToBadDebtDate() {
+        decode(30);
         return this.transferToBadDebtDate;
     }
     
@@ -968,6 +769,7 @@ public class PV1 extends HL7Segment {
      * @return the transfer to bad debt code
      **/
     public CWE getTransferToBadDebtCode() {
+        decode(29);
         return this.transferToBadDebtCode;
     }
     
@@ -977,6 +779,7 @@ public class PV1 extends HL7Segment {
      * @return the total payments
      **/
     public NM getTotalPayments() {
+        decode(49);
         return this.totalPayments;
     }
     
@@ -986,6 +789,7 @@ public class PV1 extends HL7Segment {
      * @return the total charges
      **/
     public NM getTotalCharges() {
+        decode(47);
         return this.totalCharges;
     }
     
@@ -995,6 +799,7 @@ public class PV1 extends HL7Segment {
      * @return the total adjustments
      **/
     public NM getTotalAdjustments() {
+        decode(48);
         return this.totalAdjustments;
     }
     
@@ -1004,6 +809,7 @@ public class PV1 extends HL7Segment {
      * @return the temporary location
      **/
     public PL getTemporaryLocation() {
+        decode(11);
         return this.temporaryLocation;
     }
     
@@ -1013,6 +819,7 @@ public class PV1 extends HL7Segment {
      * @return the set ID PV1
      **/
     public SI getSetIDPV1() {
+        decode(1);
         return this.setIDPV1;
     }
     
@@ -1022,6 +829,7 @@ public class PV1 extends HL7Segment {
      * @return the servicing facility
      **/
     public CWE getServicingFacility() {
+        decode(39);
         return this.servicingFacility;
     }
     
@@ -1031,6 +839,7 @@ public class PV1 extends HL7Segment {
      * @return the referring doctor
      **/
     public List<XCN> getReferringDoctor() {
+        decode(8);
         return this.referringDoctor;
     }
     
@@ -1040,6 +849,7 @@ public class PV1 extends HL7Segment {
      * @return the re-admission indicator
      **/
     public CWE getReAdmissionIndicator() {
+        decode(13);
         return this.reAdmissionIndicator;
     }
     
@@ -1049,6 +859,7 @@ public class PV1 extends HL7Segment {
      * @return the prior temporary location
      **/
     public PL getPriorTemporaryLocation() {
+        decode(43);
         return this.priorTemporaryLocation;
     }
     
@@ -1058,6 +869,7 @@ public class PV1 extends HL7Segment {
      * @return the prior patient location
      **/
     public PL getPriorPatientLocation() {
+        decode(6);
         return this.priorPatientLocation;
     }
     
@@ -1067,6 +879,7 @@ public class PV1 extends HL7Segment {
      * @return the preadmit test indicator
      **/
     public CWE getPreadmitTestIndicator() {
+        decode(12);
         return this.preadmitTestIndicator;
     }
     
@@ -1076,6 +889,7 @@ public class PV1 extends HL7Segment {
      * @return the preadmit number
      **/
     public CX getPreadmitNumber() {
+        decode(5);
         return this.preadmitNumber;
     }
     
@@ -1085,6 +899,7 @@ public class PV1 extends HL7Segment {
      * @return the pending location
      **/
     public PL getPendingLocation() {
+        decode(42);
         return this.pendingLocation;
     }
     
@@ -1094,6 +909,7 @@ public class PV1 extends HL7Segment {
      * @return the patient type
      **/
     public CWE getPatientType() {
+        decode(18);
         return this.patientType;
     }
     
@@ -1103,6 +919,7 @@ public class PV1 extends HL7Segment {
      * @return the patient class
      **/
     public CWE getPatientClass() {
+        decode(2);
         return this.patientClass;
     }
     
@@ -1112,6 +929,7 @@ public class PV1 extends HL7Segment {
      * @return the other healthcare provider
      **/
     public List<XCN> getOtherHealthcareProvider() {
+        decode(52);
         return this.otherHealthcareProvider;
     }
     
@@ -1121,6 +939,7 @@ public class PV1 extends HL7Segment {
      * @return the interest code
      **/
     public CWE getInterestCode() {
+        decode(28);
         return this.interestCode;
     }
     
@@ -1130,6 +949,7 @@ public class PV1 extends HL7Segment {
      * @return the hospital service
      **/
     public CWE getHospitalService() {
+        decode(10);
         return this.hospitalService;
     }
     
@@ -1139,6 +959,7 @@ public class PV1 extends HL7Segment {
      * @return the financial class
      **/
     public List<FC> getFinancialClass() {
+        decode(20);
         return this.financialClass;
     }
     
@@ -1148,6 +969,7 @@ public class PV1 extends HL7Segment {
      * @return the discharged to location
      **/
     public DLD getDischargedToLocation() {
+        decode(37);
         return this.dischargedToLocation;
     }
     
@@ -1157,6 +979,7 @@ public class PV1 extends HL7Segment {
      * @return the discharge disposition
      **/
     public CWE getDischargeDisposition() {
+        decode(36);
         return this.dischargeDisposition;
     }
     
@@ -1166,6 +989,7 @@ public class PV1 extends HL7Segment {
      * @return the discharge date/time
      **/
     public List<TS> getDischargeDateTime() {
+        decode(45);
         return this.dischargeDateTime;
     }
     
@@ -1175,6 +999,7 @@ public class PV1 extends HL7Segment {
      * @return the diet type
      **/
     public CE getDietType() {
+        decode(38);
         return this.dietType;
     }
     
@@ -1184,6 +1009,7 @@ public class PV1 extends HL7Segment {
      * @return the delete account indicator
      **/
     public CWE getDeleteAccountIndicator() {
+        decode(34);
         return this.deleteAccountIndicator;
     }
     
@@ -1193,6 +1019,7 @@ public class PV1 extends HL7Segment {
      * @return the delete account date
      **/
     public DT getDeleteAccountDate() {
+        decode(35);
         return this.deleteAccountDate;
     }
     
@@ -1202,6 +1029,7 @@ public class PV1 extends HL7Segment {
      * @return the current patient balance
      **/
     public NM getCurrentPatientBalance() {
+        decode(46);
         return this.currentPatientBalance;
     }
     
@@ -1211,6 +1039,7 @@ public class PV1 extends HL7Segment {
      * @return the credit rating
      **/
     public CWE getCreditRating() {
+        decode(23);
         return this.creditRating;
     }
     
@@ -1220,6 +1049,7 @@ public class PV1 extends HL7Segment {
      * @return the courtesy code
      **/
     public CWE getCourtesyCode() {
+        decode(22);
         return this.courtesyCode;
     }
     
@@ -1229,6 +1059,7 @@ public class PV1 extends HL7Segment {
      * @return the contract period
      **/
     public List<NM> getContractPeriod() {
+        decode(27);
         return this.contractPeriod;
     }
     
@@ -1238,6 +1069,7 @@ public class PV1 extends HL7Segment {
      * @return the contract effective date
      **/
     public List<DT> getContractEffectiveDate() {
+        decode(25);
         return this.contractEffectiveDate;
     }
     
@@ -1247,6 +1079,7 @@ public class PV1 extends HL7Segment {
      * @return the contract code
      **/
     public List<CWE> getContractCode() {
+        decode(24);
         return this.contractCode;
     }
     
@@ -1256,6 +1089,7 @@ public class PV1 extends HL7Segment {
      * @return the contract amount
      **/
     public List<NM> getContractAmount() {
+        decode(26);
         return this.contractAmount;
     }
     
@@ -1265,6 +1099,7 @@ public class PV1 extends HL7Segment {
      * @return the consulting doctor
      **/
     public List<XCN> getConsultingDoctor() {
+        decode(9);
         return this.consultingDoctor;
     }
     
@@ -1274,6 +1109,7 @@ public class PV1 extends HL7Segment {
      * @return the charge price indicator
      **/
     public CWE getChargePriceIndicator() {
+        decode(21);
         return this.chargePriceIndicator;
     }
     
@@ -1283,6 +1119,7 @@ public class PV1 extends HL7Segment {
      * @return the bed status
      **/
     public String getBedStatus() {
+        decode(40);
         return this.bedStatus;
     }
     
@@ -1292,6 +1129,7 @@ public class PV1 extends HL7Segment {
      * @return the bad debt transfer amount
      **/
     public NM getBadDebtTransferAmount() {
+        decode(32);
         return this.badDebtTransferAmount;
     }
     
@@ -1301,6 +1139,7 @@ public class PV1 extends HL7Segment {
      * @return the bad debt recovery amount
      **/
     public NM getBadDebtRecoveryAmount() {
+        decode(33);
         return this.badDebtRecoveryAmount;
     }
     
@@ -1310,6 +1149,7 @@ public class PV1 extends HL7Segment {
      * @return the bad debt agency code
      **/
     public CWE getBadDebtAgencyCode() {
+        decode(31);
         return this.badDebtAgencyCode;
     }
     
@@ -1319,6 +1159,7 @@ public class PV1 extends HL7Segment {
      * @return the attending doctor
      **/
     public List<XCN> getAttendingDoctor() {
+        decode(7);
         return this.attendingDoctor;
     }
     
@@ -1328,6 +1169,7 @@ public class PV1 extends HL7Segment {
      * @return the assigned patient location
      **/
     public PL getAssignedPatientLocation() {
+        decode(3);
         return this.assignedPatientLocation;
     }
     
@@ -1337,6 +1179,7 @@ public class PV1 extends HL7Segment {
      * @return the ambulatory status
      **/
     public List<CWE> getAmbulatoryStatus() {
+        decode(15);
         return this.ambulatoryStatus;
     }
     
@@ -1346,6 +1189,7 @@ public class PV1 extends HL7Segment {
      * @return the alternate visit ID
      **/
     public CX getAlternateVisitID() {
+        decode(50);
         return this.alternateVisitID;
     }
     
@@ -1355,6 +1199,7 @@ public class PV1 extends HL7Segment {
      * @return the admitting doctor
      **/
     public List<XCN> getAdmittingDoctor() {
+        decode(17);
         return this.admittingDoctor;
     }
     
@@ -1364,6 +1209,7 @@ public class PV1 extends HL7Segment {
      * @return the admit source
      **/
     public CWE getAdmitSource() {
+        decode(14);
         return this.admitSource;
     }
     
@@ -1373,6 +1219,7 @@ public class PV1 extends HL7Segment {
      * @return the admit date/time
      **/
     public TS getAdmitDateTime() {
+        decode(44);
         return this.admitDateTime;
     }
     
@@ -1382,6 +1229,7 @@ public class PV1 extends HL7Segment {
      * @return the admission type
      **/
     public CWE getAdmissionType() {
+        decode(4);
         return this.admissionType;
     }
     
@@ -1391,6 +1239,7 @@ public class PV1 extends HL7Segment {
      * @return the service episode description
      **/
     public String getServiceEpisodeDescription() {
+        decode(53);
         return this.serviceEpisodeDescription;
     }
     
@@ -1400,6 +1249,7 @@ public class PV1 extends HL7Segment {
      * @return the service episode identifier
      **/
     public CX getServiceEpisodeIdentifier() {
+        decode(54);
         return this.serviceEpisodeIdentifier;
     }
     
@@ -1409,6 +1259,7 @@ public class PV1 extends HL7Segment {
      * @param accountStatus the new account status
      **/
     public void setAccountStatus(final CWE accountStatus) {
+        discardRaw(41);
         this.accountStatus = accountStatus;
     }
     
@@ -1418,6 +1269,7 @@ public class PV1 extends HL7Segment {
      * @param visitNumber the new visit number
      **/
     public void setVisitNumber(final CX visitNumber) {
+        discardRaw(19);
         this.visitNumber = visitNumber;
     }
     
@@ -1427,6 +1279,7 @@ public class PV1 extends HL7Segment {
      * @param visitIndicator the new visit indicator
      **/
     public void setVisitIndicator(final CWE visitIndicator) {
+        discardRaw(51);
         this.visitIndicator = visitIndicator;
     }
     
@@ -1436,6 +1289,7 @@ public class PV1 extends HL7Segment {
      * @param vipIndicator the new VIP indicator
      **/
     public void setVipIndicator(final CWE vipIndicator) {
+        discardRaw(16);
         this.vipIndicator = vipIndicator;
     }
     
@@ -1445,6 +1299,7 @@ public class PV1 extends HL7Segment {
      * @param transferToBadDebtDate the new transfer to bad debt date
      **/
     public void setTransferToBadDebtDate(final DT transferToBadDebtDate) {
+        discardRaw(30);
         this.transferToBadDebtDate = transferToBadDebtDate;
     }
     
@@ -1454,6 +1309,7 @@ public class PV1 extends HL7Segment {
      * @param transferToBadDebtCode the new transfer to bad debt code
      **/
     public void setTransferToBadDebtCode(final CWE transferToBadDebtCode) {
+        discardRaw(29);
         this.transferToBadDebtCode = transferToBadDebtCode;
     }
     
@@ -1463,6 +1319,7 @@ public class PV1 extends HL7Segment {
      * @param totalPayments the new total payments
      **/
     public void setTotalPayments(final NM totalPayments) {
+        discardRaw(49);
         this.totalPayments = totalPayments;
     }
     
@@ -1472,6 +1329,7 @@ public class PV1 extends HL7Segment {
      * @param totalCharges the new total charges
      **/
     public void setTotalCharges(final NM totalCharges) {
+        discardRaw(47);
         this.totalCharges = totalCharges;
     }
     
@@ -1481,6 +1339,7 @@ public class PV1 extends HL7Segment {
      * @param totalAdjustments the new total adjustments
      **/
     public void setTotalAdjustments(final NM totalAdjustments) {
+        discardRaw(48);
         this.totalAdjustments = totalAdjustments;
     }
     
@@ -1490,6 +1349,7 @@ public class PV1 extends HL7Segment {
      * @param temporaryLocation the new temporary location
      **/
     public void setTemporaryLocation(final PL temporaryLocation) {
+        discardRaw(11);
         this.temporaryLocation = temporaryLocation;
     }
     
@@ -1499,6 +1359,7 @@ public class PV1 extends HL7Segment {
      * @param setIDPV1 the new set ID PV1
      **/
     public void setSetIDPV1(final SI setIDPV1) {
+        discardRaw(1);
         this.setIDPV1 = setIDPV1;
     }
     
@@ -1508,6 +1369,7 @@ public class PV1 extends HL7Segment {
      * @param servicingFacility the new servicing facility
      **/
     public void setServicingFacility(final CWE servicingFacility) {
+        discardRaw(39);
         this.servicingFacility = servicingFacility;
     }
     
@@ -1517,6 +1379,7 @@ public class PV1 extends HL7Segment {
      * @param referringDoctor the new referring doctor
      **/
     public void setReferringDoctor(final List<XCN> referringDoctor) {
+        discardRaw(8);
         this.referringDoctor = referringDoctor;
     }
     
@@ -1527,6 +1390,7 @@ public class PV1 extends HL7Segment {
      * @return the new referring doctor
      **/
     public XCN addReferringDoctor(final XCN referringDoctor) {
+        decode(8);
         this.referringDoctor = Util.add(this.referringDoctor, referringDoctor);
         return referringDoctor;
     }
@@ -1537,6 +1401,7 @@ public class PV1 extends HL7Segment {
      * @param reAdmissionIndicator the new re-admission indicator
      **/
     public void setReAdmissionIndicator(final CWE reAdmissionIndicator) {
+        discardRaw(13);
         this.reAdmissionIndicator = reAdmissionIndicator;
     }
     
@@ -1546,6 +1411,7 @@ public class PV1 extends HL7Segment {
      * @param priorTemporaryLocation the new prior temporary location
      **/
     public void setPriorTemporaryLocation(final PL priorTemporaryLocation) {
+        discardRaw(43);
         this.priorTemporaryLocation = priorTemporaryLocation;
     }
     
@@ -1555,6 +1421,7 @@ public class PV1 extends HL7Segment {
      * @param priorPatientLocation the new prior patient location
      **/
     public void setPriorPatientLocation(final PL priorPatientLocation) {
+        discardRaw(6);
         this.priorPatientLocation = priorPatientLocation;
     }
     
@@ -1564,6 +1431,7 @@ public class PV1 extends HL7Segment {
      * @param preadmitTestIndicator the new preadmit test indicator
      **/
     public void setPreadmitTestIndicator(final CWE preadmitTestIndicator) {
+        discardRaw(12);
         this.preadmitTestIndicator = preadmitTestIndicator;
     }
     
@@ -1573,6 +1441,7 @@ public class PV1 extends HL7Segment {
      * @param preadmitNumber the new preadmit number
      **/
     public void setPreadmitNumber(final CX preadmitNumber) {
+        discardRaw(5);
         this.preadmitNumber = preadmitNumber;
     }
     
@@ -1582,6 +1451,7 @@ public class PV1 extends HL7Segment {
      * @param pendingLocation the new pending location
      **/
     public void setPendingLocation(final PL pendingLocation) {
+        discardRaw(42);
         this.pendingLocation = pendingLocation;
     }
     
@@ -1591,6 +1461,7 @@ public class PV1 extends HL7Segment {
      * @param patientType the new patient type
      **/
     public void setPatientType(final CWE patientType) {
+        discardRaw(18);
         this.patientType = patientType;
     }
     
@@ -1600,6 +1471,7 @@ public class PV1 extends HL7Segment {
      * @param patientClass the new patient class
      **/
     public void setPatientClass(final CWE patientClass) {
+        discardRaw(2);
         this.patientClass = patientClass;
     }
     
@@ -1609,6 +1481,7 @@ public class PV1 extends HL7Segment {
      * @param otherHealthcareProvider the new other healthcare provider
      **/
     public void setOtherHealthcareProvider(final List<XCN> otherHealthcareProvider) {
+        discardRaw(52);
         this.otherHealthcareProvider = otherHealthcareProvider;
     }
     
@@ -1619,6 +1492,7 @@ public class PV1 extends HL7Segment {
      * @return the new other healthcare provider
      **/
     public XCN addOtherHealthcareProvider(final XCN otherHealthcareProvider) {
+        decode(52);
         this.otherHealthcareProvider = Util.add(this.otherHealthcareProvider, otherHealthcareProvider);
         return otherHealthcareProvider;
     }
@@ -1629,6 +1503,7 @@ public class PV1 extends HL7Segment {
      * @param interestCode the new interest code
      **/
     public void setInterestCode(final CWE interestCode) {
+        discardRaw(28);
         this.interestCode = interestCode;
     }
     
@@ -1638,6 +1513,7 @@ public class PV1 extends HL7Segment {
      * @param hospitalService the new hospital service
      **/
     public void setHospitalService(final CWE hospitalService) {
+        discardRaw(10);
         this.hospitalService = hospitalService;
     }
     
@@ -1647,6 +1523,7 @@ public class PV1 extends HL7Segment {
      * @param financialClass the new financial class
      **/
     public void setFinancialClass(final List<FC> financialClass) {
+        discardRaw(20);
         this.financialClass = financialClass;
     }
     
@@ -1657,6 +1534,7 @@ public class PV1 extends HL7Segment {
      * @return the new financial class
      **/
     public FC addFinancialClass(final FC financialClass) {
+        decode(20);
         this.financialClass = Util.add(this.financialClass, financialClass);
         return financialClass;
     }
@@ -1667,6 +1545,7 @@ public class PV1 extends HL7Segment {
      * @param dischargedToLocation the new discharged to location
      **/
     public void setDischargedToLocation(final DLD dischargedToLocation) {
+        discardRaw(37);
         this.dischargedToLocation = dischargedToLocation;
     }
     
@@ -1676,6 +1555,7 @@ public class PV1 extends HL7Segment {
      * @param dischargeDisposition the new discharge disposition
      **/
     public void setDischargeDisposition(final CWE dischargeDisposition) {
+        discardRaw(36);
         this.dischargeDisposition = dischargeDisposition;
     }
     
@@ -1685,6 +1565,7 @@ public class PV1 extends HL7Segment {
      * @param dischargeDateTime the new discharge date/time
      **/
     public void setDischargeDateTime(final List<TS> dischargeDateTime) {
+        discardRaw(45);
         this.dischargeDateTime = dischargeDateTime;
     }
     
@@ -1695,6 +1576,7 @@ public class PV1 extends HL7Segment {
      * @return the new discharge date/time
      **/
     public TS addDischargeDateTime(final TS dischargeDateTime) {
+        decode(45);
         this.dischargeDateTime = Util.add(this.dischargeDateTime, dischargeDateTime);
         return dischargeDateTime;
     }
@@ -1705,6 +1587,7 @@ public class PV1 extends HL7Segment {
      * @param dietType the new diet type
      **/
     public void setDietType(final CE dietType) {
+        discardRaw(38);
         this.dietType = dietType;
     }
     
@@ -1714,6 +1597,7 @@ public class PV1 extends HL7Segment {
      * @param deleteAccountIndicator the new delete account indicator
      **/
     public void setDeleteAccountIndicator(final CWE deleteAccountIndicator) {
+        discardRaw(34);
         this.deleteAccountIndicator = deleteAccountIndicator;
     }
     
@@ -1723,6 +1607,7 @@ public class PV1 extends HL7Segment {
      * @param deleteAccountDate the new delete account date
      **/
     public void setDeleteAccountDate(final DT deleteAccountDate) {
+        discardRaw(35);
         this.deleteAccountDate = deleteAccountDate;
     }
     
@@ -1732,6 +1617,7 @@ public class PV1 extends HL7Segment {
      * @param currentPatientBalance the new current patient balance
      **/
     public void setCurrentPatientBalance(final NM currentPatientBalance) {
+        discardRaw(46);
         this.currentPatientBalance = currentPatientBalance;
     }
     
@@ -1741,6 +1627,7 @@ public class PV1 extends HL7Segment {
      * @param creditRating the new credit rating
      **/
     public void setCreditRating(final CWE creditRating) {
+        discardRaw(23);
         this.creditRating = creditRating;
     }
     
@@ -1750,6 +1637,7 @@ public class PV1 extends HL7Segment {
      * @param courtesyCode the new courtesy code
      **/
     public void setCourtesyCode(final CWE courtesyCode) {
+        discardRaw(22);
         this.courtesyCode = courtesyCode;
     }
     
@@ -1759,6 +1647,7 @@ public class PV1 extends HL7Segment {
      * @param contractPeriod the new contract period
      **/
     public void setContractPeriod(final List<NM> contractPeriod) {
+        discardRaw(27);
         this.contractPeriod = contractPeriod;
     }
     
@@ -1769,6 +1658,7 @@ public class PV1 extends HL7Segment {
      * @return the new contract period
      **/
     public NM addContractPeriod(final NM contractPeriod) {
+        decode(27);
         this.contractPeriod = Util.add(this.contractPeriod, contractPeriod);
         return contractPeriod;
     }
@@ -1779,6 +1669,7 @@ public class PV1 extends HL7Segment {
      * @param contractEffectiveDate the new contract effective date
      **/
     public void setContractEffectiveDate(final List<DT> contractEffectiveDate) {
+        discardRaw(25);
         this.contractEffectiveDate = contractEffectiveDate;
     }
     
@@ -1789,6 +1680,7 @@ public class PV1 extends HL7Segment {
      * @return the new contract effective date
      **/
     public DT addContractEffectiveDate(final DT contractEffectiveDate) {
+        decode(25);
         this.contractEffectiveDate = Util.add(this.contractEffectiveDate, contractEffectiveDate);
         return contractEffectiveDate;
     }
@@ -1799,6 +1691,7 @@ public class PV1 extends HL7Segment {
      * @param contractCode the new contract code
      **/
     public void setContractCodeCE(final List<CWE> contractCode) {
+        discardRaw(24);
         this.contractCode = contractCode;
     }
     
@@ -1809,6 +1702,7 @@ public class PV1 extends HL7Segment {
      * @return the new contract code
      **/
     public CWE addContractCode(final CWE contractCode) {
+        decode(24);
         this.contractCode = Util.add(this.contractCode, contractCode);
         return contractCode;
     }
@@ -1819,6 +1713,7 @@ public class PV1 extends HL7Segment {
      * @param contractAmount the new contract amount
      **/
     public void setContractAmount(final List<NM> contractAmount) {
+        discardRaw(26);
         this.contractAmount = contractAmount;
     }
     
@@ -1829,6 +1724,7 @@ public class PV1 extends HL7Segment {
      * @return the new contract amount
      **/
     public NM addContractAmount(final NM contractAmount) {
+        decode(26);
         this.contractAmount = Util.add(this.contractAmount, contractAmount);
         return contractAmount;
     }
@@ -1839,6 +1735,7 @@ public class PV1 extends HL7Segment {
      * @param consultingDoctor the new consulting doctor
      **/
     public void setConsultingDoctor(final List<XCN> consultingDoctor) {
+        discardRaw(9);
         this.consultingDoctor = consultingDoctor;
     }
     
@@ -1849,6 +1746,7 @@ public class PV1 extends HL7Segment {
      * @return the new consulting doctor
      **/
     public XCN addConsultingDoctor(final XCN consultingDoctor) {
+        decode(9);
         this.consultingDoctor = Util.add(this.consultingDoctor, consultingDoctor);
         return consultingDoctor;
     }
@@ -1859,6 +1757,7 @@ public class PV1 extends HL7Segment {
      * @param chargePriceIndicator the new charge price indicator
      **/
     public void setChargePriceIndicator(final CWE chargePriceIndicator) {
+        discardRaw(21);
         this.chargePriceIndicator = chargePriceIndicator;
     }
     
@@ -1868,6 +1767,7 @@ public class PV1 extends HL7Segment {
      * @param bedStatus the new bed status
      **/
     public void setBedStatus(final String bedStatus) {
+        discardRaw(40);
         this.bedStatus = bedStatus;
     }
     
@@ -1877,6 +1777,7 @@ public class PV1 extends HL7Segment {
      * @param badDebtTransferAmount the new bad debt transfer amount
      **/
     public void setBadDebtTransferAmount(final NM badDebtTransferAmount) {
+        discardRaw(32);
         this.badDebtTransferAmount = badDebtTransferAmount;
     }
     
@@ -1886,6 +1787,7 @@ public class PV1 extends HL7Segment {
      * @param badDebtRecoveryAmount the new bad debt recovery amount
      **/
     public void setBadDebtRecoveryAmount(final NM badDebtRecoveryAmount) {
+        discardRaw(33);
         this.badDebtRecoveryAmount = badDebtRecoveryAmount;
     }
     
@@ -1895,6 +1797,7 @@ public class PV1 extends HL7Segment {
      * @param badDebtAgencyCode the new bad debt agency code
      **/
     public void setBadDebtAgencyCode(final CWE badDebtAgencyCode) {
+        discardRaw(31);
         this.badDebtAgencyCode = badDebtAgencyCode;
     }
     
@@ -1904,6 +1807,7 @@ public class PV1 extends HL7Segment {
      * @param attendingDoctor the new attending doctor
      **/
     public void setAttendingDoctor(final List<XCN> attendingDoctor) {
+        discardRaw(7);
         this.attendingDoctor = attendingDoctor;
     }
     
@@ -1914,6 +1818,7 @@ public class PV1 extends HL7Segment {
      * @return the new attending doctor
      **/
     public XCN addAttendingDoctor(final XCN attendingDoctor) {
+        decode(7);
         this.attendingDoctor = Util.add(this.attendingDoctor, attendingDoctor);
         return attendingDoctor;
     }
@@ -1924,6 +1829,7 @@ public class PV1 extends HL7Segment {
      * @param assignedPatientLocation the new assigned patient location
      **/
     public void setAssignedPatientLocation(final PL assignedPatientLocation) {
+        discardRaw(3);
         this.assignedPatientLocation = assignedPatientLocation;
     }
     
@@ -1933,6 +1839,7 @@ public class PV1 extends HL7Segment {
      * @param ambulatoryStatus the new ambulatory status
      **/
     public void setAmbulatoryStatusCE(final List<CWE> ambulatoryStatus) {
+        discardRaw(15);
         this.ambulatoryStatus = ambulatoryStatus;
     }
     
@@ -1943,6 +1850,7 @@ public class PV1 extends HL7Segment {
      * @return the new ambulatory status
      **/
     public CWE addAmbulatoryStatus(final CWE ambulatoryStatus) {
+        decode(15);
         this.ambulatoryStatus = Util.add(this.ambulatoryStatus, ambulatoryStatus);
         return ambulatoryStatus;
     }
@@ -1953,6 +1861,7 @@ public class PV1 extends HL7Segment {
      * @param alternateVisitID the new alternate visit ID
      **/
     public void setAlternateVisitID(final CX alternateVisitID) {
+        discardRaw(50);
         this.alternateVisitID = alternateVisitID;
     }
     
@@ -1962,6 +1871,7 @@ public class PV1 extends HL7Segment {
      * @param admittingDoctor the new admitting doctor
      **/
     public void setAdmittingDoctor(final List<XCN> admittingDoctor) {
+        discardRaw(17);
         this.admittingDoctor = admittingDoctor;
     }
     
@@ -1972,6 +1882,7 @@ public class PV1 extends HL7Segment {
      * @return the new admitting doctor
      **/
     public XCN addAdmittingDoctor(final XCN admittingDoctor) {
+        decode(17);
         this.admittingDoctor = Util.add(this.admittingDoctor, admittingDoctor);
         return admittingDoctor;
     }
@@ -1982,6 +1893,7 @@ public class PV1 extends HL7Segment {
      * @param admitSource the new admit source
      **/
     public void setAdmitSource(final CWE admitSource) {
+        discardRaw(14);
         this.admitSource = admitSource;
     }
     
@@ -1991,6 +1903,7 @@ public class PV1 extends HL7Segment {
      * @param admitDateTime the new admit date/time
      **/
     public void setAdmitDateTime(final TS admitDateTime) {
+        discardRaw(44);
         this.admitDateTime = admitDateTime;
     }
     
@@ -2000,6 +1913,7 @@ public class PV1 extends HL7Segment {
      * @param admissionType the new admission type
      **/
     public void setAdmissionType(final CWE admissionType) {
+        discardRaw(4);
         this.admissionType = admissionType;
     }
     
@@ -2009,6 +1923,7 @@ public class PV1 extends HL7Segment {
      * @param serviceEpisodeDescription the new service episode description
      **/
     public void setServiceEpisodeDescription(final String serviceEpisodeDescription) {
+        discardRaw(53);
         this.serviceEpisodeDescription = serviceEpisodeDescription;
     }
     
@@ -2018,6 +1933,7 @@ public class PV1 extends HL7Segment {
      * @param serviceEpisodeIdentifier the new service episode identifier
      **/
     public void setServiceEpisodeIdentifier(final CX serviceEpisodeIdentifier) {
+        discardRaw(54);
         this.serviceEpisodeIdentifier = serviceEpisodeIdentifier;
     }
     
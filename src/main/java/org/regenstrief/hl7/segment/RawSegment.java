@@ -0,0 +1,350 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.segment;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.regenstrief.hl7.HL7Data;
+import org.regenstrief.hl7.HL7Delimiters;
+import org.regenstrief.hl7.HL7Parser;
+import org.regenstrief.hl7.HL7Properties;
+import org.regenstrief.hl7.convert.Escaper;
+import org.regenstrief.hl7.util.HL7ParseException;
+import org.regenstrief.util.CharSlice;
+
+/**
+ * <p>
+ * Title: RawSegment
+ * </p>
+ * <p>
+ * Description: An HL7 segment which has not been parsed into a specific segment class. It is a view of a
+ * slice of the char buffer that the SegmentReader filled for the whole message, so reading it doesn't
+ * create a String for the line or any of its components. Components are only converted to Strings when
+ * they are requested, and the specific segment class is only parsed when a typed field is needed.
+ * Serializing an unmodified RawSegment just writes the original slice.
+ * A SegmentReader in zero-copy mode returns header segments like MSH already typed, but every other segment,
+ * including PID, is a RawSegment, so code that casts to a specific segment class should call getTyped first.
+ * </p>
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * <p>
+ * Company: Regenstrief Institute
+ * </p>
+ *
+ * @author Andrew Martin
+ * @version 1.0
+ */
+public class RawSegment extends HL7Segment {
+    
+    private final String name;
+    
+    private CharSlice raw = null;
+    
+    private HL7Segment typed = null;
+    
+    // Captured when the slice is assigned; the parser's delimiters can change when it reads the next message
+    private Escaper delimiters = null;
+    
+    private char fieldSeparator = Escaper.DEFAULT_FIELD_SEPARATOR;
+    
+    private char repetitionSeparator = Escaper.DEFAULT_REPETITION_SEPARATOR;
+    
+    private char componentSeparator = Escaper.DEFAULT_COMPONENT_SEPARATOR;
+    
+    private char subcomponentSeparator = Escaper.DEFAULT_SUBCOMPONENT_SEPARATOR;
+    
+    /**
+     * Constructs an empty RawSegment
+     * 
+     * @param prop the HL7Properties
+     * @param name the segment name
+     **/
+    public RawSegment(final HL7Properties prop, final String name) {
+        super(prop);
+        this.name = name;
+    }
+    
+    /**
+     * Constructs a RawSegment for the given slice
+     * 
+     * @param prop the HL7Properties
+     * @param name the segment name
+     * @param raw the slice containing the whole segment, starting with its name
+     **/
+    public RawSegment(final HL7Properties prop, final String name, final CharSlice raw) {
+        this(prop, name);
+        setRaw(raw);
+    }
+    
+    /**
+     * Retrieves the tag name
+     * 
+     * @return the tag name
+     **/
+    @Override
+    public String getTagName() {
+        return this.name;
+    }
+    
+    @Override
+    public void readPiped(final HL7Parser parser, final String line) {
+        setRaw(new CharSlice(line));
+    }
+    
+    private void setRaw(final CharSlice raw) {
+        this.raw = raw;
+        this.typed = null;
+        final HL7Delimiters d = getDelimiters();
+        this.delimiters = this.parser == null ? null : this.parser.getDelimiterSnapshot();
+        this.fieldSeparator = Escaper.getFieldSeparator(d);
+        this.repetitionSeparator = Escaper.getRepetitionSeparator(d);
+        this.componentSeparator = Escaper.getComponentSeparator(d);
+        this.subcomponentSeparator = Escaper.getSubcomponentSeparator(d);
+    }
+    
+    /**
+     * Retrieves the raw slice containing the whole segment
+     * 
+     * @return the raw slice
+     **/
+    public CharSlice getRaw() {
+        return this.raw;
+    }
+    
+    @Override
+    public void toPiped(final Writer w) throws IOException {
+        if (this.typed != null) {
+            this.typed.toPiped(w);
+        } else if (this.raw != null) {
+            this.raw.writeTo(w);
+            endSegment(w);
+        }
+    }
+    
+    /**
+     * Retrieves whether the specific segment class has been parsed; after that, the typed segment is
+     * serialized instead of the raw slice
+     * 
+     * @return whether the segment has been parsed
+     **/
+    public boolean isParsed() {
+        return this.typed != null;
+    }
+    
+    /**
+     * Parses the specific segment class for this segment with the delimiters captured when it was read;
+     * the result is cached
+     * 
+     * @return the typed segment
+     **/
+    public HL7Segment toSegment() {
+        if (this.typed == null) {
+            final HL7Parser parser = this.parser == null ? new HL7Parser() : this.parser;
+            // The parser might have read another message with different delimiters since this line was read
+            final Escaper old = ((this.delimiters == null) || Escaper.isSame(parser, this.delimiters)) ? null
+                    : swapDelimiters(parser, this.delimiters);
+            try {
+                this.typed = parse(parser);
+            } finally {
+                if (old != null) {
+                    swapDelimiters(parser, old);
+                }
+            }
+        }
+        return this.typed;
+    }
+    
+    private HL7Segment parse(final HL7Parser parser) {
+        final String line = this.raw == null ? this.name : this.raw.toString();
+        final HL7Data data = parser.getInstance(this.name);
+        HL7Segment seg;
+        if (data instanceof HL7Segment) {
+            seg = (HL7Segment) data;
+            try {
+                if (parser.getLazy()) {
+                    seg.readPipedLazy(parser, line);
+                } else {
+                    seg.readPiped(parser, line);
+                }
+            } catch (final Exception e) {
+                seg = USEG.parsePiped(parser, this.name, line, HL7ParseException.toHL7ParseException(e));
+            }
+        } else {
+            seg = USEG.parsePiped(parser, this.name, line);
+        }
+        return seg;
+    }
+    
+    /**
+     * Retrieves the specific segment class for the given segment, parsing it if it's a RawSegment;
+     * this should be called before casting a segment that might have been read in zero-copy mode
+     * 
+     * @param seg the HL7Segment
+     * @return the typed segment
+     **/
+    public final static HL7Segment getTyped(final HL7Segment seg) {
+        return seg instanceof RawSegment ? ((RawSegment) seg).toSegment() : seg;
+    }
+    
+    /**
+     * Retrieves the raw (still escaped) content of the given field
+     * 
+     * @param fld the 1-based field index
+     * @return the raw field, or null if the segment doesn't have that many fields
+     **/
+    public CharSlice getField(final int fld) {
+        if ((this.raw == null) || (fld < 1)) {
+            return null;
+        }
+        final CharSlice raw = this.raw;
+        final char f = this.fieldSeparator;
+        final boolean msh = MSH.MSH_XML.equals(this.name);
+        int start = raw.indexOf(f, 0);
+        if (start < 0) {
+            return null;
+        } else if (msh && (fld == 1)) {
+            return raw.subSequence(start, start + 1);
+        }
+        for (int i = msh ? 2 : 1; i < fld; i++) {
+            start = raw.indexOf(f, start + 1);
+            if (start < 0) {
+                return null;
+            }
+        }
+        start++;
+        final int stop = raw.indexOf(f, start);
+        return raw.subSequence(start, stop < 0 ? raw.length() : stop);
+    }
+    
+    /**
+     * Retrieves the raw (still escaped) content of the given repetition
+     * 
+     * @param fld the 1-based field index
+     * @param rep the 0-based repetition index
+     * @return the raw repetition
+     **/
+    public CharSlice getRep(final int fld, final int rep) {
+        return nth(getField(fld), this.repetitionSeparator, rep);
+    }
+    
+    /**
+     * Retrieves the raw (still escaped) content of the given component
+     * 
+     * @param fld the 1-based field index
+     * @param rep the 0-based repetition index
+     * @param cmp the 1-based component index
+     * @return the raw component
+     **/
+    public CharSlice getCmp(final int fld, final int rep, final int cmp) {
+        return nth(getRep(fld, rep), this.componentSeparator, cmp - 1);
+    }
+    
+    /**
+     * Retrieves the raw (still escaped) content of the given subcomponent
+     * 
+     * @param fld the 1-based field index
+     * @param rep the 0-based repetition index
+     * @param cmp the 1-based component index
+     * @param sub the 1-based subcomponent index
+     * @return the raw subcomponent
+     **/
+    public CharSlice getRawSub(final int fld, final int rep, final int cmp, final int sub) {
+        return nth(getCmp(fld, rep, cmp), this.subcomponentSeparator, sub - 1);
+    }
+    
+    /**
+     * Retrieves the unescaped value of the given subcomponent; this is the first point at which a String is
+     * created for it
+     * 
+     * @param fld the 1-based field index
+     * @param rep the 0-based repetition index
+     * @param cmp the 1-based component index
+     * @param sub the 1-based subcomponent index
+     * @return the value
+     **/
+    public String getSub(final int fld, final int rep, final int cmp, final int sub) {
+        final CharSlice s = getRawSub(fld, rep, cmp, sub);
+        final int size = s == null ? 0 : s.length();
+        return size == 0 ? null : getToken(s.toString(), 0, size);
+    }
+    
+    private final static CharSlice nth(final CharSlice s, final char delim, final int n) {
+        if ((s == null) || (n < 0)) {
+            return null;
+        }
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            start = s.indexOf(delim, start);
+            if (start < 0) {
+                return null;
+            }
+            start++;
+        }
+        final int stop = s.indexOf(delim, start);
+        return s.subSequence(start, stop < 0 ? s.length() : stop);
+    }
+    
+    /**
+     * Retrieves the typed field at the given index, parsing the segment if needed
+     * 
+     * @param i the index
+     * @return the field
+     **/
+    @Override
+    public Object get(final int i) {
+        return toSegment().get(i);
+    }
+    
+    /**
+     * Modifies the typed field at the given index; the typed segment will be serialized from then on
+     * 
+     * @param i the index
+     * @param o the field
+     **/
+    @Override
+    public void set(final int i, final Object o) {
+        toSegment().set(i, o);
+    }
+    
+    /**
+     * Copies this RawSegment; an unparsed copy shares the same immutable slice
+     * 
+     * @return the copy
+     */
+    @Override
+    public HL7Segment copy() {
+        if (this.typed != null) {
+            return this.typed.copy();
+        }
+        final RawSegment copy = new RawSegment(this.prop, this.name);
+        copy.raw = this.raw;
+        copy.delimiters = this.delimiters;
+        copy.fieldSeparator = this.fieldSeparator;
+        copy.repetitionSeparator = this.repetitionSeparator;
+        copy.componentSeparator = this.componentSeparator;
+        copy.subcomponentSeparator = this.subcomponentSeparator;
+        return copy;
+    }
+    
+    /**
+     * Clears the RawSegment
+     **/
+    @Override
+    public void clear() {
+        super.clear();
+        this.raw = null;
+        this.typed = null;
+    }
+}
@@ -34,6 +34,11 @@ import org.regenstrief.util.Util;
  * HL7 message, preserving the Z-segment that would have previously been discarded by the parser.
  * </p>
  * <p>
+ * Other than MSH, a USEG only records where each field starts and stops in its line when it is read.
+ * A field's repetitions, components, and subcomponents are decoded into UFLD and UCMP objects the first time
+ * the field is accessed, and fields that are never accessed are written back from the original line.
+ * </p>
+ * <p>
  * Copyright: Copyright (c) 2008
  * </p>
  * <p>
@@ -43,7 +48,7 @@ import org.regenstrief.util.Util;
  * @author Andrew Martin
  * @version 1.0
  */
-public class USEG extends HL7Segment {
+public class USEG extends LazySegment {
     
     //private static HL7Parser parser = null;
     
@@ -53,8 +58,12 @@ public class USEG extends HL7Segment {
     
     // Outer List - fields
     // Inner List - repetitions of individual fields
+    // Only holds fields that have been decoded or set; the others are still pending in the line
     private List<List<UFLD>> fld = null;
     
+    // Number of fields read from the line, up to the last one that isn't empty
+    private int numFields = 0;
+    
     protected USEG(final HL7Properties prop) {
         this(prop, "USEG");
     }
@@ -109,44 +118,70 @@ public class USEG extends HL7Segment {
     
     @Override
     public void readPiped(final HL7Parser parser, final String line) {
+        if (isMSH()) {
+            readPipedMSH(parser, line);
+            return;
+        }
+        final char f = parser.getFieldSeparator();
+        int count = 0;
+        for (int i = line.indexOf(f); i >= 0; i = line.indexOf(f, i + 1)) {
+            count++;
+        }
+        readFields(parser, line, count, true);
+        int last = count;
+        while ((last > 0) && !isPending(last)) {
+            last--;
+        }
+        this.numFields = last;
+    }
+    
+    private void readPipedMSH(final HL7Parser parser, final String line) {
         final char f = parser.getFieldSeparator();
         int start = line.indexOf(f) + 1;
         if (start <= 0) {
             return;
         }
-        final int first;
-        final boolean msh = isMSH();
-        if (msh) {
-            first = 2;
-            addSub(1, Character.toString(f));
-        } else {
-            first = 1;
-        }
+        addSub(1, Character.toString(f));
         int stop;
         
         final char r = parser.getRepetitionSeparator();
         final char c = parser.getComponentSeparator();
-        for (int i = first;; i++) {
+        for (int i = 2;; i++) {
             stop = getNext(line, start, f);
             if (stop < start) {
                 return;
             }
-            if (msh && (i == 2)) {
+            if (i == 2) {
                 addSub(2, getRawToken(line, start, stop));
             } else {
-                while (start < stop) {
-                    final int next = getNext(line, start, r, stop);
-                    addFld(i, UFLD.parsePiped(parser, line, start, c, next));
-                    start = next + 1;
-                }
+                readReps(parser, line, i, start, stop, r, c);
             }
             start = stop + 1;
         }
     }
     
+    @Override
+    protected int getNumLazyFields() {
+        return 0; // The number of fields varies, so readPiped is always lazy
+    }
+    
+    @Override
+    protected void readField(final HL7Parser parser, final String line, final int i, final int start, final int stop) {
+        readReps(parser, line, i, start, stop, parser.getRepetitionSeparator(), parser.getComponentSeparator());
+    }
+    
+    private void readReps(final HL7Parser parser, final String line, final int i, int start, final int stop,
+                          final char r, final char c) {
+        while (start < stop) {
+            final int next = getNext(line, start, r, stop);
+            addFld(i, UFLD.parsePiped(parser, line, start, c, next));
+            start = next + 1;
+        }
+    }
+    
     @Override
     public void toPiped(final Writer w) throws IOException {
-        final int size = Util.size(this.fld);
+        final int size = size();
         int last = startSegment(w, this.name);
         final int first;
         if (isMSH()) {
@@ -156,7 +191,8 @@ public class USEG extends HL7Segment {
             first = 1;
         }
         for (int i = first; i <= size; i++) {
-            last = addField(w, this.fld.get(i - 1), last, i);
+            // A pending field is written from the line without being decoded
+            last = addField(w, SFLD.fget(this.fld, i - 1), last, i);
         }
     }
     
@@ -172,6 +208,7 @@ public class USEG extends HL7Segment {
      **/
     @Override
     public List<UFLD> get(final int i) {
+        decode(i);
         return SFLD.fget(this.fld, i - 1);
     }
     
@@ -187,7 +224,7 @@ public class USEG extends HL7Segment {
     }
     
     public int size() {
-        return Util.size(this.fld);
+        return Math.max(this.numFields, Util.size(this.fld));
     }
     
     public UFLD getRep(final int fld, final int rep) {
@@ -237,6 +274,7 @@ public class USEG extends HL7Segment {
      * @param fld the new value of the field
      **/
     public void set(final int i, final List<UFLD> fld) {
+        discardRaw(i);
         this.fld = Util.set(this.fld, i - 1, fld);
     }
     
@@ -258,6 +296,16 @@ public class USEG extends HL7Segment {
         addFld(i, fld);
     }
     
+    /**
+     * Clears the USEG
+     **/
+    @Override
+    public void clear() {
+        super.clear();
+        this.fld = null;
+        this.numFields = 0;
+    }
+    
     /**
      * Retrieves the HL7ParseException that caused a USEG to be created instead of a more specific
      * class
@@ -300,6 +348,13 @@ public class USEG extends HL7Segment {
         return p;
     }
     
+    /**
+     * Converts a segment to a USEG. The segment is written to a line, which the USEG only scans for field boundaries,
+     * so no UFLD or UCMP objects are created for fields that are never accessed.
+     * 
+     * @param segment the HL7Segment
+     * @return the USEG
+     **/
     public final static USEG toUSEG(final HL7Segment segment) {
         if (segment == null) {
             return null;
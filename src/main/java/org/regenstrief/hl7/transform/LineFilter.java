@@ -0,0 +1,223 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.transform;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.regenstrief.hl7.HL7MessageStream;
+import org.regenstrief.hl7.segment.MSH;
+
+/**
+ * LineFilter
+ *
+ * A predicate on the raw text of a segment line, which a SegmentReader evaluates before it creates or parses
+ * a segment object, so rejected segments cost little more than reading their line.
+ * The line has already had its ADD continuations merged. A message-scope filter is only evaluated on MSH and batch envelope
+ * lines, before limitTo and the other filters, so they can't hide an MSH from it;
+ * if it rejects one, the reader skips the rest of that message, up to the next MSH or batch envelope segment.
+ * LineFilters are added to a SegmentReader directly, through HL7Parser.setLineFilters, or by a SegmentFilter
+ * that returns one from getLineFilter. A reader keeps a line only if every filter accepts it.
+ */
+public abstract class LineFilter {
+    
+    private final boolean messageScope;
+    
+    protected LineFilter() {
+        this(false);
+    }
+    
+    /**
+     * Constructs a new LineFilter
+     * 
+     * @param messageScope whether rejecting an MSH line should skip the whole message
+     **/
+    protected LineFilter(final boolean messageScope) {
+        this.messageScope = messageScope;
+    }
+    
+    /**
+     * Retrieves whether the line should be kept
+     * 
+     * @param line the raw segment line, including its name
+     * @param name the segment name
+     * @param fieldSeparator the field separator of the current message
+     * @return whether the line should be kept
+     **/
+    public abstract boolean accept(CharSequence line, String name, char fieldSeparator);
+    
+    /**
+     * Retrieves whether rejecting an MSH line should skip the whole message
+     * 
+     * @return whether this is a message-scope filter
+     **/
+    public final boolean isMessageScope() {
+        return this.messageScope;
+    }
+    
+    /**
+     * Creates a LineFilter that only keeps segments with the given names
+     * 
+     * @param names the segment names to keep
+     * @return the LineFilter
+     **/
+    public final static LineFilter keepSegments(final String... names) {
+        return new NameFilter(names, true);
+    }
+    
+    /**
+     * Creates a LineFilter that drops segments with the given names
+     * 
+     * @param names the segment names to drop
+     * @return the LineFilter
+     **/
+    public final static LineFilter dropSegments(final String... names) {
+        return new NameFilter(names, false);
+    }
+    
+    /**
+     * Creates a LineFilter that only keeps lines starting with the given prefix, like PID|1||
+     * 
+     * @param prefix the prefix
+     * @return the LineFilter
+     **/
+    public final static LineFilter keepPrefix(final String prefix) {
+        return new LineFilter() {
+            @Override
+            public final boolean accept(final CharSequence line, final String name, final char fieldSeparator) {
+                return regionMatches(line, 0, prefix);
+            }
+        };
+    }
+    
+    /**
+     * Creates a LineFilter that drops segments with the given name whose field doesn't start with the given prefix;
+     * segments with other names are kept. MSH fields are numbered as in the standard, so MSH-9 is the message type.
+     * 
+     * @param name the segment name
+     * @param field the field number
+     * @param prefix the prefix, like ADT for MSH-9 values like ADT^A01
+     * @return the LineFilter
+     **/
+    public final static LineFilter keepField(final String name, final int field, final String prefix) {
+        return new LineFilter() {
+            @Override
+            public final boolean accept(final CharSequence line, final String segName, final char fieldSeparator) {
+                if (!name.equals(segName)) {
+                    return true;
+                }
+                final int start = getFieldStart(line, segName, field, fieldSeparator);
+                if (start < 0) {
+                    return prefix.length() == 0;
+                }
+                final int end = getFieldEnd(line, start, fieldSeparator);
+                return (end - start >= prefix.length()) && regionMatches(line, start, prefix);
+            }
+        };
+    }
+    
+    /**
+     * Creates a message-scope LineFilter that evaluates the given filter on MSH lines and skips each message
+     * whose MSH it rejects, like keepMessages(keepField("MSH", 9, "ADT")) to drop messages that aren't ADT
+     * 
+     * @param header the LineFilter to evaluate on MSH lines
+     * @return the LineFilter
+     **/
+    public final static LineFilter keepMessages(final LineFilter header) {
+        return new LineFilter(true) {
+            @Override
+            public final boolean accept(final CharSequence line, final String name, final char fieldSeparator) {
+                return !MSH.MSH_XML.equals(name) || header.accept(line, name, fieldSeparator);
+            }
+        };
+    }
+    
+    /**
+     * Retrieves whether the given segment name starts a message or batch envelope, which ends any skipped message
+     * 
+     * @param name the segment name
+     * @return whether the name is MSH or a batch envelope segment
+     **/
+    public final static boolean isBoundary(final String name) {
+        return MSH.MSH_XML.equals(name) || HL7MessageStream.isEnvelope(name);
+    }
+    
+    /**
+     * Retrieves the index where a field starts in a raw segment line
+     * 
+     * @param line the raw segment line
+     * @param name the segment name
+     * @param field the field number; for MSH, FHS, and BHS, field 1 is the field separator itself
+     * @param fieldSeparator the field separator
+     * @return the index of the first char of the field (or -1 if the line doesn't have the field)
+     **/
+    public final static int getFieldStart(final CharSequence line, final String name, final int field,
+                                          final char fieldSeparator) {
+        // The field separator of a header segment is its first field, so the first separator starts field 2
+        int remaining = isHeader(name) ? field - 1 : field;
+        if (remaining < 1) {
+            return -1;
+        }
+        final int size = line.length();
+        for (int i = name.length(); i < size; i++) {
+            if ((line.charAt(i) == fieldSeparator) && (--remaining == 0)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+    
+    private final static int getFieldEnd(final CharSequence line, final int start, final char fieldSeparator) {
+        final int size = line.length();
+        int i = start;
+        while ((i < size) && (line.charAt(i) != fieldSeparator)) {
+            i++;
+        }
+        return i;
+    }
+    
+    /*package*/final static boolean isHeader(final String name) {
+        return MSH.MSH_XML.equals(name) || HL7MessageStream.FHS_XML.equals(name) || HL7MessageStream.BHS_XML.equals(name);
+    }
+    
+    private final static boolean regionMatches(final CharSequence line, final int index, final String sub) {
+        final int size = sub.length();
+        if (index + size > line.length()) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (line.charAt(index + i) != sub.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private final static class NameFilter extends LineFilter {
+        
+        private final Set<String> names;
+        
+        private final boolean keep;
+        
+        private NameFilter(final String[] names, final boolean keep) {
+            this.names = new HashSet<String>(Arrays.asList(names));
+            this.keep = keep;
+        }
+        
+        @Override
+        public final boolean accept(final CharSequence line, final String name, final char fieldSeparator) {
+            return this.names.contains(name) == this.keep;
+        }
+    }
+}
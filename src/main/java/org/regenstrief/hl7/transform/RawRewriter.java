@@ -0,0 +1,478 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.transform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * RawRewriter
+ *
+ * Applies RawRules to a stream of piped HL7 messages, editing the raw bytes of the matching segment lines without
+ * parsing anything. Lines without rules are copied in bulk, and every line keeps its original terminator.
+ * The input is read in chunks that end at the start of an MSH line, so each chunk holds whole messages and can be
+ * rewritten by a worker thread; chunks are written in their original order. At most two chunks per thread are in
+ * memory at once, so memory is bounded by the chunk size, or by the largest message if it is bigger.
+ * Delimiters are found as single bytes, so the charset must be ASCII-compatible, like UTF-8 or ISO-8859-1.
+ * Progress and throughput are logged periodically and at the end.
+ */
+public class RawRewriter {
+    
+    private static final Log log = LogFactory.getLog(RawRewriter.class);
+    
+    public final static int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    
+    private final static long REPORT_INTERVAL_IN_NANOS = 10L * 1000 * 1000 * 1000;
+    
+    private final static byte CR = '\r';
+    
+    private final static byte LF = '\n';
+    
+    private final RawRule[] rules;
+    
+    // The index of the first rule of each segment in rules, followed by rules.length
+    private final int[] segmentStarts;
+    
+    private final Charset charset;
+    
+    private int threads = Runtime.getRuntime().availableProcessors();
+    
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    
+    /**
+     * Constructs a new RawRewriter
+     * 
+     * @param rules the RawRules; no two can edit the same field, unless they edit different components of it
+     * @param charset the Charset used to encode and decode values
+     **/
+    public RawRewriter(final List<RawRule> rules, final Charset charset) {
+        final List<RawRule> sorted = new ArrayList<RawRule>(rules);
+        Collections.sort(sorted, new Comparator<RawRule>() {
+            @Override
+            public final int compare(final RawRule r1, final RawRule r2) {
+                int c = r1.getSegment().compareTo(r2.getSegment());
+                if (c == 0) {
+                    c = Integer.compare(r1.getField(), r2.getField());
+                }
+                return (c == 0) ? Integer.compare(r1.getComponent(), r2.getComponent()) : c;
+            }
+        });
+        this.rules = sorted.toArray(new RawRule[sorted.size()]);
+        final List<Integer> starts = new ArrayList<Integer>();
+        for (int i = 0; i < this.rules.length; i++) {
+            final RawRule rule = this.rules[i];
+            if ((i == 0) || !rule.getSegment().equals(this.rules[i - 1].getSegment())) {
+                starts.add(Integer.valueOf(i));
+            } else if (rule.getField() == this.rules[i - 1].getField()) {
+                final RawRule prev = this.rules[i - 1];
+                if ((prev.getComponent() == 0) || (prev.getComponent() == rule.getComponent())) {
+                    throw new IllegalArgumentException("Rules for " + prev + " and " + rule + " overlap");
+                }
+            }
+        }
+        this.segmentStarts = new int[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            this.segmentStarts[i] = starts.get(i).intValue();
+        }
+        this.segmentStarts[starts.size()] = this.rules.length;
+        this.charset = charset;
+    }
+    
+    /**
+     * Sets the number of worker threads
+     * 
+     * @param threads the number of worker threads
+     **/
+    public void setThreads(final int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Sets the number of bytes to read for each chunk
+     * 
+     * @param chunkSize the chunk size
+     **/
+    public void setChunkSize(final int chunkSize) {
+        this.chunkSize = Math.max(1024, chunkSize);
+    }
+    
+    /**
+     * Rewrites every message from an InputStream to an OutputStream; neither stream is closed
+     * 
+     * @param in the InputStream
+     * @param out the OutputStream
+     * @return the Stats of the run
+     * @throws IOException if an I/O problem occurs
+     * @throws InterruptedException if interrupted while waiting for a worker
+     **/
+    public Stats rewrite(final InputStream in, final OutputStream out) throws IOException, InterruptedException {
+        final int window = this.threads * 2;
+        final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        final ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>(window);
+        final ArrayDeque<Chunk> free = new ArrayDeque<Chunk>(window);
+        final Stats stats = new Stats();
+        long lastReport = 0;
+        try {
+            Chunk chunk = new Chunk(this.chunkSize, this.charset);
+            boolean eof = false;
+            while (!eof) {
+                // Fill the chunk, growing it if it doesn't yet hold a whole message
+                int split;
+                while (true) {
+                    eof = chunk.fill(in);
+                    split = eof ? chunk.length : lastMessageStart(chunk.in, chunk.length);
+                    if (eof || (split > 0)) {
+                        break;
+                    }
+                    chunk.in = Arrays.copyOf(chunk.in, chunk.in.length * 2);
+                }
+                if (split == 0) {
+                    break; // Nothing left after the last chunk, or the input was empty
+                }
+                chunk.end = split;
+                if (pending.size() >= window) {
+                    final Chunk done = get(pending.poll());
+                    done.writeTo(out, stats);
+                    if (stats.getNanos() - lastReport >= REPORT_INTERVAL_IN_NANOS) {
+                        lastReport = stats.getNanos();
+                        log.info("Rewrote " + stats);
+                    }
+                    free.add(done);
+                }
+                // The unfinished message at the end starts the next chunk
+                final Chunk next = free.isEmpty() ? new Chunk(this.chunkSize, this.charset) : free.poll();
+                next.carry(chunk);
+                final Chunk task = chunk;
+                pending.add(executor.submit(new Callable<Chunk>() {
+                    @Override
+                    public final Chunk call() {
+                        task.messages = rewriteChunk(task.in, 0, task.end, task.out);
+                        return task;
+                    }
+                }));
+                chunk = next;
+            }
+            while (!pending.isEmpty()) {
+                get(pending.poll()).writeTo(out, stats);
+            }
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+        stats.stop = System.nanoTime();
+        log.info("Finished rewriting " + stats);
+        return stats;
+    }
+    
+    private final static Chunk get(final Future<Chunk> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    /**
+     * Finds the start of the last MSH line in a buffer
+     * 
+     * @param buf the buffer
+     * @param size the number of bytes in the buffer
+     * @return the index of the M in MSH (or -1 if no MSH line starts after the first byte)
+     **/
+    private final static int lastMessageStart(final byte[] buf, final int size) {
+        for (int i = size - 4; i >= 0; i--) {
+            final byte b = buf[i];
+            if (((b == CR) || (b == LF)) && (buf[i + 1] == 'M') && (buf[i + 2] == 'S') && (buf[i + 3] == 'H')) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Rewrites a range of whole lines, which should start with a message or batch header
+     * so that the delimiters are known
+     * 
+     * @param buf the buffer
+     * @param start the index of the first byte
+     * @param end the index after the last byte
+     * @param out the Output
+     * @return the number of MSH lines
+     **/
+    public int rewriteChunk(final byte[] buf, final int start, final int end, final RawRule.Output out) {
+        byte fieldSep = '|', compSep = '^', repSep = '~';
+        int messages = 0, copyFrom = start, i = start;
+        while (i < end) {
+            final int lineEnd = indexOfLineEnd(buf, i, end);
+            final boolean header = isHeader(buf, i, lineEnd);
+            if (header) {
+                fieldSep = buf[i + 3];
+                compSep = (lineEnd > i + 4) ? buf[i + 4] : compSep;
+                repSep = (lineEnd > i + 5) ? buf[i + 5] : repSep;
+                if (buf[i] == 'M') {
+                    messages++;
+                }
+            }
+            final int g = findSegment(buf, i, lineEnd);
+            if (g >= 0) {
+                out.write(buf, copyFrom, i - copyFrom);
+                rewriteLine(buf, i, lineEnd, this.segmentStarts[g], this.segmentStarts[g + 1], header, fieldSep, compSep, repSep,
+                    out);
+                copyFrom = lineEnd;
+            }
+            i = lineEnd;
+            while ((i < end) && ((buf[i] == CR) || (buf[i] == LF))) {
+                i++;
+            }
+        }
+        out.write(buf, copyFrom, end - copyFrom);
+        return messages;
+    }
+    
+    private int findSegment(final byte[] buf, final int start, final int end) {
+        final int size = this.segmentStarts.length - 1;
+        for (int g = 0; g < size; g++) {
+            if (this.rules[this.segmentStarts[g]].matches(buf, start, end)) {
+                return g;
+            }
+        }
+        return -1;
+    }
+    
+    private void rewriteLine(final byte[] buf, final int start, final int end, final int from, final int to, final boolean header,
+                             final byte fieldSep, final byte compSep, final byte repSep, final RawRule.Output out) {
+        // s is the index of the separator before field n; a header's first separator is its field 1, so it precedes field 2
+        int s = start + 3, n = header ? 2 : 1, pos = start;
+        if ((s < end) && (buf[s] != fieldSep)) {
+            s = end; // Not a segment line
+        }
+        for (int r = from; r < to;) {
+            final int field = this.rules[r].getField();
+            while ((s < end) && (n < field)) {
+                s = indexOf(buf, fieldSep, s + 1, end);
+                n++;
+            }
+            if (s >= end) {
+                break; // The line doesn't have this field or any later one
+            }
+            final int fieldStart = s + 1, fieldEnd = indexOf(buf, fieldSep, fieldStart, end);
+            int q = r;
+            while ((q < to) && (this.rules[q].getField() == field)) {
+                q++;
+            }
+            if (this.rules[r].getComponent() == 0) {
+                out.write(buf, pos, fieldStart - pos);
+                this.rules[r].rewrite(buf, fieldStart, fieldEnd, out);
+                pos = fieldEnd;
+            } else {
+                pos = rewriteComponents(buf, fieldStart, fieldEnd, r, q, pos, compSep, repSep, out);
+            }
+            s = fieldEnd;
+            n = field + 1;
+            r = q;
+        }
+        out.write(buf, pos, end - pos);
+    }
+    
+    private int rewriteComponents(final byte[] buf, final int fieldStart, final int fieldEnd, final int from, final int to, int pos,
+                                  final byte compSep, final byte repSep, final RawRule.Output out) {
+        int repStart = fieldStart;
+        while (true) {
+            final int repEnd = indexOf(buf, repSep, repStart, fieldEnd);
+            // cs is the index of the first byte of component c
+            int cs = repStart, c = 1;
+            for (int r = from; r < to; r++) {
+                final RawRule rule = this.rules[r];
+                while ((cs <= repEnd) && (c < rule.getComponent())) {
+                    cs = indexOf(buf, compSep, cs, repEnd) + 1;
+                    c++;
+                }
+                if (cs > repEnd) {
+                    break; // The repetition doesn't have this component or any later one
+                }
+                final int ce = indexOf(buf, compSep, cs, repEnd);
+                out.write(buf, pos, cs - pos);
+                rule.rewrite(buf, cs, ce, out);
+                pos = ce;
+            }
+            if (repEnd >= fieldEnd) {
+                return pos;
+            }
+            repStart = repEnd + 1;
+        }
+    }
+    
+    private final static boolean isHeader(final byte[] buf, final int start, final int end) {
+        if (end - start < 4) {
+            return false;
+        }
+        final byte b0 = buf[start], b1 = buf[start + 1], b2 = buf[start + 2];
+        return ((b0 == 'M') && (b1 == 'S') && (b2 == 'H')) || (((b0 == 'F') || (b0 == 'B')) && (b1 == 'H') && (b2 == 'S'));
+    }
+    
+    private final static int indexOfLineEnd(final byte[] buf, final int start, final int end) {
+        int i = start;
+        while ((i < end) && (buf[i] != CR) && (buf[i] != LF)) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Finds a byte
+     * 
+     * @return the index of the byte (or end if it isn't found)
+     **/
+    private final static int indexOf(final byte[] buf, final byte b, final int start, final int end) {
+        int i = start;
+        while ((i < end) && (buf[i] != b)) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * A buffer of input, which is read and refilled by the calling thread and rewritten by a worker thread
+     **/
+    private final static class Chunk {
+        
+        private byte[] in;
+        
+        private int length = 0;
+        
+        private int end = 0;
+        
+        private final RawRule.Output out;
+        
+        private int messages = 0;
+        
+        private Chunk(final int size, final Charset charset) {
+            this.in = new byte[size];
+            this.out = new RawRule.Output(charset, size + (size / 8));
+        }
+        
+        /**
+         * Reads until the buffer is full or the input ends
+         * 
+         * @return whether the input ended
+         **/
+        private boolean fill(final InputStream input) throws IOException {
+            while (this.length < this.in.length) {
+                final int n = input.read(this.in, this.length, this.in.length - this.length);
+                if (n < 0) {
+                    return true;
+                }
+                this.length += n;
+            }
+            return false;
+        }
+        
+        /**
+         * Starts this chunk with the bytes after the end of the previous one
+         **/
+        private void carry(final Chunk prev) {
+            final int size = prev.length - prev.end;
+            if (size > this.in.length) {
+                this.in = new byte[Math.max(size, this.in.length * 2)];
+            }
+            System.arraycopy(prev.in, prev.end, this.in, 0, size);
+            this.length = size;
+            this.end = 0;
+            this.messages = 0;
+            this.out.reset();
+        }
+        
+        private void writeTo(final OutputStream output, final Stats stats) throws IOException {
+            output.write(this.out.getBuffer(), 0, this.out.size());
+            stats.messages += this.messages;
+            stats.bytesIn += this.end;
+            stats.bytesOut += this.out.size();
+        }
+    }
+    
+    /**
+     * Stats
+     * 
+     * The counts and throughput of a run
+     **/
+    public final static class Stats {
+        
+        private final long start = System.nanoTime();
+        
+        private long messages = 0;
+        
+        private long bytesIn = 0;
+        
+        private long bytesOut = 0;
+        
+        private long stop = 0;
+        
+        public long getMessages() {
+            return this.messages;
+        }
+        
+        public long getBytesIn() {
+            return this.bytesIn;
+        }
+        
+        public long getBytesOut() {
+            return this.bytesOut;
+        }
+        
+        /**
+         * Retrieves the time since the run started, or the duration of the run once it has finished
+         * 
+         * @return the elapsed nanoseconds
+         **/
+        public long getNanos() {
+            return ((this.stop == 0) ? System.nanoTime() : this.stop) - this.start;
+        }
+        
+        public double getMessagesPerSecond() {
+            return this.messages * 1e9 / Math.max(1, getNanos());
+        }
+        
+        public double getMegabytesPerSecond() {
+            return this.bytesIn * 1e9 / (1024 * 1024) / Math.max(1, getNanos());
+        }
+        
+        @Override
+        public String toString() {
+            return this.messages + " messages (" + String.format("%.1f", this.bytesIn / (1024.0 * 1024.0)) + " MB) in "
+                    + (getNanos() / 1000000) + " ms: " + Math.round(getMessagesPerSecond()) + " messages/s, "
+                    + String.format("%.1f", getMegabytesPerSecond()) + " MB/s";
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.transform;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.regenstrief.util.StopWatch;
+import org.regenstrief.util.Util;
+
+/**
+ * RawRule
+ *
+ * An edit of one segment/field/component path, like PID-3.1 or MSH-7, which a RawRewriter applies to the raw bytes
+ * of each matching segment line without parsing it. A rule without a component replaces the whole field,
+ * including any repetitions; a rule with a component is applied to that component of each repetition.
+ * MSH fields are numbered as in the standard, so MSH-7 is the date/time of the message; MSH-1 and MSH-2 can't be edited.
+ * Values are written raw, so they must not contain the message's delimiters unless they are escaped.
+ * A missing field or component is left missing. Rules can be shared by threads.
+ */
+public abstract class RawRule {
+    
+    private final String segment;
+    
+    private final byte[] segmentBytes;
+    
+    private final int field;
+    
+    private final int component;
+    
+    /**
+     * Constructs a new RawRule
+     * 
+     * @param path the path, like PID-3.1 or MSH-10
+     **/
+    protected RawRule(final String path) {
+        final int dash = path.indexOf('-');
+        final int dot = path.indexOf('.', dash + 1);
+        if (dash != 3) {
+            throw new IllegalArgumentException("Invalid path " + path);
+        }
+        this.segment = path.substring(0, dash);
+        this.segmentBytes = this.segment.getBytes(StandardCharsets.US_ASCII);
+        try {
+            this.field = Integer.parseInt(dot < 0 ? path.substring(dash + 1) : path.substring(dash + 1, dot));
+            this.component = dot < 0 ? 0 : Integer.parseInt(path.substring(dot + 1));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid path " + path, e);
+        }
+        if ((this.field < (LineFilter.isHeader(this.segment) ? 3 : 1)) || (this.component < 0)) {
+            throw new IllegalArgumentException("Invalid path " + path);
+        }
+    }
+    
+    /**
+     * Writes the new value of the field or component
+     * 
+     * @param buf the buffer containing the line
+     * @param start the index of the first byte of the old value
+     * @param end the index after the last byte of the old value
+     * @param out the Output
+     **/
+    protected abstract void rewrite(byte[] buf, int start, int end, Output out);
+    
+    public final String getSegment() {
+        return this.segment;
+    }
+    
+    public final int getField() {
+        return this.field;
+    }
+    
+    /**
+     * Retrieves the component number
+     * 
+     * @return the component number (or 0 if the rule replaces the whole field)
+     **/
+    public final int getComponent() {
+        return this.component;
+    }
+    
+    /*package*/final boolean matches(final byte[] buf, final int start, final int end) {
+        final int size = this.segmentBytes.length;
+        if ((end - start < size) || ((end - start > size) && !isDelimiterAfterName(buf[start + size]))) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (buf[start + i] != this.segmentBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private final static boolean isDelimiterAfterName(final byte b) {
+        // The field separator isn't known until the line's name is, so accept anything that can't be part of a name
+        return !(((b >= 'A') && (b <= 'Z')) || ((b >= '0') && (b <= '9')));
+    }
+    
+    /**
+     * Creates a RawRule that inserts a prefix at the start of the value, like MOD for PID-3.1
+     * 
+     * @param path the path
+     * @param prefix the prefix
+     * @return the RawRule
+     **/
+    public final static RawRule prefix(final String path, final String prefix) {
+        return new RawRule(path) {
+            @Override
+            protected final void rewrite(final byte[] buf, final int start, final int end, final Output out) {
+                out.write(prefix);
+                out.write(buf, start, end - start);
+            }
+        };
+    }
+    
+    /**
+     * Creates a RawRule that replaces the value
+     * 
+     * @param path the path
+     * @param value the new value
+     * @return the RawRule
+     **/
+    public final static RawRule replace(final String path, final String value) {
+        return new RawRule(path) {
+            @Override
+            protected final void rewrite(final byte[] buf, final int start, final int end, final Output out) {
+                out.write(value);
+            }
+        };
+    }
+    
+    /**
+     * Creates a RawRule that empties the value, like PID-19 to scrub SSNs
+     * 
+     * @param path the path
+     * @return the RawRule
+     **/
+    public final static RawRule clear(final String path) {
+        return replace(path, "");
+    }
+    
+    /**
+     * Creates a RawRule that replaces each value found in a map, like facility codes in MSH-4; other values are kept
+     * 
+     * @param path the path
+     * @param map the Map from old values to new values
+     * @return the RawRule
+     **/
+    public final static RawRule map(final String path, final Map<String, String> map) {
+        final Map<String, String> copy = new HashMap<String, String>(map);
+        return new RawRule(path) {
+            @Override
+            protected final void rewrite(final byte[] buf, final int start, final int end, final Output out) {
+                final String value = copy.get(out.decode(buf, start, end));
+                if (value == null) {
+                    out.write(buf, start, end - start);
+                } else {
+                    out.write(value);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Creates a RawRule that stamps the current time to the second, like MSH-7
+     * 
+     * @param path the path
+     * @return the RawRule
+     **/
+    public final static RawRule timestamp(final String path) {
+        return new RawRule(path) {
+            @Override
+            protected final void rewrite(final byte[] buf, final int start, final int end, final Output out) {
+                out.write(StopWatch.currentSecondHL7String());
+            }
+        };
+    }
+    
+    /**
+     * Creates a RawRule that stamps a new ID, like MSH-10; each ID is the prefix followed by a sequence number,
+     * unique within the rule, though parallel rewriting doesn't number the messages in file order
+     * 
+     * @param path the path
+     * @param prefix the prefix
+     * @return the RawRule
+     **/
+    public final static RawRule sequence(final String path, final String prefix) {
+        final AtomicLong counter = new AtomicLong();
+        return new RawRule(path) {
+            @Override
+            protected final void rewrite(final byte[] buf, final int start, final int end, final Output out) {
+                out.write(prefix);
+                out.write(Long.toString(counter.incrementAndGet()));
+            }
+        };
+    }
+    
+    /**
+     * Parses a RawRule from a specification like PID-3.1:prefix:MOD, MSH-7:timestamp, MSH-10:sequence:RUN1-,
+     * MSH-4:map:OLD1=NEW1;OLD2=NEW2, PID-19:clear, or PID-8:replace:U
+     * 
+     * @param spec the specification
+     * @return the RawRule
+     **/
+    public final static RawRule parse(final String spec) {
+        final String[] tokens = spec.split(":", 3);
+        final String path = tokens[0], op = tokens.length > 1 ? tokens[1] : "", arg = tokens.length > 2 ? tokens[2] : "";
+        if ("prefix".equals(op)) {
+            return prefix(path, arg);
+        } else if ("replace".equals(op)) {
+            return replace(path, arg);
+        } else if ("clear".equals(op)) {
+            return clear(path);
+        } else if ("timestamp".equals(op)) {
+            return timestamp(path);
+        } else if ("sequence".equals(op)) {
+            return sequence(path, tokens.length > 2 ? arg : StopWatch.currentSecondHL7String());
+        } else if ("map".equals(op)) {
+            final Map<String, String> map = new HashMap<String, String>();
+            for (final String entry : Util.splitExactIntoList(arg, ';')) {
+                final int eq = entry.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Invalid map entry " + entry + " in " + spec);
+                }
+                map.put(entry.substring(0, eq), entry.substring(eq + 1));
+            }
+            return map(path, map);
+        }
+        throw new IllegalArgumentException("Unrecognized rule " + spec);
+    }
+    
+    @Override
+    public String toString() {
+        return this.segment + '-' + this.field + (this.component == 0 ? "" : "." + this.component);
+    }
+    
+    /**
+     * Output
+     * 
+     * The growable byte buffer into which a RawRewriter writes a rewritten chunk. Strings are encoded in the
+     * rewriter's charset; ASCII is copied directly, without creating a byte array.
+     **/
+    public final static class Output {
+        
+        private final Charset charset;
+        
+        private byte[] buf;
+        
+        private int size = 0;
+        
+        /*package*/Output(final Charset charset, final int capacity) {
+            this.charset = charset;
+            this.buf = new byte[capacity];
+        }
+        
+        public void write(final byte[] b, final int off, final int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, this.buf, this.size, len);
+            this.size += len;
+        }
+        
+        public void write(final String s) {
+            final int len = s.length();
+            ensureCapacity(len);
+            for (int i = 0; i < len; i++) {
+                final char c = s.charAt(i);
+                if (c >= 0x80) {
+                    final byte[] b = s.getBytes(this.charset);
+                    write(b, 0, b.length);
+                    return;
+                }
+                this.buf[this.size + i] = (byte) c;
+            }
+            this.size += len;
+        }
+        
+        /**
+         * Decodes bytes in the rewriter's charset
+         * 
+         * @param b the buffer
+         * @param start the index of the first byte
+         * @param end the index after the last byte
+         * @return the String
+         **/
+        public String decode(final byte[] b, final int start, final int end) {
+            return new String(b, start, end - start, this.charset);
+        }
+        
+        private void ensureCapacity(final int extra) {
+            final int needed = this.size + extra;
+            if (needed > this.buf.length) {
+                this.buf = Arrays.copyOf(this.buf, Math.max(needed, this.buf.length * 2));
+            }
+        }
+        
+        /*package*/byte[] getBuffer() {
+            return this.buf;
+        }
+        
+        public int size() {
+            return this.size;
+        }
+        
+        /*package*/void reset() {
+            this.size = 0;
+        }
+    }
+}
@@ -19,6 +19,9 @@ import org.regenstrief.hl7.segment.HL7Segment;
 
 /**
  * SegmentFilter
+ *
+ * Filters or modifies the segments read by its parent. A subclass that rejects segments based on their raw text can also
+ * return a LineFilter from getLineFilter, so the SegmentReader drops them before they are parsed.
  */
 public abstract class SegmentFilter extends SegmentReader {
     
@@ -30,4 +33,13 @@ public abstract class SegmentFilter extends SegmentReader {
     public void setParent(final SegmentReader parent) {
         this.parent = parent;
     }
+    
+    /**
+     * Retrieves a LineFilter to add to the underlying SegmentReader
+     * 
+     * @return the LineFilter (or null if this SegmentFilter needs the parsed segments)
+     **/
+    public LineFilter getLineFilter() {
+        return null;
+    }
 }
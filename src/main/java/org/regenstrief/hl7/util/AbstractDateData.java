@@ -12,8 +12,11 @@
  */
 package org.regenstrief.hl7.util;
 
+import java.util.Date;
+
 import org.regenstrief.hl7.HL7Properties;
 import org.regenstrief.hl7.datatype.HL7DataType;
+import org.regenstrief.util.HL7Time;
 import org.regenstrief.util.Util;
 
 public abstract class AbstractDateData extends HL7DataType implements DateData {
@@ -49,6 +52,34 @@ public abstract class AbstractDateData extends HL7DataType implements DateData {
         this.value = value;
     }
     
+    /**
+     * Retrieves the value as an HL7Time packed time, without creating a Calendar
+     * 
+     * @return the packed time (or HL7Time.NONE if the value is empty or not a valid HL7 date/time)
+     **/
+    public long getPackedTime() {
+        return HL7Time.parse(this.value);
+    }
+    
+    /**
+     * Modifies the value from an HL7Time packed time, keeping its precision and offset
+     * 
+     * @param time the packed time (or HL7Time.NONE to clear the value)
+     **/
+    public void setPackedTime(final long time) {
+        this.value = HL7Time.format(time);
+    }
+    
+    /**
+     * Retrieves the value as a Date
+     * 
+     * @return the Date (or null if the value is empty or not a valid HL7 date/time)
+     **/
+    public Date toDate() {
+        final long time = getPackedTime();
+        return time == HL7Time.NONE ? null : new Date(HL7Time.toEpochMillis(time));
+    }
+    
     /**
      * Converts the DateData to a String
      * 
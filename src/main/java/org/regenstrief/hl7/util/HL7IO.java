@@ -13,23 +13,24 @@
 package org.regenstrief.hl7.util;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.charset.Charset;
 import java.util.Date;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.regenstrief.hl7.convert.Escaper;
+import org.regenstrief.util.StopWatch;
 import org.regenstrief.util.Util;
 
 public class HL7IO {
@@ -66,11 +67,11 @@ public class HL7IO {
         
         private static final long serialVersionUID = 1L;
 
-        private HL7IOException(final String msg) {
+        HL7IOException(final String msg) {
             super(msg);
         }
         
-        private HL7IOException(final String msg, final Throwable cause) {
+        HL7IOException(final String msg, final Throwable cause) {
             super(msg, cause);
         }
     }
@@ -389,7 +390,7 @@ public class HL7IO {
             ach = br.read();
         }
         
-        final StringBuffer sb = new StringBuffer();
+        final StringBuilder sb = new StringBuilder();
         if (ldbv > 0) {
             dp("After bom=", ach);
         }
@@ -398,13 +399,14 @@ public class HL7IO {
         if (ldbv > 0) {
             dp("Start collecting:", ach);
         }
+        final boolean traceChars = ldbv > 3; // Checked once instead of for every char
         while (ach != EOM) {
             if (ach == -1) {
                 dp("Bad socket in looking for EOM read [read_hl7_msg]");
                 throw new HL7IOException("EndOfSocket");
             }
             sb.append((char) ach);
-            if (ldbv > 3) {
+            if (traceChars) {
                 dp("Found:" + sb.length() + " ch:=" + ach);
             }
             ach = br.read();
@@ -415,28 +417,127 @@ public class HL7IO {
         return sb.toString();
     }
     
+    /**
+     * Reads one framed message from an InputStream in bulk, decoding it with the charset from its MSH-18.
+     * Bytes after the end of the frame are discarded, so this is only for streams that carry one message,
+     * like the response to a single request; use an MllpFrameDecoder to read several messages from one stream.
+     * 
+     * @param in the InputStream
+     * @param defaultCharset the Charset to use if the message has no MSH-18
+     * @return the message
+     * @throws IOException if an I/O problem occurs
+     **/
+    public static String read_hl7_msg(final InputStream in, final Charset defaultCharset) throws IOException {
+        final String msg = new MllpFrameDecoder(defaultCharset).next(in);
+        if (msg == null) {
+            dp("Bad socket in looking for EOM read [read_hl7_msg]");
+            throw new HL7IOException("EndOfSocket");
+        }
+        return msg;
+    }
+    
     static String make_ack(final String msg) throws Exception {
-        final int ldbv = hl7_read_dbv;
-        if (!msg.startsWith("MSH")) {
+        return make_ack(msg, "AA", null);
+    }
+    
+    /**
+     * Builds an ACK from the raw MSH fields of a message, without parsing the message.
+     * The MSH is copied with the sending and receiving application and facility swapped and MSH-9 changed to ACK,
+     * and MSA-2 is the MSH-10 of the message.
+     * 
+     * @param msg the message
+     * @param ackCode the acknowledgment code, like AA or AE
+     * @param text the text message for MSA-3 (or null)
+     * @return the ACK
+     * @throws HL7IOException if the message does not start with MSH
+     **/
+    static String make_ack(final String msg, final String ackCode, final String text) throws HL7IOException {
+        if (!msg.startsWith("MSH") || (msg.length() < 4)) {
             dp("Does not start with MSH:", msg);
-            throw new Exception("Bad Message");
+            throw new HL7IOException("Bad Message");
         }
         final char fld = msg.charAt(3);
-        final String msh = nthField(msg, "\r", 0);
-        if (ldbv > 0) {
-            dp("msh:", msh);
+        int end = msg.length();
+        for (int i = 4; i < end; i++) {
+            final char c = msg.charAt(i);
+            if ((c == CR) || (c == '\n')) {
+                end = i;
+                break;
+            }
         }
-        final String snd_app = nthField(msg, fld, 2), snd_fac = nthField(msg, fld, 3);
-        if (ldbv > 0) {
-            dp("snd_app:" + snd_app + "snd_fac:" + snd_fac);
+        // bounds[n] is the index of the separator before MSH-n, so MSH-n is between bounds[n] + 1 and bounds[n + 1]
+        final int max = 11;
+        final int[] bounds = new int[max + 1];
+        int n = 2;
+        bounds[2] = 3; // MSH-1 is the field separator itself
+        for (int i = 4; (i < end) && (n < max); i++) {
+            if (msg.charAt(i) == fld) {
+                bounds[++n] = i;
+            }
         }
-        final StringBuffer sb = new StringBuffer(msh);
-        replaceNthField(sb, fld, 2, nthField(msg, fld, 4));
-        replaceNthField(sb, fld, 3, nthField(msg, fld, 5));
-        replaceNthField(sb, fld, 4, nthField(msg, fld, 2));
-        replaceNthField(sb, fld, 5, nthField(msg, fld, 3));
-        final String ack = sb.toString() + "\rMSA" + fld + "AA" + fld + nthField(msg, fld, 9) + "\r";
-        return ack;
+        for (int i = n + 1; i <= max; i++) {
+            bounds[i] = end;
+        }
+        final StringBuilder sb = new StringBuilder(end + 64);
+        sb.append("MSH").append(fld);
+        appendField(sb, msg, bounds, 2).append(fld);
+        appendField(sb, msg, bounds, 5).append(fld);
+        appendField(sb, msg, bounds, 6).append(fld);
+        appendField(sb, msg, bounds, 3).append(fld);
+        appendField(sb, msg, bounds, 4).append(fld);
+        appendField(sb, msg, bounds, 7).append(fld);
+        appendField(sb, msg, bounds, 8).append(fld);
+        sb.append("ACK");
+        // Keep the trigger event of MSH-9
+        final int typeStart = bounds[9] + 1, typeEnd = bounds[10];
+        final char cmp = msg.length() > 4 ? msg.charAt(4) : Escaper.DEFAULT_COMPONENT_SEPARATOR;
+        final int trigger = msg.indexOf(cmp, typeStart);
+        if ((trigger >= 0) && (trigger < typeEnd)) {
+            int triggerEnd = msg.indexOf(cmp, trigger + 1);
+            if ((triggerEnd < 0) || (triggerEnd > typeEnd)) {
+                triggerEnd = typeEnd;
+            }
+            sb.append(msg, trigger, triggerEnd);
+        }
+        sb.append(msg, bounds[10], end); // MSH-10 onward is unchanged
+        sb.append("\rMSA").append(fld).append(ackCode).append(fld);
+        appendField(sb, msg, bounds, 10);
+        appendText(sb, text, fld);
+        return sb.append('\r').toString();
+    }
+    
+    /**
+     * Builds a NAK with a fixed header, for a message without an MSH that an ACK could be built from
+     * 
+     * @param ackCode the acknowledgment code, like AR
+     * @param text the text message for MSA-3 (or null)
+     * @return the NAK
+     **/
+    static String make_nak(final String ackCode, final String text) {
+        final String now = StopWatch.currentSecondHL7String();
+        final StringBuilder sb = new StringBuilder(64);
+        sb.append("MSH|^~\\&|||||").append(now).append("||ACK|").append(now).append("|P|2.5");
+        sb.append("\rMSA|").append(ackCode).append('|');
+        appendText(sb, text, '|');
+        return sb.append('\r').toString();
+    }
+    
+    private static void appendText(final StringBuilder sb, final String text, final char fld) {
+        if (text == null) {
+            return;
+        }
+        sb.append(fld);
+        final int size = text.length();
+        for (int i = 0; i < size; i++) {
+            final char c = text.charAt(i);
+            // Not escaped; just kept from breaking the ACK structure
+            sb.append((c == fld) || (c == CR) || (c == '\n') ? ' ' : c);
+        }
+    }
+    
+    private static StringBuilder appendField(final StringBuilder sb, final String msg, final int[] bounds, final int n) {
+        final int start = bounds[n] + 1, stop = bounds[n + 1];
+        return start < stop ? sb.append(msg, start, stop) : sb;
     }
     
     public static void send_hl7_msg(final Writer os, final String msg) throws IOException {
@@ -496,12 +597,19 @@ public class HL7IO {
                                           final String header) throws IOException {
         final Socket sd = connect(host, port, retries);
         Writer w;
-        BufferedReader r;
         
         try {
             w = new PrintWriter(new BufferedOutputStream(getOutputStream(host, port, sd)));
-            r = new BufferedReader(new InputStreamReader(getInputStream(host, port, sd)));
-            return send_rcv_hl7_msg(host, port, w, r, msg, header);
+            try {
+                send_hl7_msg(w, msg, header);
+            } catch (final Exception e) {
+                throw new HL7IOException("Could not send HL7 to " + host + ":" + port, e);
+            }
+            try {
+                return read_hl7_msg(getInputStream(host, port, sd), Charset.defaultCharset());
+            } catch (final Exception e) {
+                throw new HL7IOException("Could not receive HL7 from " + host + ":" + port, e);
+            }
         } finally {
             sd.close();
         }
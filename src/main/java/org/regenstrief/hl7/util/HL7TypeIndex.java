@@ -0,0 +1,164 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.lang.reflect.Modifier;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.regenstrief.hl7.HL7Data;
+import org.regenstrief.hl7.HL7Parser;
+import org.regenstrief.hl7.datatype.AD;
+import org.regenstrief.hl7.datatype.CE;
+import org.regenstrief.hl7.datatype.CF;
+import org.regenstrief.hl7.datatype.CK;
+import org.regenstrief.hl7.datatype.CN;
+import org.regenstrief.hl7.datatype.CNE;
+import org.regenstrief.hl7.datatype.CP;
+import org.regenstrief.hl7.datatype.CQ;
+import org.regenstrief.hl7.datatype.CWE;
+import org.regenstrief.hl7.datatype.CX;
+import org.regenstrief.hl7.datatype.CodedIdentifier;
+import org.regenstrief.hl7.datatype.DLD;
+import org.regenstrief.hl7.datatype.DLN;
+import org.regenstrief.hl7.datatype.DR;
+import org.regenstrief.hl7.datatype.DT;
+import org.regenstrief.hl7.datatype.DTM;
+import org.regenstrief.hl7.datatype.EI;
+import org.regenstrief.hl7.datatype.ELD;
+import org.regenstrief.hl7.datatype.FC;
+import org.regenstrief.hl7.datatype.FN;
+import org.regenstrief.hl7.datatype.HD;
+import org.regenstrief.hl7.datatype.MO;
+import org.regenstrief.hl7.datatype.MSG;
+import org.regenstrief.hl7.datatype.NDL;
+import org.regenstrief.hl7.datatype.NM;
+import org.regenstrief.hl7.datatype.PL;
+import org.regenstrief.hl7.datatype.PT;
+import org.regenstrief.hl7.datatype.SAD;
+import org.regenstrief.hl7.datatype.SI;
+import org.regenstrief.hl7.datatype.SRT;
+import org.regenstrief.hl7.datatype.TS;
+import org.regenstrief.hl7.datatype.UCMP;
+import org.regenstrief.hl7.datatype.UFLD;
+import org.regenstrief.hl7.datatype.VID;
+import org.regenstrief.hl7.datatype.XAD;
+import org.regenstrief.hl7.datatype.XCN;
+import org.regenstrief.hl7.datatype.XON;
+import org.regenstrief.hl7.datatype.XPN;
+import org.regenstrief.hl7.datatype.XTN;
+import org.regenstrief.hl7.group.UMSG_Z01;
+import org.regenstrief.hl7.segment.ERR;
+import org.regenstrief.hl7.segment.EVN;
+import org.regenstrief.hl7.segment.MSA;
+import org.regenstrief.hl7.segment.MSH;
+import org.regenstrief.hl7.segment.PID;
+import org.regenstrief.hl7.segment.PV1;
+import org.regenstrief.hl7.segment.QAK;
+import org.regenstrief.hl7.segment.QPD;
+import org.regenstrief.hl7.segment.RCP;
+import org.regenstrief.hl7.segment.USEG;
+import org.regenstrief.util.Util;
+import org.regenstrief.util.criterion.AntiCriterion;
+import org.regenstrief.util.criterion.CharSequenceContainsCriterion;
+
+/**
+ * HL7TypeIndex
+ *
+ * The concrete types, segments and groups that UtilHL7 can instantiate by name.
+ * UtilHL7 used to find these by scanning the classpath when it was loaded; this list replaces that scan.
+ * It is generated by running HL7TypeIndex, which performs the old scan and prints the list,
+ * so rerun it after adding a class to the datatype, segment or group packages.
+ */
+public final class HL7TypeIndex {
+    
+    final static Class<?>[] TYPES = {
+        UMSG_Z01.class,
+        ERR.class,
+        EVN.class,
+        MSA.class,
+        MSH.class,
+        PID.class,
+        PV1.class,
+        QAK.class,
+        QPD.class,
+        RCP.class,
+        USEG.class,
+        AD.class,
+        CE.class,
+        CF.class,
+        CK.class,
+        CN.class,
+        CNE.class,
+        CP.class,
+        CQ.class,
+        CWE.class,
+        CX.class,
+        CodedIdentifier.class,
+        DLD.class,
+        DLN.class,
+        DR.class,
+        DT.class,
+        DTM.class,
+        EI.class,
+        ELD.class,
+        FC.class,
+        FN.class,
+        HD.class,
+        MO.class,
+        MSG.class,
+        NDL.class,
+        NM.class,
+        PL.class,
+        PT.class,
+        SAD.class,
+        SI.class,
+        SRT.class,
+        TS.class,
+        UCMP.class,
+        UFLD.class,
+        VID.class,
+        XAD.class,
+        XCN.class,
+        XON.class,
+        XPN.class,
+        XTN.class,
+    };
+    
+    private HL7TypeIndex() {
+    }
+    
+    /**
+     * Scans the datatype, segment and group packages and prints the entries for TYPES
+     * 
+     * @param args ignored
+     **/
+    public final static void main(final String[] args) {
+        final AntiCriterion tc = AntiCriterion.getInstance(new CharSequenceContainsCriterion("Test", false));
+        final Class<?> hierarchy[] = new Class<?>[] { UMSG_Z01.class, PID.class, CE.class };
+        final HL7Parser parser = new HL7Parser();
+        for (final Class<?> hc : hierarchy) {
+            final Set<String> names = new TreeSet<String>();
+            for (final Class<?> c : Util.getClassesForPackage(hc, tc)) {
+                final int m = c.getModifiers();
+                if (!Modifier.isAbstract(m) && Modifier.isPublic(m) && (c.getEnclosingClass() == null)
+                        && (UtilHL7.getInstance(parser, c.asSubclass(HL7Data.class)) != null)) {
+                    names.add(c.getSimpleName());
+                }
+            }
+            for (final String name : names) {
+                System.out.println("        " + name + ".class,");
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.regenstrief.util.Util;
+
+/**
+ * MllpClientPool
+ *
+ * A pool of persistent MLLP connections to one host and port.
+ * A request borrows an idle connection (opening one if fewer than the maximum are open), sends its message, waits for the
+ * response, and returns the connection, so the TCP handshake is only paid once per connection instead of once per message.
+ * A connection that has been idle for longer than the health check interval is checked before it is reused,
+ * and a request that fails on a reused connection is retried once on a new one, since the peer may have closed it;
+ * many MLLP peers close the connection after each response.
+ * A request that times out isn't retried, because the peer might still process it.
+ * A connection that times out is closed, because its late response would otherwise be read by the next request.
+ */
+public class MllpClientPool implements Closeable {
+    
+    private static final Log log = LogFactory.getLog(MllpClientPool.class);
+    
+    public final static String PROP_MAX_CONNECTIONS = MllpClientPool.class.getName() + ".maxConnections";
+    
+    public final static String PROP_CONNECT_TIMEOUT_IN_MILLIS = MllpClientPool.class.getName() + ".connectTimeoutInMillis";
+    
+    public final static String PROP_HEALTH_CHECK_IN_MILLIS = MllpClientPool.class.getName() + ".healthCheckInMillis";
+    
+    private final String host;
+    
+    private final int port;
+    
+    private final Charset charset;
+    
+    private final Semaphore permits;
+    
+    private final LinkedBlockingDeque<MllpConnection> idle = new LinkedBlockingDeque<MllpConnection>();
+    
+    private int connectTimeout = Util.getPropertyInt(PROP_CONNECT_TIMEOUT_IN_MILLIS, 10000);
+    
+    private int timeout = Util.getPropertyInt(HL7IO.PROP_TIMEOUT_IN_MILLIS, 0);
+    
+    private long healthCheckInterval = Util.getPropertyInt(PROP_HEALTH_CHECK_IN_MILLIS, 5000);
+    
+    private volatile boolean closed = false;
+    
+    /**
+     * Constructs a new MllpClientPool
+     * 
+     * @param host the host name
+     * @param port the port
+     **/
+    public MllpClientPool(final String host, final int port) {
+        this(host, port, Util.getPropertyInt(PROP_MAX_CONNECTIONS, 10), Charset.defaultCharset());
+    }
+    
+    /**
+     * Constructs a new MllpClientPool
+     * 
+     * @param host the host name
+     * @param port the port
+     * @param maxConnections the maximum number of open connections
+     * @param charset the Charset of the messages
+     **/
+    public MllpClientPool(final String host, final int port, final int maxConnections, final Charset charset) {
+        this.host = host;
+        this.port = port;
+        this.charset = charset;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+    
+    /**
+     * Sends a message and waits for the response, using the pool's default timeout
+     * 
+     * @param msg the message, with segments terminated by carriage returns
+     * @return the response
+     * @throws IOException if an I/O problem occurs
+     **/
+    public String sendReceive(final String msg) throws IOException {
+        return sendReceive(msg, this.timeout);
+    }
+    
+    /**
+     * Sends a message and waits for the response
+     * 
+     * @param msg the message, with segments terminated by carriage returns
+     * @param timeout the maximum number of milliseconds to wait for a connection and then for the response
+     *            (or 0 to wait indefinitely)
+     * @return the response
+     * @throws IOException if an I/O problem occurs
+     **/
+    public String sendReceive(final String msg, final int timeout) throws IOException {
+        return sendReceive(msg, null, 0, 0, timeout);
+    }
+    
+    /**
+     * Sends a message that is already encoded and framed, like one from a PipedMessageWriter, and waits for the response,
+     * using the pool's default timeout
+     * 
+     * @param frame the bytes, including the MLLP start and end bytes
+     * @param off the offset of the start byte
+     * @param len the number of bytes
+     * @return the response
+     * @throws IOException if an I/O problem occurs
+     **/
+    public String sendReceive(final byte[] frame, final int off, final int len) throws IOException {
+        return sendReceive(null, frame, off, len, this.timeout);
+    }
+    
+    /**
+     * Sends a message that is already encoded and framed, like one from a PipedMessageWriter, and waits for the response
+     * 
+     * @param frame the bytes, including the MLLP start and end bytes
+     * @param off the offset of the start byte
+     * @param len the number of bytes
+     * @param timeout the maximum number of milliseconds to wait for a connection and then for the response
+     *            (or 0 to wait indefinitely)
+     * @return the response
+     * @throws IOException if an I/O problem occurs
+     **/
+    public String sendReceive(final byte[] frame, final int off, final int len, final int timeout) throws IOException {
+        return sendReceive(null, frame, off, len, timeout);
+    }
+    
+    private String sendReceive(final String msg, final byte[] frame, final int off, final int len, final int timeout)
+                                                                                                                  throws IOException {
+        MllpConnection conn = borrow(timeout);
+        try {
+            final boolean reused = conn != null;
+            if (!reused) {
+                conn = open();
+            }
+            String rsp;
+            try {
+                rsp = exchange(conn, msg, frame, off, len, timeout);
+            } catch (final SocketTimeoutException e) {
+                throw e;
+            } catch (final IOException e) {
+                // Many MLLP peers close the connection after each response, so a reused connection fails on its next use
+                if (!reused) {
+                    throw e;
+                }
+                log.debug("Retrying on a new connection after " + e);
+                conn.close();
+                conn = open();
+                rsp = exchange(conn, msg, frame, off, len, timeout);
+            }
+            if (!this.closed) {
+                this.idle.offerFirst(conn); // Most recently used first, so extra connections can go idle
+                conn = null;
+            }
+            return rsp;
+        } finally {
+            if (conn != null) {
+                conn.close();
+            }
+            this.permits.release();
+        }
+    }
+    
+    private final static String exchange(final MllpConnection conn, final String msg, final byte[] frame, final int off,
+                                         final int len, final int timeout) throws IOException {
+        if (msg != null) {
+            conn.send(msg);
+        } else {
+            conn.sendFrame(frame, off, len);
+        }
+        return conn.receive(timeout);
+    }
+    
+    /**
+     * Borrows an idle connection, after acquiring a permit
+     * 
+     * @param timeout the maximum number of milliseconds to wait for a permit (or 0 to wait indefinitely)
+     * @return the idle connection (or null if a new one should be opened)
+     * @throws IOException if no permit is available in time
+     **/
+    private MllpConnection borrow(final int timeout) throws IOException {
+        if (this.closed) {
+            throw new HL7IO.HL7IOException("MllpClientPool for " + this.host + ":" + this.port + " is closed");
+        }
+        try {
+            if (timeout <= 0) {
+                this.permits.acquire();
+            } else if (!this.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("No MLLP connection to " + this.host + ":" + this.port + " available after " + timeout + " ms");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HL7IO.HL7IOException("Interrupted while waiting for a connection to " + this.host + ":" + this.port, e);
+        }
+        MllpConnection conn;
+        while ((conn = this.idle.pollFirst()) != null) {
+            if ((System.currentTimeMillis() - conn.getLastUsed() < this.healthCheckInterval) || conn.isHealthy()) {
+                return conn;
+            }
+            log.debug("Closing unhealthy connection to " + this.host + ":" + this.port);
+            conn.close();
+        }
+        return null;
+    }
+    
+    private MllpConnection open() throws IOException {
+        return new MllpConnection(this.host, this.port, this.connectTimeout, this.charset);
+    }
+    
+    /**
+     * Checks all idle connections, closing any that are unhealthy
+     * 
+     * @return the number of healthy idle connections
+     **/
+    public int checkHealth() {
+        int healthy = 0;
+        for (int i = this.idle.size(); i > 0; i--) {
+            final MllpConnection conn = this.idle.pollLast();
+            if (conn == null) {
+                break;
+            } else if (conn.isHealthy()) {
+                this.idle.offerLast(conn);
+                healthy++;
+            } else {
+                conn.close();
+            }
+        }
+        return healthy;
+    }
+    
+    /**
+     * Modifies the maximum number of milliseconds to wait for a new connection
+     * 
+     * @param connectTimeout the connect timeout (or 0 to wait indefinitely)
+     **/
+    public void setConnectTimeout(final int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+    
+    /**
+     * Modifies the default maximum number of milliseconds to wait for a response
+     * 
+     * @param timeout the timeout (or 0 to wait indefinitely)
+     **/
+    public void setTimeout(final int timeout) {
+        this.timeout = timeout;
+    }
+    
+    /**
+     * Modifies how long a connection can be idle before it is checked on its next use
+     * 
+     * @param healthCheckInterval the interval in milliseconds
+     **/
+    public void setHealthCheckInterval(final long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+    
+    public String getHost() {
+        return this.host;
+    }
+    
+    public int getPort() {
+        return this.port;
+    }
+    
+    public int getNumIdle() {
+        return this.idle.size();
+    }
+    
+    /**
+     * Closes the idle connections; connections in use are closed when they are returned
+     **/
+    @Override
+    public void close() {
+        this.closed = true;
+        MllpConnection conn;
+        while ((conn = this.idle.pollFirst()) != null) {
+            conn.close();
+        }
+    }
+}
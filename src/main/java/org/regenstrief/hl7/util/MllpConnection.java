@@ -0,0 +1,196 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+
+import org.regenstrief.io.IoUtil;
+
+/**
+ * MllpConnection
+ *
+ * A persistent MLLP connection that can send any number of messages.
+ * Frames are written as bytes, with the 0x0B/0x1C/0x0D framing characters added directly to the byte buffer,
+ * and read with an MllpFrameDecoder, so responses are decoded with the charset from their MSH-18.
+ * An MllpConnection isn't thread-safe; MllpClientPool hands each one to a single thread at a time.
+ */
+public class MllpConnection implements Closeable {
+    
+    private final static int INITIAL_BUFFER_SIZE = 8192;
+    
+    private final String host;
+    
+    private final int port;
+    
+    private final Charset charset;
+    
+    private final Socket socket;
+    
+    private final InputStream in;
+    
+    private final OutputStream out;
+    
+    private byte[] outBuf = new byte[INITIAL_BUFFER_SIZE];
+    
+    private final MllpFrameDecoder decoder;
+    
+    private long lastUsed = System.currentTimeMillis();
+    
+    /**
+     * Opens a new MllpConnection
+     * 
+     * @param host the host name
+     * @param port the port
+     * @param connectTimeout the maximum number of milliseconds to wait for the connection (or 0 to wait indefinitely)
+     * @param charset the Charset of sent messages, and of received messages without MSH-18
+     * @throws IOException if the connection can't be opened
+     **/
+    public MllpConnection(final String host, final int port, final int connectTimeout, final Charset charset) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.charset = charset;
+        this.decoder = new MllpFrameDecoder(charset);
+        this.socket = new Socket();
+        try {
+            this.socket.setTcpNoDelay(true);
+            this.socket.setKeepAlive(true);
+            this.socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            this.in = this.socket.getInputStream();
+            this.out = this.socket.getOutputStream();
+        } catch (final IOException e) {
+            IoUtil.close(this.socket);
+            throw e;
+        }
+    }
+    
+    /**
+     * Sends a message and waits for the response
+     * 
+     * @param msg the message, with segments terminated by carriage returns
+     * @param timeout the maximum number of milliseconds to wait for the response (or 0 to wait indefinitely)
+     * @return the response
+     * @throws IOException if an I/O problem occurs; the connection should not be used afterward
+     **/
+    public String sendReceive(final String msg, final int timeout) throws IOException {
+        send(msg);
+        return receive(timeout);
+    }
+    
+    /**
+     * Sends a message without waiting for a response
+     * 
+     * @param msg the message, with segments terminated by carriage returns
+     * @throws IOException if an I/O problem occurs
+     **/
+    public void send(final String msg) throws IOException {
+        final byte[] body = msg.getBytes(this.charset);
+        final int size = body.length + 3;
+        if (this.outBuf.length < size) {
+            this.outBuf = new byte[Math.max(size, this.outBuf.length * 2)];
+        }
+        final byte[] buf = this.outBuf;
+        buf[0] = HL7IO.BOM;
+        System.arraycopy(body, 0, buf, 1, body.length);
+        buf[size - 2] = HL7IO.EOM;
+        buf[size - 1] = HL7IO.CR;
+        sendFrame(buf, 0, size);
+    }
+    
+    /**
+     * Sends a message that is already encoded and framed, like one from a PipedMessageWriter
+     * 
+     * @param frame the bytes, including the MLLP start and end bytes
+     * @param off the offset of the start byte
+     * @param len the number of bytes
+     * @throws IOException if an I/O problem occurs
+     **/
+    public void sendFrame(final byte[] frame, final int off, final int len) throws IOException {
+        this.out.write(frame, off, len); // One write, so the frame isn't split into several packets
+        this.out.flush();
+        this.lastUsed = System.currentTimeMillis();
+    }
+    
+    /**
+     * Receives a message
+     * 
+     * @param timeout the maximum number of milliseconds to wait (or 0 to wait indefinitely)
+     * @return the message, without its framing characters
+     * @throws IOException if an I/O problem occurs
+     **/
+    public String receive(final int timeout) throws IOException {
+        this.socket.setSoTimeout(timeout);
+        // The decoder keeps a partial frame, so a receive that times out can be called again
+        while (!this.decoder.hasFrame()) {
+            if (!this.decoder.read(this.in)) {
+                throw new HL7IO.HL7IOException("End of stream before end of message from " + this.host + ":" + this.port);
+            }
+        }
+        this.lastUsed = System.currentTimeMillis();
+        return this.decoder.next();
+    }
+    
+    /**
+     * Checks whether the connection can still be used.
+     * The peer is expected to be silent between requests,
+     * so any data waiting to be read, or a closed stream, means that the connection is out of step or gone.
+     * 
+     * @return whether the connection is healthy
+     **/
+    public boolean isHealthy() {
+        if (this.socket.isClosed() || !this.socket.isConnected() || this.socket.isInputShutdown() || this.socket.isOutputShutdown()) {
+            return false;
+        }
+        try {
+            while (!this.decoder.hasBufferedData()) {
+                this.socket.setSoTimeout(1);
+                if (!this.decoder.read(this.in)) {
+                    return false;
+                }
+            }
+            return false;
+        } catch (final SocketTimeoutException e) {
+            return true; // Nothing to read, which is what we want
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Retrieves the time that the connection was last used
+     * 
+     * @return the time in milliseconds
+     **/
+    public long getLastUsed() {
+        return this.lastUsed;
+    }
+    
+    public String getHost() {
+        return this.host;
+    }
+    
+    public int getPort() {
+        return this.port;
+    }
+    
+    @Override
+    public void close() {
+        IoUtil.close(this.socket);
+    }
+}
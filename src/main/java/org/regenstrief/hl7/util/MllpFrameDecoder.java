@@ -0,0 +1,380 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.regenstrief.util.CharSlice;
+
+/**
+ * MllpFrameDecoder
+ *
+ * Splits a byte stream into MLLP frames.
+ * Bytes are read in bulk into a reusable ByteBuffer, which is scanned for the 0x0B start and 0x1C end bytes;
+ * bytes that were already scanned aren't scanned again when more arrive.
+ * Each frame is decoded with the charset named by its MSH-18, or with the default charset if MSH-18 is empty or unknown.
+ * nextSlice decodes into a reusable char buffer, so the returned CharSlice is only valid until the next frame is decoded;
+ * it can be parsed without building a String with HL7Parser.run(slice.getReader()).
+ * next returns a String that stays valid.
+ * An MllpFrameDecoder isn't thread-safe.
+ */
+public class MllpFrameDecoder {
+    
+    private final static int INITIAL_BUFFER_SIZE = 8192;
+    
+    private final static int MSH_CHARSET_FIELD = 18;
+    
+    private final static Charset ASCII = Charset.forName("US-ASCII");
+    
+    private final Charset defaultCharset;
+    
+    private ByteBuffer buf = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    
+    // Bytes before start have been consumed; buf.position() is the end of the bytes read so far
+    private int start = 0;
+    
+    // Index of the start byte of the current frame, or -1 if it hasn't been found yet
+    private int frameStart = -1;
+    
+    private int scanned = 0;
+    
+    private int frameEnd = -1;
+    
+    private char[] chars = new char[INITIAL_BUFFER_SIZE];
+    
+    private final Map<Charset, CharsetDecoder> decoders = new HashMap<Charset, CharsetDecoder>();
+    
+    private Charset lastCharset = null;
+    
+    /**
+     * Constructs a new MllpFrameDecoder
+     * 
+     * @param defaultCharset the Charset for frames without a recognized MSH-18
+     **/
+    public MllpFrameDecoder(final Charset defaultCharset) {
+        this.defaultCharset = defaultCharset;
+    }
+    
+    /**
+     * Reads whatever bytes are available from the InputStream, blocking until at least one arrives
+     * 
+     * @param in the InputStream
+     * @return whether any bytes were read (false at the end of the stream)
+     * @throws IOException if an I/O problem occurs
+     **/
+    public boolean read(final InputStream in) throws IOException {
+        final ByteBuffer buf = prepareForRead();
+        final int n = in.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        if (n <= 0) {
+            return false;
+        }
+        buf.position(buf.position() + n);
+        return true;
+    }
+    
+    /**
+     * Reads whatever bytes are available from the channel
+     * 
+     * @param in the ReadableByteChannel
+     * @return the number of bytes read, or -1 at the end of the stream
+     * @throws IOException if an I/O problem occurs
+     **/
+    public int read(final ReadableByteChannel in) throws IOException {
+        return in.read(prepareForRead());
+    }
+    
+    /**
+     * Adds bytes that were read elsewhere
+     * 
+     * @param src the ByteBuffer, which will be fully consumed
+     **/
+    public void write(final ByteBuffer src) {
+        while (src.hasRemaining()) {
+            final ByteBuffer buf = prepareForRead();
+            final int n = Math.min(buf.remaining(), src.remaining());
+            final int limit = src.limit();
+            src.limit(src.position() + n);
+            buf.put(src);
+            src.limit(limit);
+        }
+    }
+    
+    private ByteBuffer prepareForRead() {
+        ByteBuffer buf = this.buf;
+        if (buf.hasRemaining()) {
+            return buf;
+        }
+        // Move the unconsumed bytes to the front, or grow the buffer if they fill it
+        final int end = buf.position(), unread = end - this.start;
+        if (this.start > 0) {
+            final byte[] a = buf.array();
+            System.arraycopy(a, this.start, a, 0, unread);
+        } else {
+            final ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+            bigger.put(buf.array(), 0, end);
+            this.buf = buf = bigger;
+        }
+        buf.position(unread);
+        buf.limit(buf.capacity());
+        shift(this.start);
+        return buf;
+    }
+    
+    private void shift(final int n) {
+        if (this.frameStart >= 0) {
+            this.frameStart -= n;
+        }
+        if (this.frameEnd >= 0) {
+            this.frameEnd -= n;
+        }
+        this.scanned -= n;
+        this.start = 0;
+    }
+    
+    /**
+     * Retrieves whether a complete frame has been read
+     * 
+     * @return whether a complete frame has been read
+     **/
+    public boolean hasFrame() {
+        if (this.frameEnd >= 0) {
+            return true;
+        }
+        final byte[] a = this.buf.array();
+        final int end = this.buf.position();
+        int i = Math.max(this.scanned, this.start);
+        if (this.frameStart < 0) {
+            // Skip anything before the start byte, like the CR after the previous frame
+            while ((i < end) && (a[i] != HL7IO.BOM)) {
+                i++;
+            }
+            if (i == end) {
+                this.start = this.scanned = end;
+                return false;
+            }
+            this.frameStart = i++;
+        }
+        while ((i < end) && (a[i] != HL7IO.EOM)) {
+            i++;
+        }
+        this.scanned = i;
+        if (i == end) {
+            return false;
+        }
+        this.frameEnd = i;
+        return true;
+    }
+    
+    /**
+     * Retrieves whether any bytes other than a frame-ending CR are waiting to be decoded
+     * 
+     * @return whether bytes are waiting
+     **/
+    public boolean hasBufferedData() {
+        final byte[] a = this.buf.array();
+        final int end = this.buf.position();
+        while ((this.start < end) && (a[this.start] == HL7IO.CR)) {
+            this.start++;
+        }
+        return this.start < end;
+    }
+    
+    /**
+     * Decodes the next complete frame into the reusable char buffer
+     * 
+     * @return a CharSlice of the frame without its framing bytes, valid until the next frame is decoded
+     *         (or null if no complete frame has been read)
+     * @throws CharacterCodingException if the frame can't be decoded
+     **/
+    public CharSlice nextSlice() throws CharacterCodingException {
+        if (!hasFrame()) {
+            return null;
+        }
+        final byte[] a = this.buf.array();
+        final int off = this.frameStart + 1, len = this.frameEnd - off;
+        final Charset charset = getCharset(a, off, len);
+        final CharsetDecoder decoder = getDecoder(charset);
+        final int max = (int) Math.ceil(len * (double) decoder.maxCharsPerByte());
+        if (this.chars.length < max) {
+            this.chars = new char[Math.max(max, this.chars.length * 2)];
+        }
+        final CharBuffer out = CharBuffer.wrap(this.chars);
+        decoder.reset();
+        final ByteBuffer in = ByteBuffer.wrap(a, off, len);
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(out);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        this.lastCharset = charset;
+        this.start = this.scanned = this.frameEnd + 1;
+        this.frameStart = this.frameEnd = -1;
+        return new CharSlice(this.chars, 0, out.position());
+    }
+    
+    /**
+     * Decodes the next complete frame
+     * 
+     * @return the frame without its framing bytes (or null if no complete frame has been read)
+     * @throws CharacterCodingException if the frame can't be decoded
+     **/
+    public String next() throws CharacterCodingException {
+        final CharSlice slice = nextSlice();
+        return slice == null ? null : slice.toString();
+    }
+    
+    /**
+     * Reads from the InputStream until a frame is complete, then decodes it
+     * 
+     * @param in the InputStream
+     * @return the frame (or null if the stream ended first)
+     * @throws IOException if an I/O problem occurs
+     **/
+    public String next(final InputStream in) throws IOException {
+        while (!hasFrame()) {
+            if (!read(in)) {
+                return null;
+            }
+        }
+        return next();
+    }
+    
+    private CharsetDecoder getDecoder(final Charset charset) {
+        CharsetDecoder decoder = this.decoders.get(charset);
+        if (decoder == null) {
+            // Same handling of bad bytes as new String(byte[], Charset)
+            decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.decoders.put(charset, decoder);
+        }
+        return decoder;
+    }
+    
+    /**
+     * Retrieves the Charset used for the last decoded frame
+     * 
+     * @return the Charset
+     **/
+    public Charset getLastCharset() {
+        return this.lastCharset;
+    }
+    
+    /**
+     * Finds the Charset named by the MSH-18 of a frame; the MSH itself is always ASCII-compatible
+     * 
+     * @param a the byte array
+     * @param off the offset of the frame content
+     * @param len the length of the frame content
+     * @return the Charset
+     **/
+    private Charset getCharset(final byte[] a, final int off, final int len) {
+        final int end = off + len;
+        if ((len < 8) || (a[off] != 'M') || (a[off + 1] != 'S') || (a[off + 2] != 'H')) {
+            return this.defaultCharset;
+        }
+        final byte f = a[off + 3], rep = a[off + 5];
+        int i = off + 3, field = 2; // The separator at off + 3 is MSH-1 itself
+        while (field < MSH_CHARSET_FIELD) {
+            i++;
+            if ((i >= end) || (a[i] == HL7IO.CR) || (a[i] == '\n')) {
+                return this.defaultCharset;
+            } else if (a[i] == f) {
+                field++;
+            }
+        }
+        final int fieldStart = ++i;
+        while ((i < end) && (a[i] != f) && (a[i] != rep) && (a[i] != HL7IO.CR) && (a[i] != '\n')) {
+            i++;
+        }
+        if (i == fieldStart) {
+            return this.defaultCharset;
+        }
+        final Charset charset = toCharset(new String(a, fieldStart, i - fieldStart, ASCII));
+        return charset == null ? this.defaultCharset : charset;
+    }
+    
+    private final static Map<String, Charset> charsets = new HashMap<String, Charset>();
+    
+    private final static String ASCII_SAMPLE = "MSH|^~\\&|";
+    
+    private final static byte[] ASCII_SAMPLE_BYTES = ASCII_SAMPLE.getBytes(ASCII);
+    
+    /**
+     * Retrieves the Java Charset for an HL7 character set name from MSH-18
+     * 
+     * @param hl7Name the HL7 character set name, like ASCII, 8859/1, or UNICODE UTF-8
+     * @return the Charset (or null if it isn't recognized or supported, or if it doesn't encode the MSH as ASCII)
+     **/
+    public final static Charset toCharset(final String hl7Name) {
+        synchronized (charsets) {
+            if (charsets.containsKey(hl7Name)) {
+                return charsets.get(hl7Name);
+            }
+        }
+        final String name = hl7Name.trim().toUpperCase();
+        final String javaName;
+        if ("ASCII".equals(name)) {
+            javaName = "US-ASCII";
+        } else if (name.startsWith("8859/")) {
+            javaName = "ISO-8859-" + name.substring(5);
+        } else if ("UNICODE UTF-8".equals(name)) {
+            javaName = "UTF-8";
+        } else if ("ISO IR87".equals(name) || "ISO IR159".equals(name)) {
+            javaName = "ISO-2022-JP";
+        } else if ("ISO IR6".equals(name)) {
+            javaName = "US-ASCII";
+        } else if ("ISO IR14".equals(name)) {
+            javaName = "JIS_X0201";
+        } else if ("GB 18030-2000".equals(name)) {
+            javaName = "GB18030";
+        } else if ("KS X 1001".equals(name)) {
+            javaName = "EUC-KR";
+        } else if ("BIG-5".equals(name)) {
+            javaName = "Big5";
+        } else {
+            javaName = name;
+        }
+        Charset charset;
+        try {
+            charset = Charset.forName(javaName);
+        } catch (final RuntimeException e) {
+            charset = null;
+        }
+        // MSH-18 is only found in ASCII bytes, so a Charset like UTF-16 (which Java also calls UNICODE) can't be right
+        if ((charset != null) && !isAsciiCompatible(charset)) {
+            charset = null;
+        }
+        synchronized (charsets) {
+            charsets.put(hl7Name, charset);
+        }
+        return charset;
+    }
+    
+    private final static boolean isAsciiCompatible(final Charset charset) {
+        // Charsets that can only decode are accepted, since there's no way to compare them
+        return !charset.canEncode() || Arrays.equals(ASCII_SAMPLE_BYTES, ASCII_SAMPLE.getBytes(charset));
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.regenstrief.hl7.HL7Parser;
+import org.regenstrief.hl7.convert.Escaper;
+import org.regenstrief.hl7.segment.MSA;
+import org.regenstrief.hl7.segment.MSH;
+import org.regenstrief.util.Util;
+
+/**
+ * MllpPipelinedSender
+ *
+ * Sends messages over one MLLP connection without waiting for each response before sending the next one.
+ * Up to a window of messages can be outstanding; send blocks while the window is full.
+ * A reader thread matches each response to its request by comparing MSA-2 to the MSH-10 of the request,
+ * so the peer may answer out of order.
+ * Each send returns a future of the response, which fails if the response doesn't arrive within the timeout
+ * or if the connection fails.
+ */
+public class MllpPipelinedSender implements Closeable {
+    
+    private static final Log log = LogFactory.getLog(MllpPipelinedSender.class);
+    
+    public final static String PROP_WINDOW = MllpPipelinedSender.class.getName() + ".window";
+    
+    // How often the reader thread wakes up to expire outstanding requests
+    private final static int POLL_IN_MILLIS = 100;
+    
+    private final MllpConnection conn;
+    
+    private final Semaphore window;
+    
+    private final Map<String, Outstanding> outstanding = new ConcurrentHashMap<String, Outstanding>();
+    
+    private final Object sendLock = new Object();
+    
+    private final HL7Parser sendParser = HL7Parser.createLaxParser();
+    
+    private final HL7Parser receiveParser = HL7Parser.createLaxParser();
+    
+    private final Thread reader;
+    
+    private volatile int timeout = Util.getPropertyInt(HL7IO.PROP_TIMEOUT_IN_MILLIS, 0);
+    
+    private volatile IOException failure = null;
+    
+    private volatile boolean closed = false;
+    
+    /**
+     * Constructs a new MllpPipelinedSender
+     * 
+     * @param host the host name
+     * @param port the port
+     * @throws IOException if the connection can't be opened
+     **/
+    public MllpPipelinedSender(final String host, final int port) throws IOException {
+        this(new MllpConnection(host, port, 0, Charset.defaultCharset()), Util.getPropertyInt(PROP_WINDOW, 16));
+    }
+    
+    /**
+     * Constructs a new MllpPipelinedSender
+     * 
+     * @param conn the MllpConnection, which will be used only by this sender
+     * @param window the maximum number of outstanding messages
+     **/
+    public MllpPipelinedSender(final MllpConnection conn, final int window) {
+        this.conn = conn;
+        this.window = new Semaphore(window);
+        this.reader = new Thread(new ResponseReader(), "MllpPipelinedSender " + conn.getHost() + ":" + conn.getPort());
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+    
+    /**
+     * Sends a message, blocking while the window is full
+     * 
+     * @param msg the message, with segments terminated by carriage returns
+     * @return the future response
+     * @throws IOException if the message can't be sent
+     **/
+    public CompletableFuture<String> send(final String msg) throws IOException {
+        checkOpen();
+        return send(getControlID(msg), msg, null, 0, 0);
+    }
+    
+    /**
+     * Sends a message that is already encoded and framed, like one from a PipedMessageWriter, blocking while the window is full
+     * 
+     * @param controlID the message's MSH-10 control ID
+     * @param frame the bytes, including the MLLP start and end bytes
+     * @param off the offset of the start byte
+     * @param len the number of bytes
+     * @return the future response
+     * @throws IOException if the message can't be sent
+     **/
+    public CompletableFuture<String> send(final String controlID, final byte[] frame, final int off, final int len)
+                                                                                                                  throws IOException {
+        checkOpen();
+        if (Util.isEmpty(controlID)) {
+            throw new HL7IO.HL7IOException("Message has no MSH-10 control ID");
+        }
+        return send(controlID, null, frame, off, len);
+    }
+    
+    private CompletableFuture<String> send(final String controlID, final String msg, final byte[] frame, final int off,
+                                           final int len) throws IOException {
+        try {
+            this.window.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HL7IO.HL7IOException("Interrupted while waiting to send " + controlID, e);
+        }
+        final Outstanding o = new Outstanding();
+        if (this.outstanding.putIfAbsent(controlID, o) != null) {
+            this.window.release();
+            throw new HL7IO.HL7IOException("Message control ID " + controlID + " is already outstanding");
+        }
+        try {
+            checkOpen(); // The reader might have failed while this thread was waiting for the window
+            synchronized (this.sendLock) {
+                if (msg != null) {
+                    this.conn.send(msg);
+                } else {
+                    this.conn.sendFrame(frame, off, len);
+                }
+            }
+        } catch (final IOException e) {
+            if (this.outstanding.remove(controlID) != null) {
+                this.window.release();
+            }
+            o.future.completeExceptionally(e);
+            throw e;
+        }
+        return o.future;
+    }
+    
+    private void checkOpen() throws IOException {
+        if (this.failure != null) {
+            throw new HL7IO.HL7IOException("Connection to " + this.conn.getHost() + ":" + this.conn.getPort() + " failed", this.failure);
+        } else if (this.closed) {
+            throw new HL7IO.HL7IOException("MllpPipelinedSender for " + this.conn.getHost() + ":" + this.conn.getPort() + " is closed");
+        }
+    }
+    
+    private String getControlID(final String msg) throws IOException {
+        final int end = msg.indexOf('\r');
+        final String line = end < 0 ? msg : msg.substring(0, end);
+        final String controlID;
+        synchronized (this.sendLock) {
+            if (!Escaper.extractDelimiters(this.sendParser, line)) {
+                throw new HL7IO.HL7IOException("Message does not start with MSH");
+            }
+            controlID = MSH.parsePiped(this.sendParser, line).getMessageControlID();
+        }
+        if (Util.isEmpty(controlID)) {
+            throw new HL7IO.HL7IOException("Message has no MSH-10 control ID");
+        }
+        return controlID;
+    }
+    
+    /**
+     * Retrieves the MSA-2 of a response
+     * 
+     * @param rsp the response
+     * @return the control ID (or null if there is no MSA)
+     **/
+    private String getAcknowledgedID(final String rsp) {
+        Escaper.extractDelimiters(this.receiveParser, rsp);
+        final String msa = getSegment(rsp, MSA.MSA_XML, this.receiveParser.getFieldSeparator());
+        return msa == null ? null : MSA.parsePiped(this.receiveParser, msa).getMessageControlID();
+    }
+    
+    /**
+     * Retrieves the first segment with the given name from a message whose segments end with carriage returns,
+     * line feeds or both
+     * 
+     * @param msg the message
+     * @param name the segment name
+     * @param fieldSeparator the field separator, which must follow the name
+     * @return the segment (or null if there is none)
+     **/
+    final static String getSegment(final String msg, final String name, final char fieldSeparator) {
+        final int size = msg.length(), nameSize = name.length();
+        int start = 0;
+        while (start < size) {
+            int end = start;
+            while ((end < size) && (msg.charAt(end) != '\r') && (msg.charAt(end) != '\n')) {
+                end++;
+            }
+            if ((end - start > nameSize) && msg.startsWith(name, start) && (msg.charAt(start + nameSize) == fieldSeparator)) {
+                return msg.substring(start, end);
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+    
+    private final class ResponseReader implements Runnable {
+        
+        @Override
+        public final void run() {
+            long lastExpired = System.currentTimeMillis();
+            try {
+                while (!closed) {
+                    if ((timeout > 0) && (System.currentTimeMillis() - lastExpired >= POLL_IN_MILLIS)) {
+                        expire();
+                        lastExpired = System.currentTimeMillis();
+                    }
+                    final String rsp;
+                    try {
+                        rsp = conn.receive(timeout > 0 ? POLL_IN_MILLIS : 0);
+                    } catch (final SocketTimeoutException e) {
+                        continue;
+                    }
+                    final String controlID = getAcknowledgedID(rsp);
+                    final Outstanding o = controlID == null ? null : outstanding.remove(controlID);
+                    if (o == null) {
+                        log.warn("Received response for unknown message control ID " + controlID);
+                        continue;
+                    }
+                    window.release();
+                    o.future.complete(rsp);
+                }
+            } catch (final IOException e) {
+                if (!closed) {
+                    failure = e;
+                    failAll(e);
+                }
+            } catch (final RuntimeException e) {
+                failure = new HL7IO.HL7IOException("Could not read response", e);
+                failAll(e);
+            }
+        }
+    }
+    
+    private void expire() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<String, Outstanding>> iter = this.outstanding.entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<String, Outstanding> entry = iter.next();
+            final Outstanding o = entry.getValue();
+            if (now - o.sent >= this.timeout) {
+                if (this.outstanding.remove(entry.getKey(), o)) {
+                    this.window.release();
+                    o.future.completeExceptionally(new SocketTimeoutException("No response to " + entry.getKey() + " after " + this.timeout + " ms"));
+                }
+            }
+        }
+    }
+    
+    private void failAll(final Throwable e) {
+        for (final String controlID : this.outstanding.keySet()) {
+            final Outstanding o = this.outstanding.remove(controlID);
+            if (o != null) {
+                this.window.release();
+                o.future.completeExceptionally(e);
+            }
+        }
+    }
+    
+    private final static class Outstanding {
+        
+        private final CompletableFuture<String> future = new CompletableFuture<String>();
+        
+        private final long sent = System.currentTimeMillis();
+    }
+    
+    /**
+     * Modifies the maximum number of milliseconds to wait for each response
+     * 
+     * @param timeout the timeout (or 0 to wait indefinitely)
+     **/
+    public void setTimeout(final int timeout) {
+        this.timeout = timeout;
+    }
+    
+    /**
+     * Retrieves the number of messages that have been sent but not answered
+     * 
+     * @return the number of outstanding messages
+     **/
+    public int getNumOutstanding() {
+        return this.outstanding.size();
+    }
+    
+    /**
+     * Waits for the responses to the messages that are currently outstanding
+     * 
+     * @param timeout the maximum number of milliseconds to wait
+     * @return the number of messages that are still outstanding
+     * @throws InterruptedException if interrupted while waiting
+     **/
+    public int awaitOutstanding(final long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        for (final Outstanding o : this.outstanding.values()) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                o.future.get(remaining, TimeUnit.MILLISECONDS);
+            } catch (final ExecutionException e) {
+                // The failure is reported to the future's caller
+            } catch (final TimeoutException e) {
+                break;
+            }
+        }
+        return getNumOutstanding();
+    }
+    
+    /**
+     * Closes the connection; any outstanding messages fail
+     **/
+    @Override
+    public void close() {
+        this.closed = true;
+        this.conn.close();
+        failAll(new HL7IO.HL7IOException("MllpPipelinedSender closed"));
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.regenstrief.io.IoUtil;
+import org.regenstrief.util.Util;
+
+/**
+ * MllpServer
+ *
+ * An embeddable MLLP server that passes each received message to an HL7Handler and answers with an ACK.
+ * Each connection has a thread that reads frames with an MllpFrameDecoder, and the handlers run on a bounded worker pool.
+ * When the workers and their queue are full, connection threads stop reading until a slot frees up,
+ * so a client that sends faster than the handlers can keep up is slowed down by TCP flow control instead of
+ * filling memory.
+ * The ACK is built from the raw MSH fields; it is AA if the handler returns normally and AE with the exception's message
+ * otherwise. A message without an MSH isn't passed to the handler, and is answered with an AR NAK with a fixed header.
+ * ACKs are written as handlers finish, so a client that pipelines messages on one connection should match them by MSA-2.
+ */
+public class MllpServer implements Closeable {
+    
+    private static final Log log = LogFactory.getLog(MllpServer.class);
+    
+    public final static String PROP_WORKERS = MllpServer.class.getName() + ".workers";
+    
+    public final static String PROP_QUEUE_SIZE = MllpServer.class.getName() + ".queueSize";
+    
+    private final static long MAX_ACCEPT_BACKOFF_IN_MILLIS = 1000;
+    
+    private final ServerSocket serverSocket;
+    
+    private final HL7IO.HL7Handler handler;
+    
+    private final ThreadPoolExecutor workers;
+    
+    private final Semaphore slots;
+    
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    
+    private Charset charset = Charset.defaultCharset();
+    
+    private volatile boolean closed = false;
+    
+    private final AtomicLong numConnections = new AtomicLong();
+    
+    private final AtomicLong numErrors = new AtomicLong();
+    
+    private final LatencyCounter acceptLatency = new LatencyCounter();
+    
+    private final LatencyCounter queueLatency = new LatencyCounter();
+    
+    private final LatencyCounter processLatency = new LatencyCounter();
+    
+    /**
+     * Constructs a new MllpServer using the worker and queue sizes from the properties
+     * 
+     * @param port the port (or 0 for any free port)
+     * @param handler the HL7Handler
+     * @throws IOException if the port can't be opened
+     **/
+    public MllpServer(final int port, final HL7IO.HL7Handler handler) throws IOException {
+        this(port, handler, Util.getPropertyInt(PROP_WORKERS, Runtime.getRuntime().availableProcessors()),
+            Util.getPropertyInt(PROP_QUEUE_SIZE, 100));
+    }
+    
+    /**
+     * Constructs a new MllpServer
+     * 
+     * @param port the port (or 0 for any free port)
+     * @param handler the HL7Handler
+     * @param numWorkers the number of worker threads
+     * @param queueSize the number of messages that can wait for a worker before connections stop reading
+     * @throws IOException if the port can't be opened
+     **/
+    public MllpServer(final int port, final HL7IO.HL7Handler handler, final int numWorkers, final int queueSize) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.handler = handler;
+        this.workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        this.slots = new Semaphore(numWorkers + queueSize);
+    }
+    
+    /**
+     * Starts accepting connections on a background thread
+     * 
+     * @return this MllpServer
+     **/
+    public MllpServer start() {
+        final Thread t = new Thread(new Acceptor(), "MllpServer " + getPort());
+        t.setDaemon(true);
+        t.start();
+        return this;
+    }
+    
+    private final class Acceptor implements Runnable {
+        
+        @Override
+        public final void run() {
+            long backoff = 0;
+            while (!closed) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (final IOException e) {
+                    if (!closed) {
+                        // Like running out of file descriptors, which wouldn't be fixed by retrying immediately
+                        backoff = Math.min(MAX_ACCEPT_BACKOFF_IN_MILLIS, backoff == 0 ? 10 : backoff * 2);
+                        log.error("Could not accept MLLP connection; retrying in " + backoff + " ms", e);
+                        try {
+                            Thread.sleep(backoff);
+                        } catch (final InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                backoff = 0;
+                numConnections.incrementAndGet();
+                connections.add(socket);
+                final Thread t = new Thread(new Connection(socket), "MllpServer " + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+    
+    private final class Connection implements Runnable {
+        
+        private final Socket socket;
+        
+        private final Object writeLock = new Object();
+        
+        private byte[] outBuf = new byte[1024];
+        
+        private Connection(final Socket socket) {
+            this.socket = socket;
+        }
+        
+        @Override
+        public final void run() {
+            try {
+                this.socket.setTcpNoDelay(true);
+                final InputStream in = this.socket.getInputStream();
+                final MllpFrameDecoder decoder = new MllpFrameDecoder(charset);
+                while (!closed) {
+                    while (!decoder.hasFrame()) {
+                        if (!decoder.read(in)) {
+                            return;
+                        }
+                    }
+                    final String msg = decoder.next();
+                    final long received = System.nanoTime();
+                    slots.acquire(); // Blocks when the handlers are behind, so this connection stops reading
+                    final long queued = System.nanoTime();
+                    acceptLatency.add(queued - received);
+                    try {
+                        // ACK in the same charset as the message
+                        workers.execute(new Task(this, msg, decoder.getLastCharset(), queued));
+                    } catch (final RejectedExecutionException e) {
+                        slots.release();
+                        return; // Closed
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException e) {
+                if (!closed) {
+                    log.debug("MLLP connection from " + this.socket.getRemoteSocketAddress() + " ended", e);
+                }
+            } finally {
+                connections.remove(this.socket);
+                IoUtil.close(this.socket);
+            }
+        }
+        
+        private void write(final String ack, final Charset charset) throws IOException {
+            final byte[] body = ack.getBytes(charset);
+            synchronized (this.writeLock) {
+                final int size = body.length + 3;
+                if (this.outBuf.length < size) {
+                    this.outBuf = new byte[Math.max(size, this.outBuf.length * 2)];
+                }
+                final byte[] buf = this.outBuf;
+                buf[0] = HL7IO.BOM;
+                System.arraycopy(body, 0, buf, 1, body.length);
+                buf[size - 2] = HL7IO.EOM;
+                buf[size - 1] = HL7IO.CR;
+                final OutputStream out = this.socket.getOutputStream();
+                out.write(buf, 0, size);
+                out.flush();
+            }
+        }
+    }
+    
+    private final class Task implements Runnable {
+        
+        private final Connection conn;
+        
+        private final String msg;
+        
+        private final Charset charset;
+        
+        private final long queued;
+        
+        private Task(final Connection conn, final String msg, final Charset charset, final long queued) {
+            this.conn = conn;
+            this.msg = msg;
+            this.charset = charset;
+            this.queued = queued;
+        }
+        
+        @Override
+        public final void run() {
+            final long start = System.nanoTime();
+            queueLatency.add(start - this.queued);
+            try {
+                String ack;
+                if ((this.msg.length() < 4) || !this.msg.startsWith("MSH")) {
+                    // No ACK can be built from the message, but the client is still waiting for an answer
+                    numErrors.incrementAndGet();
+                    ack = HL7IO.make_nak("AR", "Message does not start with an MSH segment");
+                } else {
+                    try {
+                        handler.process(this.msg);
+                        ack = HL7IO.make_ack(this.msg, "AA", null);
+                    } catch (final Exception e) {
+                        numErrors.incrementAndGet();
+                        log.debug("HL7Handler failed", e);
+                        ack = HL7IO.make_ack(this.msg, "AE", e.getMessage());
+                    }
+                }
+                this.conn.write(ack, this.charset);
+            } catch (final IOException e) {
+                numErrors.incrementAndGet();
+                log.debug("Could not acknowledge message", e);
+            } finally {
+                processLatency.add(System.nanoTime() - start);
+                slots.release();
+            }
+        }
+    }
+    
+    /**
+     * A count of events and their total and maximum latency
+     **/
+    public final static class LatencyCounter {
+        
+        private final AtomicLong count = new AtomicLong();
+        
+        private final AtomicLong totalNanos = new AtomicLong();
+        
+        private final AtomicLong maxNanos = new AtomicLong();
+        
+        private void add(final long nanos) {
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+            long max;
+            while ((nanos > (max = this.maxNanos.get())) && !this.maxNanos.compareAndSet(max, nanos)) {
+                // Retry until this thread's value is recorded or a larger one is
+            }
+        }
+        
+        public long getCount() {
+            return this.count.get();
+        }
+        
+        public long getTotalNanos() {
+            return this.totalNanos.get();
+        }
+        
+        public long getMaxNanos() {
+            return this.maxNanos.get();
+        }
+        
+        public double getMeanMillis() {
+            final long count = getCount();
+            return count == 0 ? 0 : getTotalNanos() / (count * 1000000.0);
+        }
+        
+        @Override
+        public String toString() {
+            return getCount() + " events, mean " + getMeanMillis() + " ms, max " + (getMaxNanos() / 1000000.0) + " ms";
+        }
+    }
+    
+    /**
+     * Retrieves the time that received messages waited for a worker slot, which grows when backpressure is applied
+     * 
+     * @return the LatencyCounter
+     **/
+    public LatencyCounter getAcceptLatency() {
+        return this.acceptLatency;
+    }
+    
+    /**
+     * Retrieves the time that messages waited in the queue for a worker thread
+     * 
+     * @return the LatencyCounter
+     **/
+    public LatencyCounter getQueueLatency() {
+        return this.queueLatency;
+    }
+    
+    /**
+     * Retrieves the time that workers took to run the handler and send the ACK
+     * 
+     * @return the LatencyCounter
+     **/
+    public LatencyCounter getProcessLatency() {
+        return this.processLatency;
+    }
+    
+    public long getNumConnections() {
+        return this.numConnections.get();
+    }
+    
+    public long getNumErrors() {
+        return this.numErrors.get();
+    }
+    
+    /**
+     * Retrieves the number of messages waiting for a worker thread
+     * 
+     * @return the queue size
+     **/
+    public int getQueueSize() {
+        return this.workers.getQueue().size();
+    }
+    
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Modifies the Charset of ACKs, and of received messages without MSH-18
+     * 
+     * @param charset the Charset
+     **/
+    public void setCharset(final Charset charset) {
+        this.charset = charset;
+    }
+    
+    /**
+     * Stops accepting connections, closes the open ones, and stops the workers after their current messages
+     **/
+    @Override
+    public void close() {
+        this.closed = true;
+        IoUtil.close(this.serverSocket);
+        for (final Socket socket : this.connections) {
+            IoUtil.close(socket);
+        }
+        this.workers.shutdown();
+    }
+}
@@ -40,6 +40,8 @@ public class PipeReader extends BufferedReader {
     
     private String breakReplacement = Util.getProperty(PROP_BREAK_REPLACEMENT, " ");
     
+    private final SegmentAssembler assembler = new SegmentAssembler();
+    
     /**
      * Constructs a new PipeReader
      * 
@@ -92,9 +94,10 @@ public class PipeReader extends BufferedReader {
     @Override
     public String readLine() throws IOException {
         String s = null;
-        StringBuilder sb = null;
+        final SegmentAssembler assembler = this.assembler;
         final char f = this.fieldSeparator;
         
+        assembler.start(this.line);
         while (true) {
             s = getLine();
             if ((s == null) || s.startsWith(MSH.MSH_XML)) {
@@ -104,22 +107,13 @@ public class PipeReader extends BufferedReader {
             if ((n >= 3) && up(s, 0) && up(s, 1) && (up(s, 2) || digit(s.charAt(2))) && ((n == 3) || (s.charAt(3) == f))) {
                 break;
             } else {
-                if (sb == null) {
-                    sb = new StringBuilder(n + this.line.length());
-                    sb.append(this.line);
-                }
-                appendLine(sb, s);
+                appendLine(assembler, s);
             }
         }
         
-        if (sb == null) {
-            final String t = this.line;
-            this.line = s;
-            return t;
-        }
         this.line = s;
         
-        return sb.toString();
+        return assembler.finish();
     }
     
     /**
@@ -154,12 +148,12 @@ public class PipeReader extends BufferedReader {
     /**
      * Appends a line to the segment
      * 
-     * @param sb the StringBuilder segment
+     * @param assembler the SegmentAssembler
      * @param line the line
      **/
-    private void appendLine(final StringBuilder sb, final String line) {
-        sb.append(this.breakReplacement);
-        sb.append(line);
+    private void appendLine(final SegmentAssembler assembler, final String line) {
+        assembler.append(this.breakReplacement);
+        assembler.append(line);
     }
     
     /**
@@ -0,0 +1,374 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.regenstrief.hl7.HL7Data;
+import org.regenstrief.hl7.HL7DataTree;
+import org.regenstrief.hl7.segment.HL7Segment;
+
+/**
+ * PipedMessageWriter
+ *
+ * Serializes whole messages into a reusable byte buffer, ready to be written to a socket or file with one call.
+ * Segments write their piped text straight into this Writer, which encodes it as it goes (UTF-8 by default, without
+ * creating Strings for ASCII or UTF-8 text), so no String is built for a segment, a message, or its line-ending conversion.
+ * Segments are terminated by carriage returns, and messages can be framed with the MLLP start and end bytes.
+ * A PipedMessageWriter isn't thread-safe; a thread that sends many messages should keep one and reset it for each message.
+ */
+public class PipedMessageWriter extends Writer {
+    
+    private final static int INITIAL_BUFFER_SIZE = 8192;
+    
+    private final boolean mllp;
+    
+    private final boolean utf8;
+    
+    private final CharsetEncoder encoder;
+    
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+    
+    private int size = 0;
+    
+    // A high surrogate written without its low surrogate yet
+    private char pendingHighSurrogate = 0;
+    
+    /**
+     * Constructs a new UTF-8 PipedMessageWriter
+     * 
+     * @param mllp whether messages should be framed with the MLLP start and end bytes
+     **/
+    public PipedMessageWriter(final boolean mllp) {
+        this(mllp, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Constructs a new PipedMessageWriter
+     * 
+     * @param mllp whether messages should be framed with the MLLP start and end bytes
+     * @param charset the Charset; UTF-8 is encoded directly, and others with a CharsetEncoder
+     **/
+    public PipedMessageWriter(final boolean mllp, final Charset charset) {
+        this.mllp = mllp;
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        this.encoder = this.utf8 ? null : charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+    
+    /**
+     * Clears the buffer and writes a whole message: each segment of the tree followed by a carriage return,
+     * framed if this PipedMessageWriter uses MLLP
+     * 
+     * @param tree the message HL7DataTree
+     * @return this PipedMessageWriter
+     * @throws IOException if a segment can't be written
+     **/
+    public PipedMessageWriter writeMessage(final HL7DataTree tree) throws IOException {
+        reset();
+        startMessage();
+        for (final HL7Data data : tree.getDescendantValues()) {
+            if (data instanceof HL7Segment) { // Only other option should be HL7Group
+                writeSegment((HL7Segment) data);
+            }
+        }
+        endMessage();
+        return this;
+    }
+    
+    /**
+     * Clears the buffer and writes a whole message from a list of segments
+     * 
+     * @param segments the segments
+     * @return this PipedMessageWriter
+     * @throws IOException if a segment can't be written
+     **/
+    public PipedMessageWriter writeMessage(final List<? extends HL7Segment> segments) throws IOException {
+        reset();
+        startMessage();
+        for (final HL7Segment segment : segments) {
+            writeSegment(segment);
+        }
+        endMessage();
+        return this;
+    }
+    
+    /**
+     * Writes the MLLP start byte if this PipedMessageWriter uses MLLP
+     **/
+    public void startMessage() {
+        if (this.mllp) {
+            writeByte(HL7IO.BOM);
+        }
+    }
+    
+    /**
+     * Writes a segment followed by a carriage return
+     * 
+     * @param segment the HL7Segment
+     * @throws IOException if the segment can't be written
+     **/
+    public void writeSegment(final HL7Segment segment) throws IOException {
+        segment.toPiped(this);
+        write(HL7IO.CR);
+    }
+    
+    /**
+     * Finishes encoding the message, then writes the MLLP end bytes if this PipedMessageWriter uses MLLP
+     **/
+    public void endMessage() {
+        if (this.encoder == null) {
+            flushPendingHighSurrogate();
+        } else {
+            endEncoding();
+        }
+        if (this.mllp) {
+            writeByte(HL7IO.EOM);
+            writeByte(HL7IO.CR);
+        }
+    }
+    
+    @Override
+    public void write(final int c) {
+        final char ch = (char) c;
+        if (this.utf8 && (ch < 0x80) && (this.pendingHighSurrogate == 0)) {
+            writeByte(ch);
+        } else {
+            write(String.valueOf(ch), 0, 1);
+        }
+    }
+    
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) {
+        write(CharBuffer.wrap(cbuf), off, len);
+    }
+    
+    @Override
+    public void write(final String str, final int off, final int len) {
+        write((CharSequence) str, off, len);
+    }
+    
+    @Override
+    public Writer append(final CharSequence csq) {
+        final CharSequence s = csq == null ? "null" : csq;
+        write(s, 0, s.length());
+        return this;
+    }
+    
+    @Override
+    public Writer append(final CharSequence csq, final int start, final int end) {
+        final CharSequence s = csq == null ? "null" : csq;
+        write(s, start, end - start);
+        return this;
+    }
+    
+    @Override
+    public Writer append(final char c) {
+        write(c);
+        return this;
+    }
+    
+    private void write(final CharSequence s, final int off, final int len) {
+        if (!this.utf8) {
+            encode(s, off, len);
+            return;
+        }
+        ensureCapacity(len);
+        final int end = off + len;
+        int i = off;
+        // Most HL7 is ASCII, so copy it without checking the capacity for each character
+        while ((i < end) && (this.pendingHighSurrogate == 0)) {
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            this.buf[this.size++] = (byte) c;
+            i++;
+        }
+        for (; i < end; i++) {
+            writeUtf8(s.charAt(i));
+        }
+    }
+    
+    private void writeUtf8(final char c) {
+        if (this.pendingHighSurrogate != 0) {
+            final char high = this.pendingHighSurrogate;
+            this.pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int cp = Character.toCodePoint(high, c);
+                ensureCapacity(4);
+                this.buf[this.size++] = (byte) (0xF0 | (cp >> 18));
+                this.buf[this.size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                this.buf[this.size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                this.buf[this.size++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            writeByte('?'); // Unpaired surrogate, like String.getBytes
+        }
+        if (c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            this.buf[this.size++] = (byte) (0xC0 | (c >> 6));
+            this.buf[this.size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this.pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            writeByte('?');
+        } else {
+            ensureCapacity(3);
+            this.buf[this.size++] = (byte) (0xE0 | (c >> 12));
+            this.buf[this.size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            this.buf[this.size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+    
+    private void flushPendingHighSurrogate() {
+        if (this.pendingHighSurrogate != 0) {
+            this.pendingHighSurrogate = 0;
+            writeByte('?');
+        }
+    }
+    
+    private void encode(final CharSequence s, final int off, final int len) {
+        if (len == 0) {
+            return;
+        }
+        ensureCapacity((int) (len * this.encoder.averageBytesPerChar()) + 16);
+        int start = off;
+        if (this.pendingHighSurrogate != 0) {
+            // Encode the high surrogate left by the previous write with the character that follows it
+            final char high = this.pendingHighSurrogate;
+            this.pendingHighSurrogate = 0;
+            final char c = s.charAt(off);
+            if (Character.isLowSurrogate(c)) {
+                encode(CharBuffer.wrap(new char[] { high, c }), false);
+                start++;
+            } else {
+                encode(CharBuffer.wrap("?"), false); // Unpaired surrogate, like String.getBytes
+            }
+        }
+        final CharBuffer in = CharBuffer.wrap(s, start, off + len);
+        encode(in, false);
+        if (in.hasRemaining()) {
+            // The encoder leaves a trailing high surrogate in the input until it sees the next character
+            this.pendingHighSurrogate = in.get();
+        }
+    }
+    
+    private void encode(final CharBuffer in, final boolean endOfInput) {
+        while (true) {
+            final ByteBuffer out = ByteBuffer.wrap(this.buf, this.size, this.buf.length - this.size);
+            final CoderResult result = this.encoder.encode(in, out, endOfInput);
+            this.size = out.position();
+            if (!result.isOverflow()) {
+                return;
+            }
+            ensureCapacity((int) (in.remaining() * this.encoder.maxBytesPerChar()) + 16);
+        }
+    }
+    
+    /**
+     * Finishes the encoder's output, so a stateful charset like ISO-2022-JP shifts back to its initial state
+     **/
+    private void endEncoding() {
+        encode(CharBuffer.wrap(this.pendingHighSurrogate == 0 ? "" : "?"), true);
+        this.pendingHighSurrogate = 0;
+        while (true) {
+            final ByteBuffer out = ByteBuffer.wrap(this.buf, this.size, this.buf.length - this.size);
+            final CoderResult result = this.encoder.flush(out);
+            this.size = out.position();
+            if (!result.isOverflow()) {
+                break;
+            }
+            ensureCapacity(16);
+        }
+        this.encoder.reset();
+    }
+    
+    private void writeByte(final int b) {
+        ensureCapacity(1);
+        this.buf[this.size++] = (byte) b;
+    }
+    
+    private void ensureCapacity(final int extra) {
+        final int needed = this.size + extra;
+        if (needed > this.buf.length) {
+            this.buf = Arrays.copyOf(this.buf, Math.max(needed, this.buf.length * 2));
+        }
+    }
+    
+    /**
+     * Writes the buffered bytes to an OutputStream in one call
+     * 
+     * @param out the OutputStream
+     * @throws IOException if the bytes can't be written
+     **/
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(this.buf, 0, this.size);
+    }
+    
+    /**
+     * Retrieves the buffered bytes without copying them; the ByteBuffer is only valid until this Writer is modified
+     * 
+     * @return the ByteBuffer
+     **/
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(this.buf, 0, this.size);
+    }
+    
+    /**
+     * Retrieves a copy of the buffered bytes, for a message that must outlive the next reset
+     * 
+     * @return the bytes
+     **/
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.buf, this.size);
+    }
+    
+    public int size() {
+        return this.size;
+    }
+    
+    /**
+     * Clears the buffer, keeping its capacity
+     **/
+    public void reset() {
+        this.size = 0;
+        this.pendingHighSurrogate = 0;
+        if (this.encoder != null) {
+            this.encoder.reset();
+        }
+    }
+    
+    @Override
+    public void flush() {
+        // Nothing is written until writeTo is called
+    }
+    
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+/**
+ * SegmentAssembler
+ *
+ * Joins a segment that is split over several lines, like a segment followed by ADD continuations or a line that was
+ * broken inside a field, in one growable buffer that is reused for each segment. Joining n chars takes O(n) time,
+ * no matter how many pieces there are. A segment with only one line is returned as is, without being copied.
+ * A buffer that grew very large for an embedded document is dropped afterward, so the reader doesn't keep it.
+ * A SegmentAssembler isn't thread-safe; each reader has its own.
+ */
+public final class SegmentAssembler {
+    
+    private final static int INITIAL_BUFFER_SIZE = 256;
+    
+    private final static int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+    
+    private StringBuilder buf = null;
+    
+    private String first = null;
+    
+    private boolean joined = false;
+    
+    /**
+     * Starts a new segment, discarding any unfinished one
+     * 
+     * @param line the first line of the segment
+     **/
+    public void start(final String line) {
+        this.first = line;
+        this.joined = false;
+    }
+    
+    /**
+     * Retrieves whether a segment has been started and not finished
+     * 
+     * @return whether a segment has been started
+     **/
+    public boolean isStarted() {
+        return this.first != null;
+    }
+    
+    /**
+     * Appends a piece of the segment
+     * 
+     * @param s the CharSequence containing the piece
+     * @param start the index of the first char of the piece
+     * @param end the index after the last char of the piece
+     **/
+    public void append(final CharSequence s, final int start, final int end) {
+        join().append(s, start, end);
+    }
+    
+    /**
+     * Appends a piece of the segment
+     * 
+     * @param s the piece
+     **/
+    public void append(final String s) {
+        join().append(s);
+    }
+    
+    private StringBuilder join() {
+        if (!this.joined) {
+            if (this.buf == null) {
+                this.buf = new StringBuilder(Math.max(INITIAL_BUFFER_SIZE, this.first.length() * 2));
+            }
+            this.buf.setLength(0);
+            this.buf.append(this.first);
+            this.joined = true;
+        }
+        return this.buf;
+    }
+    
+    /**
+     * Finishes the segment
+     * 
+     * @return the whole segment (or null if none was started)
+     **/
+    public String finish() {
+        final String segment;
+        if (this.joined) {
+            segment = this.buf.toString();
+            if (this.buf.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                this.buf = null;
+            } else {
+                this.buf.setLength(0);
+            }
+        } else {
+            segment = this.first;
+        }
+        this.first = null;
+        this.joined = false;
+        return segment;
+    }
+}
@@ -12,9 +12,12 @@
  */
 package org.regenstrief.hl7.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,8 +37,6 @@ import org.regenstrief.hl7.segment.PID;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.regenstrief.util.Util;
-import org.regenstrief.util.criterion.AntiCriterion;
-import org.regenstrief.util.criterion.CharSequenceContainsCriterion;
 import org.regenstrief.util.reflect.ReflectUtil;
 
 /**
@@ -96,37 +97,47 @@ public class UtilHL7 {
     
     private final static int NULL_NUMERIC = -1;
     
-    private final static Map<String, Constructor<? extends HL7Data>> nameCache = new HashMap<String, Constructor<? extends HL7Data>>();
+    private final static MethodType CONSTRUCTOR_TYPE = MethodType.methodType(HL7Data.class, HL7Properties.class);
     
-    private final static Map<Class<? extends HL7Data>, Constructor<? extends HL7Data>> classCache = new HashMap<Class<? extends HL7Data>, Constructor<? extends HL7Data>>();
+    // Constructor handles for any HL7Data class; ClassValue computes each one once and publishes it safely to all threads
+    private final static ClassValue<MethodHandle> classCache = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(final Class<?> c) {
+            final Constructor<?> cons = ReflectUtil.getConstructor(c, HL7Properties.class);
+            if (cons == null) {
+                return null;
+            }
+            cons.setAccessible(true);
+            try {
+                return MethodHandles.lookup().unreflectConstructor(cons).asType(CONSTRUCTOR_TYPE);
+            } catch (final IllegalAccessException e) {
+                throw Util.toRuntimeException(e);
+            }
+        }
+    };
+    
+    // Never modified after class initialization, so lookups don't need to lock
+    private final static Map<String, Class<? extends HL7Data>> nameCache;
     
     private final static Pattern PAT_BR = Pattern.compile("\\n|\\r\\n");
     
     static {
-        final AntiCriterion tc = AntiCriterion.getInstance(new CharSequenceContainsCriterion("Test", false));
-        final Class<?> hierarchy[] = new Class<?>[] { UMSG_Z01.class, PID.class, CE.class };
         final HL7Parser parser = new HL7Parser();
         final String versions[] = new String[] { OutputUtil.V2_3_1, OutputUtil.V2_4 };
         final MessageProperties mp = parser.getMessageProp();
+        final Map<String, Class<? extends HL7Data>> names = new HashMap<String, Class<? extends HL7Data>>();
         
-        for (final Class<?> hc : hierarchy) {
-            final Class<?>[] a = Util.getClassesForPackage(hc, tc);
-            for (final String version : versions) { // Groups have different names in different versions
-                mp.setVersion(version);
-                for (final Class<?> ac : a) {
-                    final Class<? extends HL7Data> c = Util.cast(ac);
-                    if (Modifier.isAbstract(c.getModifiers())) {
-                        continue;
-                    }
-                    final HL7Data data = getInstance(parser, c);
-                    if (data != null) { // These packages also contain test classes which can be ignored
-                        final Constructor<? extends HL7Data> cons = ReflectUtil.getConstructor(c, HL7Properties.class);
-                        nameCache.put(data.getTagName(), cons);
-                        classCache.put(cons.getDeclaringClass(), cons);
-                    }
+        for (final String version : versions) { // Groups have different names in different versions
+            mp.setVersion(version);
+            for (final Class<?> ac : HL7TypeIndex.TYPES) {
+                final Class<? extends HL7Data> c = Util.cast(ac);
+                final HL7Data data = getInstance(parser, c);
+                if (data != null) {
+                    names.put(data.getTagName(), c);
                 }
             }
         }
+        nameCache = Collections.unmodifiableMap(names);
         if (!nameCache.containsKey(PID.PID_XML)) {
             final StringBuilder b = new StringBuilder();
             for (final String n : nameCache.keySet()) {
@@ -463,8 +474,7 @@ public class UtilHL7 {
      * @return the Class
      **/
     public final static Class<? extends HL7Data> getClass(final String valueType) {
-        final Constructor<? extends HL7Data> cons = nameCache.get(valueType);
-        return cons == null ? null : cons.getDeclaringClass();
+        return nameCache.get(valueType);
     }
     
     /**
@@ -484,16 +494,17 @@ public class UtilHL7 {
      * @param <T> the desired type
      * @return the instance Object
      **/
-    @SuppressWarnings("unchecked")
     public final static <T extends HL7Data> T getInstance(final HL7Properties prop, final Class<T> c) {
         if (c == null) {
             return null;
         }
+        final MethodHandle cons = classCache.get(c);
+        if (cons == null) {
+            return null;
+        }
         try {
-            final Constructor<?> cache = classCache.get(c);
-            final Constructor<T> cons = cache == null ? ReflectUtil.getConstructor(c, HL7Properties.class) : (Constructor<T>) cache;
-            return cons == null ? null : cons.newInstance(prop);
-        } catch (final Exception e) {
+            return c.cast((HL7Data) cons.invokeExact(prop));
+        } catch (final Throwable e) {
             throw new RuntimeException("Could not instantiate " + c.getName(), e);
         }
     }
@@ -506,13 +517,8 @@ public class UtilHL7 {
      * @return the instance Object
      **/
     public final static HL7Data getInstance(final HL7Properties prop, final String valueType) {
-        final Constructor<? extends HL7Data> cons = nameCache.get(valueType);
-        final HL7Data data;
-        try {
-            data = cons == null ? null : cons.newInstance(prop);
-        } catch (final Exception e) {
-            throw new RuntimeException("Could not instantiate " + valueType, e);
-        }
+        final Class<? extends HL7Data> c = nameCache.get(valueType);
+        final HL7Data data = c == null ? null : getInstance(prop, c);
         return data == null ? null : data.getTagName().equals(valueType) ? data : null;
     }
     
@@ -0,0 +1,213 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.regenstrief.util.Util;
+
+/**
+ * AsyncLogWriter
+ *
+ * Writes log records on a background thread, so threads that log don't wait on each other or on file I/O.
+ * Records are put into a fixed-size ring buffer without locking; a single writer thread takes them out in order,
+ * converts each one to a String with toString, and writes it as a line to a buffered (and optionally gzipped) file.
+ * Since records are only formatted by the writer thread, a caller can log a small object holding the values
+ * instead of building the line itself; such an object must not be modified after it is logged.
+ * If the ring buffer is full, callers wait for the writer thread to make room, so nothing is dropped.
+ * Records logged after close has been called are discarded.
+ */
+public class AsyncLogWriter implements Closeable {
+    
+    private static final Log log = LogFactory.getLog(AsyncLogWriter.class);
+    
+    // How long the writer thread sleeps when there is nothing to write
+    private final static long IDLE_IN_NANOS = 1000000;
+    
+    private final static String BR = Util.getLineSeparator();
+    
+    private final Writer out;
+    
+    private final AtomicReferenceArray<Object> ring;
+    
+    private final int mask;
+    
+    // Next sequence number that a caller will claim
+    private final AtomicLong claimed = new AtomicLong();
+    
+    // Next sequence number that the writer thread will take; only modified by the writer thread
+    private final AtomicLong consumed = new AtomicLong();
+    
+    private final Thread writer;
+    
+    private volatile boolean closed = false;
+    
+    private volatile IOException failure = null;
+    
+    /**
+     * Constructs a new AsyncLogWriter for a file
+     * 
+     * @param loc the file location
+     * @param compress whether the file should be gzipped
+     * @param capacity the number of records that can wait to be written, rounded up to a power of 2
+     * @throws IOException if the file can't be opened
+     **/
+    public AsyncLogWriter(final String loc, final boolean compress, final int capacity) throws IOException {
+        this(open(loc, compress), capacity);
+    }
+    
+    /**
+     * Constructs a new AsyncLogWriter
+     * 
+     * @param out the Writer, which will be buffered and only used by the writer thread
+     * @param capacity the number of records that can wait to be written, rounded up to a power of 2
+     **/
+    public AsyncLogWriter(final Writer out, final int capacity) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 65536);
+        final int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.ring = new AtomicReferenceArray<Object>(size);
+        this.mask = size - 1;
+        this.writer = new Thread(new Drainer(), "AsyncLogWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    private final static Writer open(final String loc, final boolean compress) throws IOException {
+        OutputStream out = Util.getFileOutputStream(loc);
+        if (compress) {
+            try {
+                out = new GZIPOutputStream(out, 65536);
+            } catch (final IOException e) {
+                IoUtil.close(out);
+                throw e;
+            }
+        }
+        return new OutputStreamWriter(out);
+    }
+    
+    /**
+     * Logs a record, waiting only if the ring buffer is full
+     * 
+     * @param record the record, which will be written as a line with its toString value
+     * @return whether the record was accepted (false if this AsyncLogWriter is closed)
+     **/
+    public boolean write(final Object record) {
+        if ((record == null) || this.closed) {
+            return false;
+        }
+        final long seq = this.claimed.getAndIncrement();
+        final int capacity = this.mask + 1;
+        while (seq - this.consumed.get() >= capacity) {
+            if (!this.writer.isAlive()) {
+                return false; // Closed while this thread was waiting
+            }
+            LockSupport.parkNanos(1000); // Full, so wait for the writer thread to catch up
+        }
+        this.ring.set((int) seq & this.mask, record);
+        return true;
+    }
+    
+    private final class Drainer implements Runnable {
+        
+        @Override
+        public final void run() {
+            long seq = consumed.get();
+            boolean dirty = false;
+            while (true) {
+                final int i = (int) seq & mask;
+                final Object record = ring.get(i);
+                if (record == null) {
+                    // A claimed slot might not have been filled yet, so only stop once every claimed record is written
+                    if (closed && (seq == claimed.get())) {
+                        break;
+                    }
+                    if (dirty) {
+                        flush();
+                        dirty = false;
+                    }
+                    LockSupport.parkNanos(IDLE_IN_NANOS);
+                    continue;
+                }
+                ring.set(i, null);
+                consumed.lazySet(++seq);
+                if (failure == null) {
+                    try {
+                        out.write(String.valueOf(record));
+                        out.write(BR);
+                        dirty = true;
+                    } catch (final IOException e) {
+                        failure = e;
+                        log.error("Could not write log record; further records will be discarded", e);
+                    } catch (final RuntimeException e) {
+                        log.error("Could not format log record", e);
+                    }
+                }
+            }
+            flush();
+        }
+        
+        private void flush() {
+            if (failure != null) {
+                return;
+            }
+            try {
+                out.flush();
+            } catch (final IOException e) {
+                failure = e;
+                log.error("Could not flush log records; further records will be discarded", e);
+            }
+        }
+    }
+    
+    /**
+     * Retrieves the number of records waiting to be written
+     * 
+     * @return the number of records
+     **/
+    public int getNumPending() {
+        return (int) (this.claimed.get() - this.consumed.get());
+    }
+    
+    /**
+     * Waits for the logged records to be written, then closes the file
+     * 
+     * @throws IOException if any record couldn't be written
+     **/
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.out.close();
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+}
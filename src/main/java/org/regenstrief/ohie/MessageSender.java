@@ -13,21 +13,46 @@
 package org.regenstrief.ohie;
 
 import java.io.BufferedReader;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
+import org.regenstrief.hl7.HL7MessageStream;
 import org.regenstrief.hl7.HL7Parser;
-import org.regenstrief.hl7.SegmentReader;
 import org.regenstrief.hl7.segment.HL7Segment;
-import org.regenstrief.hl7.util.HL7IO;
+import org.regenstrief.hl7.segment.MSH;
+import org.regenstrief.hl7.util.MllpClientPool;
+import org.regenstrief.hl7.util.MllpConnection;
+import org.regenstrief.hl7.util.MllpPipelinedSender;
+import org.regenstrief.hl7.util.PipedMessageWriter;
+import org.regenstrief.io.AsyncLogWriter;
 import org.regenstrief.io.IoUtil;
+import org.regenstrief.util.LatencyHistogram;
 import org.regenstrief.util.Util;
 
 /**
  * MessageSender
+ *
+ * Sends the messages in a file to the client registry and records the latency of each message type.
+ * By default it runs closed-loop: each of the sender threads (or pipelined connections) sends its next message as soon as
+ * it can. If a rate is given, it runs open-loop: messages are scheduled at that rate whether or not responses keep up, and
+ * latency is measured from each message's scheduled time, so a slow server can't hide its backlog by slowing the sender.
+ * A closed-loop run can be corrected for coordinated omission by giving the expected interval between a thread's messages.
+ * Throughput and latency percentiles are printed periodically and at the end.
+ * Each response is logged to a file as a tab-separated record of the message index, sender thread, MSH-10, latency and
+ * ACK code, optionally followed by the request and response; the records are written by an AsyncLogWriter,
+ * so sender threads don't wait on each other or on the file.
  */
 public class MessageSender {
     
@@ -39,21 +64,59 @@ public class MessageSender {
     
     private final static int NUM_THREADS = Util.getPropertyInt("org.regenstrief.ohie.cr.threads", 10);
     
-    private final static String STOP = "STOP";
+    // Messages in flight per connection; 0 waits for each response before sending the next message
+    private final static int WINDOW = Util.getPropertyInt("org.regenstrief.ohie.cr.window", 0);
     
-    private final static String BR = Util.getLineSeparator();
+    // Messages per second for open-loop scheduling; 0 runs closed-loop
+    private final static int RATE = Util.getPropertyInt("org.regenstrief.ohie.cr.rate", 0);
+    
+    // Expected milliseconds between a closed-loop thread's messages, used to correct for coordinated omission
+    private final static int EXPECTED_INTERVAL_IN_MILLIS = Util.getPropertyInt("org.regenstrief.ohie.cr.expectedIntervalInMillis", 0);
+    
+    // Milliseconds to wait for outstanding pipelined responses at shutdown before abandoning them
+    private final static int SHUTDOWN_TIMEOUT_IN_MILLIS = Util.getPropertyInt("org.regenstrief.ohie.cr.shutdownTimeoutInMillis", 60000);
+    
+    private final static int REPORT_INTERVAL_IN_SECONDS = Util.getPropertyInt("org.regenstrief.ohie.cr.reportIntervalInSeconds", 10);
+    
+    private final static boolean LOG_PAYLOADS = Util.isProperty("org.regenstrief.ohie.cr.logPayloads", true);
+    
+    private final static boolean LOG_COMPRESSED = Util.isProperty("org.regenstrief.ohie.cr.logCompressed", false);
     
-    private final static Object infoLock = new Object();
+    private final static int LOG_CAPACITY = Util.getPropertyInt("org.regenstrief.ohie.cr.logCapacity", 65536);
+    
+    // Latencies are recorded in microseconds, up to an hour
+    private final static long MAX_LATENCY_IN_MICROS = 60L * 60 * 1000 * 1000;
+    
+    private final static double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    
+    private final static Message STOP = new Message(null, 0, null, null, 0);
+    
+    private final static String BR = Util.getLineSeparator();
     
     private final static Object countLock = new Object();
     
+    private final static Charset CHARSET = Charset.defaultCharset();
+    
+    private final static MllpClientPool pool = new MllpClientPool(HOST, PORT_PIX, NUM_THREADS, CHARSET);
+    
+    // Only used by the thread reading the file; each message is encoded and framed once, then queued as bytes
+    private final static PipedMessageWriter encoder = new PipedMessageWriter(true, CHARSET);
+    
     private final static BlockingQueue<Message> messageQueue = new ArrayBlockingQueue<Message>(Math.round(NUM_THREADS * 1.5f));
     
     //private final static HL7Transform transform = null;
     
     private static volatile int messageCount = 0;
     
-    private static PrintStream out = null;
+    private static AsyncLogWriter out = null;
+    
+    private static MllpPipelinedSender[] pipelinedSenders = null;
+    
+    private final static List<Thread> senderThreads = new ArrayList<Thread>();
+    
+    private final static ConcurrentMap<String, TypeStats> stats = new ConcurrentHashMap<String, TypeStats>();
+    
+    private static long startNanos = 0;
     
     public final static void main(final String[] args) {
         try {
@@ -66,28 +129,45 @@ public class MessageSender {
     private final static void run(final String[] args) throws Exception {
         final String inName = args[0];
         BufferedReader bin = null;
-        startSenders();
+        if (WINDOW > 0) {
+            startPipelinedSenders();
+        } else {
+            startSenders();
+        }
+        Thread reporter = null;
         try {
-            out = Util.getPrintStream(inName + ".out.txt");
-            info("Starting to send messages to " + HOST + ":" + PORT_PIX + BR);
+            out = new AsyncLogWriter(inName + (LOG_COMPRESSED ? ".out.txt.gz" : ".out.txt"), LOG_COMPRESSED, LOG_CAPACITY);
+            out.write(Record.HEADER);
+            info("Starting to send messages to " + HOST + ":" + PORT_PIX + (RATE > 0 ? " at " + RATE + " per second" : "") + BR);
+            startNanos = System.nanoTime();
+            reporter = startReporter();
             bin = Util.getBufferedReader(inName);
-            final SegmentReader in = new SegmentReader(HL7Parser.createLaxParser(), bin);
-            HL7Segment seg = null;
-            List<HL7Segment> msg = new ArrayList<HL7Segment>();
-            while ((seg = in.readSegment()) != null) {
-                if ("MSH".equals(seg.getTagName())) {
-                    send(msg);
-                    msg.clear();
+            final HL7MessageStream in = new HL7MessageStream(HL7Parser.createLaxParser(), bin);
+            final List<HL7Segment> msg = new ArrayList<HL7Segment>();
+            while (in.readSegments(msg)) {
+                send(msg);
+            }
+            if (pipelinedSenders == null) {
+                messageQueue.put(STOP);
+                for (final Thread t : senderThreads) {
+                    t.join();
                 }
-                msg.add(seg);
+            } else {
+                stopPipelinedSenders();
             }
-            send(msg);
-            send(STOP);
+            if (reporter != null) {
+                reporter.interrupt();
+                reporter.join();
+            }
+            info("Finished after " + messageCount + " messages" + BR + report(true));
         } finally {
+            if (reporter != null) {
+                reporter.interrupt();
+            }
             IoUtil.close(out);
             IoUtil.close(bin);
+            IoUtil.close(pool);
         }
-        info("Finished after " + messageCount + " messages");
     }
     
     private final static boolean send(final List<HL7Segment> msg) throws Exception {
@@ -95,18 +175,47 @@ public class MessageSender {
             return false;
         }
         transform(msg);
-        final StringBuilder b = new StringBuilder();
-        for (final HL7Segment seg : msg) {
-            b.append(seg.toPiped()).append('\n');
-        }
+        final byte[] frame = encoder.writeMessage(msg).toByteArray();
+        final int index;
         synchronized (countLock) {
-            messageCount++;
+            index = ++messageCount;
+        }
+        final MSH msh = msg.get(0) instanceof MSH ? (MSH) msg.get(0) : null;
+        final Message message = new Message(frame, index, getMessageType(msh), msh == null ? null : msh.getMessageControlID(),
+            schedule(index));
+        if (pipelinedSenders == null) {
+            messageQueue.put(message);
+        } else {
+            sendPipelined(message);
         }
-        final String req = b.toString();
-        send(req);
         return true;
     }
     
+    /**
+     * Waits until the given message is scheduled to be sent, if running open-loop
+     * 
+     * @param index the message's 1-based index
+     * @return the scheduled time in nanoseconds (or 0 if running closed-loop)
+     **/
+    private final static long schedule(final int index) {
+        if (RATE <= 0) {
+            return 0;
+        }
+        final long intended = startNanos + ((index - 1) * 1000000000L / RATE);
+        long wait;
+        while ((wait = intended - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        return intended;
+    }
+    
+    private final static String getMessageType(final MSH msh) {
+        if (msh == null) {
+            return "Unknown";
+        }
+        return MSH.getMessageCode(msh) + "^" + MSH.getTriggerEvent(msh);
+    }
+    
     private final static void transform(final List<HL7Segment> msg) throws Exception {
         /*if (transform == null) {
             return;
@@ -124,12 +233,45 @@ public class MessageSender {
     
     private final static void startSenders() {
         for (int i = 0; i < NUM_THREADS; i++) {
-            new Thread(new RawSender()).start();
+            final Thread t = new Thread(new RawSender(), "sender " + i);
+            senderThreads.add(t);
+            t.start();
         }
     }
     
-    private final static void send(final String msg) throws Exception {
-        messageQueue.put(new Message(msg, messageCount));
+    private final static void startPipelinedSenders() throws Exception {
+        pipelinedSenders = new MllpPipelinedSender[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            pipelinedSenders[i] = new MllpPipelinedSender(new MllpConnection(HOST, PORT_PIX, 0, CHARSET), WINDOW);
+        }
+    }
+    
+    private final static void sendPipelined(final Message message) throws Exception {
+        final MllpPipelinedSender sender = pipelinedSenders[message.index % pipelinedSenders.length];
+        final String threadName = "connection " + (message.index % pipelinedSenders.length);
+        final long start = message.intended > 0 ? message.intended : System.nanoTime();
+        sender.send(message.controlID, message.frame, 0, message.frame.length).whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public final void accept(final String rsp, final Throwable e) {
+                final long time = record(message.type, start, e == null);
+                out.write(new Record(message, threadName, time, rsp, e));
+            }
+        });
+    }
+    
+    private final static void stopPipelinedSenders() throws Exception {
+        final long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_IN_MILLIS;
+        int abandoned = 0;
+        for (final MllpPipelinedSender sender : pipelinedSenders) {
+            try {
+                abandoned += sender.awaitOutstanding(Math.max(0, deadline - System.currentTimeMillis()));
+            } finally {
+                sender.close(); // Fails any outstanding messages, so they are logged as failures
+            }
+        }
+        if (abandoned > 0) {
+            info("Abandoned " + abandoned + " messages without responses after " + SHUTDOWN_TIMEOUT_IN_MILLIS + " ms" + BR);
+        }
     }
     
     private final static class RawSender implements Runnable {
@@ -140,18 +282,21 @@ public class MessageSender {
                 final String threadName = Thread.currentThread().getName();
                 while (true) {
                     final Message message = messageQueue.take();
-                    final int size = messageQueue.size();
-                    final String msg = message.msg;
-                    final int index = message.index;
-                    if (STOP.equals(msg)) {
-                        send(STOP); // Make sure next thread will see the STOP signal too
+                    if (message == STOP) {
+                        messageQueue.put(STOP); // Make sure next thread will see the STOP signal too
                         return;
                     }
-                    info("Sending " + index + " from queue of " + size + ":" + BR + msg);
-                    final long start = System.currentTimeMillis();
-                    final String rsp = HL7IO.send_rcv_hl7_msg(HOST, PORT_PIX, 0, HL7IO.convert_lf_to_cr(msg));
-                    final long time = System.currentTimeMillis() - start;
-                    info("Received " + index + " in thread " + threadName + " after " + time + " ms:" + BR + rsp + BR);
+                    // Open-loop latency includes the time spent waiting in the queue for a free thread
+                    final long start = message.intended > 0 ? message.intended : System.nanoTime();
+                    String rsp = null;
+                    Exception failure = null;
+                    try {
+                        rsp = pool.sendReceive(message.frame, 0, message.frame.length);
+                    } catch (final IOException e) {
+                        failure = e;
+                    }
+                    final long time = record(message.type, start, failure == null);
+                    out.write(new Record(message, threadName, time, rsp, failure));
                 }
             } catch (final Exception e) {
                 info(Util.getStackTraceString(e));
@@ -161,20 +306,229 @@ public class MessageSender {
     
     private final static class Message {
         
-        private final String msg;
+        // Encoded message, including its MLLP framing
+        private final byte[] frame;
         
         private final int index;
         
-        private Message(final String msg, final int index) {
-            this.msg = msg;
+        private final String type;
+        
+        private final String controlID;
+        
+        // Scheduled send time in nanoseconds for open-loop runs, or 0
+        private final long intended;
+        
+        private Message(final byte[] frame, final int index, final String type, final String controlID, final long intended) {
+            this.frame = frame;
             this.index = index;
+            this.type = type;
+            this.controlID = controlID;
+            this.intended = intended;
+        }
+        
+        /**
+         * Decodes the message for logging, with line feeds between segments
+         * 
+         * @return the message text
+         **/
+        private String getText() {
+            return new String(this.frame, 1, this.frame.length - 3, CHARSET).replace('\r', '\n');
         }
     }
     
-    private final static void info(final String s) {
-        synchronized (infoLock) {
-            System.out.println(s);
-            out.println(s);
+    /**
+     * A log record for one response or failure.
+     * It is formatted by the AsyncLogWriter's thread, so sender threads only pay for creating it.
+     **/
+    private final static class Record {
+        
+        private final static String HEADER = "#index\tthread\tcontrolID\tlatencyMillis\tackCode";
+        
+        private final Message message;
+        
+        private final String threadName;
+        
+        private final long micros;
+        
+        private final String rsp;
+        
+        private final Throwable failure;
+        
+        private Record(final Message message, final String threadName, final long micros, final String rsp, final Throwable failure) {
+            this.message = message;
+            this.threadName = threadName;
+            this.micros = micros;
+            this.rsp = rsp;
+            this.failure = failure;
+        }
+        
+        @Override
+        public final String toString() {
+            final StringBuilder b = new StringBuilder();
+            b.append(this.message.index).append('\t').append(this.threadName).append('\t').append(this.message.controlID);
+            b.append('\t').append(formatMillis(this.micros)).append('\t');
+            b.append(this.failure == null ? getAckCode(this.rsp) : "ERROR");
+            if (this.failure != null) {
+                b.append(BR).append(Util.getStackTraceString(this.failure));
+            }
+            if (LOG_PAYLOADS) {
+                b.append(BR).append(this.message.getText());
+                if (this.rsp != null) {
+                    b.append(this.rsp.replace('\r', '\n')).append(BR);
+                }
+            }
+            return b.toString();
+        }
+    }
+    
+    /**
+     * Retrieves the MSA-1 acknowledgment code of a response without parsing it
+     * 
+     * @param rsp the response
+     * @return the acknowledgment code (or null if there is no MSA)
+     **/
+    private final static String getAckCode(final String rsp) {
+        if ((rsp == null) || (rsp.length() < 4)) {
+            return null;
+        }
+        final char sep = rsp.charAt(3);
+        int start = rsp.startsWith("MSA") ? 0 : -1;
+        for (int i = rsp.indexOf("MSA"); (start < 0) && (i > 0); i = rsp.indexOf("MSA", i + 1)) {
+            final char prev = rsp.charAt(i - 1);
+            if ((prev == '\r') || (prev == '\n')) {
+                start = i;
+            }
+        }
+        if ((start < 0) || (rsp.length() <= start + 3) || (rsp.charAt(start + 3) != sep)) {
+            return null;
+        }
+        start += 4;
+        int end = start;
+        while ((end < rsp.length()) && (rsp.charAt(end) != sep) && (rsp.charAt(end) != '\r') && (rsp.charAt(end) != '\n')) {
+            end++;
+        }
+        return rsp.substring(start, end);
+    }
+    
+    /**
+     * Latencies and counts for one message type.
+     * The interval histogram is swapped for a new one at each periodic report, instead of being reset while sender threads
+     * are still recording into it; the total histogram covers the whole run.
+     **/
+    private final static class TypeStats {
+        
+        private final AtomicReference<LatencyHistogram> interval = new AtomicReference<LatencyHistogram>(newHistogram());
+        
+        private final LatencyHistogram total = newHistogram();
+        
+        private final AtomicLong numReceived = new AtomicLong();
+        
+        private final AtomicLong numErrors = new AtomicLong();
+        
+        // Number received at the last periodic report
+        private volatile long lastReceived = 0;
+        
+        private void record(final long micros) {
+            final long expected = RATE > 0 ? 0 : EXPECTED_INTERVAL_IN_MILLIS * 1000L;
+            this.interval.get().recordValueWithExpectedInterval(micros, expected);
+            this.total.recordValueWithExpectedInterval(micros, expected);
+            this.numReceived.incrementAndGet();
+        }
+        
+        private final static LatencyHistogram newHistogram() {
+            return new LatencyHistogram(MAX_LATENCY_IN_MICROS, 3);
+        }
+    }
+    
+    /**
+     * Records the latency of a message
+     * 
+     * @param type the message type
+     * @param start the time in nanoseconds from which latency is measured
+     * @param success whether a response was received
+     * @return the latency in microseconds
+     **/
+    private final static long record(final String type, final long start, final boolean success) {
+        final long micros = (System.nanoTime() - start) / 1000;
+        TypeStats typeStats = stats.get(type);
+        if (typeStats == null) {
+            final TypeStats newStats = new TypeStats();
+            typeStats = stats.putIfAbsent(type, newStats);
+            if (typeStats == null) {
+                typeStats = newStats;
+            }
+        }
+        if (success) {
+            typeStats.record(micros);
+        } else {
+            typeStats.numErrors.incrementAndGet();
+        }
+        return micros;
+    }
+    
+    private final static Thread startReporter() {
+        if (REPORT_INTERVAL_IN_SECONDS <= 0) {
+            return null;
+        }
+        final Thread t = new Thread(new Runnable() {
+            @Override
+            public final void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(REPORT_INTERVAL_IN_SECONDS * 1000L);
+                        info(report(false));
+                    }
+                } catch (final InterruptedException e) {
+                    // Finished
+                }
+            }
+        }, "MessageSender reporter");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+    
+    /**
+     * Builds a summary of throughput and latency percentiles for each message type
+     * 
+     * @param total whether to summarize the whole run, or the interval since the last periodic summary
+     * @return the summary
+     **/
+    private final static String report(final boolean total) {
+        final double seconds = total ? (System.nanoTime() - startNanos) / 1000000000.0 : REPORT_INTERVAL_IN_SECONDS;
+        final StringBuilder b = new StringBuilder();
+        b.append(total ? "Total" : "Last " + REPORT_INTERVAL_IN_SECONDS + " seconds").append(" (latency in ms):");
+        for (final Map.Entry<String, TypeStats> entry : new TreeMap<String, TypeStats>(stats).entrySet()) {
+            final TypeStats typeStats = entry.getValue();
+            final LatencyHistogram h = total ? typeStats.total : typeStats.interval.getAndSet(TypeStats.newHistogram());
+            // Throughput counts actual responses; the histograms might also hold values added by coordinated omission correction
+            final long received = typeStats.numReceived.get(), count = total ? received : received - typeStats.lastReceived;
+            b.append(BR).append(entry.getKey()).append(": ").append(count).append(" received, ");
+            b.append(String.format("%.1f", count / seconds)).append("/s");
+            for (final double percentile : PERCENTILES) {
+                b.append(", p").append(percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile));
+                b.append(' ').append(formatMillis(h.getValueAtPercentile(percentile)));
+            }
+            b.append(", max ").append(formatMillis(h.getMax())).append(", mean ").append(formatMillis(Math.round(h.getMean())));
+            b.append(", errors ").append(typeStats.numErrors.get());
+            if (!total) {
+                typeStats.lastReceived = received;
+            }
         }
+        return b.toString();
+    }
+    
+    private final static String formatMillis(final long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+    
+    /**
+     * Prints a status message to the console and logs it
+     * 
+     * @param s the status message
+     **/
+    private final static void info(final String s) {
+        System.out.println(s);
+        out.write(s);
     }
 }
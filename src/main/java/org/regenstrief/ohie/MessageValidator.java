@@ -12,10 +12,13 @@
  */
 package org.regenstrief.ohie;
 
-import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.regenstrief.hl7.HL7Data;
 import org.regenstrief.hl7.HL7DataTree;
@@ -24,11 +27,18 @@ import org.regenstrief.hl7.datatype.UCMP;
 import org.regenstrief.hl7.datatype.UFLD;
 import org.regenstrief.hl7.segment.HL7Segment;
 import org.regenstrief.hl7.segment.USEG;
-import org.regenstrief.io.IoUtil;
 import org.regenstrief.util.Util;
 
 /**
  * MessageValidator
+ *
+ * Validates actual messages against an expected message written in a small DSL:
+ * REM segments are remarks, ANY|n passes if any of the next n tests pass, SIZ|PID|>=|1 compares a segment count,
+ * and any other segment must match at least one actual segment with the same name.
+ * In an expected field, EMPTY and VALUED test whether the actual value is empty, ANY(a;b;c) tests whether it is one of
+ * the listed values, and SIZ(n) as a whole repetition tests the number of actual repetitions.
+ * compile turns an expected message into a Plan, with the DSL already interpreted and value lists already split,
+ * which is immutable and can validate any number of actual messages from any number of threads.
  */
 public class MessageValidator {
     
@@ -46,255 +56,537 @@ public class MessageValidator {
     
     private final static String VALUE_PREFIX_SIZ = "SIZ(";
     
-    private int anyCount = 0;
+    public void validateMessage(final HL7DataTree exTree, final HL7DataTree acTree) throws Exception {
+        compile(exTree).validate(acTree);
+    }
     
-    private boolean anyMet = false;
+    /**
+     * Compiles an expected message into a reusable Plan
+     * 
+     * @param exTree the expected message
+     * @return the Plan
+     * @throws IllegalArgumentException if the expected message isn't valid
+     **/
+    public final static Plan compile(final HL7DataTree exTree) {
+        final List<Step> steps = new ArrayList<Step>();
+        final Set<String> segmentNames = new HashSet<String>();
+        int anyCount = 0;
+        for (final HL7Segment tst : exTree.getDescendantValues(HL7Segment.class)) {
+            final String type = tst.getTagName();
+            // REM|Free text remark
+            if (SEGMENT_REM.equals(type)) {
+                continue;
+            // ANY|2
+            } else if (SEGMENT_ANY.equals(type)) {
+                if (anyCount > 0) {
+                    throw new IllegalArgumentException("Found new ANY test while processing previous ANY test");
+                }
+                anyCount = Integer.parseInt(getField(tst, 1));
+                if (anyCount <= 1) {
+                    throw new IllegalArgumentException("ANY test must have more than one condition");
+                }
+                steps.add(new AnyStep(anyCount));
+                continue;
+            // SIZ|PID|>=|1
+            } else if (SEGMENT_SIZ.equals(type)) {
+                final SizeStep step = new SizeStep(tst);
+                segmentNames.add(step.segmentName);
+                steps.add(step);
+            // PID|||123^^^^MR
+            } else {
+                segmentNames.add(type);
+                steps.add(new SegmentStep(tst));
+            }
+            if (anyCount > 0) {
+                anyCount--;
+            }
+        }
+        if (anyCount > 0) {
+            throw new IllegalArgumentException("ANY test specified more conditions than were found in test plan");
+        }
+        return new Plan(steps.toArray(new Step[steps.size()]), segmentNames);
+    }
     
-    public void validateMessage(final HL7DataTree exTree, final HL7DataTree acTree) throws Exception {
-        this.anyCount = 0;
-        this.anyMet = false;
-        Reader in = null;
-        try {
-            for (final HL7Segment tst : exTree.getDescendantValues(HL7Segment.class)) {
-                final String type = tst.getTagName();
-                // REM|Free text remark
-                if (SEGMENT_REM.equals(type)) {
+    /**
+     * An expected message compiled into the tests to run on an actual message
+     **/
+    public final static class Plan {
+        
+        private final Step[] steps;
+        
+        private final Set<String> segmentNames;
+        
+        private Plan(final Step[] steps, final Set<String> segmentNames) {
+            this.steps = steps;
+            this.segmentNames = Collections.unmodifiableSet(segmentNames);
+        }
+        
+        /**
+         * Validates an actual message
+         * 
+         * @param acTree the actual message
+         * @throws IllegalStateException if the actual message doesn't match
+         **/
+        public void validate(final HL7DataTree acTree) {
+            final Actual actual = new Actual(acTree, this.segmentNames);
+            int anyCount = 0;
+            boolean anyMet = false;
+            for (final Step step : this.steps) {
+                if (step instanceof AnyStep) {
+                    anyCount = ((AnyStep) step).count;
+                    anyMet = false;
                     continue;
-                // ANY|2
-                } else if (SEGMENT_ANY.equals(type)) {
-                    if (this.anyCount > 0) {
-                        throw new IllegalArgumentException("Found new ANY test while processing previous ANY test");
-                    }
-                    this.anyCount = Integer.parseInt(getField(tst, 1));
-                    if (this.anyCount <= 1) {
-                        throw new IllegalArgumentException("ANY test must have more than one condition");
-                    }
-                    this.anyCount++; // Add 1 to skip the current segment
-                    this.anyMet = false;
-                // SIZ|PID|>=|1
-                } else if (SEGMENT_SIZ.equals(type)) {
-                    final String segmentName = getField(tst, 1);
-                    final int actualCount = Util.size(acTree.getDescendantValues(segmentName));
-                    final String comparison = getField(tst, 2);
-                    final char c0 = comparison.charAt(0);
-                    final boolean orEquals = comparison.length() > 1;
-                    final int expectedCount = Integer.parseInt(getField(tst, 3));
-                    final boolean cmp;
-                    boolean illegal = false;
-                    if (orEquals) {
-                        if (c0 == '<') {
-                            cmp = actualCount <= expectedCount;
-                        } else if (c0 == '>') {
-                            cmp = actualCount >= expectedCount;
-                        } else {
-                            illegal = true;
-                            cmp = false;
-                        }
-                    } else {
-                        if (c0 == '=') {
-                            cmp = expectedCount == actualCount;
-                        } else if (c0 == '<') {
-                            cmp = actualCount < expectedCount;
-                        } else if (c0 == '>') {
-                            cmp = actualCount > expectedCount;
-                        } else {
-                            illegal = true;
-                            cmp = false;
-                        }
-                    }
-                    if (illegal) {
-                        throw new IllegalArgumentException("Unknown comparison " + comparison + " in " + tst.toPiped());
-                    }
-                    assertTrue("Expected " + segmentName + " size to be " + comparison + " " + expectedCount + " but was " + actualCount, cmp);
-                // PID|||123^^^^MR
-                } else {
-                    final String segmentName = type;
-                    final USEG exSeg = USEG.toUSEG(tst);
-                    final int exSize = exSeg.size();
-                    boolean found = false;
-                    for (final HL7Data child : acTree.getDescendantValues(segmentName)) {
-                        final USEG acSeg = USEG.toUSEG((HL7Segment) child);
-                        boolean failed = false;
-                        for (int i = 1; i <= exSize; i++) {
-                            if (!validate(exSeg.get(i), acSeg.get(i))) {
-                                failed = true;
-                                break;
-                            }
-                        }
-                        if (!failed) {
-                            found = true;
-                            break;
-                        }
+                }
+                final String failureMessage = step.test(actual);
+                if (anyCount > 0) {
+                    anyMet |= failureMessage == null;
+                    anyCount--;
+                    if ((anyCount == 0) && !anyMet) {
+                        throw new IllegalStateException("None of the ANY conditions were met");
                     }
-                    assertTrue("Could not find segment matching " + tst.toPiped(), found);
+                } else if (failureMessage != null) {
+                    throw new IllegalStateException(failureMessage);
                 }
-                if (this.anyCount > 0) {
-                    this.anyCount--;
-                    if (this.anyCount <= 0) {
-                        assertTrue("None of the ANY conditions were met", this.anyMet);
+            }
+        }
+        
+        /**
+         * Retrieves the names of the segments that the Plan examines
+         * 
+         * @return the segment names
+         **/
+        public Set<String> getSegmentNames() {
+            return this.segmentNames;
+        }
+    }
+    
+    /**
+     * The segments of an actual message, grouped by name with the message's index if it has one,
+     * or otherwise in one pass over the message.
+     * Each segment is converted to a USEG at most once, no matter how many tests examine it.
+     **/
+    private final static class Actual {
+        
+        private final Map<String, List<HL7Segment>> segments = new HashMap<String, List<HL7Segment>>();
+        
+        private final Map<String, USEG[]> converted = new HashMap<String, USEG[]>();
+        
+        private Actual(final HL7DataTree acTree, final Set<String> segmentNames) {
+            final Iterable<HL7Data> values;
+            if (acTree.isIndexed()) {
+                final List<HL7Data> list = new ArrayList<HL7Data>();
+                for (final String name : segmentNames) {
+                    list.addAll(Util.toList(acTree.getDescendantValues(name)));
+                }
+                values = list;
+            } else {
+                values = acTree.getDescendantValues();
+            }
+            for (final HL7Data data : values) {
+                final String name = data.getTagName();
+                if ((data instanceof HL7Segment) && segmentNames.contains(name)) {
+                    List<HL7Segment> list = this.segments.get(name);
+                    if (list == null) {
+                        list = new ArrayList<HL7Segment>();
+                        this.segments.put(name, list);
                     }
+                    list.add((HL7Segment) data);
                 }
             }
-            if (this.anyCount > 0) {
-                throw new IllegalArgumentException("ANY test specified more conditions than were found in test plan");
+        }
+        
+        private int size(final String name) {
+            return Util.size(this.segments.get(name));
+        }
+        
+        private USEG get(final String name, final int i) {
+            USEG[] a = this.converted.get(name);
+            if (a == null) {
+                a = new USEG[size(name)];
+                this.converted.put(name, a);
             }
-        } finally {
-            IoUtil.close(in);
+            USEG seg = a[i];
+            if (seg == null) {
+                seg = a[i] = USEG.toUSEG(this.segments.get(name).get(i));
+            }
+            return seg;
         }
     }
     
-    private void assertTrue(final String failureMessage, final boolean flag) {
-        if (flag) {
-            if (this.anyCount > 0) {
-                this.anyMet = true;
+    private abstract static class Step {
+        
+        /**
+         * Runs the test
+         * 
+         * @param actual the actual message
+         * @return null if the test passed, or the failure message
+         **/
+        protected abstract String test(final Actual actual);
+    }
+    
+    private final static class AnyStep extends Step {
+        
+        // The number of following tests of which at least one must pass
+        private final int count;
+        
+        private AnyStep(final int count) {
+            this.count = count;
+        }
+        
+        @Override
+        protected String test(final Actual actual) {
+            return null;
+        }
+    }
+    
+    private final static class SizeStep extends Step {
+        
+        private final String segmentName;
+        
+        private final String comparison;
+        
+        private final int expectedCount;
+        
+        private SizeStep(final HL7Segment tst) {
+            this.segmentName = getField(tst, 1);
+            this.comparison = getField(tst, 2);
+            this.expectedCount = Integer.parseInt(getField(tst, 3));
+            final char c0 = this.comparison.charAt(0);
+            if ((this.comparison.length() > 1) ? ((c0 != '<') && (c0 != '>')) : ((c0 != '=') && (c0 != '<') && (c0 != '>'))) {
+                throw new IllegalArgumentException("Unknown comparison " + this.comparison + " in " + tst.toPiped());
+            }
+        }
+        
+        @Override
+        protected String test(final Actual actual) {
+            final int actualCount = actual.size(this.segmentName);
+            final char c0 = this.comparison.charAt(0);
+            final boolean cmp;
+            if (this.comparison.length() > 1) {
+                cmp = (c0 == '<') ? (actualCount <= this.expectedCount) : (actualCount >= this.expectedCount);
+            } else if (c0 == '=') {
+                cmp = this.expectedCount == actualCount;
+            } else if (c0 == '<') {
+                cmp = actualCount < this.expectedCount;
+            } else {
+                cmp = actualCount > this.expectedCount;
             }
-            return;
-        } else if (this.anyCount <= 0) {
-            throw new IllegalStateException(failureMessage);
+            return cmp ? null
+                    : ("Expected " + this.segmentName + " size to be " + this.comparison + " " + this.expectedCount + " but was " + actualCount);
         }
     }
     
-    private boolean validate(final List<UFLD> exFlds, List<UFLD> acFlds) {
-        if (exFlds == null) {
+    private final static class SegmentStep extends Step {
+        
+        private final String segmentName;
+        
+        // Indexed by field number; null where the expected field has no test
+        private final FieldMatcher[] fields;
+        
+        private final String failureMessage;
+        
+        private SegmentStep(final HL7Segment tst) {
+            this.segmentName = tst.getTagName();
+            final USEG exSeg = USEG.toUSEG(tst);
+            final int exSize = exSeg.size();
+            this.fields = new FieldMatcher[exSize + 1];
+            for (int i = 1; i <= exSize; i++) {
+                this.fields[i] = FieldMatcher.compile(exSeg.get(i));
+            }
+            this.failureMessage = "Could not find segment matching " + tst.toPiped();
+        }
+        
+        @Override
+        protected String test(final Actual actual) {
+            final int size = actual.size(this.segmentName);
+            for (int j = 0; j < size; j++) {
+                if (matches(actual.get(this.segmentName, j))) {
+                    return null;
+                }
+            }
+            return this.failureMessage;
+        }
+        
+        private boolean matches(final USEG acSeg) {
+            final int exSize = this.fields.length;
+            for (int i = 1; i < exSize; i++) {
+                final FieldMatcher field = this.fields[i];
+                if ((field != null) && !field.matches(acSeg.get(i))) {
+                    return false;
+                }
+            }
             return true;
         }
-        final Iterator<UFLD> iter = exFlds.iterator();
-        while (iter.hasNext()) {
-            final UFLD fld = iter.next();
-            if (fld.size() == 1) {
-                final String val = getField(fld);
-                if (isFunc(val, VALUE_PREFIX_SIZ)) {
-                    if (Integer.parseInt(getArg(val)) != Util.size(acFlds)) {
-                        return false;
+    }
+    
+    /**
+     * Tests all repetitions of a field
+     **/
+    private final static class FieldMatcher {
+        
+        // The expected number of repetitions, or -1 if any number is allowed
+        private final int repetitions;
+        
+        private final RepetitionMatcher[] reps;
+        
+        private final boolean emptyFirst;
+        
+        private FieldMatcher(final int repetitions, final RepetitionMatcher[] reps, final boolean emptyFirst) {
+            this.repetitions = repetitions;
+            this.reps = reps;
+            this.emptyFirst = emptyFirst;
+        }
+        
+        private final static FieldMatcher compile(final List<UFLD> exFlds) {
+            if (exFlds == null) {
+                return null;
+            }
+            // The first repetition that is just SIZ(n) is a test of the actual number of repetitions, not a value
+            final List<UFLD> values = new ArrayList<UFLD>(exFlds);
+            int repetitions = -1;
+            for (int i = 0, size = values.size(); i < size; i++) {
+                final UFLD fld = values.get(i);
+                if ((fld != null) && (fld.size() == 1)) {
+                    final String val = getField(fld);
+                    if (isFunc(val, VALUE_PREFIX_SIZ)) {
+                        repetitions = Integer.parseInt(getArg(val));
+                        values.remove(i);
+                        break;
                     }
-                    iter.remove();
-                    break;
                 }
             }
+            final int size = values.size();
+            final RepetitionMatcher[] reps = new RepetitionMatcher[size];
+            for (int i = 0; i < size; i++) {
+                reps[i] = RepetitionMatcher.compile(values.get(i));
+            }
+            return new FieldMatcher(repetitions, reps, VALUE_EMPTY.equals(getField(values)));
         }
-        final int exFldsSize = Util.size(exFlds);
-        int acFldsSize = Util.size(acFlds);
-        if (exFldsSize == 0) {
-            return true;
-        } else if (acFldsSize == 0) {
-            if (VALUE_EMPTY.equals(getField(exFlds))) {
-                acFlds = new ArrayList<UFLD>(1);
-                acFlds.add(newFld());
-                acFldsSize = 1;
-            } else {
+        
+        private boolean matches(List<UFLD> acFlds) {
+            if ((this.repetitions >= 0) && (this.repetitions != Util.size(acFlds))) {
                 return false;
             }
-        }
-        if (acFldsSize < exFldsSize) {
-            return false;
-        }
-        for (final UFLD exFld : exFlds) {
-            boolean found = false;
-            for (final UFLD acFld : acFlds) {
-                if (validate(exFld, acFld)) {
-                    found = true;
-                    break;
+            final int exFldsSize = this.reps.length;
+            int acFldsSize = Util.size(acFlds);
+            if (exFldsSize == 0) {
+                return true;
+            } else if (acFldsSize == 0) {
+                if (this.emptyFirst) {
+                    acFlds = EMPTY_FLDS;
+                    acFldsSize = 1;
+                } else {
+                    return false;
                 }
             }
-            if (!found) {
+            if (acFldsSize < exFldsSize) {
                 return false;
             }
+            // Each expected repetition must match some actual repetition
+            for (final RepetitionMatcher exFld : this.reps) {
+                if (exFld == null) {
+                    continue;
+                }
+                boolean found = false;
+                for (final UFLD acFld : acFlds) {
+                    if (exFld.matches(acFld)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
         }
-        return true;
     }
     
-    private final UFLD newFld() {
+    private final static UCMP EMPTY_CMP = newCmp();
+    
+    private final static UFLD EMPTY_FLD = newFld();
+    
+    private final static List<UFLD> EMPTY_FLDS = Collections.singletonList(EMPTY_FLD);
+    
+    private final static UFLD newFld() {
         final UFLD fld = new UFLD(null);
-        fld.set(1, newCmp());
+        fld.set(1, EMPTY_CMP);
         return fld;
     }
     
-    private boolean validate(final UFLD exFld, UFLD acFld) {
-        final int exFldSize = UFLD.size(exFld);
-        int acFldSize = UFLD.size(acFld);
-        if (exFldSize == 0) {
-            return true;
-        } else if (acFldSize == 0) {
-            if (VALUE_EMPTY.equals(getField(exFld))) {
-                acFld = newFld();
-                acFldSize = 1;
-            } else {
-                return false;
-            }
-        }
-        if (acFldSize < exFldSize) {
-            return false;
-        }
-        for (int i = 1; i <= exFldSize; i++) {
-            if (!validate(exFld.get(i), acFld.get(i))) {
-                return false;
-            }
-        }
-        return true;
-    }
-    
-    private final UCMP newCmp() {
+    private final static UCMP newCmp() {
         final UCMP cmp = new UCMP(null);
         cmp.set(1, "");
         return cmp;
     }
     
-    private boolean validate(final UCMP exCmp, UCMP acCmp) {
-        final int exCmpSize = UCMP.size(exCmp);
-        int acCmpSize = UCMP.size(acCmp);
-        if (exCmpSize == 0) {
-            return true;
-        } else if (acCmpSize == 0) {
-            if (VALUE_EMPTY.equals(getField(exCmp))) {
-                acCmp = newCmp();
-                acCmpSize = 1;
-            } else {
+    /**
+     * Tests one repetition of a field, component by component
+     **/
+    private final static class RepetitionMatcher {
+        
+        // Indexed by component number; null where the expected component has no test
+        private final ComponentMatcher[] cmps;
+        
+        private final boolean emptyFirst;
+        
+        private RepetitionMatcher(final ComponentMatcher[] cmps, final boolean emptyFirst) {
+            this.cmps = cmps;
+            this.emptyFirst = emptyFirst;
+        }
+        
+        private final static RepetitionMatcher compile(final UFLD exFld) {
+            final int exFldSize = UFLD.size(exFld);
+            if (exFldSize == 0) {
+                return null;
+            }
+            final ComponentMatcher[] cmps = new ComponentMatcher[exFldSize + 1];
+            for (int i = 1; i <= exFldSize; i++) {
+                cmps[i] = ComponentMatcher.compile(exFld.get(i));
+            }
+            return new RepetitionMatcher(cmps, VALUE_EMPTY.equals(getField(exFld)));
+        }
+        
+        private boolean matches(UFLD acFld) {
+            final int exFldSize = this.cmps.length - 1;
+            int acFldSize = UFLD.size(acFld);
+            if (acFldSize == 0) {
+                if (this.emptyFirst) {
+                    acFld = EMPTY_FLD;
+                    acFldSize = 1;
+                } else {
+                    return false;
+                }
+            }
+            if (acFldSize < exFldSize) {
                 return false;
             }
+            for (int i = 1; i <= exFldSize; i++) {
+                final ComponentMatcher cmp = this.cmps[i];
+                if ((cmp != null) && !cmp.matches(acFld.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Tests one component, subcomponent by subcomponent
+     **/
+    private final static class ComponentMatcher {
+        
+        // Indexed by subcomponent number; null where the expected subcomponent has no test
+        private final ValueMatcher[] subs;
+        
+        private final boolean emptyFirst;
+        
+        private ComponentMatcher(final ValueMatcher[] subs, final boolean emptyFirst) {
+            this.subs = subs;
+            this.emptyFirst = emptyFirst;
         }
-        if (acCmpSize < exCmpSize) {
-            return false;
+        
+        private final static ComponentMatcher compile(final UCMP exCmp) {
+            final int exCmpSize = UCMP.size(exCmp);
+            if (exCmpSize == 0) {
+                return null;
+            }
+            final ValueMatcher[] subs = new ValueMatcher[exCmpSize + 1];
+            for (int i = 1; i <= exCmpSize; i++) {
+                subs[i] = ValueMatcher.compile(exCmp.get(i));
+            }
+            return new ComponentMatcher(subs, VALUE_EMPTY.equals(getField(exCmp)));
         }
-        for (int i = 1; i <= exCmpSize; i++) {
-            if (!validate(exCmp.get(i), acCmp.get(i))) {
+        
+        private boolean matches(UCMP acCmp) {
+            final int exCmpSize = this.subs.length - 1;
+            int acCmpSize = UCMP.size(acCmp);
+            if (acCmpSize == 0) {
+                if (this.emptyFirst) {
+                    acCmp = EMPTY_CMP;
+                    acCmpSize = 1;
+                } else {
+                    return false;
+                }
+            }
+            if (acCmpSize < exCmpSize) {
                 return false;
             }
+            for (int i = 1; i <= exCmpSize; i++) {
+                final ValueMatcher sub = this.subs[i];
+                if ((sub != null) && !sub.matches(acCmp.get(i))) {
+                    return false;
+                }
+            }
+            return true;
         }
-        return true;
     }
     
-    private boolean validate(final String exSub, final String acSub) {
-        if (Util.isEmpty(exSub)) {
-            return true;
-        } else if (VALUE_EMPTY.equals(exSub)) {
-            return Util.isEmpty(acSub);
-        } else if (VALUE_VALUED.equals(exSub)) {
-            return Util.isValued(acSub);
-        } else if (isFunc(exSub, VALUE_PREFIX_ANY)) {
-            final String list = getArg(exSub);
-            for (final String token : Util.splitExactIntoList(list, ';')) {
-                if (token.equals(acSub)) {
-                    return true;
-                }
+    /**
+     * Tests one subcomponent
+     **/
+    private final static class ValueMatcher {
+        
+        private final static int EQUALS = 0;
+        
+        private final static int EMPTY = 1;
+        
+        private final static int VALUED = 2;
+        
+        private final static int ANY = 3;
+        
+        private final int op;
+        
+        private final String value;
+        
+        private final Set<String> values;
+        
+        private ValueMatcher(final int op, final String value, final Set<String> values) {
+            this.op = op;
+            this.value = value;
+            this.values = values;
+        }
+        
+        private final static ValueMatcher compile(final String exSub) {
+            if (Util.isEmpty(exSub)) {
+                return null;
+            } else if (VALUE_EMPTY.equals(exSub)) {
+                return new ValueMatcher(EMPTY, null, null);
+            } else if (VALUE_VALUED.equals(exSub)) {
+                return new ValueMatcher(VALUED, null, null);
+            } else if (isFunc(exSub, VALUE_PREFIX_ANY)) {
+                return new ValueMatcher(ANY, null, new HashSet<String>(Util.splitExactIntoList(getArg(exSub), ';')));
+            }
+            return new ValueMatcher(EQUALS, exSub, null);
+        }
+        
+        private boolean matches(final String acSub) {
+            switch (this.op) {
+                case EMPTY:
+                    return Util.isEmpty(acSub);
+                case VALUED:
+                    return Util.isValued(acSub);
+                case ANY:
+                    return (acSub != null) && this.values.contains(acSub);
+                default:
+                    return this.value.equals(acSub);
             }
-            return false;
         }
-        return exSub.equals(acSub);
     }
     
-    private final boolean isFunc(final String val, final String prefix) {
+    private final static boolean isFunc(final String val, final String prefix) {
         return (val != null) && val.startsWith(prefix) && val.endsWith(")");
     }
     
-    private final String getArg(final String func) {
+    private final static String getArg(final String func) {
         return func.substring(4, func.length() - 1);
     }
     
-    private String getField(final HL7Segment tst, final int i) {
+    private final static String getField(final HL7Segment tst, final int i) {
         return getField(tst.get(i));
     }
     
-    private String getField(final Object o) {
+    private final static String getField(final Object o) {
         if (o == null) {
             return null;
         } else if (o instanceof List) {
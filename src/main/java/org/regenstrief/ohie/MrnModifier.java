@@ -12,21 +12,37 @@
  */
 package org.regenstrief.ohie;
 
-import java.io.BufferedReader;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.regenstrief.hl7.transform.RawRewriter;
+import org.regenstrief.hl7.transform.RawRule;
 import org.regenstrief.io.IoUtil;
 import org.regenstrief.util.Util;
 
 /**
  * MrnModifier
+ *
+ * Rewrites the messages in a file with the RawRules given after the file name, like PID-3.1:prefix:MOD MSH-7:timestamp
+ * (see RawRule.parse), editing the raw segment lines in parallel without parsing them.
+ * With no rules, PID-3 is prefixed with MOD. The output is written next to the input, like file.mod.hl7 for file.hl7.
  */
 public class MrnModifier {
     
     private static final Log log = LogFactory.getLog(MrnModifier.class);
     
+    private final static int NUM_THREADS = Util.getPropertyInt("org.regenstrief.ohie.mod.threads",
+        Runtime.getRuntime().availableProcessors());
+    
+    private final static int CHUNK_SIZE = Util.getPropertyInt("org.regenstrief.ohie.mod.chunkSize", RawRewriter.DEFAULT_CHUNK_SIZE);
+    
+    private final static String DEFAULT_RULE = "PID-3:prefix:MOD";
+    
     public final static void main(final String[] args) throws Exception {
         run(args);
     }
@@ -34,26 +50,23 @@ public class MrnModifier {
     private final static void run(final String[] args) throws Exception {
         final String inName = args[0];
         final String outName = inName.substring(0, inName.length() - 3) + "mod.hl7";
-        BufferedReader in = null;
-        PrintStream out = null;
+        final List<RawRule> rules = new ArrayList<RawRule>();
+        for (int i = 1; i < args.length; i++) {
+            rules.add(RawRule.parse(args[i]));
+        }
+        if (rules.isEmpty()) {
+            rules.add(RawRule.parse(DEFAULT_RULE));
+        }
+        final RawRewriter rewriter = new RawRewriter(rules, Charset.defaultCharset());
+        rewriter.setThreads(NUM_THREADS);
+        rewriter.setChunkSize(CHUNK_SIZE);
+        InputStream in = null;
+        OutputStream out = null;
         try {
-            in = Util.getBufferedReader(inName);
-            out = Util.getPrintStream(outName);
-            String line;
-            int count = 0;
-            log.info("Starting");
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith("PID")) {
-                    count++;
-                    final int start = Util.nthIndexOf(line, "|", 2) + 1;
-                    line = line.substring(0, start) + "MOD" + line.substring(start);
-                    if ((count % 10000) == 0) {
-                        log.info("Modified " + count + " messages");
-                    }
-                }
-                out.println(line);
-            }
-            log.info("Finished after " + count + " messages");
+            in = Util.getStreamRequired(inName);
+            out = Util.getFileOutputStream(outName);
+            log.info("Starting to rewrite " + rules + " with " + NUM_THREADS + " threads");
+            rewriter.rewrite(in, out);
         } finally {
             IoUtil.close(out);
             IoUtil.close(in);
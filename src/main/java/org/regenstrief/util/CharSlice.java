@@ -0,0 +1,209 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.util;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * CharSlice
+ *
+ * A CharSequence view of part of a char array.
+ * The array is shared, not copied, so the owner must not modify the viewed range after creating the slice.
+ * The String form is only built when toString() is first called, and then it is cached.
+ */
+public final class CharSlice implements CharSequence {
+    
+    private final char[] buf;
+    
+    private final int offset;
+    
+    private final int length;
+    
+    private String s = null;
+    
+    /**
+     * Constructs a new CharSlice
+     * 
+     * @param buf the shared char array
+     * @param offset the index of the first char in the slice
+     * @param length the number of chars in the slice
+     **/
+    public CharSlice(final char[] buf, final int offset, final int length) {
+        if ((offset < 0) || (length < 0) || (offset + length > buf.length)) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array length " + buf.length);
+        }
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+    }
+    
+    /**
+     * Constructs a new CharSlice for a whole String
+     * 
+     * @param s the String
+     **/
+    public CharSlice(final String s) {
+        this.buf = s.toCharArray();
+        this.offset = 0;
+        this.length = this.buf.length;
+        this.s = s;
+    }
+    
+    @Override
+    public int length() {
+        return this.length;
+    }
+    
+    @Override
+    public char charAt(final int index) {
+        if ((index < 0) || (index >= this.length)) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return this.buf[this.offset + index];
+    }
+    
+    @Override
+    public CharSlice subSequence(final int start, final int end) {
+        if ((start == 0) && (end == this.length)) {
+            return this;
+        } else if ((start < 0) || (end > this.length) || (start > end)) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + this.length);
+        }
+        return new CharSlice(this.buf, this.offset + start, end - start);
+    }
+    
+    /**
+     * Retrieves the index of the given char, starting the search at fromIndex
+     * 
+     * @param c the char
+     * @param fromIndex the index from which to start searching
+     * @return the index (or -1 if the character was not found)
+     **/
+    public int indexOf(final char c, final int fromIndex) {
+        final int end = this.offset + this.length;
+        for (int i = this.offset + Math.max(0, fromIndex); i < end; i++) {
+            if (this.buf[i] == c) {
+                return i - this.offset;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Retrieves whether this slice starts with the given prefix
+     * 
+     * @param prefix the prefix
+     * @return whether this slice starts with the given prefix
+     **/
+    public boolean startsWith(final CharSequence prefix) {
+        return regionMatches(0, prefix);
+    }
+    
+    /**
+     * Retrieves whether the given CharSequence appears at the given index of this slice
+     * 
+     * @param index the index in this slice
+     * @param sub the CharSequence
+     * @return whether the CharSequence appears at the given index
+     **/
+    public boolean regionMatches(final int index, final CharSequence sub) {
+        final int size = sub.length();
+        if ((index < 0) || (index + size > this.length)) {
+            return false;
+        }
+        final int start = this.offset + index;
+        for (int i = 0; i < size; i++) {
+            if (this.buf[start + i] != sub.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Retrieves whether this slice has the same chars as the given CharSequence without building a String
+     * 
+     * @param cs the CharSequence
+     * @return whether the content is equal
+     **/
+    public boolean contentEquals(final CharSequence cs) {
+        return (cs != null) && (cs.length() == this.length) && regionMatches(0, cs);
+    }
+    
+    /**
+     * Writes the slice to the given Writer without building a String
+     * 
+     * @param w the Writer
+     * @throws IOException if an I/O problem occurs
+     **/
+    public void writeTo(final Writer w) throws IOException {
+        w.write(this.buf, this.offset, this.length);
+    }
+    
+    /**
+     * Retrieves a Reader of the slice that reads the shared array directly, so an HL7Parser can parse the slice
+     * without building a String
+     * 
+     * @return the Reader
+     **/
+    public Reader getReader() {
+        return new CharArrayReader(this.buf, this.offset, this.length);
+    }
+    
+    /**
+     * Appends the slice to the given StringBuilder without building a String
+     * 
+     * @param b the StringBuilder
+     * @return the StringBuilder
+     **/
+    public StringBuilder appendTo(final StringBuilder b) {
+        return b.append(this.buf, this.offset, this.length);
+    }
+    
+    @Override
+    public boolean equals(final Object o) {
+        return (o instanceof CharSlice) && contentEquals((CharSlice) o);
+    }
+    
+    @Override
+    public int hashCode() {
+        // Same as String.hashCode, so a String and a CharSlice with the same content hash to the same bucket
+        int h = 0;
+        final int end = this.offset + this.length;
+        for (int i = this.offset; i < end; i++) {
+            h = 31 * h + this.buf[i];
+        }
+        return h;
+    }
+    
+    @Override
+    public String toString() {
+        if (this.s == null) {
+            this.s = new String(this.buf, this.offset, this.length);
+        }
+        return this.s;
+    }
+    
+    /**
+     * Retrieves the String form of the given CharSequence
+     * 
+     * @param cs the CharSequence
+     * @return the String (or null if the CharSequence is null)
+     **/
+    public final static String toString(final CharSequence cs) {
+        return cs == null ? null : cs.toString();
+    }
+}
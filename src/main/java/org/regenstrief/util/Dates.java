@@ -14,9 +14,15 @@ package org.regenstrief.util;
 
 import java.text.DateFormatSymbols;
 import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.temporal.TemporalAccessor;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Locale;
 import java.util.TimeZone;
 
 /**
@@ -55,9 +61,13 @@ public final class Dates {
     
     private final static int yearNow;
     
-    private final static SimpleDateFormat formatter = new SimpleDateFormat("dd-MMM-yyyy");
+    // DateTimeFormatters are immutable, so unlike SimpleDateFormats they can be shared by threads;
+    // parsing accepts 1-digit days and hours and resolves leniently like SimpleDateFormat, so 5-jan-20 and 31-Feb-2020 still work
+    private final static DateTimeFormatter parser = createParser("d-MMM-y");
     
-    private final static SimpleDateFormat formatterTime = new SimpleDateFormat("dd-MMM-yyyy hh:mm aa");
+    private final static DateTimeFormatter parserTime = createParser("d-MMM-y h:mm a");
+    
+    private final static DateTimeFormatter formatterTime = DateTimeFormatter.ofPattern("dd-MMM-yyyy hh:mm a");
     
     private final static String[] monthName; // Get official month names
     
@@ -66,7 +76,7 @@ public final class Dates {
     static {
         final Calendar c = Calendar.getInstance();
         yearNow = getYear(c) % 100;
-        final DateFormatSymbols formatSymbols = formatter.getDateFormatSymbols();
+        final DateFormatSymbols formatSymbols = DateFormatSymbols.getInstance();
         monthName = formatSymbols.getMonths();
         monthNameAbbr = formatSymbols.getShortMonths();
     }
@@ -74,6 +84,11 @@ public final class Dates {
     private Dates() {
     }
     
+    private final static DateTimeFormatter createParser(final String pattern) {
+        return new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern(pattern).toFormatter(Locale.getDefault())
+                .withResolverStyle(ResolverStyle.LENIENT);
+    }
+    
     /**
      * Parses the given String into a Calendar
      * 
@@ -112,10 +127,27 @@ public final class Dates {
             return null;
         }
         final Calendar c = Calendar.getInstance(DEFAULT_TIME_ZONE);
-        setHL7DateTime(c, text, false);
+        final long time = parseHL7Time(text);
+        if (time == HL7Time.NONE) {
+            setHL7DateTime(c, text, false);
+        } else {
+            c.setTimeInMillis(HL7Time.toEpochMillis(time));
+        }
         return c;
     }
     
+    /**
+     * Parses the given HL7 String with HL7Time if it is valid and after the Gregorian cutover,
+     * where HL7Time and Calendar agree
+     * 
+     * @param text the HL7 String
+     * @return the packed time (or HL7Time.NONE if a Calendar is needed)
+     */
+    private final static long parseHL7Time(final String text) {
+        final long time = HL7Time.parse(text);
+        return (time != HL7Time.NONE) && (Util.parseInt(text, 0, 4) > 1582) ? time : HL7Time.NONE;
+    }
+    
     /**
      * Parses the given HL7 String into a Date
      * 
@@ -123,7 +155,11 @@ public final class Dates {
      * @return the Date
      */
     public final static Date parseHL7Date(final String text) {
-        return toDate(parseHL7Calendar(text));
+        if (Util.isEmpty(text)) {
+            return null;
+        }
+        final long time = parseHL7Time(text);
+        return time == HL7Time.NONE ? toDate(parseHL7Calendar(text)) : new Date(HL7Time.toEpochMillis(time));
     }
     
     /**
@@ -308,7 +344,8 @@ public final class Dates {
         if (c == null) {
             return null;
         } else if ((c.get(Calendar.HOUR_OF_DAY) != 0) || (c.get(Calendar.MINUTE) != 0)) {
-            return formatterTime.format(c.getTime());
+            return formatterTime.format(LocalDateTime.of(getYear(c), getMonth(c), getDay(c), c.get(Calendar.HOUR_OF_DAY),
+                c.get(Calendar.MINUTE)));
         }
         
         final String s;
@@ -486,8 +523,9 @@ public final class Dates {
         }
         try { // Try to use standard JAVA date encode
             final ParsePosition pp = new ParsePosition(0);
-            final Date d = formatterTime.parse(dateText, pp);
-            c.setTime(d);
+            final LocalDateTime d = LocalDateTime.from(parserTime.parse(dateText, pp));
+            c.clear();
+            c.set(d.getYear(), d.getMonthValue() - 1, d.getDayOfMonth(), d.getHour(), d.getMinute(), 0);
             formatYear(c);
             if (pp.getIndex() == len) {
                 return true; // Exit if parsed entire value OK
@@ -697,8 +735,10 @@ public final class Dates {
             return true;
         }
         try { // Try to use standard JAVA date encode
-            final Date d = formatter.parse(dateText);
-            setDate(c, d);
+            final TemporalAccessor parsed = parser.parse(dateText, new ParsePosition(0));
+            final LocalDate d = LocalDate.from(parsed);
+            c.clear();
+            c.set(d.getYear(), d.getMonthValue() - 1, d.getDayOfMonth());
             formatYear(c);
             return true; // Exit if parsed it OK
         } catch (final Exception e) {}
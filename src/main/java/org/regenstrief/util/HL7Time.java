@@ -0,0 +1,481 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.util;
+
+import java.util.TimeZone;
+
+/**
+ * HL7Time
+ *
+ * Parses and formats HL7 date/times (YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ]) as packed longs, without Calendars,
+ * SimpleDateFormats or other objects.
+ * A packed time holds the local date/time as ten-thousandths of a second since 0000-01-01 (proleptic Gregorian),
+ * the precision (how many parts of the format were present), and the time zone offset if one was given.
+ * Offsets must be whole quarter hours.
+ * Formatting a packed time gives back the same text that was parsed, so values can be parsed, adjusted and formatted
+ * without losing precision or the offset.
+ * NONE (0) is never a valid packed time, so it's returned for text that can't be parsed.
+ * compare orders packed times by their local date/time.
+ */
+public final class HL7Time {
+    
+    public final static long NONE = 0;
+    
+    public final static int PRECISION_YEAR = 1;
+    
+    public final static int PRECISION_MONTH = 2;
+    
+    public final static int PRECISION_DAY = 3;
+    
+    public final static int PRECISION_HOUR = 4;
+    
+    public final static int PRECISION_MINUTE = 5;
+    
+    public final static int PRECISION_SECOND = 6;
+    
+    public final static int PRECISION_TENTH_SECOND = 7;
+    
+    public final static int PRECISION_HUNDREDTH_SECOND = 8;
+    
+    public final static int PRECISION_MILLISECOND = 9;
+    
+    public final static int PRECISION_TEN_THOUSANDTH_SECOND = 10;
+    
+    private final static int TICKS_PER_SECOND = 10000;
+    
+    private final static long TICKS_PER_DAY = 86400L * TICKS_PER_SECOND;
+    
+    private final static long DAYS_0000_TO_1970 = 719528;
+    
+    private final static long MILLIS_0000_TO_1970 = DAYS_0000_TO_1970 * 86400000L;
+    
+    // Low bits hold the precision, then the offset code, then the ticks
+    private final static int PRECISION_BITS = 4;
+    
+    private final static int OFFSET_BITS = 8;
+    
+    private final static int TICKS_SHIFT = PRECISION_BITS + OFFSET_BITS;
+    
+    // Offset codes are quarter hours plus this, so 0 means that there is no offset
+    private final static int OFFSET_BIAS = 128;
+    
+    private final static int[] DIVISORS = { 1000, 100, 10, 1 };
+    
+    private HL7Time() {
+    }
+    
+    /**
+     * Parses an HL7 date/time
+     * 
+     * @param s the text
+     * @return the packed time (or NONE if the text isn't a valid HL7 date/time)
+     **/
+    public final static long parse(final CharSequence s) {
+        return s == null ? NONE : parse(s, 0, s.length());
+    }
+    
+    /**
+     * Parses an HL7 date/time from part of a CharSequence, like a raw field in a segment
+     * 
+     * @param s the text
+     * @param off the offset of the first character
+     * @param end the offset after the last character
+     * @return the packed time (or NONE if the text isn't a valid HL7 date/time)
+     **/
+    public final static long parse(final CharSequence s, final int off, final int end) {
+        int i = off;
+        final int year = parseDigits(s, i, end, 4);
+        if (year < 0) {
+            return NONE;
+        }
+        i += 4;
+        int precision = PRECISION_YEAR, month = 1, day = 1, hour = 0, minute = 0, second = 0, fraction = 0;
+        if ((month = parseDigits(s, i, end, 2)) >= 0) {
+            if ((month < 1) || (month > 12)) {
+                return NONE;
+            }
+            i += 2;
+            precision = PRECISION_MONTH;
+            if ((day = parseDigits(s, i, end, 2)) >= 0) {
+                if ((day < 1) || (day > getDaysInMonth(year, month))) {
+                    return NONE;
+                }
+                i += 2;
+                precision = PRECISION_DAY;
+                if ((hour = parseDigits(s, i, end, 2)) >= 0) {
+                    if (hour > 23) {
+                        return NONE;
+                    }
+                    i += 2;
+                    precision = PRECISION_HOUR;
+                    if ((minute = parseDigits(s, i, end, 2)) >= 0) {
+                        if (minute > 59) {
+                            return NONE;
+                        }
+                        i += 2;
+                        precision = PRECISION_MINUTE;
+                        if ((second = parseDigits(s, i, end, 2)) >= 0) {
+                            if (second > 59) {
+                                return NONE;
+                            }
+                            i += 2;
+                            precision = PRECISION_SECOND;
+                            if ((i < end) && (s.charAt(i) == '.')) {
+                                i++;
+                                int digits = 0;
+                                while ((i < end) && (digits < 4) && isDigit(s.charAt(i))) {
+                                    fraction = (fraction * 10) + (s.charAt(i) - '0');
+                                    digits++;
+                                    i++;
+                                }
+                                if (digits == 0) {
+                                    return NONE;
+                                }
+                                for (int j = digits; j < 4; j++) {
+                                    fraction *= 10;
+                                }
+                                precision = PRECISION_SECOND + digits;
+                            }
+                        } else {
+                            second = 0;
+                        }
+                    } else {
+                        minute = 0;
+                    }
+                } else {
+                    hour = 0;
+                }
+            } else {
+                day = 1;
+            }
+        } else {
+            month = 1;
+        }
+        int offsetCode = 0;
+        if ((i < end) && ((s.charAt(i) == '+') || (s.charAt(i) == '-'))) {
+            final boolean negative = s.charAt(i) == '-';
+            final int hours = parseDigits(s, i + 1, end, 2);
+            final int minutes = parseDigits(s, i + 3, end, 2);
+            if ((hours < 0) || (minutes < 0) || (minutes > 59) || ((minutes % 15) != 0) || (hours > 23)) {
+                return NONE;
+            }
+            final int quarters = (hours * 4) + (minutes / 15);
+            offsetCode = OFFSET_BIAS + (negative ? -quarters : quarters);
+            i += 5;
+        }
+        if (i != end) {
+            return NONE;
+        }
+        final long days = daysFromCivil(year, month, day) + DAYS_0000_TO_1970;
+        final long ticks = ((((days * 24) + hour) * 60 + minute) * 60 + second) * TICKS_PER_SECOND + fraction;
+        return pack(ticks, offsetCode, precision);
+    }
+    
+    private final static long pack(final long ticks, final int offsetCode, final int precision) {
+        return (ticks << TICKS_SHIFT) | ((long) offsetCode << PRECISION_BITS) | precision;
+    }
+    
+    private final static int parseDigits(final CharSequence s, final int off, final int end, final int n) {
+        if (off + n > end) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = off; i < off + n; i++) {
+            final char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = (value * 10) + (c - '0');
+        }
+        return value;
+    }
+    
+    private final static boolean isDigit(final char c) {
+        return (c >= '0') && (c <= '9');
+    }
+    
+    /**
+     * Formats a packed time with its own precision and offset
+     * 
+     * @param time the packed time
+     * @return the HL7 date/time (or null if time is NONE)
+     **/
+    public final static String format(final long time) {
+        if (time == NONE) {
+            return null;
+        }
+        final StringBuilder b = new StringBuilder(24);
+        appendTo(b, time);
+        return b.toString();
+    }
+    
+    /**
+     * Appends a packed time with its own precision and offset
+     * 
+     * @param b the StringBuilder
+     * @param time the packed time (must not be NONE)
+     **/
+    public final static void appendTo(final StringBuilder b, final long time) {
+        final int precision = getPrecision(time);
+        final long ticks = getTicks(time);
+        final long days = Math.floorDiv(ticks, TICKS_PER_DAY);
+        final int date = civilFromDays(days - DAYS_0000_TO_1970);
+        appendDigits(b, date / 10000, 4);
+        if (precision >= PRECISION_MONTH) {
+            appendDigits(b, (date / 100) % 100, 2);
+        }
+        if (precision >= PRECISION_DAY) {
+            appendDigits(b, date % 100, 2);
+        }
+        final long timeOfDay = ticks - days * TICKS_PER_DAY;
+        final int seconds = (int) (timeOfDay / TICKS_PER_SECOND);
+        if (precision >= PRECISION_HOUR) {
+            appendDigits(b, seconds / 3600, 2);
+        }
+        if (precision >= PRECISION_MINUTE) {
+            appendDigits(b, (seconds / 60) % 60, 2);
+        }
+        if (precision >= PRECISION_SECOND) {
+            appendDigits(b, seconds % 60, 2);
+        }
+        if (precision > PRECISION_SECOND) {
+            b.append('.');
+            final int fraction = (int) (timeOfDay % TICKS_PER_SECOND);
+            for (int i = 0; i < precision - PRECISION_SECOND; i++) {
+                b.append((char) ('0' + ((fraction / DIVISORS[i]) % 10)));
+            }
+        }
+        if (hasOffset(time)) {
+            final int offset = getOffsetMinutes(time);
+            b.append(offset < 0 ? '-' : '+');
+            final int abs = Math.abs(offset);
+            appendDigits(b, abs / 60, 2);
+            appendDigits(b, abs % 60, 2);
+        }
+    }
+    
+    private final static void appendDigits(final StringBuilder b, final int value, final int n) {
+        for (int divisor = n == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            b.append((char) ('0' + ((value / divisor) % 10)));
+        }
+    }
+    
+    /**
+     * Converts epoch milliseconds to a packed time in the default time zone,
+     * with the least precision that keeps every non-zero field, like StopWatch.toHL7String
+     * 
+     * @param millis the epoch milliseconds
+     * @return the packed time
+     **/
+    public final static long fromEpochMillis(final long millis) {
+        return fromEpochMillis(millis, Dates.DEFAULT_TIME_ZONE, 0, false);
+    }
+    
+    /**
+     * Converts epoch milliseconds to a packed time
+     * 
+     * @param millis the epoch milliseconds
+     * @param zone the TimeZone of the local time
+     * @param precision the precision (or 0 for the least precision that keeps every non-zero field)
+     * @param includeOffset whether the packed time should include the zone's offset (if it's whole quarter hours)
+     * @return the packed time
+     **/
+    public final static long fromEpochMillis(final long millis, final TimeZone zone, int precision, final boolean includeOffset) {
+        final int offsetMillis = zone.getOffset(millis);
+        final long ticks = (millis + offsetMillis + MILLIS_0000_TO_1970) * (TICKS_PER_SECOND / 1000);
+        if (precision <= 0) {
+            final long timeOfDay = Math.floorMod(ticks, TICKS_PER_DAY);
+            if ((timeOfDay % TICKS_PER_SECOND) != 0) {
+                precision = PRECISION_MILLISECOND;
+            } else if ((timeOfDay % (60L * TICKS_PER_SECOND)) != 0) {
+                precision = PRECISION_SECOND;
+            } else if (timeOfDay != 0) {
+                precision = PRECISION_MINUTE;
+            } else {
+                precision = PRECISION_DAY;
+            }
+        }
+        final int offsetMinutes = offsetMillis / 60000;
+        final boolean offset = includeOffset && ((offsetMillis % (15 * 60000)) == 0) && (Math.abs(offsetMinutes) < 24 * 60);
+        return pack(ticks, offset ? OFFSET_BIAS + (offsetMinutes / 15) : 0, precision);
+    }
+    
+    /**
+     * Converts a packed time to epoch milliseconds, using its offset, or the default time zone if it has none.
+     * Parts beyond the packed time's precision count as their lowest values, so 202001 is the start of January 2020.
+     * 
+     * @param time the packed time
+     * @return the epoch milliseconds
+     **/
+    public final static long toEpochMillis(final long time) {
+        return toEpochMillis(time, Dates.DEFAULT_TIME_ZONE);
+    }
+    
+    /**
+     * Converts a packed time to epoch milliseconds
+     * 
+     * @param time the packed time
+     * @param zone the TimeZone to use if the packed time has no offset
+     * @return the epoch milliseconds
+     **/
+    public final static long toEpochMillis(final long time, final TimeZone zone) {
+        final long local = (getTicks(time) / (TICKS_PER_SECOND / 1000)) - MILLIS_0000_TO_1970;
+        if (hasOffset(time)) {
+            return local - (getOffsetMinutes(time) * 60000L);
+        }
+        // The offset depends on the instant, so look it up near the local time, then again at the result
+        final int guess = zone.getOffset(local - zone.getRawOffset());
+        final int offset = zone.getOffset(local - guess);
+        if ((offset == guess) || (zone.getOffset(local - offset) == offset)) {
+            return local - offset;
+        }
+        // Neither offset fits, so the local time was skipped when the clocks moved forward; use the earlier offset like Calendar
+        return local - Math.min(guess, offset);
+    }
+    
+    /**
+     * Compares two packed times by their local date/time, ignoring precision and offset
+     * 
+     * @param time1 the first packed time
+     * @param time2 the second packed time
+     * @return a negative number if time1 is first, 0 if they're the same, or a positive number if time2 is first
+     **/
+    public final static int compare(final long time1, final long time2) {
+        return Long.compare(getTicks(time1), getTicks(time2));
+    }
+    
+    private final static long getTicks(final long time) {
+        return time >>> TICKS_SHIFT;
+    }
+    
+    public final static int getPrecision(final long time) {
+        return (int) (time & ((1 << PRECISION_BITS) - 1));
+    }
+    
+    /**
+     * Changes the precision of a packed time, truncating any parts that are no longer included
+     * 
+     * @param time the packed time
+     * @param precision the new precision
+     * @return the new packed time
+     **/
+    public final static long withPrecision(final long time, final int precision) {
+        final long ticks = getTicks(time);
+        final long truncated;
+        switch (precision) {
+            case PRECISION_YEAR:
+            case PRECISION_MONTH:
+                final int date = civilFromDays(Math.floorDiv(ticks, TICKS_PER_DAY) - DAYS_0000_TO_1970);
+                final int month = precision == PRECISION_YEAR ? 1 : (date / 100) % 100;
+                truncated = (daysFromCivil(date / 10000, month, 1) + DAYS_0000_TO_1970) * TICKS_PER_DAY;
+                break;
+            case PRECISION_DAY:
+                truncated = ticks - Math.floorMod(ticks, TICKS_PER_DAY);
+                break;
+            case PRECISION_HOUR:
+                truncated = ticks - Math.floorMod(ticks, 3600L * TICKS_PER_SECOND);
+                break;
+            case PRECISION_MINUTE:
+                truncated = ticks - Math.floorMod(ticks, 60L * TICKS_PER_SECOND);
+                break;
+            case PRECISION_SECOND:
+                truncated = ticks - Math.floorMod(ticks, TICKS_PER_SECOND);
+                break;
+            case PRECISION_TENTH_SECOND:
+                truncated = ticks - Math.floorMod(ticks, 1000);
+                break;
+            case PRECISION_HUNDREDTH_SECOND:
+                truncated = ticks - Math.floorMod(ticks, 100);
+                break;
+            case PRECISION_MILLISECOND:
+                truncated = ticks - Math.floorMod(ticks, 10);
+                break;
+            case PRECISION_TEN_THOUSANDTH_SECOND:
+                truncated = ticks;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid precision " + precision);
+        }
+        return pack(truncated, getOffsetCode(time), precision);
+    }
+    
+    private final static int getOffsetCode(final long time) {
+        return (int) ((time >>> PRECISION_BITS) & ((1 << OFFSET_BITS) - 1));
+    }
+    
+    public final static boolean hasOffset(final long time) {
+        return getOffsetCode(time) != 0;
+    }
+    
+    /**
+     * Retrieves the offset from UTC of a packed time
+     * 
+     * @param time the packed time
+     * @return the offset in minutes (or 0 if there is no offset)
+     **/
+    public final static int getOffsetMinutes(final long time) {
+        final int code = getOffsetCode(time);
+        return code == 0 ? 0 : (code - OFFSET_BIAS) * 15;
+    }
+    
+    public final static boolean isValid(final long time) {
+        return getPrecision(time) != 0;
+    }
+    
+    /**
+     * Retrieves the number of days from 1970-01-01 to a date in the proleptic Gregorian calendar,
+     * from Howard Hinnant's date algorithms
+     **/
+    private final static long daysFromCivil(int year, final int month, final int day) {
+        year -= month <= 2 ? 1 : 0;
+        final long era = Math.floorDiv(year, 400);
+        final long yoe = year - era * 400;
+        final long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+    
+    /**
+     * Retrieves the date that is a number of days from 1970-01-01 in the proleptic Gregorian calendar,
+     * from Howard Hinnant's date algorithms
+     * 
+     * @param days the number of days
+     * @return the date as YYYYMMDD
+     **/
+    private final static int civilFromDays(final long days) {
+        final long shifted = days + 719468;
+        final long era = Math.floorDiv(shifted, 146097);
+        final long doe = shifted - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        final int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        final int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        return (year * 10000) + (month * 100) + day;
+    }
+    
+    private final static int getDaysInMonth(final int year, final int month) {
+        switch (month) {
+            case 2:
+                return ((year % 4 == 0) && ((year % 100 != 0) || (year % 400 == 0))) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
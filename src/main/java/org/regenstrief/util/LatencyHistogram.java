@@ -0,0 +1,222 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram
+ *
+ * A fixed-size histogram of latencies with a bounded relative error, in the style of HdrHistogram.
+ * Values are counted in buckets that double in width, each split into enough linear sub-buckets to keep the given number
+ * of significant decimal digits, so recording is a few bit operations and an atomic increment, with no allocation.
+ * Values above the highest trackable value are counted as the highest trackable value.
+ * recordValueWithExpectedInterval corrects for coordinated omission: when a closed-loop sender is stalled by a slow
+ * response, the requests that it would have sent during the stall are recorded too, with the latencies they would have seen.
+ * Recording is thread-safe; percentiles read while values are being recorded are approximate.
+ */
+public class LatencyHistogram {
+    
+    private final long highestTrackableValue;
+    
+    private final int subBucketHalfCountMagnitude;
+    
+    private final int subBucketHalfCount;
+    
+    private final long subBucketMask;
+    
+    private final int leadingZeroCountBase;
+    
+    private final AtomicLongArray counts;
+    
+    private final AtomicLong totalCount = new AtomicLong();
+    
+    private final AtomicLong total = new AtomicLong();
+    
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Constructs a new LatencyHistogram
+     * 
+     * @param highestTrackableValue the highest value to track
+     * @param significantDigits the number of significant decimal digits to keep, from 1 to 5
+     **/
+    public LatencyHistogram(final long highestTrackableValue, final int significantDigits) {
+        if ((significantDigits < 1) || (significantDigits > 5)) {
+            throw new IllegalArgumentException("Significant digits must be from 1 to 5: " + significantDigits);
+        } else if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("Highest trackable value must be at least 2: " + highestTrackableValue);
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        final long largestSingleUnitValue = 2 * (long) Math.pow(10, significantDigits);
+        final int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestSingleUnitValue) / Math.log(2));
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        final int subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - this.subBucketHalfCountMagnitude - 1;
+        // Each bucket covers twice the range of the one before it
+        long smallestUntrackableValue = subBucketCount;
+        int bucketCount = 1;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            if (smallestUntrackableValue > (Long.MAX_VALUE / 2)) {
+                bucketCount++;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        this.counts = new AtomicLongArray((bucketCount + 1) * this.subBucketHalfCount);
+    }
+    
+    /**
+     * Records a value
+     * 
+     * @param value the value, which must not be negative
+     **/
+    public void recordValue(final long value) {
+        recordValue(value, 1);
+    }
+    
+    private void recordValue(long value, final long count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        } else if (value > this.highestTrackableValue) {
+            value = this.highestTrackableValue;
+        }
+        this.counts.addAndGet(countsIndex(value), count);
+        this.totalCount.addAndGet(count);
+        this.total.addAndGet(value * count);
+        long max;
+        while ((value > (max = this.max.get())) && !this.max.compareAndSet(max, value)) {
+            // Retry until this thread's value is recorded or a larger one is
+        }
+    }
+    
+    /**
+     * Records a value, and the values that were probably missed while it was being measured.
+     * If the value is larger than the expected interval between measurements,
+     * values decreasing by the interval are also recorded down to the interval.
+     * 
+     * @param value the value, which must not be negative
+     * @param expectedInterval the expected interval between measurements (or 0 to record only the value)
+     **/
+    public void recordValueWithExpectedInterval(final long value, final long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            recordValue(missing);
+        }
+    }
+    
+    private int countsIndex(final long value) {
+        final int bucketIndex = this.leadingZeroCountBase - Long.numberOfLeadingZeros(value | this.subBucketMask);
+        final int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << this.subBucketHalfCountMagnitude) + (subBucketIndex - this.subBucketHalfCount);
+    }
+    
+    /**
+     * Retrieves the highest value that is counted in the same bucket as the given index
+     * 
+     * @param index the counts index
+     * @return the highest equivalent value
+     **/
+    private long highestEquivalentValue(final int index) {
+        int bucketIndex = (index >> this.subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (this.subBucketHalfCount - 1)) + this.subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= this.subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        final long lowest = ((long) subBucketIndex) << bucketIndex;
+        return lowest + (1L << bucketIndex) - 1;
+    }
+    
+    /**
+     * Retrieves the value at a percentile; the returned value is the highest value in its bucket,
+     * so it is at least as large as the recorded value, and within the histogram's precision of it
+     * 
+     * @param percentile the percentile, from 0 to 100
+     * @return the value (or 0 if nothing has been recorded)
+     **/
+    public long getValueAtPercentile(final double percentile) {
+        final long totalCount = getTotalCount();
+        if (totalCount == 0) {
+            return 0;
+        }
+        final long countAtPercentile = Math.max(1, (long) Math.ceil((Math.min(percentile, 100.0) / 100.0) * totalCount));
+        long sum = 0;
+        final int size = this.counts.length();
+        for (int i = 0; i < size; i++) {
+            sum += this.counts.get(i);
+            if (sum >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+    
+    public long getTotalCount() {
+        return this.totalCount.get();
+    }
+    
+    public long getMax() {
+        return this.max.get();
+    }
+    
+    public double getMean() {
+        final long totalCount = getTotalCount();
+        return totalCount == 0 ? 0 : this.total.get() / (double) totalCount;
+    }
+    
+    /**
+     * Adds the counts of another LatencyHistogram with the same configuration to this one
+     * 
+     * @param other the other LatencyHistogram
+     **/
+    public void add(final LatencyHistogram other) {
+        if ((other.counts.length() != this.counts.length()) || (other.subBucketHalfCount != this.subBucketHalfCount)) {
+            throw new IllegalArgumentException("LatencyHistograms have different configurations");
+        }
+        final int size = this.counts.length();
+        for (int i = 0; i < size; i++) {
+            final long count = other.counts.get(i);
+            if (count != 0) {
+                this.counts.addAndGet(i, count);
+            }
+        }
+        this.totalCount.addAndGet(other.getTotalCount());
+        this.total.addAndGet(other.total.get());
+        final long otherMax = other.getMax();
+        long max;
+        while ((otherMax > (max = this.max.get())) && !this.max.compareAndSet(max, otherMax)) {
+            // Retry until the larger value is recorded
+        }
+    }
+    
+    /**
+     * Clears all counts
+     **/
+    public void reset() {
+        final int size = this.counts.length();
+        for (int i = 0; i < size; i++) {
+            this.counts.set(i, 0);
+        }
+        this.totalCount.set(0);
+        this.total.set(0);
+        this.max.set(0);
+    }
+}
@@ -62,6 +62,12 @@ public class StopWatch {
     
     protected static final long BAD_TIME = -1;
     
+    // 1583-01-01, after which Calendar and HL7Time agree
+    private static final long GREGORIAN_CUTOVER = -12212553600000L;
+    
+    // The most recently formatted second, shared by all threads; replaced as a whole, so it never needs a lock
+    private static volatile FormattedSecond lastSecond = null;
+    
     protected long startTime = BAD_TIME;
     
     protected long totalTime = 0;
@@ -226,7 +232,50 @@ public class StopWatch {
      * @return the current time in an HL7 String
      **/
     public static String currentTimeHL7String() {
-        return toHL7String(Calendar.getInstance());
+        final long millis = System.currentTimeMillis();
+        final int ms = (int) Math.floorMod(millis, 1000L);
+        if (ms == 0) {
+            return HL7Time.format(HL7Time.fromEpochMillis(millis)); // Might drop seconds or minutes too
+        }
+        final String second = getSecondHL7String(millis);
+        final StringBuilder b = new StringBuilder(second.length() + 4).append(second).append('.');
+        if (ms < 100) {
+            b.append(ms < 10 ? "00" : "0");
+        }
+        return b.append(ms).toString();
+    }
+    
+    /**
+     * Returns the current time to the second in an HL7 String (YYYYMMDDHHMMSS).
+     * The String is cached until the second changes, so stamping many messages per second doesn't format anything.
+     * 
+     * @return the current time in an HL7 String
+     **/
+    public static String currentSecondHL7String() {
+        return getSecondHL7String(System.currentTimeMillis());
+    }
+    
+    private static String getSecondHL7String(final long millis) {
+        final long second = Math.floorDiv(millis, 1000L);
+        FormattedSecond f = lastSecond;
+        if ((f == null) || (f.second != second)) {
+            f = new FormattedSecond(second, HL7Time.format(HL7Time.fromEpochMillis(second * 1000, Dates.DEFAULT_TIME_ZONE,
+                HL7Time.PRECISION_SECOND, false)));
+            lastSecond = f;
+        }
+        return f.text;
+    }
+    
+    private final static class FormattedSecond {
+        
+        private final long second;
+        
+        private final String text;
+        
+        private FormattedSecond(final long second, final String text) {
+            this.second = second;
+            this.text = text;
+        }
     }
     
     /**
@@ -236,7 +285,12 @@ public class StopWatch {
      * @return the Date an an HL7 String
      **/
     public static String toHL7String(final Date d) {
-        return toHL7String(Dates.toCalendar(d));
+        if (d == null) {
+            return null;
+        }
+        final long millis = d.getTime();
+        // HL7Time uses the proleptic Gregorian calendar, so older dates still need a Calendar
+        return millis >= GREGORIAN_CUTOVER ? HL7Time.format(HL7Time.fromEpochMillis(millis)) : toHL7String(Dates.toCalendar(d));
     }
     
     /**
@@ -0,0 +1,153 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.regenstrief.hl7.datatype.CX;
+import org.regenstrief.hl7.datatype.HL7DataType;
+import org.regenstrief.hl7.segment.HL7Segment;
+import org.regenstrief.hl7.segment.PID;
+import org.regenstrief.hl7.util.HL7TypeIndex;
+import org.regenstrief.hl7.util.UtilHL7;
+import org.regenstrief.util.reflect.ReflectUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * TestHL7DataAccess
+ */
+public class TestHL7DataAccess extends TestCase {
+    
+    private final static String PID_LINE = "PID|1|2|123^^^&1.2&ISO~456^^^^MR||DOE^JOHN||19700101|M|||1 MAIN ST^^TOWN^ST^12345";
+    
+    public void testParsedValues() throws Exception {
+        final PID pid = PID.parsePiped(HL7Parser.createLaxParser(), PID_LINE);
+        assertGet(pid);
+        assertSame(pid.getPatientIdentifier(), pid.get(3));
+        assertSame(pid.getPatientName(), pid.get(5));
+        assertSame(pid.getSex(), pid.get(8));
+        final CX cx = pid.getPatientIdentifier().get(0);
+        assertGet(cx);
+        assertEquals("123", cx.get(1));
+    }
+    
+    public void testEveryType() throws Exception {
+        final HL7Parser parser = HL7Parser.createLaxParser();
+        final Field types = HL7TypeIndex.class.getDeclaredField("TYPES");
+        types.setAccessible(true);
+        for (final Class<?> c : (Class<?>[]) types.get(null)) {
+            if (!usesAccessors(c)) {
+                continue;
+            }
+            final HL7Data data = UtilHL7.getInstance(parser, c.asSubclass(HL7Data.class));
+            final Map<Integer, Field> fields = getFields(c);
+            for (final Map.Entry<Integer, Field> entry : fields.entrySet()) {
+                final int i = entry.getKey().intValue();
+                final Field f = entry.getValue();
+                final Object value = newValue(parser, f.getType());
+                if (value == null) {
+                    continue;
+                }
+                data.set(i, value);
+                assertSame(c.getSimpleName() + '.' + i, value, f.get(data));
+                assertSame(c.getSimpleName() + '.' + i, value, data.get(i));
+                data.set(i, null);
+                assertNull(c.getSimpleName() + '.' + i, f.get(data));
+            }
+        }
+    }
+    
+    /**
+     * Checks that each position reads the field that its *_XML constant names
+     **/
+    private final static void assertGet(final HL7Data data) throws Exception {
+        final Map<Integer, Field> fields = getFields(data.getClass());
+        assertFalse(fields.isEmpty());
+        for (final Map.Entry<Integer, Field> entry : fields.entrySet()) {
+            final int i = entry.getKey().intValue();
+            assertSame(data.getTagName() + '.' + i, entry.getValue().get(data), data.get(i));
+        }
+    }
+    
+    /**
+     * Maps each position to its field by name, through constants like PATIENT_IDENTIFIER_XML = "PID.3"
+     * for the patientIdentifier field, so declaration order doesn't matter
+     **/
+    private final static Map<Integer, Field> getFields(final Class<?> c) throws Exception {
+        final Map<String, Field> byName = new HashMap<String, Field>();
+        final List<Field> constants = new ArrayList<Field>();
+        for (final Field f : ReflectUtil.getFieldList(c)) {
+            final int m = f.getModifiers();
+            if (Modifier.isStatic(m)) {
+                if (Modifier.isPublic(m) && Modifier.isFinal(m) && f.getName().endsWith("_XML") && (f.getType() == String.class)) {
+                    constants.add(f);
+                }
+            } else if (!Modifier.isPublic(m) && !byName.containsKey(normalize(f.getName()))) {
+                f.setAccessible(true);
+                byName.put(normalize(f.getName()), f);
+            }
+        }
+        final String pre = c.getSimpleName() + '.';
+        final Map<Integer, Field> fields = new HashMap<Integer, Field>();
+        for (final Field constant : constants) {
+            final String value = (String) constant.get(null);
+            if (!value.startsWith(pre) || !value.substring(pre.length()).matches("[0-9]+")) {
+                continue;
+            }
+            final String name = constant.getName();
+            final Field f = byName.get(normalize(name.substring(0, name.length() - 4)));
+            if (f != null) {
+                fields.put(Integer.valueOf(value.substring(pre.length())), f);
+            }
+        }
+        return fields;
+    }
+    
+    /**
+     * Retrieves whether a class uses HL7Data's accessor table, instead of overriding get with its own switch
+     **/
+    private final static boolean usesAccessors(Class<?> c) {
+        for (; c != HL7Data.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("get", int.class);
+            } catch (final NoSuchMethodException e) {
+                continue;
+            }
+            if ((c != HL7Segment.class) && (c != HL7DataType.class)) {
+                return false; // HL7Segment and HL7DataType only make get public
+            }
+        }
+        return true;
+    }
+    
+    private final static String normalize(final String name) {
+        return name.toLowerCase().replaceAll("[^a-z]", "");
+    }
+    
+    private final static Object newValue(final HL7Parser parser, final Class<?> type) {
+        if (type == String.class) {
+            return new String("x");
+        } else if (type == List.class) {
+            return new ArrayList<Object>();
+        } else if (HL7Data.class.isAssignableFrom(type) && !Modifier.isAbstract(type.getModifiers())) {
+            return UtilHL7.getInstance(parser, type.asSubclass(HL7Data.class));
+        }
+        return null;
+    }
+}
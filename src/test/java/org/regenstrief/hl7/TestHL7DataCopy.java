@@ -0,0 +1,97 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import org.regenstrief.hl7.segment.PID;
+
+import junit.framework.TestCase;
+
+/**
+ * TestHL7DataCopy
+ */
+public class TestHL7DataCopy extends TestCase {
+    
+    private final static String MSG = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5\r"
+            + "PID|||123^^^&1.2&ISO~456^^^^MR||DOE^JOHN||19700101|M\r";
+    
+    public void testSegmentCopy() throws Exception {
+        final PID pid = getPID(parse());
+        final String expected = pid.toPiped();
+        final PID copy = (PID) pid.copy();
+        assertNotSame(pid, copy);
+        assertEquals(expected, copy.toPiped());
+        copy.getPatientName().get(0).setGivenName("JANE");
+        copy.setSsnNumberPatient("999");
+        assertEquals(expected, pid.toPiped());
+        assertEquals("JOHN", pid.getPatientName().get(0).getGivenName());
+        assertFalse(expected.equals(copy.toPiped()));
+    }
+    
+    public void testDeepCopy() throws Exception {
+        final HL7DataTree tree = parse();
+        final String expected = tree.toPiped();
+        final HL7DataTree copy = tree.deepCopy();
+        assertEquals(expected, copy.toPiped());
+        getPID(copy).getPatientName().get(0).setGivenName("JANE");
+        assertEquals(expected, tree.toPiped());
+    }
+    
+    public void testCopyOnWrite() throws Exception {
+        final HL7DataTree tree = parse();
+        final String expected = tree.toPiped();
+        final HL7DataTree copy = tree.copyOnWrite();
+        assertEquals(expected, copy.toPiped());
+        final HL7DataTree node = copy.getDescendantNode("PID");
+        final PID original = getPID(tree);
+        assertSame(original, node.getValue());
+        assertTrue(node.isShared());
+        final PID writable = (PID) node.getWritableValue();
+        assertNotSame(original, writable);
+        assertFalse(node.isShared());
+        // Only the first call copies
+        assertSame(writable, node.getWritableValue());
+        writable.getPatientName().get(0).setGivenName("JANE");
+        assertEquals(expected, tree.toPiped());
+        assertSame(original, getPID(tree));
+        // Segments that weren't written are still shared
+        assertSame(tree.getDescendantValue("MSH"), copy.getDescendantValue("MSH"));
+    }
+    
+    public void testReleaseCopyOnWrite() throws Exception {
+        final HL7Parser parser = HL7Parser.createLaxParser();
+        parser.setPooled(true);
+        parser.runFromString(MSG);
+        final HL7DataTree tree = parser.getTree();
+        final String expected = tree.toPiped();
+        // The copy shares the original's PID, so releasing the copy must not clear it for reuse
+        parser.release(tree.copyOnWrite());
+        assertEquals(expected, tree.toPiped());
+        assertEquals("JOHN", getPID(tree).getPatientName().get(0).getGivenName());
+        // Releasing the original must not clear the values that a copy still shares
+        final HL7DataTree copy = tree.copyOnWrite();
+        ((PID) copy.getDescendantNode("PID").getWritableValue()).getPatientName().get(0).setGivenName("JANE");
+        parser.release(tree);
+        assertEquals("JANE", getPID(copy).getPatientName().get(0).getGivenName());
+        assertEquals(expected.replace("JOHN", "JANE"), copy.toPiped());
+    }
+    
+    private final static HL7DataTree parse() throws Exception {
+        final HL7Parser parser = HL7Parser.createLaxParser();
+        parser.runFromString(MSG);
+        return parser.getTree();
+    }
+    
+    private final static PID getPID(final HL7DataTree tree) {
+        return (PID) tree.getDescendantValue("PID");
+    }
+}
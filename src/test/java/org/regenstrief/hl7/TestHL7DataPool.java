@@ -0,0 +1,61 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import java.util.List;
+
+import org.regenstrief.hl7.segment.PID;
+
+import junit.framework.TestCase;
+
+/**
+ * TestHL7DataPool
+ */
+public class TestHL7DataPool extends TestCase {
+    
+    private final static String FULL = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5\r"
+            + "EVN|A01|20200101|||OP1~OP2\r"
+            + "PID|1||123^^^&1.2&ISO~456^^^^MR||DOE^JOHN~DOE^J||19700101|M|||1 MAIN ST^^TOWN^ST^12345||555-1234\r"
+            + "PV1|1|I|||||DOC1^SMITH|DOC2^JONES\r";
+    
+    private final static String SHORT = "MSH|^~\\&|A|B|C|D|20200101||ADT^A08|2|P|2.5\r"
+            + "EVN|A08\r"
+            + "PID|||789\r"
+            + "PV1|1|O\r";
+    
+    public void testReusedSegmentsMatchFreshOnes() throws Exception {
+        final HL7Parser pooled = HL7Parser.createLaxParser();
+        pooled.setPooled(true);
+        pooled.runFromString(FULL);
+        final HL7DataTree first = pooled.getTree();
+        final PID pid = (PID) first.getDescendantValue("PID");
+        final List<?> names = pid.getPatientName();
+        pooled.release(first);
+        // clear() empties the segment's Lists in place, like it always has
+        assertTrue(names.isEmpty());
+        pooled.runFromString(SHORT);
+        final HL7DataTree second = pooled.getTree();
+        assertSame(pid, second.getDescendantValue("PID"));
+        // A reused segment must not write empty fields for the Lists of the earlier message
+        assertEquals(parse(SHORT), second.toPiped());
+        pooled.release(second);
+        pooled.runFromString(FULL);
+        assertEquals(parse(FULL), pooled.getTree().toPiped());
+    }
+    
+    private final static String parse(final String msg) throws Exception {
+        final HL7Parser parser = HL7Parser.createLaxParser();
+        parser.runFromString(msg);
+        return parser.getTree().toPiped();
+    }
+}
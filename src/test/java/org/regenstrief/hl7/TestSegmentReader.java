@@ -0,0 +1,64 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.regenstrief.hl7.segment.RawSegment;
+
+import junit.framework.TestCase;
+
+/**
+ * TestSegmentReader
+ */
+public class TestSegmentReader extends TestCase {
+    
+    public void testZeroCopySlicesStayValid() throws Exception {
+        final StringBuilder input = new StringBuilder();
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            // Vary the sizes, with a few messages larger than the initial buffer, so that messages are appended,
+            // moved to a new buffer and grown
+            final int size = (i % 50 == 49) ? 20000 : 10 + ((i * 37) % 900);
+            final String msh = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|" + i + "|P|2.5";
+            final String pid = "PID|||" + i + "||" + repeat((char) ('A' + (i % 26)), size);
+            final String obx = "OBX|1|ST|X||" + repeat('z', size / 3);
+            input.append(msh).append('\r').append(pid).append('\r').append(obx).append("\r\n");
+            expected.add(msh);
+            expected.add(pid);
+            expected.add(obx);
+        }
+        final SegmentReader reader = new SegmentReader(HL7Parser.createLaxParser(), new StringReader(input.toString()));
+        reader.setZeroCopy(true);
+        final List<RawSegment> segs = new ArrayList<RawSegment>();
+        RawSegment seg;
+        while ((seg = reader.readRawSegment()) != null) {
+            segs.add(seg);
+        }
+        // Every slice is checked after the whole input is read, so later messages must not have overwritten it
+        assertEquals(expected.size(), segs.size());
+        for (int i = 0; i < segs.size(); i++) {
+            assertEquals(expected.get(i), segs.get(i).getRaw().toString());
+        }
+    }
+    
+    private final static String repeat(final char c, final int n) {
+        final StringBuilder b = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            b.append(c);
+        }
+        return b.toString();
+    }
+}
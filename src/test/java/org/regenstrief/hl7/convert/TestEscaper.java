@@ -0,0 +1,112 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.convert;
+
+import junit.framework.TestCase;
+
+/**
+ * TestEscaper
+ */
+public class TestEscaper extends TestCase {
+    
+    public void testRoundTrip() {
+        final Escaper e = new Escaper();
+        final String delims = "|^&~\\";
+        final String codes = "FSTRE";
+        for (int i = 0; i < delims.length(); i++) {
+            final String s = "a" + delims.charAt(i) + "b";
+            final String escaped = e.escape(s);
+            assertEquals("a\\" + codes.charAt(i) + "\\b", escaped);
+            assertEquals(s, e.unescape(escaped));
+        }
+        final String all = "x|y^z&w~v\\q\rt\ns";
+        final String escaped = e.escape(all);
+        assertEquals("x\\F\\y\\S\\z\\T\\w\\R\\v\\E\\q\\X0D\\t\\X0A\\s", escaped);
+        assertEquals(all, e.unescape(escaped));
+        assertEquals("a\nb", e.unescape("a\\.br\\b"));
+    }
+    
+    public void testRoundTripNonAsciiDelimiter() {
+        // Delimiters outside the lookup table are compared directly
+        final Escaper e = new Escaper();
+        e.setFieldSeparator('\u00a6');
+        e.setComponentSeparator('\u2021');
+        final String s = "a\u00a6b\u2021c|d";
+        final String escaped = e.escape(s);
+        assertEquals("a\\F\\b\\S\\c|d", escaped);
+        assertEquals(s, e.unescape(escaped));
+        // The table is rebuilt after a setter, so the old delimiter is plain text again
+        e.setFieldSeparator('|');
+        assertEquals("a\u00a6b\\F\\", e.escape("a\u00a6b|"));
+    }
+    
+    public void testHex() {
+        final Escaper e = new Escaper();
+        assertEquals("A", e.unescape("\\X41\\"));
+        assertEquals("a\r\nb", e.unescape("a\\X0D0A\\b"));
+        assertEquals("\u00ff", e.unescape("\\XfF\\"));
+        // Invalid or odd-length hex is dropped like other unknown sequences
+        assertEquals("ab", e.unescape("a\\XZZ\\b"));
+        assertEquals("ab", e.unescape("a\\X4\\b"));
+        assertEquals("ab", e.unescape("a\\H\\b"));
+    }
+    
+    public void testUnterminated() {
+        final Escaper e = new Escaper();
+        // A lone escape character is kept, and doesn't affect what comes before it
+        assertEquals("a\\Fb", e.unescape("a\\Fb"));
+        assertEquals("a\\", e.unescape("a\\"));
+        assertEquals("|x\\", e.unescape("\\F\\x\\"));
+        assertEquals("|x\\F", e.unescape("\\F\\x\\F"));
+    }
+    
+    public void testIdentity() {
+        final Escaper e = new Escaper();
+        final String plain = "plain text";
+        assertSame(plain, e.escape(plain));
+        assertSame(plain, e.unescape(plain));
+        final StringBuilder buf = new StringBuilder();
+        assertSame(plain, e.escape(plain, buf));
+        assertSame(plain, e.unescape(plain, buf, true));
+        final String lone = "a\\b";
+        assertSame(lone, e.unescape(lone));
+        assertSame(lone, e.unescape(lone, buf, true));
+        // A reused buffer doesn't keep earlier output
+        assertEquals("a|b", e.unescape("a\\F\\b", buf, true));
+        assertEquals("c^d", e.unescape("c\\S\\d", buf, true));
+        assertNull(e.escape(null));
+        assertNull(e.unescape(null));
+    }
+    
+    public void testDelimiterException() {
+        final Escaper e = new Escaper();
+        assertDelimiterException(e, "ab|c", '|', 2);
+        assertDelimiterException(e, "\\F\\x^y", '^', 4);
+        assertDelimiterException(e, "x~", '~', 1);
+        // A delimiter inside an escape sequence is found too
+        assertDelimiterException(e, "a\\F&\\", '&', 3);
+        // Carriage returns aren't delimiters, and unchecked unescaping ignores delimiters
+        assertEquals("a\rb", e.unescape("a\rb", null, true));
+        assertEquals("a|b|c", e.unescape("a|b\\F\\c", null, false));
+    }
+    
+    private final static void assertDelimiterException(final Escaper e, final String s, final char delimiter, final int index) {
+        try {
+            e.unescape(s, null, true);
+            fail("Expected a DelimiterException for " + s);
+        } catch (final Escaper.DelimiterException ex) {
+            assertEquals(delimiter, ex.getDelimiter());
+            assertEquals(index, ex.getIndex());
+        }
+    }
+}
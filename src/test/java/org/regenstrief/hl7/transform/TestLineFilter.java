@@ -0,0 +1,92 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.transform;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.regenstrief.hl7.HL7Parser;
+import org.regenstrief.hl7.SegmentReader;
+import org.regenstrief.hl7.segment.HL7Segment;
+
+import junit.framework.TestCase;
+
+/**
+ * TestLineFilter
+ */
+public class TestLineFilter extends TestCase {
+    
+    private final static String ADT = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5\rEVN|A01\rPID|||1\rPV1|1|I\r";
+    
+    private final static String ORU = "MSH|^~\\&|A|B|C|D|20200101||ORU^R01|2|P|2.5\rPID|||2\rOBX|1|ST|X||Y\r";
+    
+    private final static String ADT2 = "MSH|^~\\&|A|B|C|D|20200101||ADT^A08|3|P|2.5\rPID|||3\r";
+    
+    private final static String INPUT = ADT + ORU + ADT2;
+    
+    private final static LineFilter KEEP_ADT = LineFilter.keepMessages(LineFilter.keepField("MSH", 9, "ADT"));
+    
+    public void testMessageScope() throws Exception {
+        assertEquals(Arrays.asList("MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5", "EVN|A01", "PID|||1", "PV1|1|I",
+            "MSH|^~\\&|A|B|C|D|20200101||ADT^A08|3|P|2.5", "PID|||3"), read(null, KEEP_ADT));
+    }
+    
+    public void testMessageScopeWithLimitTo() throws Exception {
+        // limitTo drops MSH, but the message-scope filter must still see it to skip the ORU
+        final Set<String> limitTo = new HashSet<String>(Arrays.asList("PID"));
+        assertEquals(Arrays.asList("PID|||1", "PID|||3"), read(limitTo, KEEP_ADT));
+    }
+    
+    public void testMessageScopeWithSegmentFilter() throws Exception {
+        // The segment filter drops MSH, and is added before the message-scope filter
+        assertEquals(Arrays.asList("PID|||1", "PID|||3"), read(null, LineFilter.keepSegments("PID"), KEEP_ADT));
+        assertEquals(Arrays.asList("EVN|A01", "PID|||1", "PV1|1|I", "PID|||3"), read(null, LineFilter.dropSegments("MSH"), KEEP_ADT));
+    }
+    
+    public void testSegmentFilters() throws Exception {
+        assertEquals(Arrays.asList("PID|||2"), read(null, LineFilter.keepSegments("PID"), LineFilter.keepPrefix("PID|||2")));
+        assertEquals(Arrays.asList("PID|||1", "PID|||3"),
+            read(null, LineFilter.keepSegments("PID"), LineFilter.dropSegments("MSH"), KEEP_ADT));
+        final Set<String> limitTo = new HashSet<String>(Arrays.asList("MSH", "PID"));
+        assertEquals(Arrays.asList("MSH|^~\\&|A|B|C|D|20200101||ORU^R01|2|P|2.5", "PID|||2"),
+            read(limitTo, LineFilter.keepField("MSH", 9, "ORU"), LineFilter.keepMessages(LineFilter.keepField("MSH", 9, "ORU"))));
+    }
+    
+    public void testGetFieldStart() {
+        final String msh = "MSH|^~\\&|A|B";
+        assertEquals(4, LineFilter.getFieldStart(msh, "MSH", 2, '|'));
+        assertEquals(9, LineFilter.getFieldStart(msh, "MSH", 3, '|'));
+        assertEquals(-1, LineFilter.getFieldStart(msh, "MSH", 1, '|'));
+        assertEquals(-1, LineFilter.getFieldStart(msh, "MSH", 9, '|'));
+        assertEquals(4, LineFilter.getFieldStart("PID|1||3", "PID", 1, '|'));
+        assertEquals(7, LineFilter.getFieldStart("PID|1||3", "PID", 3, '|'));
+    }
+    
+    private final static List<String> read(final Set<String> limitTo, final LineFilter... filters) throws Exception {
+        final SegmentReader reader = new SegmentReader(HL7Parser.createLaxParser(), new StringReader(INPUT));
+        reader.setLimitTo(limitTo);
+        for (final LineFilter filter : filters) {
+            reader.addLineFilter(filter);
+        }
+        final List<String> lines = new ArrayList<String>();
+        HL7Segment seg;
+        while ((seg = reader.readSegment()) != null) {
+            lines.add(seg.toPiped().trim());
+        }
+        return lines;
+    }
+}
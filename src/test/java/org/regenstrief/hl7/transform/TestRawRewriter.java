@@ -0,0 +1,113 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * TestRawRewriter
+ */
+public class TestRawRewriter extends TestCase {
+    
+    private final static String MSH = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|";
+    
+    public void testEmpty() throws Exception {
+        final RawRewriter rewriter = new RawRewriter(Arrays.asList(RawRule.prefix("PID-3.1", "MOD")), StandardCharsets.UTF_8);
+        // Rewrite on another thread, so a rewriter that never finishes fails the test instead of hanging it
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final Future<RawRewriter.Stats> future = executor.submit(new Callable<RawRewriter.Stats>() {
+                @Override
+                public final RawRewriter.Stats call() throws Exception {
+                    return rewriter.rewrite(new ByteArrayInputStream(new byte[0]), out);
+                }
+            });
+            final RawRewriter.Stats stats = future.get(10, TimeUnit.SECONDS);
+            assertEquals(0, out.size());
+            assertEquals(0, stats.getMessages());
+            assertEquals(0, stats.getBytesIn());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    public void testChunkBoundaries() throws Exception {
+        final int size = 500;
+        final StringBuilder in = new StringBuilder(), expected = new StringBuilder();
+        for (int i = 1; i <= size; i++) {
+            // Vary the lengths so messages straddle chunk boundaries, and make one longer than a chunk
+            final String padding = repeat('X', i == 250 ? 3000 : (i * 7) % 200);
+            in.append(newMessage(i, Integer.toString(i), padding));
+            expected.append(newMessage(i, "MOD" + i, padding));
+        }
+        for (final int threads : new int[] { 1, 4 }) {
+            final RawRewriter rewriter = new RawRewriter(Arrays.asList(RawRule.prefix("PID-3.1", "MOD")), StandardCharsets.UTF_8);
+            rewriter.setThreads(threads);
+            rewriter.setChunkSize(1024);
+            final byte[] input = in.toString().getBytes(StandardCharsets.UTF_8);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final RawRewriter.Stats stats = rewriter.rewrite(new ByteArrayInputStream(input), out);
+            assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+            assertEquals(size, stats.getMessages());
+            assertEquals(input.length, stats.getBytesIn());
+            assertEquals(out.size(), stats.getBytesOut());
+        }
+    }
+    
+    public void testMSHNumbering() throws Exception {
+        final List<RawRule> rules = Arrays.asList(RawRule.replace("MSH-3", "APP"), RawRule.clear("MSH-7"),
+            RawRule.replace("MSH-10", "ID1"), RawRule.parse("MSH-12:replace:2.6"));
+        final String msg = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5\rPID|||1^^^A~2^^^B||DOE^JOHN\r";
+        assertEquals("MSH|^~\\&|APP|B|C|D|||ADT^A01|ID1|P|2.6\rPID|||1^^^A~2^^^B||DOE^JOHN\r", rewrite(rules, msg));
+        assertEquals("MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5\rPID|||MOD1^^^A~MOD2^^^B||DOE^JOHN\r",
+            rewrite(Arrays.asList(RawRule.prefix("PID-3.1", "MOD")), msg));
+        // MSH-1 is the field separator and MSH-2 the encoding characters, so neither can be edited
+        for (final String path : new String[] { "MSH-1", "MSH-2" }) {
+            try {
+                RawRule.clear(path);
+                fail("Expected " + path + " to be rejected");
+            } catch (final IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+    
+    private final static String rewrite(final List<RawRule> rules, final String msg) throws Exception {
+        final RawRewriter rewriter = new RawRewriter(rules, StandardCharsets.UTF_8);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rewriter.rewrite(new ByteArrayInputStream(msg.getBytes(StandardCharsets.UTF_8)), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private final static String newMessage(final int i, final String id, final String padding) {
+        return MSH + i + "|P|2.5\rPID|||" + id + "^^^FAC||DOE^JOHN" + padding + "\rPV1|1|I\r";
+    }
+    
+    private final static String repeat(final char c, final int n) {
+        final char[] a = new char[n];
+        Arrays.fill(a, c);
+        return new String(a);
+    }
+}
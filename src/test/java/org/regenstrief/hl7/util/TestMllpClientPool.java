@@ -0,0 +1,81 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.regenstrief.io.IoUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * TestMllpClientPool
+ */
+public class TestMllpClientPool extends TestCase {
+    
+    public void testPeerClosesAfterEachResponse() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        final AtomicInteger connections = new AtomicInteger();
+        final Thread t = new Thread(new Runnable() {
+            @Override
+            public final void run() {
+                try {
+                    while (true) {
+                        final Socket s = server.accept();
+                        connections.incrementAndGet();
+                        try {
+                            respond(s, new MllpFrameDecoder(StandardCharsets.UTF_8).next(s.getInputStream()));
+                        } finally {
+                            IoUtil.close(s);
+                        }
+                    }
+                } catch (final Exception e) {
+                    // Server closed
+                }
+            }
+        }, "close-per-response server");
+        t.setDaemon(true);
+        t.start();
+        final MllpClientPool pool = new MllpClientPool("localhost", server.getLocalPort(), 1, StandardCharsets.UTF_8);
+        try {
+            pool.setTimeout(10000);
+            // Let each closed connection be reused without a health check, so the retry is what recovers
+            pool.setHealthCheckInterval(60000);
+            for (int i = 1; i <= 5; i++) {
+                final String rsp = pool.sendReceive("MSH|^~\\&|A|B|C|D|20200101||ADT^A01|" + i + "|P|2.5\rPID|||" + i + "\r");
+                assertTrue(rsp, rsp.startsWith("MSH|"));
+                assertTrue(rsp, rsp.contains("MSA|AA|" + i));
+            }
+            assertEquals(5, connections.get());
+        } finally {
+            pool.close();
+            server.close();
+        }
+    }
+    
+    private final static void respond(final Socket s, final String msg) throws Exception {
+        if (msg == null) {
+            return;
+        }
+        final OutputStream out = s.getOutputStream();
+        out.write(HL7IO.BOM);
+        out.write(HL7IO.make_ack(msg).getBytes(StandardCharsets.UTF_8));
+        out.write(HL7IO.EOM);
+        out.write(HL7IO.CR);
+        out.flush();
+    }
+}
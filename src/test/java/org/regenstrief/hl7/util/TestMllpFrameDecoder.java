@@ -0,0 +1,86 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+/**
+ * TestMllpFrameDecoder
+ */
+public class TestMllpFrameDecoder extends TestCase {
+    
+    // MSH-3 through MSH-12, followed by the separators that open MSH-13 through MSH-17
+    private final static String MSH = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5|||||";
+    
+    private final static String PID = "PID|||1||M\u00dcLLER^J\u00dcRGEN";
+    
+    public void testCharsetFromMSH18() throws Exception {
+        final String msg = MSH + "|8859/1\r" + PID + "\r";
+        final MllpFrameDecoder decoder = newDecoder(msg, StandardCharsets.ISO_8859_1);
+        assertTrue(decoder.hasFrame());
+        assertEquals(msg, decoder.next());
+        assertEquals(StandardCharsets.ISO_8859_1, decoder.getLastCharset());
+    }
+    
+    public void testCharsetNotFromMSH19() throws Exception {
+        final String msg = MSH + "||8859/1\r" + PID + "\r";
+        final MllpFrameDecoder decoder = newDecoder(msg, StandardCharsets.UTF_8);
+        assertEquals(msg, decoder.next());
+        assertEquals(StandardCharsets.UTF_8, decoder.getLastCharset());
+    }
+    
+    public void testDefaultCharset() throws Exception {
+        final String msg = MSH + "\r" + PID + "\r";
+        final MllpFrameDecoder decoder = newDecoder(msg, StandardCharsets.UTF_8);
+        assertEquals(msg, decoder.next());
+        assertEquals(StandardCharsets.UTF_8, decoder.getLastCharset());
+    }
+    
+    public void testToCharset() {
+        assertEquals(StandardCharsets.US_ASCII, MllpFrameDecoder.toCharset("ASCII"));
+        assertEquals(StandardCharsets.ISO_8859_1, MllpFrameDecoder.toCharset("8859/1"));
+        assertEquals(StandardCharsets.UTF_8, MllpFrameDecoder.toCharset("UNICODE UTF-8"));
+        assertEquals(Charset.forName("ISO-2022-JP"), MllpFrameDecoder.toCharset("ISO IR87"));
+        assertEquals(Charset.forName("GB18030"), MllpFrameDecoder.toCharset("GB 18030-2000"));
+        // An MSH-18 in ASCII bytes can't name a Charset that doesn't encode the MSH as ASCII
+        assertNull(MllpFrameDecoder.toCharset("UNICODE UTF-16"));
+        assertNull(MllpFrameDecoder.toCharset("UNICODE"));
+        assertNull(MllpFrameDecoder.toCharset("UNICODE UTF-32"));
+        assertNull(MllpFrameDecoder.toCharset("UTF-16LE"));
+        assertNull(MllpFrameDecoder.toCharset("NOT A CHARSET"));
+    }
+    
+    public void testAsciiIncompatibleCharsetUsesDefault() throws Exception {
+        final String msg = MSH + "|UNICODE\r" + PID + "\r";
+        final MllpFrameDecoder decoder = newDecoder(msg, StandardCharsets.UTF_8);
+        assertEquals(msg, decoder.next());
+        assertEquals(StandardCharsets.UTF_8, decoder.getLastCharset());
+    }
+    
+    private final static MllpFrameDecoder newDecoder(final String msg, final Charset encoding) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] body = msg.getBytes(encoding);
+        out.write(HL7IO.BOM);
+        out.write(body, 0, body.length);
+        out.write(HL7IO.EOM);
+        out.write(HL7IO.CR);
+        final MllpFrameDecoder decoder = new MllpFrameDecoder(StandardCharsets.UTF_8);
+        decoder.write(ByteBuffer.wrap(out.toByteArray()));
+        return decoder;
+    }
+}
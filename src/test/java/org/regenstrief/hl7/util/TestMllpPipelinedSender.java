@@ -0,0 +1,97 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.regenstrief.io.IoUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * TestMllpPipelinedSender
+ */
+public class TestMllpPipelinedSender extends TestCase {
+    
+    public void testGetSegment() {
+        final String msh = "MSH|^~\\&|A|B|C|D|20200101||ACK|9|P|2.5";
+        assertEquals("MSA|AA|1", MllpPipelinedSender.getSegment(msh + "\rMSA|AA|1\r", "MSA", '|'));
+        assertEquals("MSA|AA|2", MllpPipelinedSender.getSegment(msh + "\nMSA|AA|2\n", "MSA", '|'));
+        assertEquals("MSA|AA|3", MllpPipelinedSender.getSegment(msh + "\r\nMSA|AA|3\r\n", "MSA", '|'));
+        assertEquals("MSA|AA|4", MllpPipelinedSender.getSegment(msh + "\rMSA|AA|4", "MSA", '|'));
+        // Other segments whose names start with MSA, or MSA inside a field, aren't matched
+        assertEquals("MSA|AA|5", MllpPipelinedSender.getSegment(msh + "\rMSAX|AA|0\rZZZ|MSA|0\rMSA|AA|5\r", "MSA", '|'));
+        assertEquals("MSA#AA#6", MllpPipelinedSender.getSegment("MSH#^~\\&#A\rMSA|x\rMSA#AA#6\r", "MSA", '#'));
+        assertNull(MllpPipelinedSender.getSegment(msh + "\rMSAX|AA|7\rMSA\r", "MSA", '|'));
+        assertNull(MllpPipelinedSender.getSegment("", "MSA", '|'));
+    }
+    
+    public void testLineFeedResponses() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        final Thread t = new Thread(new Runnable() {
+            @Override
+            public final void run() {
+                Socket s = null;
+                try {
+                    s = server.accept();
+                    final InputStream in = s.getInputStream();
+                    final OutputStream out = s.getOutputStream();
+                    final MllpFrameDecoder decoder = new MllpFrameDecoder(StandardCharsets.UTF_8);
+                    final List<String> received = new ArrayList<String>();
+                    for (int i = 0; i < 3; i++) {
+                        received.add(decoder.next(in));
+                    }
+                    // Answer out of order, with line feeds between segments, and with a decoy MSAX segment
+                    for (int i = 2; i >= 0; i--) {
+                        final String ack = HL7IO.make_ack(received.get(i)).replace('\r', '\n');
+                        out.write(HL7IO.BOM);
+                        out.write(ack.replace("\nMSA", "\nMSAX|AA|0\nMSA").getBytes(StandardCharsets.UTF_8));
+                        out.write(HL7IO.EOM);
+                        out.write(HL7IO.CR);
+                    }
+                    out.flush();
+                    in.read(); // Wait for the client to close
+                } catch (final Exception e) {
+                    // Server closed
+                } finally {
+                    IoUtil.close(s);
+                }
+            }
+        }, "line feed server");
+        t.setDaemon(true);
+        t.start();
+        final MllpPipelinedSender sender = new MllpPipelinedSender("localhost", server.getLocalPort());
+        try {
+            final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+            for (int i = 1; i <= 3; i++) {
+                futures.add(sender.send("MSH|^~\\&|A|B|C|D|20200101||ADT^A01|" + i + "|P|2.5\rPID|||" + i + "\r"));
+            }
+            for (int i = 1; i <= 3; i++) {
+                final String rsp = futures.get(i - 1).get(10, TimeUnit.SECONDS);
+                assertTrue(rsp, rsp.contains("\nMSA|AA|" + i));
+            }
+            assertEquals(0, sender.getNumOutstanding());
+        } finally {
+            sender.close();
+            server.close();
+        }
+    }
+}
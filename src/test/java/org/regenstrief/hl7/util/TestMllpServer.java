@@ -0,0 +1,73 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+/**
+ * TestMllpServer
+ */
+public class TestMllpServer extends TestCase {
+    
+    private final static String MSH = "MSH|^~\\&|APP|FAC|RAPP|RFAC|20200101||ADT^A01|";
+    
+    public void testAcknowledge() throws Exception {
+        final List<String> received = new CopyOnWriteArrayList<String>();
+        final MllpServer server = new MllpServer(0, new HL7IO.HL7Handler() {
+            @Override
+            public final void process(final String hl7Message) throws Exception {
+                received.add(hl7Message);
+            }
+        }, 2, 10).start();
+        final MllpConnection conn = new MllpConnection("localhost", server.getPort(), 10000, StandardCharsets.UTF_8);
+        try {
+            for (int i = 1; i <= 3; i++) {
+                final String msg = MSH + i + "|P|2.5\rPID|||" + i + "\r";
+                final String ack = conn.sendReceive(msg, 10000);
+                assertEquals("MSH|^~\\&|RAPP|RFAC|APP|FAC|20200101||ACK^A01|" + i + "|P|2.5\rMSA|AA|" + i + "\r", ack);
+                assertEquals(msg, received.get(i - 1));
+            }
+            assertEquals(0, server.getNumErrors());
+        } finally {
+            conn.close();
+            server.close();
+        }
+    }
+    
+    public void testErrors() throws Exception {
+        final MllpServer server = new MllpServer(0, new HL7IO.HL7Handler() {
+            @Override
+            public final void process(final String hl7Message) throws Exception {
+                throw new HL7IO.HL7IOException("Rejected|by handler");
+            }
+        }, 2, 10).start();
+        final MllpConnection conn = new MllpConnection("localhost", server.getPort(), 10000, StandardCharsets.UTF_8);
+        try {
+            // A handler that throws, even an HL7IOException, gets an AE with its message
+            final String ack = conn.sendReceive(MSH + "7|P|2.5\rPID|||7\r", 10000);
+            assertTrue(ack, ack.endsWith("\rMSA|AE|7|Rejected by handler\r"));
+            // A message without an MSH still gets an answer on the same connection
+            final String nak = conn.sendReceive("PID|||8\r", 10000);
+            assertTrue(nak, nak.startsWith("MSH|^~\\&|"));
+            assertTrue(nak, nak.contains("\rMSA|AR||"));
+            assertEquals(2, server.getNumErrors());
+        } finally {
+            conn.close();
+            server.close();
+        }
+    }
+}
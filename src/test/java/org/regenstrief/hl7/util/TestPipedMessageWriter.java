@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.hl7.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * TestPipedMessageWriter
+ */
+public class TestPipedMessageWriter extends TestCase {
+    
+    private final static String MSH = "MSH|^~\\&|A|B|C|D|20200101||ADT^A01|1|P|2.5\r";
+    
+    // A supplementary character, written as a surrogate pair
+    private final static String EMOJI = "\ud83d\ude00";
+    
+    public void testStatefulCharset() throws Exception {
+        final Charset charset = Charset.forName("ISO-2022-JP");
+        final String msg = MSH + "PID|||\u65e5\u672c";
+        final PipedMessageWriter w = new PipedMessageWriter(false, charset);
+        // Run twice, so the encoder must be back in its initial state for the second message
+        for (int i = 0; i < 2; i++) {
+            final byte[] b = write(w, msg);
+            assertTrue(Arrays.equals(msg.getBytes(charset), b));
+            assertEquals(msg, new String(b, charset));
+        }
+    }
+    
+    public void testStatefulCharsetFramed() throws Exception {
+        final Charset charset = Charset.forName("ISO-2022-JP");
+        final String msg = MSH + "PID|||\u65e5\u672c";
+        final byte[] b = write(new PipedMessageWriter(true, charset), msg);
+        assertEquals(HL7IO.BOM, b[0]);
+        assertEquals(HL7IO.EOM, b[b.length - 2]);
+        assertEquals(HL7IO.CR, b[b.length - 1]);
+        // The shift back to ASCII must come before the end of the frame
+        assertTrue(Arrays.equals(msg.getBytes(charset), Arrays.copyOfRange(b, 1, b.length - 2)));
+    }
+    
+    public void testSurrogatePairSplitAcrossWrites() throws Exception {
+        final String msg = MSH + "PID|||A" + EMOJI + "B\r";
+        final int split = msg.indexOf(EMOJI) + 1;
+        for (final Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, Charset.forName("GB18030") }) {
+            final PipedMessageWriter w = new PipedMessageWriter(false, charset);
+            w.reset();
+            w.startMessage();
+            w.write(msg, 0, split);
+            w.write(msg, split, msg.length() - split);
+            w.endMessage();
+            assertEquals(charset.name(), msg, new String(w.toByteArray(), charset));
+            // One character at a time
+            w.reset();
+            w.startMessage();
+            for (int i = 0; i < msg.length(); i++) {
+                w.write(msg.charAt(i));
+            }
+            w.endMessage();
+            assertEquals(charset.name(), msg, new String(w.toByteArray(), charset));
+        }
+    }
+    
+    public void testUnpairedSurrogate() throws Exception {
+        for (final Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1 }) {
+            final PipedMessageWriter w = new PipedMessageWriter(false, charset);
+            assertEquals(charset.name(), "PID|||A?B", new String(write(w, "PID|||A\ud83dB"), charset));
+            assertEquals(charset.name(), "PID|||A?", new String(write(w, "PID|||A\ud83d"), charset));
+        }
+    }
+    
+    private final static byte[] write(final PipedMessageWriter w, final String msg) {
+        w.reset();
+        w.startMessage();
+        w.write(msg, 0, msg.length());
+        w.endMessage();
+        return w.toByteArray();
+    }
+}
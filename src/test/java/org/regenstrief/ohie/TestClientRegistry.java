@@ -12,14 +12,22 @@
  */
 package org.regenstrief.ohie;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.regenstrief.hl7.HL7DataTree;
 import org.regenstrief.hl7.HL7Parser;
 import org.regenstrief.hl7.util.HL7IO;
+import org.regenstrief.hl7.util.MllpClientPool;
 import org.regenstrief.util.MultiException;
 import org.regenstrief.util.Util;
 
@@ -27,6 +35,13 @@ import junit.framework.TestCase;
 
 /**
  * TestClientRegistry
+ *
+ * Sends each integration input file to the client registry and validates the response against the expected file.
+ * Files named like INT05-1 and INT05-2 form a chain that must run in order, so each chain runs on one lane.
+ * By default the lanes run one at a time, because chains aren't independent; several of them, like INT01B, INT09,
+ * and INT10 through INT13, register and query the same patient RJ-439, so their results would depend on how they interleave.
+ * Running lanes concurrently is only safe against a registry that isolates the chains.
+ * The expected files are parsed and compiled once before anything is sent.
  */
 public class TestClientRegistry extends TestCase {
     
@@ -38,10 +53,19 @@ public class TestClientRegistry extends TestCase {
     
     private final static List<String> DISABLED = Util.splitExactIntoList(Util.getProperty("org.regenstrief.ohie.cr.disabledTests"), ';');
     
+    // Number of chains to run at once; 1 runs every file in order
+    private final static int NUM_THREADS = Util.getPropertyInt("org.regenstrief.ohie.cr.testThreads", 1);
+    
+    // Whether to reuse connections; by default each message opens its own connection, as a registry might expect
+    private final static boolean POOLED = Util.isProperty("org.regenstrief.ohie.cr.testPooled", false);
+    
+    private final static ConcurrentMap<Integer, MllpClientPool> pools = new ConcurrentHashMap<Integer, MllpClientPool>();
+    
     public void testRegistry() throws Exception {
-        List<Exception> failures = null;
         final String[] files = Util.listFiles(LOCATION_INPUT);
         Arrays.sort(files);
+        final Map<String, List<Case>> lanes = new LinkedHashMap<String, List<Case>>();
+        final List<Case> cases = new ArrayList<Case>();
         for (final String file : files) {
             boolean skip = false;
             for (final String disabled : Util.unNull(DISABLED)) {
@@ -53,35 +77,131 @@ public class TestClientRegistry extends TestCase {
             if (skip) {
                 continue;
             }
-            try {
-                runMessage(file);
-            } catch (final Exception e) {
-                failures = Util.add(failures, new Exception(file + " failed validation", e));
+            final Case c = new Case(file);
+            cases.add(c);
+            final String chain = getChain(file);
+            List<Case> lane = lanes.get(chain);
+            if (lane == null) {
+                lane = new ArrayList<Case>();
+                lanes.put(chain, lane);
             }
+            lane.add(c);
         }
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(NUM_THREADS, lanes.size())));
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final List<Case> lane : lanes.values()) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public final void run() {
+                        for (final Case c : lane) {
+                            c.run();
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            for (final MllpClientPool pool : pools.values()) {
+                pool.close();
+            }
+            pools.clear();
+        }
+        final long total = System.nanoTime() - start;
+        List<Exception> failures = null;
+        final StringBuilder report = new StringBuilder("Ran " + cases.size() + " cases in " + lanes.size() + " chains in "
+                + (total / 1000000) + " ms:");
+        for (final Case c : cases) {
+            report.append('\n').append(c.file).append(": ").append(c.nanos / 1000000).append(" ms");
+            if (c.failure != null) {
+                report.append(" FAILED");
+                failures = Util.add(failures, new Exception(c.file + " failed validation", c.failure));
+            }
+        }
+        log.info(report);
         if (Util.isValued(failures)) {
             throw MultiException.createException(failures);
         }
     }
     
-    private void runMessage(final String file) throws Exception {
-        final String loc = LOCATION_INPUT + "/" + file, in = Util.readFile(loc);
-        log.info("Sending " + file + ":\n" + in + "\n");
-        final String out = send(in);
-        log.info("Received:\n" + out + "\n");
-        final HL7Parser parser = HL7Parser.createLaxParser();
-        final String exLoc = LOCATION_EXPECT + "/" + Util.getProcessedFileName(file, "expected");
-        parser.runFromLocation(exLoc);
-        final HL7DataTree exTree = parser.getTree();
-        parser.runFromString(out);
-        final HL7DataTree acTree = parser.getTree();
-        new MessageValidator().validateMessage(exTree, acTree);
+    /**
+     * Retrieves the name of the chain that a file belongs to, like INT05 for INT05-2.hl7 or INT01A for INT01A-1full.hl7
+     * 
+     * @param file the file name
+     * @return the chain name
+     **/
+    private final static String getChain(final String file) {
+        final int dot = file.lastIndexOf('.');
+        final String name = dot < 0 ? file : file.substring(0, dot);
+        final int dash = name.lastIndexOf('-');
+        return dash < 0 ? name : name.substring(0, dash);
+    }
+    
+    private final static class Case {
+        
+        private final String file;
+        
+        private String in = null;
+        
+        private MessageValidator.Plan plan = null;
+        
+        private long nanos = 0;
+        
+        private Exception failure = null;
+        
+        private Case(final String file) {
+            this.file = file;
+            try {
+                this.in = Util.readFile(LOCATION_INPUT + "/" + file);
+                final HL7Parser parser = HL7Parser.createLaxParser();
+                parser.runFromLocation(LOCATION_EXPECT + "/" + Util.getProcessedFileName(file, "expected"));
+                this.plan = MessageValidator.compile(parser.getTree());
+            } catch (final Exception e) {
+                this.failure = e;
+            }
+        }
+        
+        private void run() {
+            if (this.failure != null) {
+                return; // Couldn't be loaded
+            }
+            final long start = System.nanoTime();
+            try {
+                log.info("Sending " + this.file + ":\n" + this.in + "\n");
+                final String out = send(this.in);
+                log.info("Received for " + this.file + ":\n" + out + "\n");
+                final HL7Parser parser = HL7Parser.createLaxParser();
+                parser.runFromString(out);
+                this.plan.validate(parser.getTree());
+            } catch (final Exception e) {
+                this.failure = e;
+            } finally {
+                this.nanos = System.nanoTime() - start;
+            }
+        }
     }
     
     protected static String send(final String in) throws Exception {
         final int port = getPort(in);
         log.info("Sending to " + MessageSender.HOST + ":" + port);
-        return HL7IO.send_rcv_hl7_msg(MessageSender.HOST, port, 0, HL7IO.convert_lf_to_cr(in));
+        final String msg = HL7IO.convert_lf_to_cr(in);
+        return POOLED ? getPool(port).sendReceive(msg) : HL7IO.send_rcv_hl7_msg(MessageSender.HOST, port, 0, msg);
+    }
+    
+    private static MllpClientPool getPool(final int port) {
+        MllpClientPool pool = pools.get(Integer.valueOf(port));
+        if (pool == null) {
+            final MllpClientPool newPool = new MllpClientPool(MessageSender.HOST, port);
+            pool = pools.putIfAbsent(Integer.valueOf(port), newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        return pool;
     }
     
     private static int getPort(final String msg) {
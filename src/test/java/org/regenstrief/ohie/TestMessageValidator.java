@@ -89,6 +89,44 @@ public class TestMessageValidator extends TestCase {
         runInvalid(msgRem, msg1Less2);
     }
     
+    public void testPlan() throws Exception {
+        parser = HL7Parser.createLaxParser();
+        final HL7DataTree msg1 = newMsg(newPID("PID|||123^^^&1.2&ISO||DOE^JOHN"));
+        final HL7DataTree msg2 = newMsg(newPID("PID|||123^^^&1.2&ISO~456^^^^MR||DOE^JOHN"));
+        final HL7DataTree msgSiz = newMsg(newPID("PID|||SIZ(1)~123^^^&1.2&ISO"));
+        final MessageValidator.Plan plan = MessageValidator.compile(msgSiz);
+        // The same Plan must give the same result each time
+        for (int i = 0; i < 3; i++) {
+            plan.validate(msg1);
+            try {
+                plan.validate(msg2);
+                fail("Expected validation to fail, but it succeeded");
+            } catch (final IllegalStateException e) {
+                // Expected
+            }
+        }
+        // An indexed message must give the same results, including after it is modified
+        msg2.setIndexed(true);
+        final MessageValidator.Plan sizPlan = MessageValidator.compile(newMsg(newUSEG("SIZ|PID|=|1")));
+        sizPlan.validate(msg2);
+        msg2.addChild(newPID("PID|||789"));
+        assertEquals(2, msg2.getCount("PID"));
+        try {
+            sizPlan.validate(msg2);
+            fail("Expected validation to fail, but it succeeded");
+        } catch (final IllegalStateException e) {
+            // Expected
+        }
+        msg2.removeLastChild();
+        sizPlan.validate(msg2);
+        try {
+            MessageValidator.compile(newMsg(newUSEG("SIZ|PID|!|1")));
+            fail("Expected unknown comparison to fail when compiled");
+        } catch (final IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
     private void validate(final HL7DataTree ex, final HL7DataTree ac) throws Exception {
         new MessageValidator().validateMessage(ex, ac);
     }
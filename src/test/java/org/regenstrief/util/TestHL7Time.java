@@ -0,0 +1,227 @@
+/**
+ * The contents of this file are subject to the Regenstrief Public License
+ * Version 1.0 (the "License"); you may not use this file except in compliance with the License.
+ * Please contact Regenstrief Institute if you would like to obtain a copy of the license.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) Regenstrief Institute.  All Rights Reserved.
+ */
+package org.regenstrief.util;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.regenstrief.hl7.datatype.TS;
+
+import junit.framework.TestCase;
+
+/**
+ * TestHL7Time
+ */
+public class TestHL7Time extends TestCase {
+    
+    private final static String[] ZONES = { "UTC", "America/New_York", "Asia/Kolkata", "Australia/Lord_Howe" };
+    
+    // 1583-01-01 to 2100-01-01, where HL7Time and Calendar agree
+    private final static long MIN_MILLIS = -12212553600000L;
+    
+    private final static long MAX_MILLIS = 4102444800000L;
+    
+    public void testRoundTrip() {
+        for (final String s : new String[] { "2020", "202003", "20200315", "2020031512", "202003151234", "20200315123456",
+                "20200315123456.7", "20200315123456.78", "20200315123456.789", "20200315123456.7891", "20200229",
+                "20200315+0530", "20200315123456.7891-0345", "19991231235959-1200", "00010101" }) {
+            final long time = HL7Time.parse(s);
+            assertTrue(s, HL7Time.isValid(time));
+            assertEquals(s, HL7Time.format(time));
+        }
+        assertEquals(HL7Time.parse("20200315"), HL7Time.parse("xx20200315yy", 2, 10));
+    }
+    
+    public void testParseMatchesCalendar() {
+        final Random r = new Random(20201017L);
+        for (final String id : ZONES) {
+            final TimeZone zone = TimeZone.getTimeZone(id);
+            for (int i = 0; i < 20000; i++) {
+                final String s = randomText(r);
+                assertEquals(id + " " + s, parseCalendar(s, zone), HL7Time.toEpochMillis(HL7Time.parse(s), zone));
+            }
+        }
+        // Local times that were skipped or repeated when the clocks changed
+        final String[][] changes = { { "America/New_York", "202003080230" }, { "America/New_York", "202011010130" },
+                { "Asia/Kolkata", "1906" }, { "Asia/Kolkata", "190601010005" }, { "Australia/Lord_Howe", "202010040215" },
+                { "Australia/Lord_Howe", "202004050145" } };
+        for (final String[] change : changes) {
+            final TimeZone zone = TimeZone.getTimeZone(change[0]);
+            assertEquals(change[0] + " " + change[1], parseCalendar(change[1], zone),
+                HL7Time.toEpochMillis(HL7Time.parse(change[1]), zone));
+        }
+    }
+    
+    public void testFormatMatchesCalendar() {
+        final Random r = new Random(20201017L);
+        // Rounding some values to the day, minute or second covers each precision that the old formatter chose
+        final long[] units = { 1, 1000, 60000, 86400000 };
+        for (final String id : ZONES) {
+            final TimeZone zone = TimeZone.getTimeZone(id);
+            for (int i = 0; i < 20000; i++) {
+                final long unit = units[i % units.length];
+                long millis = MIN_MILLIS + (long) (r.nextDouble() * (MAX_MILLIS - MIN_MILLIS));
+                millis -= Math.floorMod(millis, unit);
+                if (unit == 86400000) {
+                    millis -= zone.getOffset(millis); // Local midnight
+                }
+                final Calendar c = Calendar.getInstance(zone);
+                c.setTimeInMillis(millis);
+                assertEquals(id + " " + millis, StopWatch.toHL7String(c),
+                    HL7Time.format(HL7Time.fromEpochMillis(millis, zone, 0, false)));
+            }
+        }
+    }
+    
+    public void testMidnight() {
+        final TimeZone utc = TimeZone.getTimeZone("UTC");
+        final long millis = 1577836800000L; // 2020-01-01T00:00:00Z
+        // Midnight is formatted with day precision, but an explicit midnight keeps its precision
+        assertEquals("20200101", HL7Time.format(HL7Time.fromEpochMillis(millis, utc, 0, false)));
+        assertEquals("20200101000000", HL7Time.format(HL7Time.fromEpochMillis(millis, utc, HL7Time.PRECISION_SECOND, false)));
+        assertEquals("202001010000", HL7Time.format(HL7Time.parse("202001010000")));
+        assertEquals(millis, HL7Time.toEpochMillis(HL7Time.parse("20200101"), utc));
+        assertEquals(millis, HL7Time.toEpochMillis(HL7Time.parse("202001010000"), utc));
+        assertEquals(0, HL7Time.compare(HL7Time.parse("20200101"), HL7Time.parse("20200101000000.0000")));
+        // The last instant of one day and the first of the next
+        assertTrue(HL7Time.compare(HL7Time.parse("20191231235959.9999"), HL7Time.parse("20200101")) < 0);
+        assertEquals(millis - 1, HL7Time.toEpochMillis(HL7Time.parse("20191231235959.999"), utc));
+        // Midnight before 1970
+        assertEquals(-86400000L, HL7Time.toEpochMillis(HL7Time.parse("19691231"), utc));
+        assertEquals("19691231", HL7Time.format(HL7Time.fromEpochMillis(-86400000L, utc, 0, false)));
+    }
+    
+    public void testOffsets() {
+        final TimeZone utc = TimeZone.getTimeZone("UTC");
+        final TimeZone ny = TimeZone.getTimeZone("America/New_York");
+        final long time = HL7Time.parse("20200101000000-0500");
+        assertTrue(HL7Time.hasOffset(time));
+        assertEquals(-300, HL7Time.getOffsetMinutes(time));
+        // The text's offset wins over the zone
+        assertEquals(1577854800000L, HL7Time.toEpochMillis(time, utc));
+        assertEquals(1577854800000L, HL7Time.toEpochMillis(time, ny));
+        assertEquals(parseCalendar("20200101000000", TimeZone.getTimeZone("GMT-05:00")), HL7Time.toEpochMillis(time, utc));
+        assertEquals(parseCalendar("20200315", TimeZone.getTimeZone("GMT+05:45")),
+            HL7Time.toEpochMillis(HL7Time.parse("20200315+0545"), utc));
+        assertEquals(parseCalendar("20200315123456.789", TimeZone.getTimeZone("GMT+14:00")),
+            HL7Time.toEpochMillis(HL7Time.parse("20200315123456.789+1400"), ny));
+        assertFalse(HL7Time.hasOffset(HL7Time.parse("20200101")));
+        assertEquals(0, HL7Time.getOffsetMinutes(HL7Time.parse("20200101")));
+        assertTrue(HL7Time.hasOffset(HL7Time.parse("20200101+0000")));
+        // Offsets are kept when formatting from epoch millis if they're whole quarter hours
+        final long kolkata = HL7Time.fromEpochMillis(1577836800000L, TimeZone.getTimeZone("Asia/Kolkata"), 0, true);
+        assertEquals("202001010530+0530", HL7Time.format(kolkata));
+        assertEquals("20191231190000-0500",
+            HL7Time.format(HL7Time.fromEpochMillis(1577836800000L, ny, HL7Time.PRECISION_SECOND, true)));
+        // Compare ignores offsets
+        assertEquals(0, HL7Time.compare(HL7Time.parse("202001011200+0100"), HL7Time.parse("202001011200-0100")));
+    }
+    
+    public void testPrecision() {
+        final long time = HL7Time.parse("20200315123456.7891+0100");
+        final String[] expected = { "2020+0100", "202003+0100", "20200315+0100", "2020031512+0100", "202003151234+0100",
+                "20200315123456+0100", "20200315123456.7+0100", "20200315123456.78+0100", "20200315123456.789+0100",
+                "20200315123456.7891+0100" };
+        for (int precision = HL7Time.PRECISION_YEAR; precision <= HL7Time.PRECISION_TEN_THOUSANDTH_SECOND; precision++) {
+            final long truncated = HL7Time.withPrecision(time, precision);
+            assertEquals(precision, HL7Time.getPrecision(truncated));
+            assertEquals(expected[precision - 1], HL7Time.format(truncated));
+            assertEquals(truncated, HL7Time.parse(expected[precision - 1]));
+        }
+        // Ten-thousandths are truncated, like the Calendar, when converting to milliseconds
+        final TimeZone utc = TimeZone.getTimeZone("UTC");
+        assertEquals(parseCalendar("20200315123456.789", utc), HL7Time.toEpochMillis(HL7Time.parse("20200315123456.7899"), utc));
+        assertEquals(parseCalendar("20200315123456.7", utc), HL7Time.toEpochMillis(HL7Time.parse("20200315123456.7"), utc));
+        // Truncation before 1970 rounds toward the past
+        assertEquals("19691231", HL7Time.format(HL7Time.withPrecision(HL7Time.parse("19691231235959.9999"), HL7Time.PRECISION_DAY)));
+        try {
+            HL7Time.withPrecision(time, 11);
+            fail("Expected an IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    public void testInvalid() {
+        for (final String s : new String[] { "", "202", "2020-01", "20201", "20200", "20201301", "20200001", "20200230",
+                "20190229", "21000229", "20200100", "2020010124", "202001011260", "20200101120060", "20200101120000.",
+                "20200101120000.12345", "20200101120000.1x", "20200101+0510", "20200101+05", "20200101+2400", "20200101 ",
+                " 20200101", "2020x", "202001011", "20200101-", "2020010112+0100x" }) {
+            assertEquals(s, HL7Time.NONE, HL7Time.parse(s));
+            final TS ts = new TS(null, s);
+            assertEquals(s, HL7Time.NONE, ts.getPackedTime());
+            assertNull(s, ts.toDate());
+        }
+        assertEquals(HL7Time.NONE, HL7Time.parse(null));
+        assertNull(HL7Time.format(HL7Time.NONE));
+        assertFalse(HL7Time.isValid(HL7Time.NONE));
+    }
+    
+    public void testDateData() {
+        final Random r = new Random(20201017L);
+        for (int i = 0; i < 1000; i++) {
+            final String s = randomText(r);
+            final TS ts = new TS(null, s);
+            final long time = ts.getPackedTime();
+            assertEquals(s, s, HL7Time.format(time));
+            assertEquals(s, parseCalendar(s, Dates.DEFAULT_TIME_ZONE), ts.toDate().getTime());
+            assertEquals(s, Dates.parseHL7Date(s), ts.toDate());
+            final TS copy = new TS(null);
+            copy.setPackedTime(time);
+            assertEquals(s, copy.getValue());
+        }
+        final TS ts = new TS(null, "20200315");
+        ts.setPackedTime(HL7Time.NONE);
+        assertNull(ts.getValue());
+    }
+    
+    /**
+     * Parses an HL7 date/time without an offset the way Dates did before HL7Time
+     **/
+    private final static long parseCalendar(final String s, final TimeZone zone) {
+        final Calendar c = Calendar.getInstance(zone);
+        assertTrue(s, Dates.setHL7DateTime(c, s, false));
+        return c.getTimeInMillis();
+    }
+    
+    private final static String randomText(final Random r) {
+        final int precision = 1 + r.nextInt(HL7Time.PRECISION_TEN_THOUSANDTH_SECOND);
+        final int year = 1583 + r.nextInt(2100 - 1583);
+        final int month = 1 + r.nextInt(12);
+        final Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        c.clear();
+        c.set(year, month - 1, 1);
+        final int day = 1 + r.nextInt(c.getActualMaximum(Calendar.DAY_OF_MONTH));
+        final StringBuilder b = new StringBuilder(24);
+        b.append(year);
+        append(b, precision, HL7Time.PRECISION_MONTH, month);
+        append(b, precision, HL7Time.PRECISION_DAY, day);
+        append(b, precision, HL7Time.PRECISION_HOUR, r.nextInt(24));
+        append(b, precision, HL7Time.PRECISION_MINUTE, r.nextInt(60));
+        append(b, precision, HL7Time.PRECISION_SECOND, r.nextInt(60));
+        if (precision > HL7Time.PRECISION_SECOND) {
+            b.append('.');
+            for (int i = HL7Time.PRECISION_SECOND; i < precision; i++) {
+                b.append((char) ('0' + r.nextInt(10)));
+            }
+        }
+        return b.toString();
+    }
+    
+    private final static void append(final StringBuilder b, final int precision, final int part, final int value) {
+        if (precision >= part) {
+            b.append(Util.to2DigitString(value));
+        }
+    }
+}